@@ -2,11 +2,23 @@ package com.example.discordwhitelist;
 
 import com.example.discordwhitelist.command.AdminCommand;
 import com.example.discordwhitelist.discord.DiscordBot;
+import com.example.discordwhitelist.filter.ChatFilter;
 import com.example.discordwhitelist.listener.ChatSyncListener;
+import com.example.discordwhitelist.listener.PlayerActivityListener;
 import com.example.discordwhitelist.listener.PlayerLoginListener;
+import com.example.discordwhitelist.manager.ActivityTracker;
+import com.example.discordwhitelist.manager.ApprovalQueue;
+import com.example.discordwhitelist.manager.AuditJournal;
+import com.example.discordwhitelist.manager.BackupManager;
+import com.example.discordwhitelist.manager.MojangProfileResolver;
+import com.example.discordwhitelist.manager.ProfileResolver;
+import com.example.discordwhitelist.manager.RegistrationPipeline;
 import com.example.discordwhitelist.manager.WhitelistManager;
+import com.example.discordwhitelist.manager.WhitelistPartitions;
+import com.example.discordwhitelist.relay.ChatRelay;
 import org.bukkit.plugin.java.JavaPlugin;
 
+import java.util.List;
 import java.util.logging.Level;
 
 /**
@@ -17,6 +29,15 @@ public class DiscordWhitelistPlugin extends JavaPlugin {
     private static DiscordWhitelistPlugin instance;
     private WhitelistManager whitelistManager;
     private DiscordBot discordBot;
+    private ProfileResolver profileResolver;
+    private RegistrationPipeline registrationPipeline;
+    private WhitelistPartitions partitions;
+    private ChatFilter chatFilter;
+    private ActivityTracker activityTracker;
+    private BackupManager backupManager;
+    private ApprovalQueue approvalQueue;
+    private ChatRelay chatRelay;
+    private AuditJournal auditJournal;
 
     @Override
     public void onEnable() {
@@ -25,8 +46,25 @@ public class DiscordWhitelistPlugin extends JavaPlugin {
         // 設定ファイルの保存
         saveDefaultConfig();
 
+        // ホワイトリストの変更履歴 (以降の変更を記録するため最初に開始)
+        auditJournal = new AuditJournal(this);
+        auditJournal.start();
+
         // ホワイトリストマネージャーの初期化
         whitelistManager = new WhitelistManager(this);
+        registrationPipeline = new RegistrationPipeline(this, whitelistManager);
+
+        // Discordサーバーごとのホワイトリスト (設定がなければプライマリのみ)
+        partitions = new WhitelistPartitions(this, whitelistManager, registrationPipeline);
+        activityTracker = new ActivityTracker(this, whitelistManager);
+        backupManager = new BackupManager(this, whitelistManager);
+        approvalQueue = new ApprovalQueue(this);
+
+        // プロフィール (UUID) 解決の初期化
+        initProfileResolver();
+
+        // チャットフィルターの構築
+        chatFilter = new ChatFilter(this);
 
         // Discord Botの初期化
         String token = getConfig().getString("discord.token", "");
@@ -37,33 +75,115 @@ public class DiscordWhitelistPlugin extends JavaPlugin {
             discordBot.start();
         }
 
+        // 他のサーバーとのチャット中継 (Discordに送信できるかどうかをリーダーの選出に使うためBotの後に開始)
+        chatRelay = new ChatRelay(this);
+        chatRelay.start();
+
         // イベントリスナーの登録
         getServer().getPluginManager().registerEvents(new PlayerLoginListener(this), this);
         getServer().getPluginManager().registerEvents(new ChatSyncListener(this), this);
+        getServer().getPluginManager().registerEvents(new PlayerActivityListener(this), this);
 
         // コマンドの登録
         AdminCommand adminCommand = new AdminCommand(this);
         getCommand("dwl").setExecutor(adminCommand);
         getCommand("dwl").setTabCompleter(adminCommand);
 
+        // 期限切れエントリーの削除 (1秒ごと)
+        getServer().getScheduler().runTaskTimerAsynchronously(this, this::removeExpiredEntries, 20L, 20L);
+
+        // 最終ログインの定期保存と非アクティブなエントリーの整理
+        activityTracker.start();
+
+        // 差分バックアップ
+        backupManager.start();
+
+        // 承認待ちの登録の定期保存
+        approvalQueue.start();
+
         getLogger().info("DiscordWhitelistプラグインが有効化されました。");
     }
 
     @Override
     public void onDisable() {
+        // 処理待ちの登録を反映 (Botの停止前に応答を返す)
+        if (registrationPipeline != null) {
+            registrationPipeline.shutdown();
+        }
+        if (partitions != null) {
+            partitions.shutdown();
+        }
+
+        // チャット中継の停止 (他のサーバーがリーダーを選び直す)
+        if (chatRelay != null) {
+            chatRelay.stop();
+        }
+
         // Discord Botの停止
         if (discordBot != null) {
             discordBot.shutdown();
         }
 
-        // ホワイトリストの保存
+        if (activityTracker != null) {
+            activityTracker.stop();
+        }
+
+        // 承認待ちの登録の保存
+        if (approvalQueue != null) {
+            approvalQueue.stop();
+        }
+
+        // ホワイトリストの保存 (未保存の最終ログイン時刻も反映)
         if (whitelistManager != null) {
             whitelistManager.save();
         }
 
+        // 最後の変更をバックアップに書き出す
+        if (backupManager != null) {
+            backupManager.stop();
+            backupManager.flush();
+        }
+
+        if (profileResolver != null) {
+            profileResolver.shutdown();
+        }
+
+        // 変更履歴の残りを書き込む
+        if (auditJournal != null) {
+            auditJournal.stop();
+        }
+
         getLogger().info("DiscordWhitelistプラグインが無効化されました。");
     }
 
+    /**
+     * 期限切れのエントリーをまとめて削除し、管理者チャンネルに通知
+     */
+    private void removeExpiredEntries() {
+        List<WhitelistManager.WhitelistEntry> removed = partitions.removeExpired(System.currentTimeMillis());
+        if (removed.isEmpty()) {
+            return;
+        }
+
+        getLogger().info("期限切れのエントリーを削除しました: " + removed.size() + "件");
+        if (discordBot == null) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append("⌛ **期限切れのエントリーを削除しました** (").append(removed.size()).append("件)\n");
+        int count = 0;
+        for (WhitelistManager.WhitelistEntry entry : removed) {
+            if (count >= 20) {
+                sb.append("... 他 ").append(removed.size() - 20).append("件\n");
+                break;
+            }
+            sb.append("`").append(entry.getPlayerName()).append("`\n");
+            count++;
+        }
+        discordBot.sendAdminMessage(sb.toString());
+    }
+
     /**
      * プラグインインスタンスを取得
      */
@@ -72,12 +192,68 @@ public class DiscordWhitelistPlugin extends JavaPlugin {
     }
 
     /**
-     * ホワイトリストマネージャーを取得
+     * ホワイトリストマネージャーを取得 (discord.guild-id のサーバー)
      */
     public WhitelistManager getWhitelistManager() {
         return whitelistManager;
     }
 
+    /**
+     * Discordサーバーごとのホワイトリストを取得
+     */
+    public WhitelistPartitions getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * 登録パイプラインを取得
+     */
+    public RegistrationPipeline getRegistrationPipeline() {
+        return registrationPipeline;
+    }
+
+    /**
+     * 最終ログインの記録・整理を取得
+     */
+    public ActivityTracker getActivityTracker() {
+        return activityTracker;
+    }
+
+    /**
+     * バックアップを取得
+     */
+    public BackupManager getBackupManager() {
+        return backupManager;
+    }
+
+    /**
+     * 承認待ちの登録を取得
+     */
+    public ApprovalQueue getApprovalQueue() {
+        return approvalQueue;
+    }
+
+    /**
+     * ホワイトリストの変更履歴を取得
+     */
+    public AuditJournal getAuditJournal() {
+        return auditJournal;
+    }
+
+    /**
+     * サーバー間のチャット中継を取得
+     */
+    public ChatRelay getChatRelay() {
+        return chatRelay;
+    }
+
+    /**
+     * チャットフィルターを取得
+     */
+    public ChatFilter getChatFilter() {
+        return chatFilter;
+    }
+
     /**
      * Discord Botを取得
      */
@@ -85,15 +261,54 @@ public class DiscordWhitelistPlugin extends JavaPlugin {
         return discordBot;
     }
 
+    /**
+     * プロフィール解決を取得 (無効の場合はnull)
+     */
+    public ProfileResolver getProfileResolver() {
+        return profileResolver;
+    }
+
+    /**
+     * プロフィール解決の実装を差し替え
+     */
+    public void setProfileResolver(ProfileResolver profileResolver) {
+        if (this.profileResolver != null && this.profileResolver != profileResolver) {
+            this.profileResolver.shutdown();
+        }
+        this.profileResolver = profileResolver;
+    }
+
+    /**
+     * 設定に従ってプロフィール解決を初期化
+     */
+    private void initProfileResolver() {
+        if (getConfig().getBoolean("profile-resolver.enabled", true)) {
+            setProfileResolver(new MojangProfileResolver(this));
+        } else {
+            setProfileResolver(null);
+        }
+    }
+
     /**
      * 設定とホワイトリストをリロード
      */
     public void reload() {
         reloadConfig();
+        auditJournal.start();
+        // 未保存の最終ログイン時刻を書き出してから読み込み直す
+        whitelistManager.flushLastSeen();
+        backupManager.flush();
         whitelistManager.reload();
+        partitions.reloadWhitelists();
+        partitions.reload();
+        activityTracker.start();
+        backupManager.start();
+        initProfileResolver();
+        chatFilter.reload();
         if (discordBot != null) {
-            discordBot.reloadWebhook();
+            discordBot.reload();
         }
+        chatRelay.start();
         getLogger().info("設定をリロードしました。");
     }
 }
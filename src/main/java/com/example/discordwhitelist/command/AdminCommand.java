@@ -1,7 +1,14 @@
 package com.example.discordwhitelist.command;
 
 import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.discord.OutboundMetrics;
+import com.example.discordwhitelist.discord.OutboundSender;
+import com.example.discordwhitelist.discord.Outbox;
+import com.example.discordwhitelist.manager.AuditJournal;
+import com.example.discordwhitelist.manager.BackupManager;
 import com.example.discordwhitelist.manager.WhitelistManager;
+import com.example.discordwhitelist.manager.WhitelistPartitions;
+import com.example.discordwhitelist.relay.ChatRelay;
 import org.bukkit.command.Command;
 import org.bukkit.command.CommandExecutor;
 import org.bukkit.command.CommandSender;
@@ -9,6 +16,12 @@ import org.bukkit.command.TabCompleter;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.io.IOException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -19,6 +32,8 @@ import java.util.stream.Collectors;
  */
 public class AdminCommand implements CommandExecutor, TabCompleter {
 
+    private static final DateTimeFormatter TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
     private final DiscordWhitelistPlugin plugin;
 
     public AdminCommand(DiscordWhitelistPlugin plugin) {
@@ -43,13 +58,35 @@ public class AdminCommand implements CommandExecutor, TabCompleter {
             }
             case "add" -> {
                 if (args.length < 2) {
-                    sender.sendMessage("§c使用法: /dwl add <プレイヤー名>");
+                    sender.sendMessage("§c使用法: /dwl add <プレイヤー名> [期間]");
                     return true;
                 }
                 String playerName = args[1];
-                WhitelistManager.AddResult result = plugin.getWhitelistManager().addPlayer(playerName, null);
+
+                // 有効期間 (省略時は無期限)
+                long expiresAt = 0;
+                if (args.length >= 3) {
+                    long duration = WhitelistManager.parseDuration(args[2]);
+                    if (duration <= 0) {
+                        sender.sendMessage("§c期間の形式が不正です。(例: 30m, 12h, 3d, 1d12h)");
+                        return true;
+                    }
+                    expiresAt = System.currentTimeMillis() + duration;
+                }
+
+                long expires = expiresAt;
+                WhitelistManager manager = plugin.getWhitelistManager();
+                WhitelistManager.AddResult result = manager.withSource(AuditJournal.senderSource(sender.getName()),
+                        () -> manager.addPlayer(playerName, null, false, null, expires));
                 switch (result) {
-                    case SUCCESS -> sender.sendMessage("§a" + playerName + " をホワイトリストに追加しました。");
+                    case SUCCESS -> {
+                        if (expiresAt > 0) {
+                            sender.sendMessage("§a" + playerName + " をホワイトリストに追加しました。§7(期限: "
+                                    + formatTime(expiresAt) + ")");
+                        } else {
+                            sender.sendMessage("§a" + playerName + " をホワイトリストに追加しました。");
+                        }
+                    }
                     case UPDATED -> sender.sendMessage("§a" + playerName + " のホワイトリストを更新しました。");
                     case ALREADY_EXISTS -> sender.sendMessage("§e" + playerName + " は既にホワイトリストに登録されています。");
                     case INVALID_NAME -> sender.sendMessage("§c無効なMinecraft IDです。");
@@ -63,7 +100,9 @@ public class AdminCommand implements CommandExecutor, TabCompleter {
                     return true;
                 }
                 String playerName = args[1];
-                if (plugin.getWhitelistManager().removePlayer(playerName)) {
+                WhitelistManager manager = plugin.getWhitelistManager();
+                if (manager.withSource(AuditJournal.senderSource(sender.getName()),
+                        () -> manager.removePlayer(playerName))) {
                     sender.sendMessage("§a" + playerName + " をホワイトリストから削除しました。");
                 } else {
                     sender.sendMessage("§c" + playerName + " はホワイトリストに登録されていません。");
@@ -75,7 +114,238 @@ public class AdminCommand implements CommandExecutor, TabCompleter {
                 for (WhitelistManager.WhitelistEntry entry : entries) {
                     String discordInfo = entry.getDiscordId().isEmpty() ? ""
                             : " §7(Discord: " + entry.getDiscordId() + ")";
-                    sender.sendMessage("§f- " + entry.getPlayerName() + discordInfo);
+                    String expiryInfo = entry.getExpiresAt() > 0
+                            ? " §e(期限: " + formatTime(entry.getExpiresAt()) + ")"
+                            : "";
+                    sender.sendMessage("§f- " + entry.getPlayerName() + discordInfo + expiryInfo);
+                }
+            }
+            case "search" -> {
+                if (args.length < 2) {
+                    sender.sendMessage("§c使用法: /dwl search <名前の一部|Discord ID>");
+                    return true;
+                }
+                // 統合版の名前はスペースを含むことがあるため残りの引数をまとめる
+                String query = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
+                List<WhitelistManager.SearchResult> results = plugin.getWhitelistManager().search(query, 20);
+                if (results.isEmpty()) {
+                    sender.sendMessage("§e" + query + " に一致するプレイヤーは見つかりませんでした。");
+                    return true;
+                }
+                sender.sendMessage("§6===== 検索結果 (" + results.size() + "件) =====");
+                for (WhitelistManager.SearchResult result : results) {
+                    WhitelistManager.WhitelistEntry entry = result.getEntry();
+                    String discordInfo = entry.getDiscordId().isEmpty() ? ""
+                            : " §7(Discord: " + entry.getDiscordId() + ")";
+                    String disabledInfo = entry.isDisabled() ? " §c(無効)" : "";
+                    sender.sendMessage("§f- " + entry.getPlayerName() + discordInfo + disabledInfo
+                            + " §8" + Math.round(result.getScore() * 100) + "%");
+                }
+            }
+            case "history" -> {
+                if (args.length < 2) {
+                    sender.sendMessage("§c使用法: /dwl history <プレイヤー名|Discord ID>");
+                    return true;
+                }
+                AuditJournal journal = plugin.getAuditJournal();
+                if (!journal.isEnabled()) {
+                    sender.sendMessage("§c変更履歴の記録は無効です。");
+                    return true;
+                }
+                String target = String.join(" ", Arrays.copyOfRange(args, 1, args.length));
+
+                // ファイルの読み込みを伴うため非同期で実行
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                    AuditJournal.History history = journal.history(target, 20);
+                    if (history.getRecords().isEmpty()) {
+                        sender.sendMessage("§e" + target + " の変更履歴はありません。");
+                        return;
+                    }
+                    sender.sendMessage("§6===== 変更履歴: " + target + " (" + history.getTotal() + "件) =====");
+                    for (AuditJournal.Record record : history.getRecords()) {
+                        StringBuilder sb = new StringBuilder();
+                        sb.append("§7").append(formatTime(record.getTime())).append(" §e")
+                                .append(record.getAction().getLabel()).append(" §f").append(record.getPlayerName());
+                        if (!record.getPrevious().isEmpty()) {
+                            sb.append(" §7(旧: ").append(record.getPrevious()).append(")");
+                        }
+                        if (!record.getDetail().isEmpty()) {
+                            sb.append(" §7").append(record.getDetail());
+                        }
+                        sb.append(" §8by ").append(AuditJournal.formatSource(record.getSource(), false));
+                        sender.sendMessage(sb.toString());
+                    }
+                    if (history.getTotal() > history.getRecords().size()) {
+                        sender.sendMessage("§7... 他 " + (history.getTotal() - history.getRecords().size()) + "件");
+                    }
+                });
+            }
+            case "reconcile" -> {
+                if (plugin.getDiscordBot() == null || !plugin.getDiscordBot().getReconciler().runFull()) {
+                    sender.sendMessage("§cメンバー整合性チェックを開始できません。(Bot未起動、ギルド未設定、GUILD_MEMBERS Intent無効、または実行中)");
+                    return true;
+                }
+                sender.sendMessage("§aメンバー整合性チェックを開始しました。結果はログと管理者チャンネルに出力されます。");
+            }
+            case "verify" -> {
+                // 全サーバーのホワイトリストと統合インデックスを検査
+                List<String> problems = new ArrayList<>();
+                int size = 0;
+                for (WhitelistPartitions.Partition partition : plugin.getPartitions().getAll()) {
+                    String prefix = partition == plugin.getPartitions().getPrimary() ? ""
+                            : "[" + partition.getLabel() + "] ";
+                    for (String problem : partition.getManager().checkConsistency()) {
+                        problems.add(prefix + problem);
+                    }
+                    size += partition.getManager().getSize();
+                }
+                problems.addAll(plugin.getPartitions().checkConsistency());
+                WhitelistManager.MappedIndexStatus mapped = plugin.getWhitelistManager().getMappedIndexStatus();
+                if (mapped != null) {
+                    sender.sendMessage("§7索引ファイル: " + mapped.getSize() + "/" + mapped.getCapacity() + "件 ("
+                            + mapped.getFileSize() / 1024 + "KB)");
+                }
+                if (problems.isEmpty()) {
+                    sender.sendMessage("§aホワイトリストのインデックスに不整合はありません。(" + size + "件)");
+                    return true;
+                }
+                sender.sendMessage("§c不整合が " + problems.size() + "件 見つかりました:");
+                for (int i = 0; i < Math.min(problems.size(), 20); i++) {
+                    sender.sendMessage("§7- " + problems.get(i));
+                }
+                if (problems.size() > 20) {
+                    sender.sendMessage("§7... 他 " + (problems.size() - 20) + "件");
+                }
+            }
+            case "prune" -> {
+                boolean apply = args.length >= 2 && args[1].equalsIgnoreCase("apply");
+                int days = plugin.getActivityTracker().getInactiveDays();
+                sender.sendMessage("§7" + days + "日以上ログインしていないエントリーを確認しています...");
+
+                // 通知と保存を伴うため非同期で実行
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                    List<WhitelistManager.WhitelistEntry> entries = plugin.getActivityTracker()
+                            .prune(apply, AuditJournal.senderSource(sender.getName()));
+                    if (entries == null) {
+                        sender.sendMessage("§c整理を実行中です。しばらく待ってから再度お試しください。");
+                    } else if (entries.isEmpty()) {
+                        sender.sendMessage("§a対象のエントリーはありません。");
+                    } else if (apply) {
+                        sender.sendMessage("§a" + entries.size() + "件のエントリーを削除しました。");
+                    } else {
+                        sender.sendMessage("§e対象: " + entries.size() + "件 §7(削除するには /dwl prune apply)");
+                        for (int i = 0; i < Math.min(entries.size(), 20); i++) {
+                            WhitelistManager.WhitelistEntry entry = entries.get(i);
+                            String lastSeen = entry.getLastSeen() > 0 ? formatTime(entry.getLastSeen()) : "記録なし";
+                            sender.sendMessage("§f- " + entry.getPlayerName() + " §7(最終ログイン: " + lastSeen + ")");
+                        }
+                        if (entries.size() > 20) {
+                            sender.sendMessage("§7... 他 " + (entries.size() - 20) + "件");
+                        }
+                    }
+                });
+            }
+            case "restore" -> {
+                boolean confirm = args.length >= 3 && args[args.length - 1].equalsIgnoreCase("confirm");
+                String timeText = String.join(" ", Arrays.copyOfRange(args, 1, confirm ? args.length - 1 : args.length));
+                long time = args.length >= 2 ? parseRestoreTime(timeText) : -1;
+                if (time < 0) {
+                    sender.sendMessage("§c使用法: /dwl restore <yyyy-MM-dd HH:mm|期間前 (例: 2h)> [confirm]");
+                    long oldest = plugin.getBackupManager().getOldestRestorable();
+                    if (oldest > 0) {
+                        sender.sendMessage("§7復元できる最も古い時刻: " + formatTime(oldest));
+                    }
+                    return true;
+                }
+
+                // バックアップの読み込みと保存を伴うため非同期で実行
+                plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+                    BackupManager.RestorePlan plan;
+                    try {
+                        plan = plugin.getBackupManager().plan(time);
+                    } catch (IOException e) {
+                        sender.sendMessage("§cバックアップの読み込みに失敗しました: " + e.getMessage());
+                        return;
+                    }
+                    if (plan == null) {
+                        sender.sendMessage("§c" + formatTime(time) + " 時点のバックアップがありません。");
+                        return;
+                    }
+                    if (plan.isEmpty()) {
+                        sender.sendMessage("§a" + formatTime(time) + " 時点から変更はありません。");
+                        return;
+                    }
+
+                    if (confirm) {
+                        plugin.getBackupManager().restore(plan, AuditJournal.senderSource(sender.getName()));
+                        sender.sendMessage("§a" + formatTime(time) + " 時点のホワイトリストを復元しました。(" + plan.getSize()
+                                + "人)");
+                        return;
+                    }
+
+                    sender.sendMessage("§6===== 復元の確認 (" + formatTime(time) + " 時点) =====");
+                    sender.sendMessage("§f復元後: " + plan.getSize() + "人 §a追加 " + plan.getAdded().size()
+                            + " §c削除 " + plan.getRemoved().size() + " §e変更 " + plan.getChanged().size());
+                    List<String> lines = new ArrayList<>();
+                    plan.getAdded().forEach(entry -> lines.add("§a+ " + entry.getPlayerName()));
+                    plan.getRemoved().forEach(entry -> lines.add("§c- " + entry.getPlayerName()));
+                    plan.getChanged().forEach(entry -> lines.add("§e~ " + entry.getPlayerName()));
+                    for (int i = 0; i < Math.min(lines.size(), 20); i++) {
+                        sender.sendMessage(lines.get(i));
+                    }
+                    if (lines.size() > 20) {
+                        sender.sendMessage("§7... 他 " + (lines.size() - 20) + "件");
+                    }
+                    sender.sendMessage("§7復元するには /dwl restore " + timeText + " confirm");
+                });
+            }
+            case "queue" -> {
+                if (plugin.getDiscordBot() == null || plugin.getDiscordBot().getOutbound() == null) {
+                    sender.sendMessage("§cDiscord Botが起動していません。");
+                    return true;
+                }
+                sender.sendMessage("§6===== Discord送信キュー =====");
+                for (OutboundSender.Stats stats : plugin.getDiscordBot().getOutbound().getStats()) {
+                    sender.sendMessage("§e" + stats.getCategory().getLabel() + " §f" + stats.getDepth() + "/"
+                            + stats.getCapacity() + " §7(送信 " + stats.getSent() + " / 失敗 " + stats.getFailed()
+                            + " / 破棄 " + stats.getDropped() + " / 省略 " + stats.getCollapsed() + ")");
+                }
+                OutboundMetrics.Snapshot metrics = plugin.getDiscordBot().getOutbound().getMetrics();
+                sender.sendMessage(String.format("§e配信 §f%.1f件/秒 §7(直近60秒、累計 %d件)",
+                        metrics.getDeliveredPerSecond(), metrics.getDelivered()));
+                sender.sendMessage(String.format("§e遅延 §fp50 %dms / p95 %dms / p99 %dms",
+                        metrics.getLatencyP50(), metrics.getLatencyP95(), metrics.getLatencyP99()));
+                sender.sendMessage(String.format("§eリクエスト/件 §f%.2f §e損失 §f%.2f%% §7(失敗 %d / 破棄 %d)",
+                        metrics.getRequestsPerMessage(), metrics.getLossRate() * 100, metrics.getFailed(),
+                        metrics.getLost()));
+                Outbox outbox = plugin.getDiscordBot().getOutbound().getOutbox();
+                if (outbox.hasBacklog()) {
+                    sender.sendMessage(String.format("§e再送待ち §f%d件 §7(ディスク %.1fKB)",
+                            outbox.getSize(), outbox.getDiskBytes() / 1024.0));
+                }
+                int[] webhooks = plugin.getDiscordBot().getWebhookStatus();
+                if (webhooks[1] > 0) {
+                    sender.sendMessage("§eWebhook §f" + webhooks[0] + "/" + webhooks[1] + " §7(ローテーション中/設定数)");
+                }
+            }
+            case "relay" -> {
+                ChatRelay relay = plugin.getChatRelay();
+                if (!relay.isEnabled()) {
+                    sender.sendMessage("§cチャット中継は無効です。");
+                    return true;
+                }
+                List<ChatRelay.PeerStatus> peers = relay.getPeers();
+                sender.sendMessage("§6===== チャット中継 (" + relay.getServerName() + ") =====");
+                String leader = relay.getLeader();
+                sender.sendMessage("§eDiscordへの送信 §f" + (leader != null ? leader : "なし")
+                        + (relay.isLeader() ? " §7(このサーバー)" : ""));
+                sender.sendMessage("§e接続 §f" + peers.size() + "/" + relay.getConfiguredPeers() + "台 §7(送信 "
+                        + relay.getPublished() + " / 受信 " + relay.getReceived() + " / Discordへ "
+                        + relay.getForwarded() + ")");
+                for (ChatRelay.PeerStatus peer : peers) {
+                    sender.sendMessage("§e" + peer.getName() + " §f" + peer.getAddress()
+                            + (peer.isOutbound() ? " §7→" : " §7←") + " §7(フレーム 送信 " + peer.getFramesSent()
+                            + " / 受信 " + peer.getFramesReceived() + "、書き込み " + peer.getWrites() + "回)");
                 }
             }
             default -> sendHelp(sender);
@@ -87,20 +357,58 @@ public class AdminCommand implements CommandExecutor, TabCompleter {
     private void sendHelp(CommandSender sender) {
         sender.sendMessage("§6===== DiscordWhitelist コマンド =====");
         sender.sendMessage("§e/dwl reload §7- 設定をリロード");
-        sender.sendMessage("§e/dwl add <プレイヤー名> §7- ホワイトリストに追加");
+        sender.sendMessage("§e/dwl add <プレイヤー名> [期間] §7- ホワイトリストに追加 (期間の例: 12h, 3d)");
         sender.sendMessage("§e/dwl remove <プレイヤー名> §7- ホワイトリストから削除");
         sender.sendMessage("§e/dwl list §7- ホワイトリスト一覧");
+        sender.sendMessage("§e/dwl search <名前の一部|Discord ID> §7- プレイヤーを検索");
+        sender.sendMessage("§e/dwl history <プレイヤー名|Discord ID> §7- ホワイトリストの変更履歴");
+        sender.sendMessage("§e/dwl reconcile §7- Discordメンバーとの整合性チェック");
+        sender.sendMessage("§e/dwl verify §7- インデックスの整合性を検査");
+        sender.sendMessage("§e/dwl prune [apply] §7- 長期間ログインしていないエントリーを確認/削除");
+        sender.sendMessage("§e/dwl restore <日時|期間前> [confirm] §7- バックアップから復元 (confirmなしで差分を表示)");
+        sender.sendMessage("§e/dwl queue §7- Discord送信キューの状況");
+        sender.sendMessage("§e/dwl relay §7- サーバー間のチャット中継の状況");
+    }
+
+    /**
+     * エポックミリ秒を表示用の日時に変換
+     */
+    private String formatTime(long epochMillis) {
+        return TIME_FORMAT.format(Instant.ofEpochMilli(epochMillis).atZone(ZoneId.systemDefault()));
+    }
+
+    /**
+     * 復元する時刻を解析 (日時、または現在からの期間)
+     *
+     * @return エポックミリ秒 (不正な場合は-1)
+     */
+    private long parseRestoreTime(String text) {
+        long duration = WhitelistManager.parseDuration(text);
+        if (duration > 0) {
+            return System.currentTimeMillis() - duration;
+        }
+        try {
+            return LocalDateTime.parse(text.replace('T', ' '), TIME_FORMAT)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return -1;
+        }
     }
 
     @Override
     public @Nullable List<String> onTabComplete(@NotNull CommandSender sender, @NotNull Command command,
             @NotNull String alias, @NotNull String[] args) {
         if (args.length == 1) {
-            return Arrays.asList("reload", "add", "remove", "list").stream()
+            return Arrays.asList("reload", "add", "remove", "list", "search", "history", "reconcile", "verify", "prune",
+                    "restore", "queue", "relay").stream()
                     .filter(s -> s.startsWith(args[0].toLowerCase()))
                     .collect(Collectors.toList());
         }
 
+        if (args.length == 2 && args[0].equalsIgnoreCase("prune")) {
+            return "apply".startsWith(args[1].toLowerCase()) ? List.of("apply") : new ArrayList<>();
+        }
+
         if (args.length == 2 && args[0].equalsIgnoreCase("remove")) {
             return plugin.getWhitelistManager().getWhitelist().stream()
                     .map(WhitelistManager.WhitelistEntry::getPlayerName)
@@ -0,0 +1,208 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.manager.ApprovalQueue;
+import com.example.discordwhitelist.manager.AuditJournal;
+import com.example.discordwhitelist.manager.WhitelistManager;
+import com.example.discordwhitelist.manager.WhitelistPartitions;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.interactions.components.ActionRow;
+import net.dv8tion.jda.api.interactions.components.buttons.Button;
+import org.jetbrains.annotations.NotNull;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 承認待ちの登録の確認画面 (/whitelist pending) のボタン処理リスナー
+ * 1ページ5件で、申請ごとの承認/却下と、表示中の申請をまとめて承認/却下するボタンを表示する
+ * ボタンのIDに対象の申請IDを含めるため、他のスタッフが先に処理した申請は二重に処理しない
+ */
+public class ApprovalListener extends ListenerAdapter {
+
+    private static final String PREFIX = "approval:";
+    static final int PAGE_SIZE = 5;
+
+    private final DiscordWhitelistPlugin plugin;
+
+    public ApprovalListener(DiscordWhitelistPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @Override
+    public void onButtonInteraction(@NotNull ButtonInteractionEvent event) {
+        String buttonId = event.getComponentId();
+        if (!buttonId.startsWith(PREFIX)) {
+            return;
+        }
+
+        WhitelistPartitions.Partition partition = plugin.getPartitions()
+                .forGuild(event.getGuild() != null ? event.getGuild().getId() : null);
+        if (!SlashCommandListener.isAdmin(plugin, event.getMember(), partition)) {
+            event.reply("❌ この操作は管理者のみ実行できます。").setEphemeral(true).queue();
+            return;
+        }
+
+        // approval:<操作>:<ページ>:<申請ID,...>
+        String[] parts = buttonId.split(":", 4);
+        if (parts.length < 3) {
+            return;
+        }
+        String action = parts[1];
+        int page;
+        try {
+            page = Integer.parseInt(parts[2]);
+        } catch (NumberFormatException e) {
+            return;
+        }
+        List<Long> ids = new ArrayList<>();
+        if (parts.length == 4 && !parts[3].isEmpty()) {
+            for (String id : parts[3].split(",")) {
+                try {
+                    ids.add(Long.parseLong(id));
+                } catch (NumberFormatException ignored) {
+                    // 不正なIDは無視
+                }
+            }
+        }
+
+        ApprovalQueue approvals = plugin.getApprovalQueue();
+        if (action.equals("page")) {
+            ApprovalQueue.Page view = approvals.page(partition, page, PAGE_SIZE);
+            event.editMessageEmbeds(buildEmbed(view)).setComponents(buildRows(view)).queue();
+            return;
+        }
+        if (!action.equals("approve") && !action.equals("reject")) {
+            return;
+        }
+
+        // ホワイトリストの保存を伴うため、応答を保留してから非同期で処理する
+        event.deferEdit().queue();
+        InteractionHook hook = event.getHook();
+        String staff = event.getUser().getName();
+        String staffId = event.getUser().getId();
+        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
+            String summary = action.equals("approve")
+                    ? approve(partition, ids, staff, staffId)
+                    : reject(partition, ids, staff);
+            ApprovalQueue.Page view = approvals.page(partition, page, PAGE_SIZE);
+            hook.editOriginalEmbeds(buildEmbed(view)).setComponents(buildRows(view)).queue();
+            hook.sendMessage(summary).setEphemeral(true).queue();
+        });
+    }
+
+    /**
+     * 承認してホワイトリストに登録し、ユーザーに結果をDMで通知
+     */
+    private String approve(WhitelistPartitions.Partition partition, List<Long> ids, String staff, String staffId) {
+        Map<ApprovalQueue.Request, WhitelistManager.AddResult> results = plugin.getApprovalQueue()
+                .approve(partition, ids, AuditJournal.discordSource(staffId));
+        if (results.isEmpty()) {
+            return "ℹ️ 対象の申請は既に処理されています。";
+        }
+
+        int registered = 0;
+        StringBuilder failures = new StringBuilder();
+        DirectMessageQueue dms = plugin.getDiscordBot().getDirectMessages();
+        for (Map.Entry<ApprovalQueue.Request, WhitelistManager.AddResult> e : results.entrySet()) {
+            ApprovalQueue.Request request = e.getKey();
+            WhitelistManager.AddResult result = e.getValue();
+            if (result == WhitelistManager.AddResult.SUCCESS || result == WhitelistManager.AddResult.UPDATED
+                    || result == WhitelistManager.AddResult.UNCHANGED) {
+                registered++;
+            } else {
+                failures.append("\n`").append(request.getPlayerName()).append("`: ").append(result);
+            }
+            dms.submit(request.getDiscordId(), ModalListener.buildMessage(plugin, result, request.getPlayerName(),
+                    request.getDiscordId(), request.isBedrock()));
+        }
+        plugin.getLogger().info("登録申請を承認: " + results.size() + "件 (" + staff + ")");
+        return "✅ " + results.size() + "件を承認しました (登録 " + registered + "件)。" + failures;
+    }
+
+    /**
+     * 却下し、ユーザーにDMで通知
+     */
+    private String reject(WhitelistPartitions.Partition partition, List<Long> ids, String staff) {
+        List<ApprovalQueue.Request> rejected = plugin.getApprovalQueue().reject(partition, ids);
+        if (rejected.isEmpty()) {
+            return "ℹ️ 対象の申請は既に処理されています。";
+        }
+
+        String template = plugin.getConfig().getString("messages.approval-rejected",
+                "❌ **%player%** の登録申請は承認されませんでした。");
+        DirectMessageQueue dms = plugin.getDiscordBot().getDirectMessages();
+        for (ApprovalQueue.Request request : rejected) {
+            dms.submit(request.getDiscordId(), template.replace("%player%", request.getPlayerName()));
+        }
+        plugin.getLogger().info("登録申請を却下: " + rejected.size() + "件 (" + staff + ")");
+        return "🗑️ " + rejected.size() + "件を却下しました。";
+    }
+
+    /**
+     * 確認画面の埋め込みを作成
+     */
+    static MessageEmbed buildEmbed(ApprovalQueue.Page view) {
+        EmbedBuilder embed = new EmbedBuilder()
+                .setTitle("📝 承認待ちの登録 (" + view.getTotal() + "件)")
+                .setColor(new Color(254, 231, 92));
+        if (view.getRequests().isEmpty()) {
+            embed.setDescription("承認待ちの登録はありません。");
+            return embed.build();
+        }
+
+        StringBuilder sb = new StringBuilder();
+        int number = 1;
+        for (ApprovalQueue.Request request : view.getRequests()) {
+            sb.append("`").append(number++).append(".` ")
+                    .append(request.isBedrock() ? "🪨" : "☕")
+                    .append(" **").append(request.getPlayerName()).append("**")
+                    .append(" <@").append(request.getDiscordId()).append(">")
+                    .append(" ・ <t:").append(request.getSubmittedAt() / 1000).append(":R>\n");
+        }
+        embed.setDescription(sb.toString());
+        embed.setFooter("ページ " + (view.getPage() + 1) + "/" + view.getPages());
+        return embed.build();
+    }
+
+    /**
+     * 確認画面のボタンを作成 (承認、却下、ページ移動と表示中の一括操作の3行)
+     */
+    static List<ActionRow> buildRows(ApprovalQueue.Page view) {
+        List<ActionRow> rows = new ArrayList<>();
+        if (view.getRequests().isEmpty()) {
+            return rows;
+        }
+
+        int page = view.getPage();
+        List<Button> approveButtons = new ArrayList<>();
+        List<Button> rejectButtons = new ArrayList<>();
+        StringBuilder visible = new StringBuilder();
+        int number = 1;
+        for (ApprovalQueue.Request request : view.getRequests()) {
+            approveButtons.add(Button.success(PREFIX + "approve:" + page + ":" + request.getId(), "✅ " + number));
+            rejectButtons.add(Button.danger(PREFIX + "reject:" + page + ":" + request.getId(), "❌ " + number));
+            if (visible.length() > 0) {
+                visible.append(',');
+            }
+            visible.append(request.getId());
+            number++;
+        }
+        rows.add(ActionRow.of(approveButtons));
+        rows.add(ActionRow.of(rejectButtons));
+
+        // 1件のみの場合は個別のボタンとIDが重複するため、一括操作のIDには末尾に区切りを付ける
+        rows.add(ActionRow.of(
+                Button.secondary(PREFIX + "page:" + (page - 1), "◀").withDisabled(page <= 0),
+                Button.secondary(PREFIX + "page:" + (page + 1), "▶").withDisabled(page + 1 >= view.getPages()),
+                Button.success(PREFIX + "approve:" + page + ":" + visible + ",", "表示中を全て承認"),
+                Button.danger(PREFIX + "reject:" + page + ":" + visible + ",", "表示中を全て却下")));
+        return rows;
+    }
+}
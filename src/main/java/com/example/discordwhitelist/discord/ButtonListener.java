@@ -1,6 +1,7 @@
 package com.example.discordwhitelist.discord;
 
 import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.manager.WhitelistManager;
 import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.dv8tion.jda.api.interactions.components.text.TextInput;
@@ -35,12 +36,21 @@ public class ButtonListener extends ListenerAdapter {
 
         String discordId = event.getUser().getId();
 
-        // 既に登録済みかチェック（修正モードかどうか判断）
+        // 連打の抑止 (処理中の記録は期限切れで解除され、Modalを閉じた後に再度開けるようにする)
+        InteractionThrottle.Verdict verdict = plugin.getDiscordBot().getThrottle().tryAcquire(discordId, buttonId);
+        if (verdict != InteractionThrottle.Verdict.ALLOWED) {
+            event.reply(plugin.getDiscordBot().getThrottle().getRejectMessage(verdict)).setEphemeral(true).queue();
+            return;
+        }
+
+        // 既に登録済みかチェック（修正モードかどうか判断、ボタンのあるサーバーのホワイトリストを参照）
+        WhitelistManager manager = plugin.getPartitions()
+                .forGuild(event.getGuild() != null ? event.getGuild().getId() : null).getManager();
         String existingPlayer = null;
         if (isJava) {
-            existingPlayer = plugin.getWhitelistManager().getJavaPlayerByDiscordId(discordId);
+            existingPlayer = manager.getJavaPlayerByDiscordId(discordId);
         } else {
-            existingPlayer = plugin.getWhitelistManager().getBedrockPlayerByDiscordId(discordId);
+            existingPlayer = manager.getBedrockPlayerByDiscordId(discordId);
         }
 
         // Modalを表示
@@ -99,6 +109,8 @@ public class ButtonListener extends ListenerAdapter {
                 .addActionRow(inputBuilder.build())
                 .build();
 
-        event.replyModal(modal).queue();
+        event.replyModal(modal).queue(
+                success -> plugin.getDiscordBot().getThrottle().finish(discordId, buttonId),
+                failure -> plugin.getDiscordBot().getThrottle().finish(discordId, buttonId));
     }
 }
@@ -0,0 +1,126 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import net.dv8tion.jda.api.JDA;
+import net.dv8tion.jda.api.entities.User;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * ユーザーへのDMの送信キュー
+ * まとめて承認した場合など大量のDMを、専用スレッドから一定の間隔で順番に送信する (DiscordのDMのレートリミット対策)
+ * DMを受け付けていないユーザーへの送信失敗は件数のみ記録する
+ */
+public class DirectMessageQueue {
+
+    // 1回の送信のタイムアウト
+    private static final long SEND_TIMEOUT_SECONDS = 10;
+
+    private final DiscordWhitelistPlugin plugin;
+    private final DiscordBot bot;
+    private final BlockingQueue<Message> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    // 統計情報
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    public DirectMessageQueue(DiscordWhitelistPlugin plugin, DiscordBot bot) {
+        this.plugin = plugin;
+        this.bot = bot;
+        this.worker = new Thread(this::run, "DiscordWhitelist-DirectMessage");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * DMをキューに追加
+     *
+     * @param discordId 送信先のDiscord ID
+     * @param content   メッセージ
+     */
+    public void submit(String discordId, String content) {
+        if (running && discordId != null && !discordId.isEmpty()) {
+            queue.add(new Message(discordId, content));
+        }
+    }
+
+    private void run() {
+        while (running) {
+            Message message;
+            try {
+                message = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            send(message);
+
+            // 送信の間隔 (設定の再読み込みを反映するため毎回読む)
+            long interval = 1000 / Math.max(1, plugin.getConfig().getInt("approval.dm-per-second", 1));
+            try {
+                Thread.sleep(interval);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private void send(Message message) {
+        JDA jda = bot.getJDA();
+        if (jda == null) {
+            failed.incrementAndGet();
+            return;
+        }
+        try {
+            jda.retrieveUserById(message.discordId)
+                    .flatMap(User::openPrivateChannel)
+                    .flatMap(channel -> channel.sendMessage(message.content))
+                    .submit()
+                    .get(SEND_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+            sent.incrementAndGet();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            running = false;
+        } catch (Exception e) {
+            failed.incrementAndGet();
+            plugin.getLogger().fine("DMを送信できません (" + message.discordId + "): " + e.getMessage());
+        }
+    }
+
+    /**
+     * 停止 (未送信のDMは破棄して件数を報告する)
+     */
+    public void shutdown() {
+        running = false;
+        worker.interrupt();
+        int dropped = queue.size();
+        queue.clear();
+        if (dropped > 0) {
+            plugin.getLogger().warning("停止までに送信できなかったDM: " + dropped + "件");
+        }
+        if (sent.get() > 0 || failed.get() > 0) {
+            plugin.getLogger().info("DMの送信: 成功 " + sent.get() + "件 / 失敗 " + failed.get() + "件");
+        }
+    }
+
+    /**
+     * 送信待ちの件数
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private static class Message {
+        private final String discordId;
+        private final String content;
+
+        Message(String discordId, String content) {
+            this.discordId = discordId;
+            this.content = content;
+        }
+    }
+}
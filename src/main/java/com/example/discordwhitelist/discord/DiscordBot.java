@@ -1,19 +1,25 @@
 package com.example.discordwhitelist.discord;
 
 import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.manager.WhitelistPartitions;
 import net.dv8tion.jda.api.JDA;
 import net.dv8tion.jda.api.JDABuilder;
 import net.dv8tion.jda.api.entities.Activity;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.Message;
 import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
 import net.dv8tion.jda.api.interactions.commands.OptionType;
 import net.dv8tion.jda.api.interactions.commands.build.Commands;
+import net.dv8tion.jda.api.interactions.commands.build.SlashCommandData;
 import net.dv8tion.jda.api.interactions.commands.build.SubcommandData;
 import net.dv8tion.jda.api.requests.GatewayIntent;
+import net.dv8tion.jda.api.requests.restaction.MessageCreateAction;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URI;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 
 /**
@@ -23,8 +29,18 @@ public class DiscordBot {
 
     private final DiscordWhitelistPlugin plugin;
     private JDA jda;
-    private TextChannel chatChannel;
-    private String webhookUrl;
+    private volatile TextChannel chatChannel;
+    private volatile WebhookPool webhookPool;
+    private OutboundSender outbound;
+    private StatsEmbed statsEmbed;
+    private MembershipReconciler reconciler;
+    private RoleGateSync roleGateSync;
+    private InteractionThrottle throttle;
+    private MembershipCache membershipCache;
+    private DirectMessageQueue directMessages;
+
+    // GUILD_MEMBERS Intent (特権) を有効にして接続したかどうか
+    private volatile boolean membersIntent;
 
     // プレイヤーのスキンヘッドURL (mc-heads.net)
     private static final String AVATAR_URL_TEMPLATE = "https://mc-heads.net/avatar/%s/64";
@@ -39,15 +55,34 @@ public class DiscordBot {
     public void start() {
         String token = plugin.getConfig().getString("discord.token", "");
 
+        reconciler = new MembershipReconciler(plugin, this);
+        roleGateSync = new RoleGateSync(plugin, this);
+        throttle = new InteractionThrottle(plugin);
+        membershipCache = new MembershipCache(plugin, this);
+        outbound = new OutboundSender(plugin, this);
+        directMessages = new DirectMessageQueue(plugin, this);
+        statsEmbed = new StatsEmbed(plugin, this);
+
+        // GUILD_MEMBERS は特権Intentのため、メンバー一覧を使う機能が有効な場合のみ要求する
+        // (Developer Portalで有効にしていない場合、要求するとログインできない)
+        membersIntent = requiresMembersIntent();
+        List<GatewayIntent> intents = new ArrayList<>(List.of(GatewayIntent.GUILD_MESSAGES,
+                GatewayIntent.MESSAGE_CONTENT, GatewayIntent.GUILD_MODERATION));
+        if (membersIntent) {
+            intents.add(GatewayIntent.GUILD_MEMBERS);
+        }
+
         try {
             jda = JDABuilder.createDefault(token)
                     .setActivity(Activity.playing("Minecraft"))
-                    .enableIntents(GatewayIntent.GUILD_MESSAGES, GatewayIntent.MESSAGE_CONTENT)
+                    .enableIntents(intents)
                     .addEventListeners(
                             new SlashCommandListener(plugin),
                             new ButtonListener(plugin),
                             new ModalListener(plugin),
-                            new DiscordChatListener(plugin))
+                            new ApprovalListener(plugin),
+                            new DiscordChatListener(plugin),
+                            new GuildMemberListener(reconciler, roleGateSync, membershipCache))
                     .build();
 
             jda.awaitReady();
@@ -69,11 +104,39 @@ public class DiscordBot {
             // サーバー起動通知
             sendServerStartMessage();
 
+            // ロールインデックスの構築
+            roleGateSync.seed();
+
+            // サーバー参加状況のキャッシュの構築
+            membershipCache.seed();
+
+            // メンバー整合性チェックの定期実行
+            reconciler.start();
+
+            // 統計メッセージの定期更新
+            statsEmbed.start();
+
         } catch (Exception e) {
             plugin.getLogger().log(Level.SEVERE, "Discord Botの起動に失敗しました", e);
         }
     }
 
+    /**
+     * メンバー一覧 (GUILD_MEMBERS Intent) を使う機能が設定で有効になっているかどうか
+     */
+    private boolean requiresMembersIntent() {
+        return plugin.getConfig().getBoolean("reconcile.enabled", false)
+                || plugin.getConfig().getBoolean("role-gate.enabled", false)
+                || plugin.getConfig().getBoolean("membership-check.enabled", false);
+    }
+
+    /**
+     * GUILD_MEMBERS Intentを有効にして接続したかどうか (無効の場合はメンバー一覧を走査できない)
+     */
+    public boolean hasMembersIntent() {
+        return membersIntent;
+    }
+
     /**
      * チャット同期チャンネルを初期化
      */
@@ -93,16 +156,46 @@ public class DiscordBot {
      * Webhook URLをリロード
      */
     public void reloadWebhook() {
-        webhookUrl = plugin.getConfig().getString("chat-sync.webhook-url", "");
-        if (webhookUrl.isEmpty() || webhookUrl.equals("YOUR_WEBHOOK_URL")) {
-            webhookUrl = null;
+        // 1つのURL、または同じチャンネルのWebhookのリスト
+        List<String> urls = new ArrayList<>();
+        if (plugin.getConfig().isList("chat-sync.webhook-url")) {
+            urls.addAll(plugin.getConfig().getStringList("chat-sync.webhook-url"));
+        } else {
+            urls.add(plugin.getConfig().getString("chat-sync.webhook-url", ""));
+        }
+        urls.removeIf(url -> url == null || url.isEmpty() || url.equals("YOUR_WEBHOOK_URL"));
+
+        if (urls.isEmpty()) {
+            webhookPool = null;
             plugin.getLogger().info("Webhook URLが未設定です。通常のBotメッセージで送信します。");
         } else {
-            plugin.getLogger().info("Webhook URLが設定されています。プレイヤーアバター付きで送信します。");
+            webhookPool = new WebhookPool(plugin, urls);
+            plugin.getLogger().info("Webhook URLが設定されています (" + urls.size() + "件)。プレイヤーアバター付きで送信します。");
         }
         initChatChannel();
     }
 
+    /**
+     * 設定リロード時の再初期化
+     */
+    public void reload() {
+        if (!membersIntent && requiresMembersIntent()) {
+            plugin.getLogger().warning("メンバー一覧を使う機能 (reconcile/role-gate/membership-check) を有効にするには"
+                    + "サーバーの再起動が必要です。");
+        }
+        reloadWebhook();
+        outbound.configure();
+        throttle = new InteractionThrottle(plugin);
+        if (jda != null) {
+            // ホワイトリストを分けるサーバーが追加された場合に備えて登録し直す
+            registerCommands();
+            roleGateSync.seed();
+            membershipCache.seed();
+            reconciler.start();
+            statsEmbed.start();
+        }
+    }
+
     /**
      * スラッシュコマンドを登録
      */
@@ -112,30 +205,52 @@ public class DiscordBot {
         if (guildId.isEmpty() || guildId.equals("YOUR_GUILD_ID")) {
             plugin.getLogger().warning("Guild IDが設定されていません。コマンドをグローバルに登録します。");
 
-            jda.updateCommands().addCommands(
-                    Commands.slash("setup-whitelist", "ホワイトリスト登録ボタンを設置します"),
-                    Commands.slash("whitelist", "ホワイトリスト管理コマンド")
-                            .addSubcommands(
-                                    new SubcommandData("add", "プレイヤーをホワイトリストに追加")
-                                            .addOption(OptionType.STRING, "player", "Minecraft ID", true),
-                                    new SubcommandData("remove", "プレイヤーをホワイトリストから削除")
-                                            .addOption(OptionType.STRING, "player", "Minecraft ID", true),
-                                    new SubcommandData("list", "ホワイトリスト一覧を表示")))
-                    .queue();
+            jda.updateCommands().addCommands(buildCommands()).queue();
         } else {
-            jda.getGuildById(guildId).updateCommands().addCommands(
-                    Commands.slash("setup-whitelist", "ホワイトリスト登録ボタンを設置します"),
-                    Commands.slash("whitelist", "ホワイトリスト管理コマンド")
-                            .addSubcommands(
-                                    new SubcommandData("add", "プレイヤーをホワイトリストに追加")
-                                            .addOption(OptionType.STRING, "player", "Minecraft ID", true),
-                                    new SubcommandData("remove", "プレイヤーをホワイトリストから削除")
-                                            .addOption(OptionType.STRING, "player", "Minecraft ID", true),
-                                    new SubcommandData("list", "ホワイトリスト一覧を表示")))
-                    .queue();
+            jda.getGuildById(guildId).updateCommands().addCommands(buildCommands()).queue();
 
             plugin.getLogger().info("ギルド " + guildId + " にコマンドを登録しました。");
         }
+
+        // ホワイトリストを分けたサーバーにも登録
+        for (WhitelistPartitions.Partition partition : plugin.getPartitions().getAll()) {
+            if (partition == plugin.getPartitions().getPrimary()) {
+                continue;
+            }
+            Guild guild = jda.getGuildById(partition.getGuildId());
+            if (guild == null) {
+                plugin.getLogger().warning("Botが参加していないため、コマンドを登録できません: ギルド " + partition.getGuildId());
+                continue;
+            }
+            guild.updateCommands().addCommands(buildCommands()).queue();
+            plugin.getLogger().info("ギルド " + partition.getGuildId() + " にコマンドを登録しました。");
+        }
+    }
+
+    /**
+     * スラッシュコマンドの定義
+     */
+    private List<SlashCommandData> buildCommands() {
+        return List.of(
+                Commands.slash("setup-whitelist", "ホワイトリスト登録ボタンを設置します"),
+                Commands.slash("whitelist", "ホワイトリスト管理コマンド")
+                        .addSubcommands(
+                                new SubcommandData("add", "プレイヤーをホワイトリストに追加")
+                                        .addOption(OptionType.STRING, "player", "Minecraft ID", true)
+                                        .addOption(OptionType.STRING, "duration",
+                                                "有効期間 (例: 12h, 3d, 1d12h)。省略すると無期限", false),
+                                new SubcommandData("remove", "プレイヤーをホワイトリストから削除")
+                                        .addOption(OptionType.STRING, "player", "Minecraft ID", true),
+                                new SubcommandData("list", "ホワイトリスト一覧を表示"),
+                                new SubcommandData("stats", "ホワイトリストの統計を表示"),
+                                new SubcommandData("search", "プレイヤーを検索 (名前のあいまい検索、Discord ID/メンション)")
+                                        .addOption(OptionType.STRING, "query", "Minecraft ID の一部、Discord ID またはメンション",
+                                                true),
+                                new SubcommandData("history", "ホワイトリストの変更履歴を表示")
+                                        .addOption(OptionType.STRING, "target", "Minecraft ID、Discord ID またはメンション",
+                                                true),
+                                new SubcommandData("pending", "承認待ちの登録を確認 (承認/却下)")
+                                        .addOption(OptionType.INTEGER, "page", "ページ番号", false)));
     }
 
     /**
@@ -148,7 +263,7 @@ public class DiscordBot {
             return;
 
         String message = plugin.getConfig().getString("chat-sync.formats.server-start", "🟢 **サーバーが起動しました**");
-        sendChatMessage(message);
+        sendChatMessage(OutboundSender.Category.STATUS, message);
     }
 
     /**
@@ -162,12 +277,9 @@ public class DiscordBot {
 
         String message = plugin.getConfig().getString("chat-sync.formats.server-stop", "🔴 **サーバーが停止しました**");
 
+        // 未送信のチャットより先に送信する
         if (chatChannel != null) {
-            try {
-                chatChannel.sendMessage(message).complete();
-            } catch (Exception e) {
-                plugin.getLogger().warning("サーバー停止メッセージの送信に失敗: " + e.getMessage());
-            }
+            outbound.submit(OutboundSender.Category.STATUS, null, null, message);
         }
     }
 
@@ -175,9 +287,72 @@ public class DiscordBot {
      * チャットメッセージをDiscordに送信 (通常メッセージ)
      */
     public void sendChatMessage(String message) {
+        sendChatMessage(OutboundSender.Category.CHAT, message);
+    }
+
+    /**
+     * 種類を指定してチャットメッセージをDiscordに送信 (通常メッセージ)
+     *
+     * @param category メッセージの種類 (送信キューの振り分けに使用)
+     * @param message  送信するメッセージ
+     */
+    public void sendChatMessage(OutboundSender.Category category, String message) {
         if (chatChannel != null) {
-            chatChannel.sendMessage(message).queue();
+            outbound.submit(category, null, null, message);
+        }
+    }
+
+    /**
+     * 管理者向けチャンネルにメッセージを送信
+     * 未設定の場合はサーバーログのみ
+     */
+    public void sendAdminMessage(String message) {
+        sendToConfiguredChannel("discord.admin-channel-id", message);
+    }
+
+    /**
+     * モデレーション用チャンネルにメッセージを送信
+     * 未設定の場合は管理者向けチャンネルに送信
+     * プレイヤーの発言を含むため、@everyoneなどのメンションは通知しない
+     */
+    public void sendModerationMessage(String message) {
+        String channelId = plugin.getConfig().getString("chat-filter.moderation-channel-id", "");
+        if (channelId.isEmpty() || channelId.equals("MODERATION_CHANNEL_ID")) {
+            sendToConfiguredChannel("discord.admin-channel-id", message, false);
+        } else {
+            sendToConfiguredChannel("chat-filter.moderation-channel-id", message, false);
+        }
+    }
+
+    /**
+     * 設定されたチャンネルIDにメッセージを送信
+     */
+    private void sendToConfiguredChannel(String configKey, String message) {
+        sendToConfiguredChannel(configKey, message, true);
+    }
+
+    /**
+     * 設定されたチャンネルIDにメッセージを送信
+     *
+     * @param mentions メンションを通知するかどうか
+     */
+    private void sendToConfiguredChannel(String configKey, String message, boolean mentions) {
+        if (jda == null)
+            return;
+        String channelId = plugin.getConfig().getString(configKey, "");
+        if (channelId.isEmpty() || channelId.equals("ADMIN_CHANNEL_ID"))
+            return;
+
+        TextChannel channel = jda.getTextChannelById(channelId);
+        if (channel == null) {
+            plugin.getLogger().warning("チャンネルが見つかりません (" + configKey + "): " + channelId);
+            return;
+        }
+        MessageCreateAction action = channel.sendMessage(message);
+        if (!mentions) {
+            action.setAllowedMentions(EnumSet.noneOf(Message.MentionType.class));
         }
+        action.queue();
     }
 
     /**
@@ -187,48 +362,14 @@ public class DiscordBot {
      * @param message    送信するメッセージ
      */
     public void sendWebhookMessage(String playerName, String message) {
-        if (webhookUrl == null) {
+        if (webhookPool == null) {
             // Webhook未設定の場合は通常メッセージにフォールバック
             sendChatMessage(message);
             return;
         }
 
-        // 非同期でWebhookを送信
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                String avatarUrl = String.format(AVATAR_URL_TEMPLATE, playerName);
-
-                // JSONペイロードを構築
-                String jsonPayload = String.format(
-                        "{\"username\":\"%s\",\"avatar_url\":\"%s\",\"content\":\"%s\"}",
-                        escapeJson(playerName),
-                        escapeJson(avatarUrl),
-                        escapeJson(message));
-
-                HttpURLConnection connection = (HttpURLConnection) URI.create(webhookUrl).toURL().openConnection();
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-                connection.setDoOutput(true);
-                connection.setConnectTimeout(5000);
-                connection.setReadTimeout(5000);
-
-                try (OutputStream os = connection.getOutputStream()) {
-                    os.write(jsonPayload.getBytes(StandardCharsets.UTF_8));
-                }
-
-                int responseCode = connection.getResponseCode();
-                if (responseCode == 429) {
-                    // Rate Limited
-                    plugin.getLogger().warning("Webhook rate limited. メッセージが送信できませんでした。");
-                } else if (responseCode < 200 || responseCode >= 300) {
-                    plugin.getLogger().warning("Webhook送信エラー: HTTP " + responseCode);
-                }
-
-                connection.disconnect();
-            } catch (Exception e) {
-                plugin.getLogger().warning("Webhook送信に失敗: " + e.getMessage());
-            }
-        });
+        outbound.submit(OutboundSender.Category.CHAT, playerName, String.format(AVATAR_URL_TEMPLATE, playerName),
+                message);
     }
 
     /**
@@ -239,62 +380,41 @@ public class DiscordBot {
      * @param message     送信するメッセージ
      */
     public void sendWebhookSystemMessage(String displayName, String avatarUrl, String message) {
-        if (webhookUrl == null) {
+        if (webhookPool == null) {
             sendChatMessage(message);
             return;
         }
 
-        plugin.getServer().getScheduler().runTaskAsynchronously(plugin, () -> {
-            try {
-                String jsonPayload = String.format(
-                        "{\"username\":\"%s\",\"avatar_url\":\"%s\",\"content\":\"%s\"}",
-                        escapeJson(displayName),
-                        escapeJson(avatarUrl),
-                        escapeJson(message));
-
-                HttpURLConnection connection = (HttpURLConnection) URI.create(webhookUrl).toURL().openConnection();
-                connection.setRequestMethod("POST");
-                connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
-                connection.setDoOutput(true);
-                connection.setConnectTimeout(5000);
-                connection.setReadTimeout(5000);
-
-                try (OutputStream os = connection.getOutputStream()) {
-                    os.write(jsonPayload.getBytes(StandardCharsets.UTF_8));
-                }
-
-                connection.getResponseCode();
-                connection.disconnect();
-            } catch (Exception e) {
-                plugin.getLogger().warning("Webhook送信に失敗: " + e.getMessage());
-            }
-        });
-    }
-
-    /**
-     * JSON文字列のエスケープ
-     */
-    private String escapeJson(String text) {
-        if (text == null)
-            return "";
-        return text
-                .replace("\\", "\\\\")
-                .replace("\"", "\\\"")
-                .replace("\n", "\\n")
-                .replace("\r", "\\r")
-                .replace("\t", "\\t");
+        outbound.submit(OutboundSender.Category.CHAT, displayName, avatarUrl, message);
     }
 
     /**
      * Botを停止
      */
     public void shutdown() {
+        if (reconciler != null) {
+            reconciler.stop();
+        }
+        if (statsEmbed != null) {
+            statsEmbed.stop();
+        }
+        if (directMessages != null) {
+            directMessages.shutdown();
+        }
         if (jda != null) {
+            // 送信キューとJDAの停止を合わせて、設定した時間内に終える
+            long budgetMillis = Math.max(1, plugin.getConfig().getLong("shutdown.timeout-seconds", 10)) * 1000;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+
+            // 停止通知 → 未送信のチャットの順に送信 (JDAの停止用に一部の時間を残す)
             sendServerStopMessage();
+            outbound.drain(budgetMillis - Math.min(1000, budgetMillis / 5));
+
             jda.shutdown();
             try {
-                // JDAの全スレッドが終了するまで最大10秒待機
-                if (!jda.awaitShutdown(java.time.Duration.ofSeconds(10))) {
+                // JDAの全スレッドが終了するまで残り時間だけ待機
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0 || !jda.awaitShutdown(Duration.ofNanos(remaining))) {
                     plugin.getLogger().warning("JDAのシャットダウンがタイムアウトしました。強制停止します。");
                     jda.shutdownNow();
                 }
@@ -307,6 +427,37 @@ public class DiscordBot {
         }
     }
 
+    /**
+     * チャット同期チャンネルを取得 (未設定の場合はnull)
+     */
+    TextChannel getChatChannel() {
+        return chatChannel;
+    }
+
+    /**
+     * Webhookの状態を取得
+     *
+     * @return [ローテーション中の数, 設定数]
+     */
+    public int[] getWebhookStatus() {
+        WebhookPool pool = webhookPool;
+        return pool == null ? new int[] {0, 0} : new int[] {pool.getAvailableCount(), pool.size()};
+    }
+
+    /**
+     * Webhookの送信先を取得 (未設定の場合はnull)
+     */
+    WebhookPool getWebhookPool() {
+        return webhookPool;
+    }
+
+    /**
+     * 送信キューを取得
+     */
+    public OutboundSender getOutbound() {
+        return outbound;
+    }
+
     /**
      * JDAインスタンスを取得
      */
@@ -314,6 +465,45 @@ public class DiscordBot {
         return jda;
     }
 
+    /**
+     * 設定されたDiscordサーバーを取得 (未設定または未起動の場合はnull)
+     */
+    public Guild getGuild() {
+        String guildId = plugin.getConfig().getString("discord.guild-id", "");
+        if (jda == null || guildId.isEmpty() || guildId.equals("YOUR_GUILD_ID")) {
+            return null;
+        }
+        return jda.getGuildById(guildId);
+    }
+
+    /**
+     * DMの送信キューを取得
+     */
+    public DirectMessageQueue getDirectMessages() {
+        return directMessages;
+    }
+
+    /**
+     * 操作制限を取得
+     */
+    public InteractionThrottle getThrottle() {
+        return throttle;
+    }
+
+    /**
+     * サーバー参加状況のキャッシュを取得
+     */
+    public MembershipCache getMembershipCache() {
+        return membershipCache;
+    }
+
+    /**
+     * メンバー整合性チェックを取得
+     */
+    public MembershipReconciler getReconciler() {
+        return reconciler;
+    }
+
     /**
      * プレイヤー人数をBotステータスに表示
      */
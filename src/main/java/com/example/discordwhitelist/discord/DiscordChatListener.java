@@ -1,6 +1,7 @@
 package com.example.discordwhitelist.discord;
 
 import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.filter.ChatFilter;
 import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
 import net.kyori.adventure.text.Component;
@@ -38,10 +39,15 @@ public class DiscordChatListener extends ListenerAdapter {
         // 空メッセージは無視
         if (message.isEmpty()) return;
 
+        // チャットフィルターの適用
+        ChatFilter.Result filtered = plugin.getChatFilter().apply(message, userName, ChatFilter.Direction.TO_MINECRAFT);
+        if (filtered.isDropped()) return;
+        String filteredMessage = filtered.getText();
+
         // フォーマット適用
         String format = plugin.getConfig().getString("chat-sync.formats.chat-to-minecraft", "§9[Discord]§r §b%user%§r: %message%")
                 .replace("%user%", userName)
-                .replace("%message%", message);
+                .replace("%message%", filteredMessage);
 
         // Minecraftに送信（メインスレッドで実行）
         Bukkit.getScheduler().runTask(plugin, () -> {
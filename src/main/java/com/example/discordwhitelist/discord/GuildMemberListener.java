@@ -0,0 +1,61 @@
+package com.example.discordwhitelist.discord;
+
+import net.dv8tion.jda.api.events.guild.GuildBanEvent;
+import net.dv8tion.jda.api.events.guild.GuildUnbanEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberJoinEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRemoveEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleAddEvent;
+import net.dv8tion.jda.api.events.guild.member.GuildMemberRoleRemoveEvent;
+import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Discordサーバーのメンバー参加/退出/ロール変更/BANリスナー
+ */
+public class GuildMemberListener extends ListenerAdapter {
+
+    private final MembershipReconciler reconciler;
+    private final RoleGateSync roleGateSync;
+    private final MembershipCache membershipCache;
+
+    public GuildMemberListener(MembershipReconciler reconciler, RoleGateSync roleGateSync,
+            MembershipCache membershipCache) {
+        this.reconciler = reconciler;
+        this.roleGateSync = roleGateSync;
+        this.membershipCache = membershipCache;
+    }
+
+    @Override
+    public void onGuildMemberRemove(@NotNull GuildMemberRemoveEvent event) {
+        roleGateSync.handleMemberLeft(event.getGuild().getId(), event.getUser().getId());
+        membershipCache.handleMemberLeft(event.getGuild().getId(), event.getUser().getId());
+        reconciler.handleMemberLeft(event.getGuild().getId(), event.getUser().getId());
+    }
+
+    @Override
+    public void onGuildMemberJoin(@NotNull GuildMemberJoinEvent event) {
+        roleGateSync.handleRolesChanged(event.getMember());
+        membershipCache.handleMemberJoined(event.getGuild().getId(), event.getUser().getId());
+        reconciler.handleMemberJoined(event.getGuild().getId(), event.getUser().getId());
+    }
+
+    @Override
+    public void onGuildBan(@NotNull GuildBanEvent event) {
+        membershipCache.handleBanned(event.getGuild().getId(), event.getUser().getId());
+    }
+
+    @Override
+    public void onGuildUnban(@NotNull GuildUnbanEvent event) {
+        membershipCache.handleUnbanned(event.getGuild().getId(), event.getUser().getId());
+    }
+
+    @Override
+    public void onGuildMemberRoleAdd(@NotNull GuildMemberRoleAddEvent event) {
+        roleGateSync.handleRolesChanged(event.getMember());
+    }
+
+    @Override
+    public void onGuildMemberRoleRemove(@NotNull GuildMemberRoleRemoveEvent event) {
+        roleGateSync.handleRolesChanged(event.getMember());
+    }
+}
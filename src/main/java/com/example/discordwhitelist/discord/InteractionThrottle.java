@@ -0,0 +1,161 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Discordユーザーごとの操作制限
+ * トークンバケットで連続操作を制限し、処理中の同一操作の重複送信を抑止する
+ * 追跡するユーザー数には上限があり、古いものから破棄する (破棄されたバケットは満タン扱い)
+ */
+public class InteractionThrottle {
+
+    private final DiscordWhitelistPlugin plugin;
+    private final long capacity;
+    private final double refillPerMillis;
+    private final long dedupeMillis;
+    private final int maxTracked;
+
+    // Discord ID -> トークンバケット (アクセス順)
+    private final LinkedHashMap<String, Bucket> buckets;
+
+    // "Discord ID:操作" -> 有効期限 (挿入順)
+    private final LinkedHashMap<String, Long> inflight;
+
+    public InteractionThrottle(DiscordWhitelistPlugin plugin) {
+        this.plugin = plugin;
+        this.capacity = Math.max(1, plugin.getConfig().getInt("throttle.burst", 5));
+        this.refillPerMillis = Math.max(1, plugin.getConfig().getInt("throttle.per-minute", 10)) / 60000.0;
+        this.dedupeMillis = Math.max(0, plugin.getConfig().getLong("throttle.dedupe-seconds", 10)) * 1000;
+        this.maxTracked = Math.max(100, plugin.getConfig().getInt("throttle.max-tracked-users", 10000));
+
+        this.buckets = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Bucket> eldest) {
+                return size() > maxTracked;
+            }
+        };
+        this.inflight = new LinkedHashMap<>(256, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+                return size() > maxTracked;
+            }
+        };
+    }
+
+    /**
+     * 操作を開始できるか判定し、許可された場合は処理中として記録
+     * 処理が終わったらfinish()を呼び出す (呼ばれない場合も期限切れで解除される)
+     *
+     * @param discordId Discord ID
+     * @param action    操作の種類 (ボタンID、Modal ID、コマンド名など)
+     * @return 判定結果
+     */
+    public synchronized Verdict tryAcquire(String discordId, String action) {
+        long now = System.currentTimeMillis();
+        expireInflight(now);
+
+        String key = discordId + ":" + action;
+        Long expiresAt = inflight.get(key);
+        if (expiresAt != null && expiresAt > now) {
+            return Verdict.DUPLICATE;
+        }
+
+        if (!takeToken(discordId, now)) {
+            return Verdict.THROTTLED;
+        }
+
+        if (dedupeMillis > 0) {
+            inflight.put(key, now + dedupeMillis);
+        }
+        return Verdict.ALLOWED;
+    }
+
+    /**
+     * 連続操作の制限のみ判定 (処理中の記録は行わず、finish()は不要)
+     *
+     * @param discordId Discord ID
+     * @return 判定結果 (ALLOWEDまたはTHROTTLED)
+     */
+    public synchronized Verdict tryTake(String discordId) {
+        return takeToken(discordId, System.currentTimeMillis()) ? Verdict.ALLOWED : Verdict.THROTTLED;
+    }
+
+    private boolean takeToken(String discordId, long now) {
+        Bucket bucket = buckets.get(discordId);
+        if (bucket == null) {
+            bucket = new Bucket(capacity, now);
+            buckets.put(discordId, bucket);
+        }
+        return bucket.tryTake(now);
+    }
+
+    /**
+     * 処理中の記録を解除
+     */
+    public synchronized void finish(String discordId, String action) {
+        inflight.remove(discordId + ":" + action);
+    }
+
+    /**
+     * 拒否した場合の応答メッセージを取得
+     */
+    public String getRejectMessage(Verdict verdict) {
+        if (verdict == Verdict.DUPLICATE) {
+            return plugin.getConfig().getString("messages.duplicate-request",
+                    "⏳ 前回の操作を処理中です。しばらくお待ちください。");
+        }
+        return plugin.getConfig().getString("messages.throttled",
+                "⏳ 操作が多すぎます。しばらく待ってから再度お試しください。");
+    }
+
+    /**
+     * 期限切れの処理中記録を削除 (挿入順なので先頭から期限切れのものだけを見る)
+     */
+    private void expireInflight(long now) {
+        Iterator<Long> it = inflight.values().iterator();
+        while (it.hasNext()) {
+            if (it.next() > now) {
+                break;
+            }
+            it.remove();
+        }
+    }
+
+    /**
+     * 判定結果
+     */
+    public enum Verdict {
+        ALLOWED,
+        // 操作が多すぎる
+        THROTTLED,
+        // 同じ操作を処理中
+        DUPLICATE
+    }
+
+    /**
+     * トークンバケット
+     */
+    private class Bucket {
+        private double tokens;
+        private long updatedAt;
+
+        Bucket(double tokens, long now) {
+            this.tokens = tokens;
+            this.updatedAt = now;
+        }
+
+        boolean tryTake(long now) {
+            tokens = Math.min(capacity, tokens + (now - updatedAt) * refillPerMillis);
+            updatedAt = now;
+            if (tokens < 1) {
+                return false;
+            }
+            tokens -= 1;
+            return true;
+        }
+    }
+}
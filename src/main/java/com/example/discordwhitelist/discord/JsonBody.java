@@ -0,0 +1,123 @@
+package com.example.discordwhitelist.discord;
+
+/**
+ * Webhookのリクエストボディ (JSON) を組み立てるバッファ
+ * 文字列のエスケープとUTF-8への変換を1回の走査で行い、同じバイト配列を使い回す
+ * WebhookPoolの送信スレッドからのみ使用する
+ */
+class JsonBody {
+
+    private static final byte[] HEX = { '0', '1', '2', '3', '4', '5', '6', '7', '8', '9', 'a', 'b', 'c', 'd', 'e',
+            'f' };
+
+    private byte[] bytes;
+    private int length;
+
+    JsonBody(int initialCapacity) {
+        this.bytes = new byte[initialCapacity];
+    }
+
+    /**
+     * 内容を破棄 (バイト配列はそのまま使う)
+     */
+    JsonBody reset() {
+        length = 0;
+        return this;
+    }
+
+    /**
+     * ASCIIの固定部分をエスケープせずに追加
+     */
+    JsonBody raw(String ascii) {
+        ensure(ascii.length());
+        for (int i = 0; i < ascii.length(); i++) {
+            bytes[length++] = (byte) ascii.charAt(i);
+        }
+        return this;
+    }
+
+    /**
+     * 引用符で囲んだJSON文字列として追加 (nullは空文字列)
+     * 不正なサロゲートはString.getBytes()と同じく '?' に置き換える
+     */
+    JsonBody string(String text) {
+        int n = text != null ? text.length() : 0;
+        // 1文字あたり最大6バイト (\\u00XX)
+        ensure(n * 6 + 2);
+        byte[] b = bytes;
+        int p = length;
+        b[p++] = '"';
+        for (int i = 0; i < n; i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                switch (c) {
+                    case '"', '\\' -> {
+                        b[p++] = '\\';
+                        b[p++] = (byte) c;
+                    }
+                    case '\n' -> {
+                        b[p++] = '\\';
+                        b[p++] = 'n';
+                    }
+                    case '\r' -> {
+                        b[p++] = '\\';
+                        b[p++] = 'r';
+                    }
+                    case '\t' -> {
+                        b[p++] = '\\';
+                        b[p++] = 't';
+                    }
+                    default -> {
+                        if (c < 0x20) {
+                            b[p++] = '\\';
+                            b[p++] = 'u';
+                            b[p++] = '0';
+                            b[p++] = '0';
+                            b[p++] = HEX[c >> 4];
+                            b[p++] = HEX[c & 0xF];
+                        } else {
+                            b[p++] = (byte) c;
+                        }
+                    }
+                }
+            } else if (c < 0x800) {
+                b[p++] = (byte) (0xC0 | (c >> 6));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < n && Character.isLowSurrogate(text.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, text.charAt(++i));
+                b[p++] = (byte) (0xF0 | (cp >> 18));
+                b[p++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                b[p++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                b[p++] = '?';
+            } else {
+                b[p++] = (byte) (0xE0 | (c >> 12));
+                b[p++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                b[p++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+        b[p++] = '"';
+        length = p;
+        return this;
+    }
+
+    /**
+     * 内部のバイト配列 (有効な範囲は0からlength()まで)
+     */
+    byte[] array() {
+        return bytes;
+    }
+
+    int length() {
+        return length;
+    }
+
+    private void ensure(int extra) {
+        if (length + extra > bytes.length) {
+            byte[] grown = new byte[Math.max(bytes.length * 2, length + extra)];
+            System.arraycopy(bytes, 0, grown, 0, length);
+            bytes = grown;
+        }
+    }
+}
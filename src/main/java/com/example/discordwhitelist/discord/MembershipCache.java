@@ -0,0 +1,212 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+import net.dv8tion.jda.api.requests.ErrorResponse;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * ログイン時のDiscordサーバー参加状況の判定キャッシュ
+ * ログイン処理ではDiscordへの問い合わせを行わず、キャッシュ済みの判定を即座に返す
+ * 古くなった判定はバックグラウンドで再取得し、参加/退出/BANのイベントでも随時更新する
+ * 判定がない、または古すぎる場合は設定に従って許可/拒否する
+ */
+public class MembershipCache {
+
+    private final DiscordWhitelistPlugin plugin;
+    private final DiscordBot bot;
+
+    // Discord ID -> 判定
+    private final Map<String, Cached> verdicts = new ConcurrentHashMap<>();
+
+    // 再取得中のDiscord ID
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean enabled;
+    private volatile long freshMillis;
+    private volatile long maxAgeMillis;
+    private volatile boolean failOpen;
+
+    public MembershipCache(DiscordWhitelistPlugin plugin, DiscordBot bot) {
+        this.plugin = plugin;
+        this.bot = bot;
+    }
+
+    /**
+     * 設定を反映し、メンバー一覧から判定を構築
+     */
+    public void seed() {
+        enabled = plugin.getConfig().getBoolean("membership-check.enabled", false);
+        freshMillis = Math.max(1, plugin.getConfig().getLong("membership-check.fresh-seconds", 300)) * 1000;
+        maxAgeMillis = Math.max(1, plugin.getConfig().getLong("membership-check.max-age-minutes", 1440)) * 60_000;
+        failOpen = !plugin.getConfig().getString("membership-check.on-unknown", "allow").equalsIgnoreCase("deny");
+        verdicts.clear();
+
+        Guild guild = bot.getGuild();
+        if (!enabled || guild == null || !bot.hasMembersIntent()) {
+            return;
+        }
+
+        // 紐付け済みのユーザーのみ保持し、メンバー一覧に見つからなかったものは退出済みとする
+        Set<String> missing = ConcurrentHashMap.newKeySet();
+        missing.addAll(plugin.getWhitelistManager().getLinkedDiscordIds());
+        try {
+            guild.loadMembers(member -> {
+                if (missing.remove(member.getId())) {
+                    put(member.getId(), Verdict.MEMBER);
+                }
+            }).onSuccess(ignored -> {
+                for (String discordId : missing) {
+                    verdicts.putIfAbsent(discordId, new Cached(Verdict.LEFT, System.currentTimeMillis()));
+                }
+                plugin.getLogger().info("サーバー参加状況を取得しました: 未参加 " + missing.size() + "人");
+            }).onError(error -> plugin.getLogger()
+                    .warning("サーバー参加状況の取得に失敗しました: " + error.getMessage()));
+        } catch (IllegalStateException e) {
+            plugin.getLogger().warning("メンバー一覧を取得できません: " + e.getMessage());
+        }
+    }
+
+    /**
+     * ログインを許可するか判定 (ブロックしない)
+     *
+     * @param discordId 紐付けられたDiscord ID
+     * @return 判定結果
+     */
+    public Verdict check(String discordId) {
+        if (!enabled) {
+            return Verdict.MEMBER;
+        }
+
+        long now = System.currentTimeMillis();
+        Cached cached = verdicts.get(discordId);
+        if (cached != null && now - cached.checkedAt < maxAgeMillis) {
+            if (now - cached.checkedAt >= freshMillis) {
+                refresh(discordId);
+            }
+            return cached.verdict;
+        }
+
+        // 判定がない、または古すぎる場合
+        refresh(discordId);
+        return failOpen ? Verdict.MEMBER : Verdict.UNKNOWN;
+    }
+
+    /**
+     * バックグラウンドで判定を再取得 (同じユーザーの再取得は同時に1つまで)
+     */
+    private void refresh(String discordId) {
+        Guild guild = bot.getGuild();
+        if (guild == null || !refreshing.add(discordId)) {
+            return;
+        }
+
+        try {
+            guild.retrieveMemberById(discordId).queue(member -> {
+                put(discordId, Verdict.MEMBER);
+                refreshing.remove(discordId);
+            }, error -> {
+                if (error instanceof ErrorResponseException response
+                        && (response.getErrorResponse() == ErrorResponse.UNKNOWN_MEMBER
+                                || response.getErrorResponse() == ErrorResponse.UNKNOWN_USER)) {
+                    // BAN済みの場合は判定を維持する
+                    Cached cached = verdicts.get(discordId);
+                    put(discordId, cached != null && cached.verdict == Verdict.BANNED ? Verdict.BANNED : Verdict.LEFT);
+                }
+                // それ以外 (Discordの障害など) は判定を更新せず、古くなったら設定に従う
+                refreshing.remove(discordId);
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(discordId);
+        }
+    }
+
+    /**
+     * メンバーの参加を反映
+     */
+    public void handleMemberJoined(String guildId, String discordId) {
+        if (enabled && isTargetGuild(guildId)) {
+            put(discordId, Verdict.MEMBER);
+        }
+    }
+
+    /**
+     * メンバーの退出を反映 (BANによる退出の場合はBANの判定を維持)
+     */
+    public void handleMemberLeft(String guildId, String discordId) {
+        if (enabled && isTargetGuild(guildId)) {
+            verdicts.compute(discordId, (id, cached) -> cached != null && cached.verdict == Verdict.BANNED
+                    ? cached
+                    : new Cached(Verdict.LEFT, System.currentTimeMillis()));
+        }
+    }
+
+    /**
+     * BANを反映
+     */
+    public void handleBanned(String guildId, String discordId) {
+        if (enabled && isTargetGuild(guildId)) {
+            put(discordId, Verdict.BANNED);
+        }
+    }
+
+    /**
+     * BAN解除を反映 (再参加するまでは退出済み)
+     */
+    public void handleUnbanned(String guildId, String discordId) {
+        if (enabled && isTargetGuild(guildId)) {
+            put(discordId, Verdict.LEFT);
+        }
+    }
+
+    /**
+     * 判定に応じたキックメッセージを取得
+     */
+    public String getKickMessage(Verdict verdict) {
+        return switch (verdict) {
+            case BANNED -> plugin.getConfig().getString("messages.guild-banned",
+                    "§cDiscordサーバーからBANされているため参加できません。");
+            case UNKNOWN -> plugin.getConfig().getString("messages.guild-membership-unknown",
+                    "§cDiscordサーバーの参加状況を確認できませんでした。\n§7しばらく待ってから再度お試しください。");
+            default -> plugin.getConfig().getString("messages.not-guild-member",
+                    "§cDiscordサーバーに参加していないため参加できません。\n§7Discordサーバーに参加してから再度お試しください。");
+        };
+    }
+
+    private void put(String discordId, Verdict verdict) {
+        verdicts.put(discordId, new Cached(verdict, System.currentTimeMillis()));
+    }
+
+    private boolean isTargetGuild(String guildId) {
+        Guild guild = bot.getGuild();
+        return guild != null && guild.getId().equals(guildId);
+    }
+
+    /**
+     * 判定結果
+     */
+    public enum Verdict {
+        // サーバーに参加している (または判定不能で許可)
+        MEMBER,
+        // サーバーを退出している
+        LEFT,
+        // BANされている
+        BANNED,
+        // 判定不能で拒否
+        UNKNOWN
+    }
+
+    private static class Cached {
+        private final Verdict verdict;
+        private final long checkedAt;
+
+        Cached(Verdict verdict, long checkedAt) {
+            this.verdict = verdict;
+            this.checkedAt = checkedAt;
+        }
+    }
+}
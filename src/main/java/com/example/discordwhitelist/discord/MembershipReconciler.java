@@ -0,0 +1,176 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.manager.WhitelistManager;
+import net.dv8tion.jda.api.entities.Guild;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Discordサーバーのメンバーとホワイトリストの整合性チェック
+ * 定期的にメンバーをチャンク単位で取得し、サーバーから退出したユーザーのエントリーを処理する
+ * 実行間の退出はGuildMemberRemoveEventで個別に処理する
+ */
+public class MembershipReconciler {
+
+    private final DiscordWhitelistPlugin plugin;
+    private final DiscordBot bot;
+    private final AtomicBoolean running = new AtomicBoolean(false);
+    private BukkitTask task;
+
+    public MembershipReconciler(DiscordWhitelistPlugin plugin, DiscordBot bot) {
+        this.plugin = plugin;
+        this.bot = bot;
+    }
+
+    /**
+     * 定期実行を開始 (設定で無効の場合は何もしない)
+     */
+    public void start() {
+        stop();
+        if (!isEnabled()) {
+            return;
+        }
+
+        long intervalTicks = Math.max(1, plugin.getConfig().getLong("reconcile.interval-minutes", 360)) * 60 * 20;
+        task = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::runFull,
+                20 * 60, intervalTicks);
+    }
+
+    /**
+     * 定期実行を停止
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    /**
+     * 全メンバーをチャンク単位で走査し、Discord IDのインデックスと突き合わせる
+     * メンバー一覧はキャッシュせず、紐付け済みIDの集合から見つかったものを取り除いていく
+     *
+     * @return 実行を開始できたかどうか (既に実行中、またはギルド未設定の場合はfalse)
+     */
+    public boolean runFull() {
+        Guild guild = bot.getGuild();
+        if (guild == null || !bot.hasMembersIntent()) {
+            return false;
+        }
+        if (!running.compareAndSet(false, true)) {
+            return false;
+        }
+
+        WhitelistManager manager = plugin.getWhitelistManager();
+        Set<String> missing = ConcurrentHashMap.newKeySet();
+        missing.addAll(manager.getLinkedDiscordIds());
+        Set<String> disabled = manager.getDisabledDiscordIds();
+        Set<String> rejoined = ConcurrentHashMap.newKeySet();
+
+        try {
+            guild.loadMembers(member -> {
+                String id = member.getId();
+                missing.remove(id);
+                if (disabled.contains(id)) {
+                    rejoined.add(id);
+                }
+            }).onSuccess(ignored -> {
+                try {
+                    apply(missing, rejoined, true);
+                } finally {
+                    running.set(false);
+                }
+            }).onError(error -> {
+                running.set(false);
+                plugin.getLogger().warning("メンバー一覧の取得に失敗しました: " + error.getMessage());
+            });
+        } catch (IllegalStateException e) {
+            // GUILD_MEMBERS Intentが無効な場合
+            running.set(false);
+            plugin.getLogger().warning("メンバー一覧を取得できません: " + e.getMessage());
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * メンバーがサーバーから退出した場合の処理
+     */
+    public void handleMemberLeft(String guildId, String discordId) {
+        if (!isEnabled() || !isTargetGuild(guildId)) {
+            return;
+        }
+        apply(Collections.singleton(discordId), Collections.emptySet(), false);
+    }
+
+    /**
+     * メンバーがサーバーに参加した場合の処理 (無効化されたエントリーを再度有効化)
+     */
+    public void handleMemberJoined(String guildId, String discordId) {
+        if (!isEnabled() || !isTargetGuild(guildId)) {
+            return;
+        }
+        apply(Collections.emptySet(), Collections.singleton(discordId), false);
+    }
+
+    /**
+     * 差分をまとめてホワイトリストに反映し、結果を通知
+     */
+    private void apply(Set<String> orphanIds, Set<String> rejoinedIds, boolean fullScan) {
+        WhitelistManager.OrphanAction action = getAction();
+        List<WhitelistManager.WhitelistEntry> orphans = plugin.getWhitelistManager()
+                .reconcileMembership(orphanIds, rejoinedIds, action);
+
+        if (fullScan) {
+            plugin.getLogger().info("メンバー整合性チェック完了: 退出済み " + orphans.size() + "件 (" + action + ")");
+        }
+        if (orphans.isEmpty()) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(switch (action) {
+            case FLAG -> "⚠️ **サーバーを退出したユーザーのエントリー**";
+            case DISABLE -> "⛔ **サーバーを退出したユーザーのエントリーを無効化しました**";
+            case REMOVE -> "🗑️ **サーバーを退出したユーザーのエントリーを削除しました**";
+        }).append(" (").append(orphans.size()).append("件)\n");
+
+        int count = 0;
+        for (WhitelistManager.WhitelistEntry entry : orphans) {
+            if (count >= 20) {
+                sb.append("... 他 ").append(orphans.size() - 20).append("件\n");
+                break;
+            }
+            sb.append("`").append(entry.getPlayerName()).append("` (<@").append(entry.getDiscordId()).append(">)\n");
+            count++;
+        }
+
+        plugin.getLogger().info("退出済みユーザーのエントリー (" + action + "): " + orphans.size() + "件");
+        bot.sendAdminMessage(sb.toString());
+    }
+
+    private boolean isEnabled() {
+        return plugin.getConfig().getBoolean("reconcile.enabled", false);
+    }
+
+    private boolean isTargetGuild(String guildId) {
+        Guild guild = bot.getGuild();
+        return guild != null && guild.getId().equals(guildId);
+    }
+
+    private WhitelistManager.OrphanAction getAction() {
+        String action = plugin.getConfig().getString("reconcile.action", "flag");
+        try {
+            return WhitelistManager.OrphanAction.valueOf(action.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            plugin.getLogger().warning("reconcile.actionの値が不正です: " + action + " (flagとして扱います)");
+            return WhitelistManager.OrphanAction.FLAG;
+        }
+    }
+}
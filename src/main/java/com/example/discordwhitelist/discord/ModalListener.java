@@ -1,16 +1,27 @@
 package com.example.discordwhitelist.discord;
 
 import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.manager.ApprovalQueue;
+import com.example.discordwhitelist.manager.ProfileResolver;
 import com.example.discordwhitelist.manager.WhitelistManager;
+import com.example.discordwhitelist.manager.WhitelistPartitions;
 import net.dv8tion.jda.api.events.interaction.ModalInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.InteractionHook;
 import org.jetbrains.annotations.NotNull;
 
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Modal送信処理リスナー
  */
 public class ModalListener extends ListenerAdapter {
 
+    // UUIDの解決を待つ上限 (レート制限中や停止時も応答を返す)
+    private static final long RESOLVE_TIMEOUT_SECONDS = 10;
+
     private final DiscordWhitelistPlugin plugin;
 
     public static final String WHITELIST_MODAL_JAVA = "whitelist_modal_java";
@@ -34,20 +45,96 @@ public class ModalListener extends ListenerAdapter {
         String mcid = event.getValue("mcid").getAsString().trim();
         String discordId = event.getUser().getId();
 
-        // 既存の登録があるかチェック
-        String existingPlayer = isJava
-                ? plugin.getWhitelistManager().getJavaPlayerByDiscordId(discordId)
-                : plugin.getWhitelistManager().getBedrockPlayerByDiscordId(discordId);
+        // 登録先はModalを開いたサーバーのホワイトリスト
+        WhitelistPartitions.Partition partition = plugin.getPartitions()
+                .forGuild(event.getGuild() != null ? event.getGuild().getId() : null);
+
+        // 形式が不正な名前はAPIに問い合わせずに応答
+        if (!partition.getManager().isValidName(mcid, isBedrock)) {
+            event.reply(buildMessage(plugin, WhitelistManager.AddResult.INVALID_NAME, mcid, discordId, isBedrock))
+                    .setEphemeral(true).queue();
+            return;
+        }
+
+        // 連続送信と処理中の再送信を抑止
+        InteractionThrottle throttle = plugin.getDiscordBot().getThrottle();
+        InteractionThrottle.Verdict verdict = throttle.tryAcquire(discordId, modalId);
+        if (verdict != InteractionThrottle.Verdict.ALLOWED) {
+            event.reply(throttle.getRejectMessage(verdict)).setEphemeral(true).queue();
+            return;
+        }
 
-        WhitelistManager.AddResult result;
-        if (existingPlayer != null) {
-            // 修正モード
-            result = plugin.getWhitelistManager().updatePlayer(mcid, discordId, isBedrock);
+        // 応答期限 (3秒) を過ぎないよう、先に応答を保留してから登録パイプラインに渡す
+        event.deferReply(true).queue();
+        InteractionHook hook = event.getHook();
+
+        ProfileResolver resolver = plugin.getProfileResolver();
+        CompletableFuture<String> reply;
+        if (isBedrock || resolver == null) {
+            reply = register(partition, mcid, null, discordId, isBedrock);
         } else {
-            // 新規登録モード
-            result = plugin.getWhitelistManager().addPlayer(mcid, discordId, isBedrock);
+            // 共有の問い合わせには期限を付けず、この応答だけを打ち切る
+            reply = resolver.resolve(mcid).copy().orTimeout(RESOLVE_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                    .handle((profile, error) -> {
+                        if (error != null) {
+                            // APIに接続できない場合は登録を妨げない
+                            plugin.getLogger().warning("UUIDを解決できないため名前のみで登録します: " + mcid);
+                            return register(partition, mcid, null, discordId, false);
+                        }
+                        if (profile.isEmpty()) {
+                            return CompletableFuture.completedFuture(plugin.getConfig().getString(
+                                    "messages.profile-not-found",
+                                    "❌ **%player%** というMinecraftアカウントは存在しません。IDを確認してください。")
+                                    .replace("%player%", mcid));
+                        }
+                        return register(partition, profile.get().getName(), profile.get().getUuid(), discordId, false);
+                    }).thenCompose(future -> future);
         }
 
+        reply.whenComplete((message, error) -> {
+            throttle.finish(discordId, modalId);
+            if (error != null) {
+                plugin.getLogger().warning("ホワイトリスト登録に失敗: " + mcid + " (" + error.getMessage() + ")");
+                message = "❌ エラーが発生しました。";
+            }
+            hook.editOriginal(message).queue();
+        });
+    }
+
+    /**
+     * 登録パイプラインに登録を渡し、保存後の応答メッセージを作成
+     * 承認が必要な場合は承認待ちに追加する
+     */
+    private CompletableFuture<String> register(WhitelistPartitions.Partition partition, String mcid, UUID uuid,
+            String discordId, boolean isBedrock) {
+        ApprovalQueue approvals = plugin.getApprovalQueue();
+        if (approvals.isEnabled()) {
+            // 登録内容に変更がない場合は承認待ちにしない
+            String existing = isBedrock
+                    ? partition.getManager().getBedrockPlayerByDiscordId(discordId)
+                    : partition.getManager().getJavaPlayerByDiscordId(discordId);
+            String storedName = isBedrock ? plugin.getConfig().getString("bedrock.prefix", ".") + mcid : mcid;
+            if (storedName.equalsIgnoreCase(existing)) {
+                return CompletableFuture.completedFuture(buildMessage(plugin, WhitelistManager.AddResult.UNCHANGED,
+                        mcid, discordId, isBedrock));
+            }
+            approvals.submit(partition, mcid, uuid, discordId, isBedrock);
+            plugin.getLogger().info("登録申請を承認待ちに追加: " + mcid + " (Discord: " + discordId + ", Bedrock: "
+                    + isBedrock + ")");
+            return CompletableFuture.completedFuture(plugin.getConfig().getString("messages.approval-pending",
+                    "📝 **%player%** の登録申請を受け付けました。スタッフの承認後にDMでお知らせします。")
+                    .replace("%player%", mcid));
+        }
+        return partition.getPipeline().submit(mcid, discordId, isBedrock, uuid)
+                .thenApply(result -> buildMessage(plugin, result, mcid, discordId, isBedrock));
+    }
+
+    /**
+     * 登録結果の応答メッセージを作成
+     */
+    static String buildMessage(DiscordWhitelistPlugin plugin, WhitelistManager.AddResult result, String mcid,
+            String discordId, boolean isBedrock) {
+        boolean isJava = !isBedrock;
         String message;
         switch (result) {
             case SUCCESS -> {
@@ -78,6 +165,12 @@ public class ModalListener extends ListenerAdapter {
                 plugin.getLogger()
                         .info("ホワイトリストを更新: " + mcid + " (Discord: " + discordId + ", Bedrock: " + isBedrock + ")");
             }
+            case UNCHANGED -> {
+                String displayName = isJava ? mcid : plugin.getConfig().getString("bedrock.prefix", ".") + mcid;
+                message = plugin.getConfig().getString("messages.unchanged",
+                        "ℹ️ 登録内容に変更はありません。(**%player%**)")
+                        .replace("%player%", displayName);
+            }
             case ALREADY_EXISTS -> {
                 message = plugin.getConfig().getString("messages.name-already-taken",
                         "⚠️ **%player%** は既に他のユーザーが使用しています。")
@@ -92,6 +185,10 @@ public class ModalListener extends ListenerAdapter {
                             "❌ 無効なゲーマータグです。正しいタグを入力してください。(英数字とスペースのみ、3-16文字)");
                 }
             }
+            case QUOTA_EXCEEDED -> {
+                message = plugin.getConfig().getString("messages.registration-full",
+                        "⚠️ 登録数が上限に達しているため、現在は新規登録を受け付けていません。");
+            }
             case DISCORD_ALREADY_REGISTERED -> {
                 // This case shouldn't happen now since we check and use updatePlayer
                 message = "❌ エラーが発生しました。";
@@ -101,6 +198,6 @@ public class ModalListener extends ListenerAdapter {
             }
         }
 
-        event.reply(message).setEphemeral(true).queue();
+        return message;
     }
 }
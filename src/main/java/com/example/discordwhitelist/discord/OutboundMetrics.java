@@ -0,0 +1,217 @@
+package com.example.discordwhitelist.discord;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discordへの送信の計測
+ * 直近60秒の配信数、キューに入ってから届くまでの遅延の分布、1件あたりのHTTPリクエスト数、損失を集計する
+ * 遅延は2のべき乗ごとに8分割したバケットで数え、件数によらず一定のメモリで分位点を求める
+ */
+public class OutboundMetrics {
+
+    private static final int WINDOW_SECONDS = 60;
+    private static final int SUB_BUCKETS = 8;
+    private static final int SUB_BITS = 3;
+    private static final int MAX_EXPONENT = 30;
+    private static final int BUCKETS = SUB_BUCKETS + (MAX_EXPONENT - SUB_BITS + 1) * SUB_BUCKETS;
+
+    // 遅延 (ミリ秒) の分布
+    private final long[] latency = new long[BUCKETS];
+
+    // 直近の秒ごとの配信数 (リングバッファ)
+    private final long[] perSecond = new long[WINDOW_SECONDS];
+    private final long[] perSecondEpoch = new long[WINDOW_SECONDS];
+
+    private long submitted;
+    private long delivered;
+    private long failed;
+    private long lost;
+    private long requests;
+
+    /**
+     * キューへの追加を記録
+     */
+    synchronized void recordSubmitted() {
+        submitted++;
+    }
+
+    /**
+     * 送信の結果を記録
+     *
+     * @param enqueuedAt キューに追加した時刻 (System.nanoTime())
+     * @param messages   含まれる元のメッセージ数
+     * @param requests   送信に要したHTTPリクエスト数
+     * @param ok         届いたかどうか
+     */
+    synchronized void recordSend(long enqueuedAt, int messages, int requests, boolean ok) {
+        this.requests += requests;
+        if (!ok) {
+            failed += messages;
+            return;
+        }
+        delivered += messages;
+        if (messages == 0) {
+            // 省略件数の通知のみ
+            return;
+        }
+
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - enqueuedAt);
+        latency[bucket(millis)] += messages;
+
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        int slot = (int) (second % WINDOW_SECONDS);
+        if (perSecondEpoch[slot] != second) {
+            perSecondEpoch[slot] = second;
+            perSecond[slot] = 0;
+        }
+        perSecond[slot] += messages;
+    }
+
+    /**
+     * 送信せずに破棄したメッセージを記録 (上限超過、停止時の送信漏れ)
+     */
+    synchronized void recordLost(int messages) {
+        lost += messages;
+    }
+
+    private static int bucket(long millis) {
+        if (millis < SUB_BUCKETS) {
+            return (int) Math.max(0, millis);
+        }
+        int exponent = Math.min(63 - Long.numberOfLeadingZeros(millis), MAX_EXPONENT);
+        int sub = (int) ((Math.min(millis, (2L << MAX_EXPONENT) - 1) >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1));
+        return SUB_BUCKETS + (exponent - SUB_BITS) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * バケットの上限 (ミリ秒)
+     */
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BITS;
+        int sub = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        return ((long) (SUB_BUCKETS + sub + 1) << (exponent - SUB_BITS)) - 1;
+    }
+
+    private long percentile(long total, double fraction) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += latency[i];
+            if (seen >= rank) {
+                return upperBound(i);
+            }
+        }
+        return upperBound(BUCKETS - 1);
+    }
+
+    /**
+     * 現在の計測値を取得
+     */
+    public synchronized Snapshot snapshot() {
+        long second = TimeUnit.NANOSECONDS.toSeconds(System.nanoTime());
+        long recent = 0;
+        for (int i = 0; i < WINDOW_SECONDS; i++) {
+            if (second - perSecondEpoch[i] < WINDOW_SECONDS) {
+                recent += perSecond[i];
+            }
+        }
+        long samples = 0;
+        for (long count : latency) {
+            samples += count;
+        }
+        return new Snapshot(submitted, delivered, failed, lost, requests, (double) recent / WINDOW_SECONDS,
+                percentile(samples, 0.50), percentile(samples, 0.95), percentile(samples, 0.99));
+    }
+
+    /**
+     * 計測値のスナップショット
+     */
+    public static class Snapshot {
+        private final long submitted;
+        private final long delivered;
+        private final long failed;
+        private final long lost;
+        private final long requests;
+        private final double deliveredPerSecond;
+        private final long p50;
+        private final long p95;
+        private final long p99;
+
+        Snapshot(long submitted, long delivered, long failed, long lost, long requests, double deliveredPerSecond,
+                long p50, long p95, long p99) {
+            this.submitted = submitted;
+            this.delivered = delivered;
+            this.failed = failed;
+            this.lost = lost;
+            this.requests = requests;
+            this.deliveredPerSecond = deliveredPerSecond;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+        }
+
+        public long getSubmitted() {
+            return submitted;
+        }
+
+        public long getDelivered() {
+            return delivered;
+        }
+
+        /**
+         * 送信に失敗したメッセージ数
+         */
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * 送信せずに破棄したメッセージ数
+         */
+        public long getLost() {
+            return lost;
+        }
+
+        /**
+         * 直近60秒の1秒あたりの配信数
+         */
+        public double getDeliveredPerSecond() {
+            return deliveredPerSecond;
+        }
+
+        /**
+         * 配信1件あたりのHTTPリクエスト数 (再送やまとめ送信を含む)
+         */
+        public double getRequestsPerMessage() {
+            return delivered > 0 ? (double) requests / delivered : 0;
+        }
+
+        /**
+         * 損失率 (失敗・破棄 / 追加)
+         */
+        public double getLossRate() {
+            return submitted > 0 ? (double) (failed + lost) / submitted : 0;
+        }
+
+        /**
+         * 遅延の中央値 (ミリ秒)
+         */
+        public long getLatencyP50() {
+            return p50;
+        }
+
+        public long getLatencyP95() {
+            return p95;
+        }
+
+        public long getLatencyP99() {
+            return p99;
+        }
+    }
+}
@@ -0,0 +1,681 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.exceptions.ErrorResponseException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * チャット同期チャンネルへの送信スケジューラー
+ * 種類 (チャット、参加/退出、デス、実績など) ごとに上限付きのキューを持ち、重み付きラウンドロビンで
+ * 専用スレッドから順番に送信する。1つの種類が溢れても他の種類の送信は遅れない
+ * サーバー状態の通知は常に最優先で送信する
+ * 停止時は1つの期限内で、停止通知 → 未送信のメッセージ (まとめて送信) の順に送り切る
+ * Discordに接続できない間はOutboxに順番に溜め、接続が戻ったら一定の間隔で古い順に送信する
+ * (送り切れなかったものは停止時にファイルに残し、次回起動時に送信する)
+ */
+public class OutboundSender {
+
+    // Discordのメッセージ長の上限 (余裕を持たせる)
+    private static final int MAX_MESSAGE_LENGTH = 1900;
+
+    // 通常時の1回の送信のタイムアウト
+    private static final long SEND_TIMEOUT_MILLIS = 5000;
+
+    private final DiscordWhitelistPlugin plugin;
+    private final DiscordBot bot;
+
+    // 種類ごとのキュー (このインスタンスで同期する)
+    private final Map<Category, Lane> lanes = new EnumMap<>(Category.class);
+    private long sequence;
+
+    private final Thread worker;
+    private volatile boolean accepting = true;
+    private volatile boolean running = true;
+
+    // 停止時の期限 (System.nanoTime()、停止中でなければLong.MAX_VALUE)
+    private volatile long deadline = Long.MAX_VALUE;
+
+    // 統計情報
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final OutboundMetrics metrics = new OutboundMetrics();
+
+    // 直前の送信に要したHTTPリクエスト数 (送信スレッドのみ使用)
+    private int lastRequests;
+
+    // 接続できない間の送信待ち
+    private final Outbox outbox;
+
+    public OutboundSender(DiscordWhitelistPlugin plugin, DiscordBot bot) {
+        this.plugin = plugin;
+        this.bot = bot;
+        for (Category category : Category.values()) {
+            lanes.put(category, new Lane(category));
+        }
+        this.outbox = new Outbox(plugin);
+        configure();
+        this.worker = new Thread(this::run, "DiscordWhitelist-Outbound");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 設定から種類ごとの上限・重み・溢れた場合の処理を読み込む (キューの内容は維持)
+     */
+    public synchronized void configure() {
+        for (Lane lane : lanes.values()) {
+            Category category = lane.category;
+            if (category == Category.STATUS) {
+                continue;
+            }
+            String path = "outbound." + category.key;
+            lane.capacity = Math.max(1, plugin.getConfig().getInt(path + ".capacity", category.defaultCapacity));
+            lane.weight = Math.max(1, plugin.getConfig().getInt(path + ".weight", category.defaultWeight));
+            String overflow = plugin.getConfig().getString(path + ".overflow", category.defaultOverflow.key);
+            lane.overflow = Overflow.fromKey(overflow, category.defaultOverflow);
+        }
+        outbox.configure();
+    }
+
+    /**
+     * 送信をキューに追加
+     *
+     * @param category  メッセージの種類
+     * @param username  Webhookの表示名 (nullの場合はBotとして送信)
+     * @param avatarUrl Webhookのアバター
+     * @param content   メッセージ
+     */
+    public void submit(Category category, String username, String avatarUrl, String content) {
+        if (!accepting) {
+            return;
+        }
+        metrics.recordSubmitted();
+        synchronized (this) {
+            Lane lane = lanes.get(category);
+            if (lane.queue.size() >= lane.capacity) {
+                metrics.recordLost(1);
+                switch (lane.overflow) {
+                    case DROP_OLDEST -> {
+                        lane.queue.poll();
+                        lane.dropped++;
+                    }
+                    case DROP_NEWEST -> {
+                        lane.dropped++;
+                        return;
+                    }
+                    case COLLAPSE -> {
+                        lane.collapsed++;
+                        lane.pendingCollapsed++;
+                        return;
+                    }
+                }
+            }
+            lane.queue.add(new Outbound(category, sequence++, username, avatarUrl, content, 1, System.nanoTime()));
+            notifyAll();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            Outbound next = null;
+            List<Outbound> backlog = null;
+            synchronized (this) {
+                try {
+                    awaitWork();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (!running || remainingMillis() <= 0) {
+                    // 期限切れ: 残りは停止処理でファイルに残す (Outboxが無効の場合は破棄として報告する)
+                    return;
+                }
+                if (outbox.hasBacklog()) {
+                    // 送信待ちがある間は順番を保つため、新しいものは後ろに並べる
+                    backlog = hasWork() ? pollAll() : null;
+                } else {
+                    next = poll();
+                }
+            }
+
+            if (backlog != null) {
+                int lost = 0;
+                for (Outbound item : backlog) {
+                    lost += outbox.add(item);
+                }
+                if (lost > 0) {
+                    metrics.recordLost(lost);
+                }
+                continue;
+            }
+            boolean fromOutbox = next == null;
+            if (fromOutbox) {
+                next = outbox.peek();
+                if (next == null) {
+                    continue;
+                }
+            }
+            if (!deliver(next, fromOutbox)) {
+                // 停止中に接続できなくなった場合は再試行せず、残りは停止処理でファイルに残す
+                return;
+            }
+
+            if (!accepting) {
+                synchronized (this) {
+                    if (!hasWork()) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 送信するものができるまで待機
+     * 送信待ちがある場合は再試行・送信の間隔まで待つ (新しいメッセージが来たら起きて送信待ちの後ろに並べる)
+     */
+    private void awaitWork() throws InterruptedException {
+        while (running && !hasWork()) {
+            if (!outbox.hasBacklog()) {
+                wait();
+                continue;
+            }
+            long waitMillis = outbox.getWaitMillis();
+            if (waitMillis <= 0) {
+                return;
+            }
+            wait(waitMillis);
+        }
+    }
+
+    /**
+     * 1件を送信し、結果を記録
+     * 一時的に送信できない場合はOutboxに残して再試行する (Outboxが無効の場合は失敗として扱う)
+     *
+     * @param item       送信するもの
+     * @param fromOutbox Outboxの先頭かどうか
+     * @return 送信を続けるかどうか
+     */
+    private boolean deliver(Outbound item, boolean fromOutbox) {
+        WebhookPool.Result result = send(item, Math.min(SEND_TIMEOUT_MILLIS, Math.max(1, remainingMillis())));
+        if (result == WebhookPool.Result.RETRY && (fromOutbox || outbox.isEnabled())) {
+            if (!fromOutbox) {
+                int lost = outbox.add(item);
+                if (lost > 0) {
+                    metrics.recordLost(lost);
+                }
+            }
+            outbox.recordFailure();
+            metrics.recordSend(item.enqueuedAt, 0, lastRequests, false);
+            return accepting;
+        }
+
+        boolean ok = result == WebhookPool.Result.SENT;
+        if (fromOutbox) {
+            outbox.remove();
+            if (ok) {
+                outbox.recordSuccess();
+            }
+        }
+        synchronized (this) {
+            Lane lane = lanes.get(item.category);
+            if (ok) {
+                lane.sent += item.lines;
+            } else {
+                lane.failed += item.lines;
+            }
+        }
+        (ok ? sent : failed).incrementAndGet();
+        metrics.recordSend(item.enqueuedAt, item.lines, lastRequests, ok);
+        return true;
+    }
+
+    private boolean hasWork() {
+        for (Lane lane : lanes.values()) {
+            if (lane.hasWork()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 次に送信するものを取り出す
+     * サーバー状態の通知を優先し、それ以外は重み付きラウンドロビン (スムーズWRR) で選ぶ
+     */
+    private Outbound poll() {
+        Lane status = lanes.get(Category.STATUS);
+        if (status.hasWork()) {
+            return status.take();
+        }
+
+        Lane best = null;
+        int total = 0;
+        for (Lane lane : lanes.values()) {
+            if (lane.category == Category.STATUS || !lane.hasWork()) {
+                continue;
+            }
+            lane.current += lane.weight;
+            total += lane.weight;
+            if (best == null || lane.current > best.current) {
+                best = lane;
+            }
+        }
+        if (best == null) {
+            return null;
+        }
+        best.current -= total;
+        return best.take();
+    }
+
+    /**
+     * 全てのキューを送信する順に取り出す
+     */
+    private List<Outbound> pollAll() {
+        List<Outbound> items = new ArrayList<>();
+        Outbound item;
+        while ((item = poll()) != null) {
+            items.add(item);
+        }
+        return items;
+    }
+
+    /**
+     * 停止 (期限まで残りを送信し、送り切れなかったものはファイルに残す。Outboxが無効の場合は破棄して報告する)
+     * 接続できずに送信待ちがある場合は送信を試みず、全てファイルに残す
+     *
+     * @param budgetMillis 送信に使える時間
+     */
+    public void drain(long budgetMillis) {
+        accepting = false;
+        synchronized (this) {
+            deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(budgetMillis);
+            collapse();
+            running = hasWork() && !outbox.hasBacklog();
+            notifyAll();
+        }
+
+        try {
+            worker.join(Math.max(1, budgetMillis));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Outbound> remaining;
+        synchronized (this) {
+            running = false;
+            remaining = pollAll();
+            notifyAll();
+        }
+        worker.interrupt();
+
+        boolean persist = outbox.isEnabled() || outbox.hasBacklog();
+        int dropped = 0;
+        for (Outbound item : remaining) {
+            if (persist) {
+                dropped += outbox.add(item);
+            } else {
+                dropped += item.lines;
+            }
+        }
+        if (persist) {
+            dropped += outbox.spill();
+            outbox.close();
+            long saved = outbox.getSize();
+            if (saved > 0) {
+                plugin.getLogger().warning("停止までに送信できなかったDiscordへのメッセージ: " + saved
+                        + "件 (次回起動時に送信します)");
+            }
+        }
+        if (dropped > 0) {
+            metrics.recordLost(dropped);
+            plugin.getLogger().warning("停止までに送信できず破棄したDiscordへのメッセージ: " + dropped + "件");
+        }
+        if (sent.get() > 0 || failed.get() > 0) {
+            OutboundMetrics.Snapshot snapshot = metrics.snapshot();
+            plugin.getLogger().info(String.format("Discordへの送信: 成功 %d回 / 失敗 %d回 (遅延 p50 %dms / p99 %dms、"
+                    + "リクエスト/件 %.2f、損失 %.2f%%)", sent.get(), failed.get(), snapshot.getLatencyP50(),
+                    snapshot.getLatencyP99(), snapshot.getRequestsPerMessage(), snapshot.getLossRate() * 100));
+        }
+    }
+
+    /**
+     * サーバー状態以外の未送信メッセージを、届いた順に最大長までのメッセージにまとめる (停止時のみ)
+     */
+    private void collapse() {
+        List<Outbound> pending = new ArrayList<>();
+        int omitted = 0;
+        for (Lane lane : lanes.values()) {
+            if (lane.category == Category.STATUS) {
+                continue;
+            }
+            pending.addAll(lane.queue);
+            lane.queue.clear();
+            omitted += lane.pendingCollapsed;
+            lane.pendingCollapsed = 0;
+        }
+        if (pending.isEmpty() && omitted == 0) {
+            return;
+        }
+        pending.sort(Comparator.comparingLong(item -> item.sequence));
+
+        Lane target = lanes.get(Category.CHAT);
+        StringBuilder sb = new StringBuilder();
+        int lines = 0;
+        long enqueuedAt = System.nanoTime();
+        for (Outbound item : pending) {
+            String line = item.username != null ? "**" + item.username + "**: " + item.content : item.content;
+            if (sb.length() > 0 && sb.length() + line.length() + 1 > MAX_MESSAGE_LENGTH) {
+                target.queue.add(new Outbound(Category.CHAT, 0, null, null, sb.toString(), lines, enqueuedAt));
+                sb.setLength(0);
+                lines = 0;
+            }
+            if (lines == 0) {
+                // まとめたメッセージの遅延は最も古いものから数える
+                enqueuedAt = item.enqueuedAt;
+            }
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append(line);
+            lines++;
+        }
+        if (omitted > 0) {
+            if (sb.length() > 0) {
+                sb.append('\n');
+            }
+            sb.append("… 他 ").append(omitted).append("件のメッセージを省略しました");
+        }
+        if (sb.length() > 0) {
+            target.queue.add(new Outbound(Category.CHAT, 0, null, null, sb.toString(), lines, enqueuedAt));
+        }
+    }
+
+    private long remainingMillis() {
+        long limit = deadline;
+        if (limit == Long.MAX_VALUE) {
+            return Long.MAX_VALUE;
+        }
+        return TimeUnit.NANOSECONDS.toMillis(limit - System.nanoTime());
+    }
+
+    /**
+     * 1件を送信 (Webhookが設定されていて表示名がある場合はWebhook、それ以外はBot)
+     * 全てのWebhookがローテーションから外れている場合はBotで送信する
+     */
+    private WebhookPool.Result send(Outbound item, long timeoutMillis) {
+        WebhookPool webhooks = bot.getWebhookPool();
+        TextChannel channel = bot.getChatChannel();
+        lastRequests = 0;
+        try {
+            boolean useWebhook = webhooks != null && (webhooks.getAvailableCount() > 0 || channel == null);
+            if (useWebhook && (item.username != null || channel == null)) {
+                // プレイヤーのメッセージは順番を保つため同じWebhookに送る
+                String username = item.username != null ? item.username : "Minecraft";
+                long before = webhooks.getRequestCount();
+                try {
+                    return webhooks.post(item.username, username, item.avatarUrl, item.content, timeoutMillis);
+                } finally {
+                    lastRequests = (int) (webhooks.getRequestCount() - before);
+                }
+            }
+            if (channel != null) {
+                lastRequests = 1;
+                String content = useWebhook || item.username == null || webhooks == null
+                        ? item.content
+                        : "**" + item.username + "**: " + item.content;
+                CompletableFuture<Message> future = channel.sendMessage(content).submit();
+                try {
+                    future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+                } catch (TimeoutException e) {
+                    // JDAに渡したリクエストは取り消せず、後から届くことがあるため再送しない (重複を防ぐ)
+                    plugin.getLogger().warning("Discordへの送信の応答がありません。送信済みとして扱います。");
+                    future.whenComplete((message, error) -> {
+                        if (error != null) {
+                            plugin.getLogger().warning("Discordへの送信に失敗 (応答待ちの後): " + error.getMessage());
+                        }
+                    });
+                }
+                return WebhookPool.Result.SENT;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            plugin.getLogger().warning("Discordへの送信に失敗: " + e.getCause().getMessage());
+            // Discordがエラーを返した場合 (サーバーエラーを除く) は再送しても届かない
+            if (e.getCause() instanceof ErrorResponseException error && !error.isServerError()) {
+                return WebhookPool.Result.REJECTED;
+            }
+        } catch (Exception e) {
+            plugin.getLogger().warning("Discordへの送信に失敗: " + e.getMessage());
+        }
+        return WebhookPool.Result.RETRY;
+    }
+
+    /**
+     * 種類ごとの統計情報を取得 (スナップショット)
+     */
+    public synchronized List<Stats> getStats() {
+        List<Stats> stats = new ArrayList<>();
+        for (Lane lane : lanes.values()) {
+            stats.add(new Stats(lane.category, lane.queue.size(), lane.capacity, lane.sent, lane.failed,
+                    lane.dropped, lane.collapsed));
+        }
+        return stats;
+    }
+
+    /**
+     * 配信数・遅延・リクエスト数・損失の計測値を取得
+     */
+    public OutboundMetrics.Snapshot getMetrics() {
+        return metrics.snapshot();
+    }
+
+    /**
+     * 接続できない間の送信待ち
+     */
+    public Outbox getOutbox() {
+        return outbox;
+    }
+
+    /**
+     * メッセージの種類
+     */
+    public enum Category {
+        // サーバー起動/停止 (常に最優先)
+        STATUS("status", "サーバー状態", 16, 1, Overflow.DROP_OLDEST),
+        CHAT("chat", "チャット", 500, 4, Overflow.DROP_OLDEST),
+        JOIN_LEAVE("join-leave", "参加/退出", 100, 2, Overflow.COLLAPSE),
+        DEATH("death", "デス", 50, 1, Overflow.COLLAPSE),
+        ADVANCEMENT("advancement", "実績", 50, 1, Overflow.COLLAPSE);
+
+        private final String key;
+        private final String label;
+        private final int defaultCapacity;
+        private final int defaultWeight;
+        private final Overflow defaultOverflow;
+
+        Category(String key, String label, int defaultCapacity, int defaultWeight, Overflow defaultOverflow) {
+            this.key = key;
+            this.label = label;
+            this.defaultCapacity = defaultCapacity;
+            this.defaultWeight = defaultWeight;
+            this.defaultOverflow = defaultOverflow;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * キューが上限に達した場合の処理
+     */
+    public enum Overflow {
+        // 最も古いものを破棄して追加
+        DROP_OLDEST("drop-oldest"),
+        // 新しいものを破棄
+        DROP_NEWEST("drop-newest"),
+        // 新しいものを破棄し、キューが空いた時に件数だけ通知
+        COLLAPSE("collapse");
+
+        private final String key;
+
+        Overflow(String key) {
+            this.key = key;
+        }
+
+        static Overflow fromKey(String key, Overflow fallback) {
+            for (Overflow overflow : values()) {
+                if (overflow.key.equalsIgnoreCase(key)) {
+                    return overflow;
+                }
+            }
+            return fallback;
+        }
+    }
+
+    /**
+     * 種類ごとの統計情報
+     */
+    public static class Stats {
+        private final Category category;
+        private final int depth;
+        private final int capacity;
+        private final long sent;
+        private final long failed;
+        private final long dropped;
+        private final long collapsed;
+
+        Stats(Category category, int depth, int capacity, long sent, long failed, long dropped, long collapsed) {
+            this.category = category;
+            this.depth = depth;
+            this.capacity = capacity;
+            this.sent = sent;
+            this.failed = failed;
+            this.dropped = dropped;
+            this.collapsed = collapsed;
+        }
+
+        public Category getCategory() {
+            return category;
+        }
+
+        /**
+         * 送信待ちの件数
+         */
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getCapacity() {
+            return capacity;
+        }
+
+        public long getSent() {
+            return sent;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        /**
+         * 上限超過で破棄した件数
+         */
+        public long getDropped() {
+            return dropped;
+        }
+
+        /**
+         * 上限超過で件数の通知にまとめた件数
+         */
+        public long getCollapsed() {
+            return collapsed;
+        }
+    }
+
+    /**
+     * 種類ごとのキュー
+     */
+    private class Lane {
+        private final Category category;
+        private final Deque<Outbound> queue = new ArrayDeque<>();
+        private int capacity;
+        private int weight;
+        private Overflow overflow;
+
+        // スムーズWRRの現在値
+        private int current;
+
+        // まだ通知していない省略件数
+        private int pendingCollapsed;
+
+        private long sent;
+        private long failed;
+        private long dropped;
+        private long collapsed;
+
+        Lane(Category category) {
+            this.category = category;
+            this.capacity = category.defaultCapacity;
+            this.weight = category.defaultWeight;
+            this.overflow = category.defaultOverflow;
+        }
+
+        boolean hasWork() {
+            return !queue.isEmpty() || pendingCollapsed > 0;
+        }
+
+        /**
+         * 先頭を取り出す (キューが空で省略した件数がある場合はその通知)
+         */
+        Outbound take() {
+            Outbound item = queue.poll();
+            if (item != null) {
+                return item;
+            }
+            String summary = "… " + category.label + "のメッセージを " + pendingCollapsed + "件 省略しました";
+            pendingCollapsed = 0;
+            return new Outbound(category, sequence++, null, null, summary, 0, System.nanoTime());
+        }
+    }
+
+    static class Outbound {
+        final Category category;
+        final long sequence;
+        final String username;
+        final String avatarUrl;
+        final String content;
+
+        // まとめたメッセージに含まれる元のメッセージ数
+        final int lines;
+
+        // キューに追加した時刻 (System.nanoTime())
+        final long enqueuedAt;
+
+        Outbound(Category category, long sequence, String username, String avatarUrl, String content, int lines,
+                long enqueuedAt) {
+            this.category = category;
+            this.sequence = sequence;
+            this.username = username;
+            this.avatarUrl = avatarUrl;
+            this.content = content;
+            this.lines = lines;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+}
@@ -0,0 +1,446 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Discordに接続できない間の送信待ち (OutboundSenderの送信スレッドから使用する)
+ * 新しいメッセージはメモリに溜め、一定数を超えたらまとめて追記専用のセグメントファイル (outbox/) に書き出す
+ * 取り出しはファイル → メモリの順 (古い順) で、送信できたセグメントは削除する
+ * ディスク使用量が上限を超えた場合は最も古いセグメントを破棄する
+ * 停止時に送り切れなかったメッセージもファイルに残し、次回起動時に順番に送信する
+ */
+public class Outbox {
+
+    // バックオフの上限
+    private static final long MAX_BACKOFF_MILLIS = 60_000;
+
+    private final DiscordWhitelistPlugin plugin;
+    private final File dir;
+
+    private boolean enabled;
+    private int memoryLimit;
+    private long segmentBytes;
+    private long maxBytes;
+    private long paceMillis;
+
+    // ファイルに書き出す前の新しいメッセージ
+    private final Deque<OutboundSender.Outbound> memory = new ArrayDeque<>();
+
+    // セグメント番号 -> 未送信のメッセージ数
+    private final TreeMap<Long, Integer> segments = new TreeMap<>();
+    private long diskBytes;
+
+    // 読み出し位置 (先頭のセグメント内)
+    private RandomAccessFile reader;
+    private long readerSegment = -1;
+    private OutboundSender.Outbound peeked;
+    private long peekedEnd;
+
+    // 次に送信を試みる時刻と、連続した失敗の回数
+    private long nextAttemptAt;
+    private int failures;
+
+    public Outbox(DiscordWhitelistPlugin plugin) {
+        this.plugin = plugin;
+        this.dir = new File(plugin.getDataFolder(), "outbox");
+        configure();
+        open();
+    }
+
+    /**
+     * 設定を読み込む
+     */
+    public synchronized void configure() {
+        enabled = plugin.getConfig().getBoolean("outbox.enabled", true);
+        memoryLimit = Math.max(1, plugin.getConfig().getInt("outbox.memory-limit", 200));
+        segmentBytes = Math.max(16, plugin.getConfig().getLong("outbox.segment-kb", 256)) * 1024;
+        maxBytes = Math.max(segmentBytes * 2, plugin.getConfig().getLong("outbox.max-disk-mb", 32) * 1024 * 1024);
+        paceMillis = 1000 / Math.max(1, plugin.getConfig().getInt("outbox.replay-per-second", 2));
+    }
+
+    /**
+     * 前回の停止時に残ったセグメントを読み込む
+     */
+    private void open() {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".seg"));
+        if (files == null) {
+            return;
+        }
+        long cursorSegment = -1;
+        long cursorOffset = 0;
+        File cursor = new File(dir, "cursor");
+        if (cursor.exists()) {
+            try (RandomAccessFile raf = new RandomAccessFile(cursor, "r")) {
+                cursorSegment = raf.readLong();
+                cursorOffset = raf.readLong();
+            } catch (IOException e) {
+                plugin.getLogger().warning("outbox の読み出し位置を読み込めません: " + e.getMessage());
+            }
+        }
+
+        int pending = 0;
+        for (File file : files) {
+            long index;
+            try {
+                index = Long.parseLong(file.getName().substring(0, file.getName().length() - 4));
+            } catch (NumberFormatException e) {
+                continue;
+            }
+            if (index < cursorSegment) {
+                // 送信済み
+                file.delete();
+                continue;
+            }
+            int count = scan(file, index == cursorSegment ? cursorOffset : 0);
+            if (count > 0) {
+                segments.put(index, count);
+                diskBytes += file.length();
+                pending += count;
+            } else {
+                file.delete();
+            }
+        }
+        if (!segments.isEmpty() && segments.firstKey() == cursorSegment) {
+            openReader(cursorSegment, cursorOffset);
+        }
+        if (pending > 0) {
+            plugin.getLogger().info("前回送信できなかったDiscordへのメッセージ: " + pending + "件 (順番に送信します)");
+        }
+    }
+
+    /**
+     * セグメント内の未送信のメッセージを数え、書き込み途中で途切れた末尾や壊れたメッセージ以降を切り詰める
+     * (読み込めたメッセージは残す)
+     */
+    private int scan(File file, long from) {
+        int count = 0;
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(from);
+            long valid = from;
+            boolean corrupted = false;
+            while (true) {
+                try {
+                    read(raf);
+                } catch (EOFException e) {
+                    break;
+                } catch (IOException e) {
+                    // 区切りが分からないため、壊れたメッセージより後ろは読めない
+                    corrupted = true;
+                    break;
+                }
+                valid = raf.getFilePointer();
+                count++;
+            }
+            if (valid < raf.length()) {
+                plugin.getLogger().warning((corrupted ? "outbox の壊れたメッセージ以降を切り詰めました: "
+                        : "outbox の途切れたメッセージを切り詰めました: ") + file.getName() + " (" + count + "件を残します)");
+                raf.setLength(valid);
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("outbox を読み込めません: " + file.getName() + " (" + e.getMessage() + ")");
+        }
+        return count;
+    }
+
+    public synchronized boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 送信待ちがあるかどうか (ある間は新しいメッセージも後ろに並べて順番を保つ)
+     */
+    public synchronized boolean hasBacklog() {
+        return !segments.isEmpty() || !memory.isEmpty();
+    }
+
+    /**
+     * 送信待ちの件数
+     */
+    public synchronized long getSize() {
+        long size = memory.size();
+        for (int count : segments.values()) {
+            size += count;
+        }
+        return size;
+    }
+
+    /**
+     * ディスク使用量 (バイト)
+     */
+    public synchronized long getDiskBytes() {
+        return diskBytes;
+    }
+
+    /**
+     * 末尾に追加 (メモリの上限を超えたらファイルに書き出す)
+     *
+     * @return 上限超過で破棄したメッセージ数
+     */
+    public synchronized int add(OutboundSender.Outbound item) {
+        memory.add(item);
+        return memory.size() >= memoryLimit ? spill() : 0;
+    }
+
+    /**
+     * メモリ上のメッセージを全てファイルに書き出す
+     *
+     * @return 上限超過で破棄したメッセージ数
+     */
+    public synchronized int spill() {
+        if (memory.isEmpty()) {
+            return 0;
+        }
+        int lost = 0;
+        long segment = segments.isEmpty() ? nextSegmentIndex() : segments.lastKey();
+        File file = segmentFile(segment);
+        if (file.length() >= segmentBytes || segment == readerSegment && peeked == null && isReaderAtEnd()) {
+            segment = nextSegmentIndex();
+            file = segmentFile(segment);
+        }
+
+        dir.mkdirs();
+        long before = file.length();
+        int written = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)))) {
+            while (!memory.isEmpty()) {
+                write(out, memory.peek());
+                memory.poll();
+                written++;
+                if (out.size() + before >= segmentBytes && !memory.isEmpty()) {
+                    // セグメントを切り替える
+                    out.flush();
+                    segments.merge(segment, written, Integer::sum);
+                    diskBytes += out.size();
+                    written = 0;
+                    lost += spill();
+                    return lost;
+                }
+            }
+        } catch (IOException e) {
+            plugin.getLogger().warning("outbox への書き込みに失敗しました: " + e.getMessage());
+        }
+        if (written > 0) {
+            segments.merge(segment, written, Integer::sum);
+        }
+        diskBytes += Math.max(0, file.length() - before);
+
+        // 上限を超えた場合は古いセグメントから破棄
+        while (diskBytes > maxBytes && segments.size() > 1) {
+            Map.Entry<Long, Integer> oldest = segments.pollFirstEntry();
+            lost += oldest.getValue();
+            if (oldest.getKey() == readerSegment) {
+                closeReader();
+            }
+            File oldestFile = segmentFile(oldest.getKey());
+            diskBytes -= oldestFile.length();
+            oldestFile.delete();
+            plugin.getLogger().warning("outbox の容量が上限を超えたため、古いメッセージを破棄しました: " + oldest.getValue() + "件");
+        }
+        return lost;
+    }
+
+    /**
+     * 先頭 (最も古いもの) を取得 (取り出さない)
+     */
+    public synchronized OutboundSender.Outbound peek() {
+        if (peeked != null) {
+            return peeked;
+        }
+        while (!segments.isEmpty()) {
+            long first = segments.firstKey();
+            try {
+                if (readerSegment != first) {
+                    openReader(first, 0);
+                }
+                peeked = read(reader);
+                peekedEnd = reader.getFilePointer();
+                return peeked;
+            } catch (EOFException e) {
+                // 読み終えたセグメント (件数が合わない場合も次へ進む)
+                finishSegment(first);
+            } catch (IOException e) {
+                plugin.getLogger().warning("outbox を読み込めません。セグメントを破棄します: " + e.getMessage());
+                finishSegment(first);
+            }
+        }
+        return memory.peek();
+    }
+
+    /**
+     * 先頭を取り除く (送信できた、または送信できないと確定した場合)
+     */
+    public synchronized void remove() {
+        if (peeked != null) {
+            peeked = null;
+            long segment = readerSegment;
+            int remaining = segments.merge(segment, -1, Integer::sum);
+            saveCursor(segment, peekedEnd);
+            if (remaining <= 0) {
+                finishSegment(segment);
+            }
+            return;
+        }
+        memory.poll();
+    }
+
+    /**
+     * 送信に成功した (次の送信は一定の間隔を空ける)
+     */
+    public synchronized void recordSuccess() {
+        if (failures > 0) {
+            plugin.getLogger().info("Discordへの送信が再開しました。送信待ち: " + getSize() + "件");
+        }
+        failures = 0;
+        nextAttemptAt = System.currentTimeMillis() + paceMillis;
+    }
+
+    /**
+     * 送信に失敗した (再試行の間隔を倍にしていく)
+     */
+    public synchronized void recordFailure() {
+        if (failures == 0) {
+            plugin.getLogger().warning("Discordに送信できません。メッセージを溜めて再試行します。");
+        }
+        failures++;
+        long backoff = Math.min(MAX_BACKOFF_MILLIS, TimeUnit.SECONDS.toMillis(1) << Math.min(failures - 1, 6));
+        nextAttemptAt = System.currentTimeMillis() + backoff;
+    }
+
+    /**
+     * 次に送信を試みるまでの時間
+     */
+    public synchronized long getWaitMillis() {
+        return Math.max(0, nextAttemptAt - System.currentTimeMillis());
+    }
+
+    /**
+     * 読み出し用のファイルを閉じる (メモリ上のものは呼び出し側で spill() する)
+     */
+    public synchronized void close() {
+        closeReader();
+    }
+
+    private void finishSegment(long segment) {
+        segments.remove(segment);
+        if (segment == readerSegment) {
+            closeReader();
+        }
+        File file = segmentFile(segment);
+        diskBytes -= file.length();
+        diskBytes = Math.max(0, diskBytes);
+        file.delete();
+        if (segments.isEmpty()) {
+            new File(dir, "cursor").delete();
+        }
+    }
+
+    private void openReader(long segment, long offset) {
+        closeReader();
+        try {
+            reader = new RandomAccessFile(segmentFile(segment), "r");
+            reader.seek(offset);
+            readerSegment = segment;
+        } catch (IOException e) {
+            plugin.getLogger().warning("outbox を読み込めません: " + e.getMessage());
+            reader = null;
+            readerSegment = -1;
+        }
+    }
+
+    private void closeReader() {
+        peeked = null;
+        if (reader != null) {
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+                // 読み込みのみ
+            }
+        }
+        reader = null;
+        readerSegment = -1;
+    }
+
+    private boolean isReaderAtEnd() {
+        try {
+            return reader != null && reader.getFilePointer() >= reader.length();
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    /**
+     * 読み出し位置を保存 (再起動後に送信済みのメッセージを再送しない)
+     */
+    private void saveCursor(long segment, long offset) {
+        try (RandomAccessFile raf = new RandomAccessFile(new File(dir, "cursor"), "rw")) {
+            raf.writeLong(segment);
+            raf.writeLong(offset);
+        } catch (IOException e) {
+            plugin.getLogger().warning("outbox の読み出し位置を保存できません: " + e.getMessage());
+        }
+    }
+
+    private long nextSegmentIndex() {
+        return segments.isEmpty() ? Math.max(0, readerSegment + 1) : segments.lastKey() + 1;
+    }
+
+    private File segmentFile(long index) {
+        return new File(dir, String.format("%016d.seg", index));
+    }
+
+    /**
+     * 1件を書き込む (キューに追加した時刻は再起動後も使えるよう実時刻に変換する)
+     */
+    private static void write(DataOutputStream out, OutboundSender.Outbound item) throws IOException {
+        long enqueuedWall = System.currentTimeMillis()
+                - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - item.enqueuedAt);
+        out.writeByte(item.category.ordinal());
+        out.writeLong(enqueuedWall);
+        out.writeInt(item.lines);
+        writeNullable(out, item.username);
+        writeNullable(out, item.avatarUrl);
+        out.writeUTF(item.content);
+    }
+
+    private static OutboundSender.Outbound read(RandomAccessFile in) throws IOException {
+        int ordinal = in.readUnsignedByte();
+        long enqueuedWall = in.readLong();
+        int lines = in.readInt();
+        String username = readNullable(in);
+        String avatarUrl = readNullable(in);
+        String content = in.readUTF();
+
+        OutboundSender.Category[] categories = OutboundSender.Category.values();
+        if (ordinal >= categories.length) {
+            throw new IOException("不正なメッセージの種類: " + ordinal);
+        }
+        long enqueuedAt = System.nanoTime()
+                - TimeUnit.MILLISECONDS.toNanos(Math.max(0, System.currentTimeMillis() - enqueuedWall));
+        return new OutboundSender.Outbound(categories[ordinal], 0, username, avatarUrl, content, lines, enqueuedAt);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(RandomAccessFile in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
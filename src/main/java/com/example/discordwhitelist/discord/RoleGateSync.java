@@ -0,0 +1,89 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.manager.RoleGateIndex;
+import net.dv8tion.jda.api.entities.Guild;
+import net.dv8tion.jda.api.entities.ISnowflake;
+import net.dv8tion.jda.api.entities.Member;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * ロールインデックスとDiscordサーバーの同期
+ * 起動時/リロード時にメンバー一覧をチャンク単位で1回走査し、以降はイベントで差分更新する
+ */
+public class RoleGateSync {
+
+    private final DiscordWhitelistPlugin plugin;
+    private final DiscordBot bot;
+
+    public RoleGateSync(DiscordWhitelistPlugin plugin, DiscordBot bot) {
+        this.plugin = plugin;
+        this.bot = bot;
+    }
+
+    /**
+     * 設定を反映し、メンバー一覧からインデックスを再構築
+     */
+    public void seed() {
+        RoleGateIndex index = plugin.getWhitelistManager().getRoleGate();
+
+        boolean enabled = plugin.getConfig().getBoolean("role-gate.enabled", false);
+        List<String> roleIds = plugin.getConfig().getStringList("role-gate.role-ids");
+        String adminRoleId = plugin.getConfig().getString("discord.admin-role-id", "");
+        if (adminRoleId.equals("ADMIN_ROLE_ID")) {
+            adminRoleId = "";
+        }
+        index.configure(enabled, roleIds, adminRoleId);
+
+        if (enabled && roleIds.isEmpty()) {
+            plugin.getLogger().warning("role-gate.role-idsが設定されていません。ロールによる制限は無効です。");
+        }
+
+        // 無効の場合は全メンバーを走査しない (管理者ロールはコマンド実行時にメンバーのロールで判定する)
+        Guild guild = bot.getGuild();
+        if (guild == null || !index.isEnabled() || !bot.hasMembersIntent()) {
+            return;
+        }
+
+        try {
+            guild.loadMembers(member -> index.update(member.getId(), getRoleIds(member)))
+                    .onSuccess(ignored -> {
+                        index.markReady();
+                        plugin.getLogger().info("ロールインデックスを構築しました: 対象ユーザー " + index.getEligibleCount() + "人");
+                    })
+                    .onError(error -> plugin.getLogger()
+                            .warning("ロールインデックスの構築に失敗しました: " + error.getMessage()));
+        } catch (IllegalStateException e) {
+            plugin.getLogger().warning("メンバー一覧を取得できません: " + e.getMessage());
+        }
+    }
+
+    /**
+     * メンバーのロール変更を反映
+     */
+    public void handleRolesChanged(Member member) {
+        if (isTargetGuild(member.getGuild().getId())) {
+            plugin.getWhitelistManager().getRoleGate().update(member.getId(), getRoleIds(member));
+        }
+    }
+
+    /**
+     * メンバーの退出を反映
+     */
+    public void handleMemberLeft(String guildId, String discordId) {
+        if (isTargetGuild(guildId)) {
+            plugin.getWhitelistManager().getRoleGate().remove(discordId);
+        }
+    }
+
+    private List<String> getRoleIds(Member member) {
+        return member.getRoles().stream().map(ISnowflake::getId).collect(Collectors.toList());
+    }
+
+    private boolean isTargetGuild(String guildId) {
+        Guild guild = bot.getGuild();
+        return guild != null && guild.getId().equals(guildId);
+    }
+}
@@ -1,13 +1,20 @@
 package com.example.discordwhitelist.discord;
 
 import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.manager.ApprovalQueue;
+import com.example.discordwhitelist.manager.AuditJournal;
+import com.example.discordwhitelist.manager.RoleGateIndex;
 import com.example.discordwhitelist.manager.WhitelistManager;
+import com.example.discordwhitelist.manager.WhitelistPartitions;
+import com.example.discordwhitelist.manager.WhitelistStats;
 import net.dv8tion.jda.api.EmbedBuilder;
 import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Guild;
 import net.dv8tion.jda.api.entities.Member;
 import net.dv8tion.jda.api.entities.Role;
 import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
 import net.dv8tion.jda.api.hooks.ListenerAdapter;
+import net.dv8tion.jda.api.interactions.commands.OptionMapping;
 import net.dv8tion.jda.api.interactions.components.buttons.Button;
 import org.jetbrains.annotations.NotNull;
 
@@ -27,6 +34,21 @@ public class SlashCommandListener extends ListenerAdapter {
 
     @Override
     public void onSlashCommandInteraction(@NotNull SlashCommandInteractionEvent event) {
+        // 管理者以外の連続実行の抑止 (管理者の一括操作は制限しない)
+        // コマンドは応答まで同期的に処理するため、処理中の重複送信の抑止は行わない
+        if (!isAdmin(plugin, event.getMember(), getPartition(event.getGuild()))) {
+            InteractionThrottle throttle = plugin.getDiscordBot().getThrottle();
+            InteractionThrottle.Verdict verdict = throttle.tryTake(event.getUser().getId());
+            if (verdict != InteractionThrottle.Verdict.ALLOWED) {
+                event.reply(throttle.getRejectMessage(verdict)).setEphemeral(true).queue();
+                return;
+            }
+        }
+
+        dispatch(event);
+    }
+
+    private void dispatch(SlashCommandInteractionEvent event) {
         switch (event.getName()) {
             case "setup-whitelist" -> handleSetupWhitelist(event);
             case "whitelist" -> handleWhitelist(event);
@@ -38,7 +60,7 @@ public class SlashCommandListener extends ListenerAdapter {
      */
     private void handleSetupWhitelist(SlashCommandInteractionEvent event) {
         // 管理者チェック
-        if (!isAdmin(event.getMember())) {
+        if (!isAdmin(plugin, event.getMember(), getPartition(event.getGuild()))) {
             event.reply("❌ このコマンドは管理者のみ実行できます。").setEphemeral(true).queue();
             return;
         }
@@ -75,7 +97,7 @@ public class SlashCommandListener extends ListenerAdapter {
      */
     private void handleWhitelist(SlashCommandInteractionEvent event) {
         // 管理者チェック
-        if (!isAdmin(event.getMember())) {
+        if (!isAdmin(plugin, event.getMember(), getPartition(event.getGuild()))) {
             event.reply("❌ このコマンドは管理者のみ実行できます。").setEphemeral(true).queue();
             return;
         }
@@ -84,16 +106,45 @@ public class SlashCommandListener extends ListenerAdapter {
         if (subCommand == null)
             return;
 
+        // コマンドを実行したサーバーのホワイトリストを操作
+        WhitelistManager manager = getPartition(event.getGuild()).getManager();
+        String source = AuditJournal.discordSource(event.getUser().getId());
+
         switch (subCommand) {
             case "add" -> {
                 String playerName = event.getOption("player").getAsString();
-                WhitelistManager.AddResult result = plugin.getWhitelistManager().addPlayer(playerName, null);
+
+                // 有効期間 (省略時は無期限)
+                long expiresAt = 0;
+                OptionMapping durationOption = event.getOption("duration");
+                if (durationOption != null) {
+                    long duration = WhitelistManager.parseDuration(durationOption.getAsString());
+                    if (duration <= 0) {
+                        event.reply(plugin.getConfig().getString("messages.invalid-duration",
+                                "❌ 期間の形式が不正です。(例: 30m, 12h, 3d, 1d12h)")).setEphemeral(true).queue();
+                        return;
+                    }
+                    expiresAt = System.currentTimeMillis() + duration;
+                }
+
+                long expires = expiresAt;
+                WhitelistManager.AddResult result = manager.withSource(source,
+                        () -> manager.addPlayer(playerName, null, false, null, expires));
 
                 String message;
                 switch (result) {
-                    case SUCCESS -> message = plugin.getConfig().getString("messages.admin-added",
-                            "✅ **%player%** をホワイトリストに追加しました。")
-                            .replace("%player%", playerName);
+                    case SUCCESS -> {
+                        if (expiresAt > 0) {
+                            message = plugin.getConfig().getString("messages.admin-added-temporary",
+                                    "✅ **%player%** をホワイトリストに追加しました。(期限: %expires%)")
+                                    .replace("%player%", playerName)
+                                    .replace("%expires%", "<t:" + expiresAt / 1000 + ":f>");
+                        } else {
+                            message = plugin.getConfig().getString("messages.admin-added",
+                                    "✅ **%player%** をホワイトリストに追加しました。")
+                                    .replace("%player%", playerName);
+                        }
+                    }
                     case ALREADY_EXISTS -> message = plugin.getConfig().getString("messages.admin-already-exists",
                             "⚠️ **%player%** は既にホワイトリストに登録されています。")
                             .replace("%player%", playerName);
@@ -106,7 +157,7 @@ public class SlashCommandListener extends ListenerAdapter {
             }
             case "remove" -> {
                 String playerName = event.getOption("player").getAsString();
-                boolean removed = plugin.getWhitelistManager().removePlayer(playerName);
+                boolean removed = manager.withSource(source, () -> manager.removePlayer(playerName));
 
                 String message;
                 if (removed) {
@@ -122,7 +173,7 @@ public class SlashCommandListener extends ListenerAdapter {
                 event.reply(message).setEphemeral(true).queue();
             }
             case "list" -> {
-                List<WhitelistManager.WhitelistEntry> entries = plugin.getWhitelistManager().getWhitelist();
+                List<WhitelistManager.WhitelistEntry> entries = manager.getWhitelist();
 
                 if (entries.isEmpty()) {
                     event.reply("📋 ホワイトリストは空です。").setEphemeral(true).queue();
@@ -144,19 +195,106 @@ public class SlashCommandListener extends ListenerAdapter {
                     if (!entry.getDiscordId().isEmpty()) {
                         sb.append(" (<@").append(entry.getDiscordId()).append(">)");
                     }
+                    if (entry.getExpiresAt() > 0) {
+                        sb.append(" ⏳<t:").append(entry.getExpiresAt() / 1000).append(":R>");
+                    }
                     sb.append("\n");
                     count++;
                 }
 
                 event.reply(sb.toString()).setEphemeral(true).queue();
             }
+            case "stats" -> {
+                WhitelistStats.Snapshot snapshot = manager.getStats().snapshot(7);
+                int online = plugin.getServer().getOnlinePlayers().size();
+                event.replyEmbeds(StatsEmbed.build(snapshot, online)).setEphemeral(true).queue();
+            }
+            case "search" -> {
+                String query = event.getOption("query").getAsString();
+                List<WhitelistManager.SearchResult> results = manager.search(query, 20);
+
+                if (results.isEmpty()) {
+                    event.reply("🔍 `" + query + "` に一致するプレイヤーは見つかりませんでした。").setEphemeral(true).queue();
+                    return;
+                }
+
+                StringBuilder sb = new StringBuilder();
+                sb.append("🔍 **検索結果** (").append(results.size()).append("件)\n\n");
+                for (WhitelistManager.SearchResult result : results) {
+                    WhitelistManager.WhitelistEntry entry = result.getEntry();
+                    String edition = entry.isBedrock() ? "🪨" : "☕";
+                    sb.append(edition).append(" `").append(entry.getPlayerName()).append("`");
+                    if (!entry.getDiscordId().isEmpty()) {
+                        sb.append(" (<@").append(entry.getDiscordId()).append(">)");
+                    }
+                    if (entry.isDisabled()) {
+                        sb.append(" ⛔");
+                    }
+                    sb.append(" - ").append(Math.round(result.getScore() * 100)).append("%\n");
+                }
+
+                event.reply(sb.toString()).setEphemeral(true).queue();
+            }
+            case "history" -> {
+                String target = event.getOption("target").getAsString();
+                AuditJournal journal = plugin.getAuditJournal();
+                if (!journal.isEnabled()) {
+                    event.reply("❌ 変更履歴の記録は無効です。").setEphemeral(true).queue();
+                    return;
+                }
+                // メッセージの文字数制限のため10件まで
+                AuditJournal.History history = journal.history(target, 10);
+                if (history.getRecords().isEmpty()) {
+                    event.reply("📜 `" + target + "` の変更履歴はありません。").setEphemeral(true).queue();
+                    return;
+                }
+
+                StringBuilder sb = new StringBuilder();
+                sb.append("📜 **変更履歴** (").append(history.getTotal()).append("件)\n\n");
+                for (AuditJournal.Record record : history.getRecords()) {
+                    sb.append("<t:").append(record.getTime() / 1000).append(":f> **")
+                            .append(record.getAction().getLabel()).append("** `").append(record.getPlayerName())
+                            .append("`");
+                    if (!record.getPrevious().isEmpty()) {
+                        sb.append(" (旧: `").append(record.getPrevious()).append("`)");
+                    }
+                    if (!record.getDiscordId().isEmpty()) {
+                        sb.append(" <@").append(record.getDiscordId()).append(">");
+                    }
+                    if (!record.getDetail().isEmpty()) {
+                        sb.append(" ").append(record.getDetail());
+                    }
+                    sb.append(" ・ ").append(AuditJournal.formatSource(record.getSource(), true)).append("\n");
+                }
+                if (history.getTotal() > history.getRecords().size()) {
+                    sb.append("\n... 他 ").append(history.getTotal() - history.getRecords().size()).append("件");
+                }
+
+                event.reply(sb.toString()).setEphemeral(true).queue();
+            }
+            case "pending" -> {
+                OptionMapping pageOption = event.getOption("page");
+                int page = pageOption != null ? Math.max(0, pageOption.getAsInt() - 1) : 0;
+                ApprovalQueue.Page view = plugin.getApprovalQueue()
+                        .page(getPartition(event.getGuild()), page, ApprovalListener.PAGE_SIZE);
+                event.replyEmbeds(ApprovalListener.buildEmbed(view))
+                        .setComponents(ApprovalListener.buildRows(view))
+                        .setEphemeral(true).queue();
+            }
         }
     }
 
     /**
-     * 管理者かどうかチェック
+     * コマンドを実行したサーバーのパーティションを取得
      */
-    private boolean isAdmin(Member member) {
+    private WhitelistPartitions.Partition getPartition(Guild guild) {
+        return plugin.getPartitions().forGuild(guild != null ? guild.getId() : null);
+    }
+
+    /**
+     * 管理者かどうかチェック (管理者ロールはサーバーごとに設定)
+     */
+    static boolean isAdmin(DiscordWhitelistPlugin plugin, Member member, WhitelistPartitions.Partition partition) {
         if (member == null)
             return false;
 
@@ -165,9 +303,15 @@ public class SlashCommandListener extends ListenerAdapter {
             return true;
         }
 
-        // 設定された管理者ロールを持っている場合
-        String adminRoleId = plugin.getConfig().getString("discord.admin-role-id", "");
-        if (!adminRoleId.isEmpty() && !adminRoleId.equals("ADMIN_ROLE_ID")) {
+        // 設定された管理者ロールを持っている場合 (ロールインデックス構築後はキャッシュを参照)
+        // ロールインデックスは discord.guild-id のサーバーのみ構築する
+        RoleGateIndex roleGate = plugin.getWhitelistManager().getRoleGate();
+        if (partition == plugin.getPartitions().getPrimary() && roleGate.isReady()) {
+            return roleGate.isAdmin(member.getId());
+        }
+
+        String adminRoleId = partition.getAdminRoleId();
+        if (!adminRoleId.isEmpty()) {
             for (Role role : member.getRoles()) {
                 if (role.getId().equals(adminRoleId)) {
                     return true;
@@ -0,0 +1,160 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.manager.WhitelistStats;
+import net.dv8tion.jda.api.EmbedBuilder;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.MessageEmbed;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.awt.*;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+
+/**
+ * ホワイトリストの集計を表示するピン留めメッセージ
+ * 一定間隔で集計とオンライン人数を確認し、変化があった場合のみ同じメッセージを編集する (再投稿しない)
+ */
+public class StatsEmbed {
+
+    private static final String TITLE = "📊 ホワイトリスト統計";
+    private static final int DAYS = 7;
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.ofPattern("MM/dd");
+
+    private final DiscordWhitelistPlugin plugin;
+    private final DiscordBot bot;
+    private BukkitTask task;
+
+    // 編集対象のメッセージID (未作成の場合はnull)
+    private volatile String messageId;
+
+    // 前回表示した内容 (集計のバージョンとオンライン人数)
+    private volatile String lastKey;
+
+    public StatsEmbed(DiscordWhitelistPlugin plugin, DiscordBot bot) {
+        this.plugin = plugin;
+        this.bot = bot;
+    }
+
+    /**
+     * 定期更新を開始 (チャンネル未設定の場合は何もしない)
+     */
+    public void start() {
+        stop();
+        TextChannel channel = getChannel();
+        if (channel == null) {
+            return;
+        }
+
+        // 以前に作成したピン留めメッセージを探して再利用する
+        String selfId = bot.getJDA().getSelfUser().getId();
+        channel.retrievePinnedMessages().queue(pinned -> {
+            for (Message message : pinned) {
+                if (message.getAuthor().getId().equals(selfId) && !message.getEmbeds().isEmpty()
+                        && TITLE.equals(message.getEmbeds().get(0).getTitle())) {
+                    messageId = message.getId();
+                    break;
+                }
+            }
+        }, error -> plugin.getLogger().warning("ピン留めメッセージの取得に失敗しました: " + error.getMessage()));
+
+        long intervalTicks = Math.max(60, plugin.getConfig().getLong("stats.update-seconds", 300)) * 20;
+        task = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::update, 20 * 10,
+                intervalTicks);
+    }
+
+    /**
+     * 定期更新を停止
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        messageId = null;
+        lastKey = null;
+    }
+
+    /**
+     * 変化があればメッセージを編集 (なければ作成してピン留め)
+     */
+    private void update() {
+        TextChannel channel = getChannel();
+        if (channel == null) {
+            return;
+        }
+
+        WhitelistStats.Snapshot snapshot = plugin.getWhitelistManager().getStats().snapshot(DAYS);
+        int online = plugin.getServer().getOnlinePlayers().size();
+        String key = snapshot.getVersion() + ":" + online;
+        if (key.equals(lastKey) && messageId != null) {
+            return;
+        }
+        lastKey = key;
+
+        MessageEmbed embed = build(snapshot, online);
+        String id = messageId;
+        if (id != null) {
+            channel.editMessageEmbedsById(id, embed).queue(null, error -> {
+                // 削除された場合は次回作成し直す
+                messageId = null;
+                lastKey = null;
+            });
+        } else {
+            channel.sendMessageEmbeds(embed).queue(message -> {
+                messageId = message.getId();
+                message.pin().queue(null, error -> plugin.getLogger()
+                        .warning("統計メッセージのピン留めに失敗しました: " + error.getMessage()));
+            });
+        }
+    }
+
+    private TextChannel getChannel() {
+        if (bot.getJDA() == null) {
+            return null;
+        }
+        String channelId = plugin.getConfig().getString("stats.channel-id", "");
+        if (channelId.isEmpty() || channelId.equals("STATS_CHANNEL_ID")) {
+            return null;
+        }
+        return bot.getJDA().getTextChannelById(channelId);
+    }
+
+    /**
+     * 集計の埋め込みを作成 (/whitelist stats と共通)
+     *
+     * @param online オンライン人数 (表示しない場合は-1)
+     */
+    public static MessageEmbed build(WhitelistStats.Snapshot snapshot, int online) {
+        EmbedBuilder embed = new EmbedBuilder()
+                .setTitle(TITLE)
+                .setColor(new Color(88, 101, 242))
+                .addField("登録数", snapshot.getTotal() + "人", true)
+                .addField("☕ Java版", snapshot.getJava() + "人", true)
+                .addField("🪨 統合版", snapshot.getBedrock() + "人", true)
+                .addField("🔗 Discord連携", snapshot.getLinked() + "人", true)
+                .addField("✍️ 手動追加", snapshot.getUnlinked() + "人", true)
+                .addField("⏳ 期限付き", snapshot.getTemporary() + "人", true);
+        if (snapshot.getDisabled() > 0) {
+            embed.addField("⛔ 無効化", snapshot.getDisabled() + "人", true);
+        }
+        if (online >= 0) {
+            embed.addField("🟢 オンライン", online + "人", true);
+        }
+
+        StringBuilder perDay = new StringBuilder();
+        LocalDate today = LocalDate.now();
+        Map<LocalDate, Integer> registrations = snapshot.getRegistrationsPerDay();
+        for (int i = DAYS - 1; i >= 0; i--) {
+            LocalDate day = today.minusDays(i);
+            perDay.append("`").append(DAY_FORMAT.format(day)).append("` ")
+                    .append(registrations.getOrDefault(day, 0)).append("人\n");
+        }
+        embed.addField("直近" + DAYS + "日間の登録", perDay.toString(), false);
+        embed.setTimestamp(Instant.now());
+        return embed.build();
+    }
+}
@@ -0,0 +1,299 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 同じチャンネルに向けた複数のWebhookへの送信の振り分け
+ * 各WebhookのレートリミットヘッダーからWebhookごとの残り回数を追跡し、
+ * プレイヤーのメッセージは常に同じWebhookに送る (ランデブーハッシュ。Webhookが外れても他のプレイヤーは移動しない)
+ * 連続して失敗したWebhookは一定時間ローテーションから外す
+ * OutboundSenderの送信スレッドからのみ使用する
+ */
+public class WebhookPool {
+
+    // 連続でこの回数失敗したらローテーションから外す
+    private static final int MAX_FAILURES = 3;
+
+    // ローテーションから外す時間 (失敗が続くごとに倍、上限あり)
+    private static final long BASE_COOLDOWN_MILLIS = 30_000;
+    private static final long MAX_COOLDOWN_MILLIS = 600_000;
+
+    private final DiscordWhitelistPlugin plugin;
+    private final List<Webhook> webhooks = new ArrayList<>();
+
+    // 送信したHTTPリクエストの総数 (再送を含む)
+    private final AtomicLong requests = new AtomicLong();
+
+    // リクエストボディ (送信ごとに使い回す)
+    private final JsonBody body = new JsonBody(1024);
+
+    public WebhookPool(DiscordWhitelistPlugin plugin, List<String> urls) {
+        this.plugin = plugin;
+        for (String url : urls) {
+            webhooks.add(new Webhook(url, webhooks.size()));
+        }
+    }
+
+    /**
+     * Webhookで送信
+     *
+     * @param routeKey      振り分けのキー (プレイヤー名など。同じキーは同じWebhookに送る。nullの場合は残り回数の多いもの)
+     * @param username      表示名
+     * @param avatarUrl     アバター (nullの場合は省略)
+     * @param content       メッセージ
+     * @param timeoutMillis レートリミットの待機を含めたタイムアウト
+     * @return 送信の結果
+     */
+    public Result post(String routeKey, String username, String avatarUrl, String content, long timeoutMillis)
+            throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        body.reset().raw("{\"username\":").string(username);
+        if (avatarUrl != null) {
+            body.raw(",\"avatar_url\":").string(avatarUrl);
+        }
+        body.raw(",\"content\":").string(content).raw("}");
+
+        // レートリミット (429) の場合は1回だけ再送する
+        for (int attempt = 0; attempt < 2; attempt++) {
+            long now = System.currentTimeMillis();
+            Webhook webhook = routeKey != null ? selectByKey(routeKey, now) : selectByBudget(now);
+            if (webhook == null) {
+                plugin.getLogger().warning("使用できるWebhookがありません。メッセージが送信できませんでした。");
+                return Result.RETRY;
+            }
+
+            // 残り回数がない場合はリセットまで待機
+            long wait = webhook.budget(now) <= 0 ? webhook.resetAt - now : 0;
+            if (wait > 0) {
+                if (now + wait >= deadline) {
+                    return Result.RETRY;
+                }
+                Thread.sleep(wait);
+            }
+
+            int timeout = (int) Math.max(1, Math.min(5000, deadline - System.currentTimeMillis()));
+            int responseCode = webhook.send(body.array(), body.length(), timeout);
+            if (responseCode == 429) {
+                plugin.getLogger().warning("Webhook rate limited (#" + (webhook.index + 1) + ")");
+                continue;
+            }
+            if (responseCode >= 200 && responseCode < 300) {
+                return Result.SENT;
+            }
+            // 接続エラー・サーバーエラー・Webhookの削除 (他のWebhookやBotで送れる) 以外は再送しても届かない
+            boolean retry = responseCode < 0 || responseCode >= 500
+                    || responseCode == 401 || responseCode == 403 || responseCode == 404;
+            return retry ? Result.RETRY : Result.REJECTED;
+        }
+        return Result.RETRY;
+    }
+
+    /**
+     * 送信先を選択
+     * 同じキーはローテーション中のWebhookの中から常に同じものを選ぶ (ランデブーハッシュ)
+     */
+    private Webhook selectByKey(String key, long now) {
+        Webhook best = null;
+        long bestScore = Long.MIN_VALUE;
+        for (Webhook webhook : webhooks) {
+            if (!webhook.isAvailable(now)) {
+                continue;
+            }
+            long score = mix(key.hashCode() * 31L + webhook.url.hashCode());
+            if (best == null || score > bestScore) {
+                best = webhook;
+                bestScore = score;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * 送信先を選択 (残り回数が最も多いもの、全て使い切っている場合はリセットが最も早いもの)
+     */
+    private Webhook selectByBudget(long now) {
+        Webhook best = null;
+        for (Webhook webhook : webhooks) {
+            if (!webhook.isAvailable(now)) {
+                continue;
+            }
+            if (best == null || webhook.budget(now) > best.budget(now)
+                    || (best.budget(now) <= 0 && webhook.budget(now) <= 0 && webhook.resetAt < best.resetAt)) {
+                best = webhook;
+            }
+        }
+        return best;
+    }
+
+    private static long mix(long z) {
+        // SplitMix64の最終段 (ハッシュ値を均等に散らす)
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    /**
+     * 送信したHTTPリクエストの総数 (再送を含む)
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Webhookの数
+     */
+    public int size() {
+        return webhooks.size();
+    }
+
+    /**
+     * ローテーション中のWebhookの数
+     */
+    public int getAvailableCount() {
+        long now = System.currentTimeMillis();
+        int count = 0;
+        for (Webhook webhook : webhooks) {
+            if (webhook.isAvailable(now)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * 送信の結果
+     */
+    public enum Result {
+        SENT,
+        // 接続できない、レートリミットなど (時間を置けば送信できる)
+        RETRY,
+        // メッセージが不正など (再送しても送信できない)
+        REJECTED
+    }
+
+    /**
+     * 1つのWebhookの状態
+     */
+    private class Webhook {
+        private final String url;
+        private final int index;
+
+        // レートリミットの残り回数とリセット時刻 (ヘッダーから更新、不明な場合は制限なし)
+        private int remaining = Integer.MAX_VALUE;
+        private long resetAt;
+
+        private int failures;
+        private long disabledUntil;
+
+        Webhook(String url, int index) {
+            this.url = url;
+            this.index = index;
+        }
+
+        boolean isAvailable(long now) {
+            return now >= disabledUntil;
+        }
+
+        /**
+         * 現在の残り回数 (リセット済みの場合は制限なし)
+         */
+        int budget(long now) {
+            return now >= resetAt ? Integer.MAX_VALUE : remaining;
+        }
+
+        /**
+         * 送信し、レスポンスコードを返す (接続エラーの場合は-1)
+         */
+        int send(byte[] payload, int length, int timeoutMillis) {
+            int responseCode;
+            requests.incrementAndGet();
+            try {
+                HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+                connection.setRequestMethod("POST");
+                connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+                connection.setDoOutput(true);
+                // 長さを指定してボディを内部でコピーせずに送信する
+                connection.setFixedLengthStreamingMode(length);
+                connection.setConnectTimeout(timeoutMillis);
+                connection.setReadTimeout(timeoutMillis);
+
+                try (OutputStream os = connection.getOutputStream()) {
+                    os.write(payload, 0, length);
+                }
+
+                responseCode = connection.getResponseCode();
+                updateRateLimit(connection, responseCode);
+                connection.disconnect();
+            } catch (IOException | IllegalArgumentException e) {
+                plugin.getLogger().warning("Webhook送信に失敗 (#" + (index + 1) + "): " + e.getMessage());
+                recordFailure(false);
+                return -1;
+            }
+
+            if (responseCode >= 200 && responseCode < 300) {
+                failures = 0;
+            } else if (responseCode == 401 || responseCode == 403 || responseCode == 404) {
+                // Webhookが削除された、またはURLが不正
+                plugin.getLogger().warning("Webhook送信エラー (#" + (index + 1) + "): HTTP " + responseCode);
+                recordFailure(true);
+            } else if (responseCode != 429) {
+                plugin.getLogger().warning("Webhook送信エラー (#" + (index + 1) + "): HTTP " + responseCode);
+                recordFailure(false);
+            }
+            return responseCode;
+        }
+
+        /**
+         * レートリミットのヘッダーを反映
+         */
+        private void updateRateLimit(HttpURLConnection connection, int responseCode) {
+            long now = System.currentTimeMillis();
+            String remainingHeader = connection.getHeaderField("X-RateLimit-Remaining");
+            String resetAfterHeader = connection.getHeaderField("X-RateLimit-Reset-After");
+            try {
+                if (remainingHeader != null) {
+                    remaining = Integer.parseInt(remainingHeader);
+                }
+                if (resetAfterHeader != null) {
+                    resetAt = now + (long) (Double.parseDouble(resetAfterHeader) * 1000);
+                }
+                if (responseCode == 429) {
+                    remaining = 0;
+                    // 429の待ち時間はRetry-Afterに従う (共有のレートリミットではバケットのリセットより短い)
+                    String retryAfter = connection.getHeaderField("Retry-After");
+                    if (retryAfter != null) {
+                        resetAt = now + (long) (Double.parseDouble(retryAfter) * 1000);
+                    } else if (resetAt <= now) {
+                        resetAt = now + 1000;
+                    }
+                }
+            } catch (NumberFormatException ignored) {
+                // ヘッダーが不正な場合は前回の値を使う
+            }
+        }
+
+        /**
+         * 失敗を記録し、続く場合はローテーションから外す
+         *
+         * @param fatal Webhookが存在しない場合など、即座に外すかどうか
+         */
+        private void recordFailure(boolean fatal) {
+            failures++;
+            if (!fatal && failures < MAX_FAILURES) {
+                return;
+            }
+            int exponent = Math.min(Math.max(0, failures - MAX_FAILURES), 5);
+            long cooldown = fatal ? MAX_COOLDOWN_MILLIS : Math.min(MAX_COOLDOWN_MILLIS, BASE_COOLDOWN_MILLIS << exponent);
+            disabledUntil = System.currentTimeMillis() + cooldown;
+            plugin.getLogger().warning("Webhook #" + (index + 1) + " を " + (cooldown / 1000) + "秒間ローテーションから外します");
+        }
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.discordwhitelist.filter;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 複数パターンの同時検索 (Aho-Corasick法)
+ * 構築後は不変のため、複数スレッドから同時に使用できる
+ * 検索のコストはパターン数に関係なくテキスト長 + 一致数に比例する
+ * 大文字/小文字は区別しない
+ */
+public final class AhoCorasick {
+
+    // ノードごとの遷移 (文字は昇順、二分探索で参照)
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+
+    // 失敗時の遷移先
+    private final int[] fail;
+
+    // このノードで終わるパターンの番号 (なければ-1)
+    private final int[] output;
+
+    // 同じ文字列の次のパターンの番号 (なければ-1、同じノードで終わるパターンを全て通知するため)
+    private final int[] duplicates;
+
+    // 失敗リンクを辿った先で、パターンが終わる最も近いノード (なければ-1)
+    private final int[] dictLink;
+
+    // パターンの長さ
+    private final int[] patternLengths;
+
+    /**
+     * パターン一覧から構築
+     *
+     * @param patterns 検索するパターン (空文字は無視される)
+     */
+    public AhoCorasick(List<String> patterns) {
+        List<Map<Character, Integer>> edges = new ArrayList<>();
+        List<Integer> outputs = new ArrayList<>();
+        edges.add(new TreeMap<>());
+        outputs.add(-1);
+
+        patternLengths = new int[patterns.size()];
+        duplicates = new int[patterns.size()];
+        Arrays.fill(duplicates, -1);
+        int[] lastDuplicate = new int[patterns.size()];
+        for (int i = 0; i < patterns.size(); i++) {
+            String pattern = patterns.get(i);
+            patternLengths[i] = pattern.length();
+            if (pattern.isEmpty()) {
+                continue;
+            }
+
+            int node = 0;
+            for (int j = 0; j < pattern.length(); j++) {
+                char c = Character.toLowerCase(pattern.charAt(j));
+                Integer next = edges.get(node).get(c);
+                if (next == null) {
+                    next = edges.size();
+                    edges.add(new TreeMap<>());
+                    outputs.add(-1);
+                    edges.get(node).put(c, next);
+                }
+                node = next;
+            }
+            // 同じパターンが複数ある場合は定義順に連結し、全て通知する
+            int first = outputs.get(node);
+            if (first == -1) {
+                outputs.set(node, i);
+                lastDuplicate[i] = i;
+            } else {
+                duplicates[lastDuplicate[first]] = i;
+                lastDuplicate[first] = i;
+            }
+        }
+
+        int size = edges.size();
+        edgeChars = new char[size][];
+        edgeTargets = new int[size][];
+        output = new int[size];
+        fail = new int[size];
+        dictLink = new int[size];
+
+        for (int node = 0; node < size; node++) {
+            Map<Character, Integer> map = edges.get(node);
+            edgeChars[node] = new char[map.size()];
+            edgeTargets[node] = new int[map.size()];
+            int k = 0;
+            for (Map.Entry<Character, Integer> e : map.entrySet()) {
+                edgeChars[node][k] = e.getKey();
+                edgeTargets[node][k] = e.getValue();
+                k++;
+            }
+            output[node] = outputs.get(node);
+        }
+
+        buildLinks();
+    }
+
+    /**
+     * 幅優先で失敗リンクと出力リンクを構築
+     */
+    private void buildLinks() {
+        Deque<Integer> queue = new ArrayDeque<>();
+        fail[0] = 0;
+        dictLink[0] = -1;
+        for (int child : edgeTargets[0]) {
+            fail[child] = 0;
+            dictLink[child] = -1;
+            queue.add(child);
+        }
+
+        while (!queue.isEmpty()) {
+            int node = queue.poll();
+            for (int k = 0; k < edgeChars[node].length; k++) {
+                char c = edgeChars[node][k];
+                int child = edgeTargets[node][k];
+
+                int f = fail[node];
+                while (f != 0 && next(f, c) < 0) {
+                    f = fail[f];
+                }
+                int target = next(f, c);
+                fail[child] = target >= 0 && target != child ? target : 0;
+                dictLink[child] = output[fail[child]] >= 0 ? fail[child] : dictLink[fail[child]];
+                queue.add(child);
+            }
+        }
+    }
+
+    private int next(int node, char c) {
+        int index = Arrays.binarySearch(edgeChars[node], c);
+        return index >= 0 ? edgeTargets[node][index] : -1;
+    }
+
+    /**
+     * テキストを走査し、一致するたびにコールバックを呼び出す
+     *
+     * @param text    検索対象
+     * @param matcher 一致時の処理 (パターン番号、開始位置、終了位置(含まない))
+     *                同じ文字列のパターンが複数ある場合は、それぞれについて定義順に呼び出す
+     */
+    public void search(CharSequence text, MatchHandler matcher) {
+        int node = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = Character.toLowerCase(text.charAt(i));
+
+            int next = next(node, c);
+            while (next < 0 && node != 0) {
+                node = fail[node];
+                next = next(node, c);
+            }
+            node = next >= 0 ? next : 0;
+
+            int match = output[node] >= 0 ? node : dictLink[node];
+            while (match >= 0) {
+                for (int pattern = output[match]; pattern >= 0; pattern = duplicates[pattern]) {
+                    matcher.onMatch(pattern, i + 1 - patternLengths[pattern], i + 1);
+                }
+                match = dictLink[match];
+            }
+        }
+    }
+
+    /**
+     * ノード数 (ルートを含む)
+     */
+    public int getNodeCount() {
+        return output.length;
+    }
+
+    /**
+     * 一致時のコールバック
+     */
+    @FunctionalInterface
+    public interface MatchHandler {
+        void onMatch(int pattern, int start, int end);
+    }
+}
@@ -0,0 +1,225 @@
+package com.example.discordwhitelist.filter;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * チャット同期のフィルター (Minecraft → Discord / Discord → Minecraft の両方向)
+ * 全ルールを1つのAho-Corasickオートマトンにまとめ、メッセージ長に比例するコストで判定する
+ * オートマトンはリロード時に再構築し、スレッド間で共有する
+ */
+public class ChatFilter {
+
+    // Discordのメッセージの最大文字数と、通知に引用するメッセージの最大文字数
+    private static final int MAX_REPORT_LENGTH = 2000;
+    private static final int MAX_QUOTE_LENGTH = 1500;
+
+    private final DiscordWhitelistPlugin plugin;
+
+    // 構築済みのルール (リロード時に丸ごと差し替え)
+    private volatile Compiled compiled = Compiled.EMPTY;
+
+    public ChatFilter(DiscordWhitelistPlugin plugin) {
+        this.plugin = plugin;
+        reload();
+    }
+
+    /**
+     * 設定からルールを読み込み、オートマトンを再構築
+     */
+    public void reload() {
+        if (!plugin.getConfig().getBoolean("chat-filter.enabled", false)) {
+            compiled = Compiled.EMPTY;
+            return;
+        }
+
+        List<String> patterns = new ArrayList<>();
+        List<Action> actions = new ArrayList<>();
+        Set<String> seen = new HashSet<>();
+        for (Map<?, ?> rule : plugin.getConfig().getMapList("chat-filter.rules")) {
+            Object pattern = rule.get("pattern");
+            if (pattern == null || pattern.toString().isEmpty()) {
+                continue;
+            }
+            Object action = rule.get("action");
+            try {
+                actions.add(action != null ? Action.valueOf(action.toString().toUpperCase()) : Action.MASK);
+            } catch (IllegalArgumentException e) {
+                plugin.getLogger().warning("chat-filterのactionが不正です: " + action + " (maskとして扱います)");
+                actions.add(Action.MASK);
+            }
+            patterns.add(pattern.toString());
+            if (!seen.add(pattern.toString().toLowerCase())) {
+                plugin.getLogger().warning("chat-filterのパターンが重複しています: " + pattern
+                        + " (全てのactionを適用します)");
+            }
+        }
+
+        compiled = new Compiled(new AhoCorasick(patterns), patterns, actions);
+        plugin.getLogger().info("チャットフィルターを構築しました: " + patterns.size() + "件のルール");
+    }
+
+    /**
+     * メッセージにフィルターを適用
+     * フラグ付きのルールに一致した場合はモデレーション用チャンネルに通知する
+     * 同じパターンに複数のルールがある場合は全てのactionを適用する (破棄が最優先)
+     *
+     * @param message   メッセージ本文
+     * @param author    送信者 (通知用)
+     * @param direction 同期の方向 (通知用)
+     * @return 適用結果
+     */
+    public Result apply(String message, String author, Direction direction) {
+        Compiled current = compiled;
+        if (current.patterns.isEmpty()) {
+            return new Result(message, false, Collections.emptySet());
+        }
+
+        char[][] masked = new char[1][];
+        boolean[] dropped = new boolean[1];
+        Set<String> flagged = new LinkedHashSet<>();
+
+        current.automaton.search(message, (pattern, start, end) -> {
+            switch (current.actions.get(pattern)) {
+                case MASK -> {
+                    if (masked[0] == null) {
+                        masked[0] = message.toCharArray();
+                    }
+                    for (int i = start; i < end; i++) {
+                        masked[0][i] = '*';
+                    }
+                }
+                case DROP -> dropped[0] = true;
+                case FLAG -> flagged.add(current.patterns.get(pattern));
+            }
+        });
+
+        String text = masked[0] != null ? new String(masked[0]) : message;
+        if (!flagged.isEmpty() || dropped[0]) {
+            report(author, message, direction, dropped[0], flagged);
+        }
+        return new Result(text, dropped[0], flagged);
+    }
+
+    /**
+     * モデレーション用チャンネルに通知
+     */
+    private void report(String author, String message, Direction direction, boolean dropped, Set<String> flagged) {
+        if (flagged.isEmpty()) {
+            // 破棄のみの場合はログに残す
+            plugin.getLogger().info("チャットフィルターによりメッセージを破棄 (" + direction.label + "): " + author);
+            return;
+        }
+        if (plugin.getDiscordBot() == null) {
+            return;
+        }
+
+        String report = "🚩 **チャットフィルター** (" + direction.label + ")"
+                + (dropped ? " [破棄]" : "") + "\n"
+                + "送信者: `" + author + "`\n"
+                + "一致: `" + String.join("`, `", flagged) + "`\n"
+                + "> " + truncate(message, MAX_QUOTE_LENGTH).replace("\n", "\n> ");
+        // 改行の多いメッセージや一致したパターンが多い場合も上限を超えないようにする
+        plugin.getDiscordBot().sendModerationMessage(truncate(report, MAX_REPORT_LENGTH));
+    }
+
+    /**
+     * 最大文字数を超える場合は末尾を「…」に置き換える (サロゲートペアは分割しない)
+     */
+    static String truncate(String text, int maxLength) {
+        if (text.length() <= maxLength) {
+            return text;
+        }
+        int end = maxLength - 1;
+        if (Character.isHighSurrogate(text.charAt(end - 1))) {
+            end--;
+        }
+        return text.substring(0, end) + "…";
+    }
+
+    /**
+     * ルールの処理
+     */
+    public enum Action {
+        // 一致部分を*で伏せる
+        MASK,
+        // メッセージを送信しない
+        DROP,
+        // そのまま送信し、モデレーション用チャンネルに通知
+        FLAG
+    }
+
+    /**
+     * 同期の方向
+     */
+    public enum Direction {
+        TO_DISCORD("Minecraft → Discord"),
+        TO_MINECRAFT("Discord → Minecraft");
+
+        private final String label;
+
+        Direction(String label) {
+            this.label = label;
+        }
+    }
+
+    /**
+     * フィルターの適用結果
+     */
+    public static class Result {
+        private final String text;
+        private final boolean dropped;
+        private final Set<String> flagged;
+
+        Result(String text, boolean dropped, Set<String> flagged) {
+            this.text = text;
+            this.dropped = dropped;
+            this.flagged = flagged;
+        }
+
+        /**
+         * 伏せ字を適用したメッセージ
+         */
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * メッセージを送信しないかどうか
+         */
+        public boolean isDropped() {
+            return dropped;
+        }
+
+        /**
+         * 通知対象として一致したパターン
+         */
+        public Set<String> getFlagged() {
+            return flagged;
+        }
+    }
+
+    /**
+     * 構築済みのルール一式 (不変)
+     */
+    private static class Compiled {
+        static final Compiled EMPTY = new Compiled(new AhoCorasick(List.of()), List.of(), List.of());
+
+        final AhoCorasick automaton;
+        final List<String> patterns;
+        final List<Action> actions;
+
+        Compiled(AhoCorasick automaton, List<String> patterns, List<Action> actions) {
+            this.automaton = automaton;
+            this.patterns = List.copyOf(patterns);
+            this.actions = List.copyOf(actions);
+        }
+    }
+}
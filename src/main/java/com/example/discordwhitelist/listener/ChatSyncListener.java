@@ -1,6 +1,8 @@
 package com.example.discordwhitelist.listener;
 
 import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.discord.OutboundSender;
+import com.example.discordwhitelist.filter.ChatFilter;
 import io.papermc.paper.event.player.AsyncChatEvent;
 import net.kyori.adventure.text.serializer.plain.PlainTextComponentSerializer;
 import org.bukkit.event.EventHandler;
@@ -14,6 +16,7 @@ import org.bukkit.event.player.PlayerQuitEvent;
 /**
  * チャット同期リスナー
  * Minecraft → Discord のメッセージ送信を処理
+ * チャット中継が有効な場合は他のサーバーにも送り、Discordへの送信はリーダーのサーバーが行う
  */
 public class ChatSyncListener implements Listener {
 
@@ -36,8 +39,15 @@ public class ChatSyncListener implements Listener {
         String playerName = event.getPlayer().getName();
         String message = PlainTextComponentSerializer.plainText().serialize(event.message());
 
-        // Webhook経由で送信 (プレイヤーアバター付き)
-        plugin.getDiscordBot().sendWebhookMessage(playerName, escapeMarkdown(message));
+        // チャットフィルターの適用
+        ChatFilter.Result filtered = plugin.getChatFilter().apply(message, playerName,
+                ChatFilter.Direction.TO_DISCORD);
+        if (filtered.isDropped())
+            return;
+        message = filtered.getText();
+
+        // Webhook経由で送信 (プレイヤーアバター付き)、他のサーバーではゲーム内にも表示
+        plugin.getChatRelay().publish(OutboundSender.Category.CHAT, playerName, escapeMarkdown(message), message);
     }
 
     /**
@@ -56,7 +66,7 @@ public class ChatSyncListener implements Listener {
                 .getString("chat-sync.formats.join-to-discord", "📥 **%player%** がサーバーに参加しました")
                 .replace("%player%", escapeMarkdown(playerName));
 
-        plugin.getDiscordBot().sendChatMessage(format);
+        plugin.getChatRelay().publish(OutboundSender.Category.JOIN_LEAVE, null, format, null);
 
         // ステータスのプレイヤー人数を更新
         plugin.getDiscordBot().updatePlayerCount();
@@ -78,7 +88,7 @@ public class ChatSyncListener implements Listener {
                 .getString("chat-sync.formats.leave-to-discord", "📤 **%player%** がサーバーから退出しました")
                 .replace("%player%", escapeMarkdown(playerName));
 
-        plugin.getDiscordBot().sendChatMessage(format);
+        plugin.getChatRelay().publish(OutboundSender.Category.JOIN_LEAVE, null, format, null);
 
         // ステータスのプレイヤー人数を更新
         plugin.getDiscordBot().updatePlayerCount();
@@ -101,7 +111,7 @@ public class ChatSyncListener implements Listener {
         String format = plugin.getConfig().getString("chat-sync.formats.death-to-discord", "💀 %message%")
                 .replace("%message%", escapeMarkdown(deathMessage));
 
-        plugin.getDiscordBot().sendChatMessage(format);
+        plugin.getChatRelay().publish(OutboundSender.Category.DEATH, null, format, null);
     }
 
     /**
@@ -132,20 +142,36 @@ public class ChatSyncListener implements Listener {
                 .replace("%player%", escapeMarkdown(playerName))
                 .replace("%advancement%", escapeMarkdown(advancementTitle));
 
-        plugin.getDiscordBot().sendChatMessage(format);
+        plugin.getChatRelay().publish(OutboundSender.Category.ADVANCEMENT, null, format, null);
     }
 
     /**
-     * Discordマークダウンをエスケープ
+     * Discordマークダウンをエスケープ (1回の走査、エスケープが不要な場合は元の文字列を返す)
      */
     private String escapeMarkdown(String text) {
-        return text
-                .replace("\\", "\\\\")
-                .replace("*", "\\*")
-                .replace("_", "\\_")
-                .replace("~", "\\~")
-                .replace("`", "\\`")
-                .replace("|", "\\|")
-                .replace(">", "\\>");
+        int first = 0;
+        while (first < text.length() && !isMarkdown(text.charAt(first))) {
+            first++;
+        }
+        if (first == text.length()) {
+            return text;
+        }
+        StringBuilder escaped = new StringBuilder(text.length() + 8);
+        escaped.append(text, 0, first);
+        for (int i = first; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (isMarkdown(c)) {
+                escaped.append('\\');
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+
+    private static boolean isMarkdown(char c) {
+        return switch (c) {
+            case '\\', '*', '_', '~', '`', '|', '>' -> true;
+            default -> false;
+        };
     }
 }
@@ -0,0 +1,31 @@
+package com.example.discordwhitelist.listener;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
+import org.bukkit.event.Listener;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+
+/**
+ * 最終ログインの記録リスナー
+ * 記録はメモリ上に溜め、ActivityTrackerがまとめて保存する
+ */
+public class PlayerActivityListener implements Listener {
+
+    private final DiscordWhitelistPlugin plugin;
+
+    public PlayerActivityListener(DiscordWhitelistPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerJoin(PlayerJoinEvent event) {
+        plugin.getPartitions().recordSeen(event.getPlayer().getName(), System.currentTimeMillis());
+    }
+
+    @EventHandler(priority = EventPriority.MONITOR)
+    public void onPlayerQuit(PlayerQuitEvent event) {
+        plugin.getPartitions().recordSeen(event.getPlayer().getName(), System.currentTimeMillis());
+    }
+}
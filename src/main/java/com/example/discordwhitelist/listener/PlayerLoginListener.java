@@ -1,6 +1,8 @@
 package com.example.discordwhitelist.listener;
 
 import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.discord.MembershipCache;
+import com.example.discordwhitelist.manager.WhitelistManager;
 import net.kyori.adventure.text.Component;
 import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
 import org.bukkit.event.EventHandler;
@@ -8,6 +10,8 @@ import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
 
+import java.util.UUID;
+
 /**
  * プレイヤーログイン制御リスナー
  */
@@ -23,8 +27,20 @@ public class PlayerLoginListener implements Listener {
     public void onPlayerPreLogin(AsyncPlayerPreLoginEvent event) {
         String playerName = event.getName();
 
-        // ホワイトリストをチェック
-        if (!plugin.getWhitelistManager().isWhitelisted(playerName)) {
+        // ホワイトリストをチェック (名前変更済みのJava版プレイヤーはUUIDで判定、全サーバーの統合ビューを参照)
+        WhitelistManager owner = plugin.getPartitions().findOwner(playerName, event.getUniqueId());
+        if (owner != null) {
+            // Discordサーバーの参加状況をチェック (キャッシュのみ参照し、問い合わせは待たない)
+            MembershipCache.Verdict verdict = checkMembership(owner, playerName, event.getUniqueId());
+            if (verdict != MembershipCache.Verdict.MEMBER) {
+                String message = plugin.getDiscordBot().getMembershipCache().getKickMessage(verdict);
+                event.disallow(AsyncPlayerPreLoginEvent.Result.KICK_WHITELIST,
+                        LegacyComponentSerializer.legacySection().deserialize(message));
+                plugin.getLogger().info("Discordサーバーの参加状況によりブロック: " + playerName + " (" + verdict + ")");
+                return;
+            }
+            owner.renamePlayer(event.getUniqueId(), playerName);
+        } else {
             String message = plugin.getConfig().getString("messages.not-whitelisted",
                     "§cあなたはホワイトリストに登録されていません。\n§7Discordサーバーでホワイトリスト登録をしてください。");
 
@@ -36,4 +52,21 @@ public class PlayerLoginListener implements Listener {
             plugin.getLogger().info("ホワイトリスト未登録のプレイヤーをブロック: " + playerName);
         }
     }
+
+    /**
+     * 紐付けられたDiscordアカウントのサーバー参加状況を判定
+     * Discord未連携のエントリーやBot未起動の場合は許可
+     * 参加状況は discord.guild-id のサーバーのみ追跡しているため、他のサーバーのエントリーは判定しない
+     */
+    private MembershipCache.Verdict checkMembership(WhitelistManager owner, String playerName, UUID uuid) {
+        if (owner != plugin.getWhitelistManager()) {
+            return MembershipCache.Verdict.MEMBER;
+        }
+        WhitelistManager.WhitelistEntry entry = owner.getEntry(playerName, uuid);
+        if (entry == null || entry.getDiscordId().isEmpty() || plugin.getDiscordBot() == null
+                || plugin.getDiscordBot().getMembershipCache() == null) {
+            return MembershipCache.Verdict.MEMBER;
+        }
+        return plugin.getDiscordBot().getMembershipCache().check(entry.getDiscordId());
+    }
 }
@@ -0,0 +1,164 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 最終ログインの定期保存と、長期間ログインしていないエントリーの整理
+ * ログイン時刻はWhitelistManagerのメモリ上に溜め、一定間隔でまとめて保存する
+ * 整理対象は最終ログインの時刻順インデックスから取り出すため、全件は走査しない
+ */
+public class ActivityTracker {
+
+    private final DiscordWhitelistPlugin plugin;
+    private final WhitelistManager manager;
+    private final AtomicBoolean pruning = new AtomicBoolean(false);
+    private BukkitTask flushTask;
+    private BukkitTask pruneTask;
+
+    public ActivityTracker(DiscordWhitelistPlugin plugin, WhitelistManager manager) {
+        this.plugin = plugin;
+        this.manager = manager;
+    }
+
+    /**
+     * 定期実行を開始 (設定の再読み込み時にも呼び出す)
+     */
+    public void start() {
+        stop();
+
+        long flushTicks = Math.max(1, plugin.getConfig().getLong("activity.flush-seconds", 60)) * 20;
+        flushTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+                () -> plugin.getPartitions().flushLastSeen(),
+                flushTicks, flushTicks);
+
+        if (getAutoMode() != AutoMode.OFF) {
+            long intervalTicks = Math.max(1, plugin.getConfig().getLong("activity.prune.interval-hours", 24))
+                    * 60 * 60 * 20;
+            pruneTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin,
+                    () -> prune(getAutoMode() == AutoMode.APPLY), 20 * 60, intervalTicks);
+        }
+    }
+
+    /**
+     * 定期実行を停止
+     */
+    public void stop() {
+        if (flushTask != null) {
+            flushTask.cancel();
+            flushTask = null;
+        }
+        if (pruneTask != null) {
+            pruneTask.cancel();
+            pruneTask = null;
+        }
+    }
+
+    /**
+     * 非アクティブなエントリーを検出し、管理者チャンネルに通知してから削除する
+     *
+     * @param apply falseの場合は通知のみ (dry-run)
+     * @return 対象となったエントリー (実行中の場合はnull)
+     */
+    public List<WhitelistManager.WhitelistEntry> prune(boolean apply) {
+        return prune(apply, AuditJournal.SOURCE_SYSTEM);
+    }
+
+    /**
+     * 非アクティブなエントリーを検出し、管理者チャンネルに通知してから削除する
+     *
+     * @param apply  falseの場合は通知のみ (dry-run)
+     * @param source 実行した者 (監査ログ用)
+     * @return 対象となったエントリー (実行中の場合はnull)
+     */
+    public List<WhitelistManager.WhitelistEntry> prune(boolean apply, String source) {
+        if (!pruning.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            int days = getInactiveDays();
+            long cutoff = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(days);
+            List<WhitelistManager.WhitelistEntry> inactive = manager.getInactive(cutoff);
+
+            plugin.getLogger().info("非アクティブなエントリー (" + days + "日以上): " + inactive.size() + "件"
+                    + (apply ? "" : " (dry-run)"));
+            if (inactive.isEmpty()) {
+                return inactive;
+            }
+
+            report(inactive, days, apply);
+            if (!apply) {
+                return inactive;
+            }
+
+            List<WhitelistManager.WhitelistEntry> removed = manager.withSource(source,
+                    () -> manager.removeInactive(inactive, cutoff));
+            plugin.getLogger().info("非アクティブなエントリーを削除しました: " + removed.size() + "件");
+            return removed;
+        } finally {
+            pruning.set(false);
+        }
+    }
+
+    /**
+     * 対象のエントリーを管理者チャンネルに通知
+     */
+    private void report(List<WhitelistManager.WhitelistEntry> inactive, int days, boolean apply) {
+        if (plugin.getDiscordBot() == null) {
+            return;
+        }
+
+        StringBuilder sb = new StringBuilder();
+        sb.append(apply ? "🧹 **非アクティブなエントリーを削除します**" : "🔍 **非アクティブなエントリー (dry-run)**")
+                .append(" (").append(days).append("日以上ログインなし: ").append(inactive.size()).append("件)\n");
+
+        int count = 0;
+        for (WhitelistManager.WhitelistEntry entry : inactive) {
+            if (count >= 20) {
+                sb.append("... 他 ").append(inactive.size() - 20).append("件\n");
+                break;
+            }
+            sb.append("`").append(entry.getPlayerName()).append("`");
+            if (!entry.getDiscordId().isEmpty()) {
+                sb.append(" (<@").append(entry.getDiscordId()).append(">)");
+            }
+            if (entry.getLastSeen() > 0) {
+                sb.append(" 最終ログイン: <t:").append(entry.getLastSeen() / 1000).append(":R>");
+            } else {
+                sb.append(" 最終ログイン: 記録なし");
+            }
+            sb.append("\n");
+            count++;
+        }
+        plugin.getDiscordBot().sendAdminMessage(sb.toString());
+    }
+
+    /**
+     * 非アクティブとみなす日数
+     */
+    public int getInactiveDays() {
+        return Math.max(1, plugin.getConfig().getInt("activity.prune.inactive-days", 90));
+    }
+
+    private AutoMode getAutoMode() {
+        String mode = plugin.getConfig().getString("activity.prune.auto", "off");
+        return switch (mode.toLowerCase()) {
+            case "dry-run" -> AutoMode.DRY_RUN;
+            case "apply" -> AutoMode.APPLY;
+            default -> AutoMode.OFF;
+        };
+    }
+
+    /**
+     * 定期実行の動作
+     */
+    private enum AutoMode {
+        OFF,
+        DRY_RUN,
+        APPLY
+    }
+}
@@ -0,0 +1,381 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * 承認待ちの登録 (approval.enabled が有効な場合、Discordからの登録はスタッフが承認するまでここに保持する)
+ * ホワイトリストとは別に pending.yml に保存し、変更のたびではなく一定間隔で変更がある場合のみ書き出す
+ * 同じユーザーの同じ版の申請は新しいもので置き換える
+ * 承認はDiscordサーバー (パーティション) ごとにまとめて適用し、ホワイトリストの保存は1回だけ行う
+ */
+public class ApprovalQueue {
+
+    // 保存の間隔 (tick)
+    private static final long SAVE_INTERVAL_TICKS = 5 * 20;
+
+    private final DiscordWhitelistPlugin plugin;
+    private final File file;
+
+    // パーティションのキー ("" はプライマリ) -> 申請ID -> 申請 (申請順)
+    private final Map<String, TreeMap<Long, Request>> pending = new HashMap<>();
+
+    // パーティションのキー + Discord ID + 版 -> 申請ID
+    private final Map<String, Long> byUser = new HashMap<>();
+
+    private long nextId = 1;
+    private boolean dirty;
+    private BukkitTask saveTask;
+
+    public ApprovalQueue(DiscordWhitelistPlugin plugin) {
+        this.plugin = plugin;
+        this.file = new File(plugin.getDataFolder(), "pending.yml");
+        load();
+    }
+
+    /**
+     * 承認が必要かどうか
+     */
+    public boolean isEnabled() {
+        return plugin.getConfig().getBoolean("approval.enabled", false);
+    }
+
+    /**
+     * 定期保存を開始
+     */
+    public void start() {
+        stop();
+        saveTask = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::save,
+                SAVE_INTERVAL_TICKS, SAVE_INTERVAL_TICKS);
+    }
+
+    /**
+     * 定期保存を停止し、未保存の変更を書き出す
+     */
+    public void stop() {
+        if (saveTask != null) {
+            saveTask.cancel();
+            saveTask = null;
+        }
+        save();
+    }
+
+    /**
+     * 申請を追加 (同じユーザーの同じ版の申請は置き換える)
+     *
+     * @param partition 登録先
+     * @return 追加した申請
+     */
+    public synchronized Request submit(WhitelistPartitions.Partition partition, String playerName, UUID uuid,
+            String discordId, boolean bedrock) {
+        String key = keyOf(partition);
+        Request request = new Request(nextId++, key, playerName, uuid, discordId, bedrock,
+                System.currentTimeMillis());
+        Long previous = byUser.put(userKey(key, discordId, bedrock), request.id);
+        TreeMap<Long, Request> requests = pending.computeIfAbsent(key, k -> new TreeMap<>());
+        if (previous != null) {
+            requests.remove(previous);
+        }
+        requests.put(request.id, request);
+        dirty = true;
+        return request;
+    }
+
+    /**
+     * 承認待ちの件数
+     */
+    public synchronized int size(WhitelistPartitions.Partition partition) {
+        TreeMap<Long, Request> requests = pending.get(keyOf(partition));
+        return requests != null ? requests.size() : 0;
+    }
+
+    /**
+     * 全パーティションの承認待ちの件数
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (TreeMap<Long, Request> requests : pending.values()) {
+            size += requests.size();
+        }
+        return size;
+    }
+
+    /**
+     * 申請順の1ページ分を取得
+     *
+     * @param page     ページ番号 (0から、範囲外の場合は最後のページ)
+     * @param pageSize 1ページの件数
+     */
+    public synchronized Page page(WhitelistPartitions.Partition partition, int page, int pageSize) {
+        TreeMap<Long, Request> requests = pending.get(keyOf(partition));
+        int total = requests != null ? requests.size() : 0;
+        int pages = Math.max(1, (total + pageSize - 1) / pageSize);
+        int current = Math.max(0, Math.min(page, pages - 1));
+
+        List<Request> items = new ArrayList<>(pageSize);
+        if (requests != null) {
+            int skip = current * pageSize;
+            for (Request request : requests.values()) {
+                if (skip-- > 0) {
+                    continue;
+                }
+                items.add(request);
+                if (items.size() >= pageSize) {
+                    break;
+                }
+            }
+        }
+        return new Page(items, current, pages, total);
+    }
+
+    /**
+     * 申請を承認し、ホワイトリストにまとめて登録 (保存は1回)
+     * 既に処理された申請は無視する
+     *
+     * @param source 承認したスタッフ (監査ログ用、AuditJournal.discordSource())
+     * @return 承認した申請 -> 登録結果 (申請順)
+     */
+    public Map<Request, WhitelistManager.AddResult> approve(WhitelistPartitions.Partition partition,
+            Collection<Long> ids, String source) {
+        List<Request> claimed = claim(partition, ids);
+        Map<Request, WhitelistManager.AddResult> results = new LinkedHashMap<>();
+        if (claimed.isEmpty()) {
+            return results;
+        }
+
+        WhitelistManager manager = partition.getManager();
+        manager.withSource(source, () -> {
+            manager.batch(() -> {
+                for (Request request : claimed) {
+                    results.put(request, manager.registerPlayer(request.playerName, request.discordId,
+                            request.bedrock, request.uuid));
+                }
+            });
+            return null;
+        });
+        return results;
+    }
+
+    /**
+     * 申請を却下
+     *
+     * @return 却下した申請 (既に処理された申請は含まない)
+     */
+    public List<Request> reject(WhitelistPartitions.Partition partition, Collection<Long> ids) {
+        return claim(partition, ids);
+    }
+
+    /**
+     * 申請を取り出す (同時に承認/却下された場合に二重に処理しない)
+     */
+    private synchronized List<Request> claim(WhitelistPartitions.Partition partition, Collection<Long> ids) {
+        List<Request> claimed = new ArrayList<>();
+        TreeMap<Long, Request> requests = pending.get(keyOf(partition));
+        if (requests == null) {
+            return claimed;
+        }
+        for (long id : ids) {
+            Request request = requests.remove(id);
+            if (request != null) {
+                byUser.remove(userKey(request.partitionKey, request.discordId, request.bedrock));
+                claimed.add(request);
+            }
+        }
+        if (requests.isEmpty()) {
+            pending.remove(keyOf(partition));
+        }
+        if (!claimed.isEmpty()) {
+            claimed.sort((a, b) -> Long.compare(a.id, b.id));
+            dirty = true;
+        }
+        return claimed;
+    }
+
+    private static String keyOf(WhitelistPartitions.Partition partition) {
+        return partition.getGuildId() != null ? partition.getGuildId() : "";
+    }
+
+    private static String userKey(String partitionKey, String discordId, boolean bedrock) {
+        return partitionKey + ":" + discordId + ":" + (bedrock ? "b" : "j");
+    }
+
+    /**
+     * pending.yml から読み込み
+     */
+    private void load() {
+        if (!file.exists()) {
+            return;
+        }
+        FileConfiguration config = YamlConfiguration.loadConfiguration(file);
+        ConfigurationSection section = config.getConfigurationSection("requests");
+        synchronized (this) {
+            nextId = Math.max(1, config.getLong("next-id", 1));
+            if (section == null) {
+                return;
+            }
+            for (String key : section.getKeys(false)) {
+                ConfigurationSection entry = section.getConfigurationSection(key);
+                long id;
+                try {
+                    id = Long.parseLong(key);
+                } catch (NumberFormatException e) {
+                    id = -1;
+                }
+                if (entry == null || id <= 0 || entry.getString("player", "").isEmpty()) {
+                    plugin.getLogger().warning("pending.yml の不正な申請を無視します: " + key);
+                    continue;
+                }
+                UUID uuid = null;
+                String uuidText = entry.getString("uuid", "");
+                if (!uuidText.isEmpty()) {
+                    try {
+                        uuid = UUID.fromString(uuidText);
+                    } catch (IllegalArgumentException e) {
+                        plugin.getLogger().warning("pending.yml のUUIDが不正です: " + uuidText);
+                    }
+                }
+                Request request = new Request(id, entry.getString("guild", ""), entry.getString("player"), uuid,
+                        entry.getString("discord-id", ""), entry.getBoolean("bedrock", false),
+                        entry.getLong("submitted-at", 0));
+                pending.computeIfAbsent(request.partitionKey, k -> new TreeMap<>()).put(id, request);
+                byUser.put(userKey(request.partitionKey, request.discordId, request.bedrock), id);
+                nextId = Math.max(nextId, id + 1);
+            }
+        }
+        int size = size();
+        if (size > 0) {
+            plugin.getLogger().info("承認待ちの登録: " + size + "件");
+        }
+    }
+
+    /**
+     * pending.yml に保存 (変更がある場合のみ)
+     */
+    private void save() {
+        FileConfiguration config = new YamlConfiguration();
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            config.set("next-id", nextId);
+            for (TreeMap<Long, Request> requests : pending.values()) {
+                for (Request request : requests.values()) {
+                    String path = "requests." + request.id;
+                    config.set(path + ".guild", request.partitionKey);
+                    config.set(path + ".player", request.playerName);
+                    config.set(path + ".uuid", request.uuid != null ? request.uuid.toString() : "");
+                    config.set(path + ".discord-id", request.discordId);
+                    config.set(path + ".bedrock", request.bedrock);
+                    config.set(path + ".submitted-at", request.submittedAt);
+                }
+            }
+        }
+
+        try {
+            config.save(file);
+        } catch (IOException e) {
+            plugin.getLogger().warning("pending.ymlの保存に失敗しました: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 登録の申請
+     */
+    public static class Request {
+        private final long id;
+        private final String partitionKey;
+        private final String playerName;
+        private final UUID uuid;
+        private final String discordId;
+        private final boolean bedrock;
+        private final long submittedAt;
+
+        Request(long id, String partitionKey, String playerName, UUID uuid, String discordId, boolean bedrock,
+                long submittedAt) {
+            this.id = id;
+            this.partitionKey = partitionKey;
+            this.playerName = playerName;
+            this.uuid = uuid;
+            this.discordId = discordId;
+            this.bedrock = bedrock;
+            this.submittedAt = submittedAt;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        public String getDiscordId() {
+            return discordId;
+        }
+
+        public boolean isBedrock() {
+            return bedrock;
+        }
+
+        /**
+         * 申請した時刻 (エポックミリ秒)
+         */
+        public long getSubmittedAt() {
+            return submittedAt;
+        }
+    }
+
+    /**
+     * 承認待ちの一覧の1ページ
+     */
+    public static class Page {
+        private final List<Request> requests;
+        private final int page;
+        private final int pages;
+        private final int total;
+
+        Page(List<Request> requests, int page, int pages, int total) {
+            this.requests = requests;
+            this.page = page;
+            this.pages = pages;
+            this.total = total;
+        }
+
+        public List<Request> getRequests() {
+            return requests;
+        }
+
+        /**
+         * ページ番号 (0から)
+         */
+        public int getPage() {
+            return page;
+        }
+
+        public int getPages() {
+            return pages;
+        }
+
+        /**
+         * 承認待ちの総数
+         */
+        public int getTotal() {
+            return total;
+        }
+    }
+}
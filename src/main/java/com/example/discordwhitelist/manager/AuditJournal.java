@@ -0,0 +1,633 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * ホワイトリストの変更履歴 (監査ログ)
+ * WhitelistManagerの変更を誰が行ったかと共にロックのないキューに積み、非同期タスクが audit/ フォルダの
+ * audit-<番号>.log に追記する (一定の大きさで次のファイルに切り替え、古いファイルから削除)
+ * 各ファイルには プレイヤー名/Discord ID → 行の位置 の索引 audit-<番号>.idx を併せて追記し、
+ * 履歴の検索は索引から該当する行のみを読む (全てのファイルを走査しない)
+ */
+public class AuditJournal {
+
+    // 変更を行った者 (自動処理の場合)
+    public static final String SOURCE_SYSTEM = "system";
+
+    private static final String DISCORD_PREFIX = "discord:";
+    private static final String MINECRAFT_PREFIX = "minecraft:";
+
+    private final DiscordWhitelistPlugin plugin;
+    private final File dir;
+
+    // 書き込み待ちの記録 (変更を行うスレッドはロックを取らずに追加する)
+    private final ConcurrentLinkedQueue<Record> queue = new ConcurrentLinkedQueue<>();
+
+    // ファイルと索引の排他
+    private final Object lock = new Object();
+
+    // 索引のキー ("p:" + 小文字のプレイヤー名 / "d:" + Discord ID) -> 行の位置 (古い順)
+    private final Map<String, List<Long>> index = new HashMap<>();
+
+    // ファイル番号 -> 大きさ
+    private final TreeMap<Long, Long> segments = new TreeMap<>();
+
+    private volatile boolean enabled;
+    private BukkitTask task;
+
+    public AuditJournal(DiscordWhitelistPlugin plugin) {
+        this.plugin = plugin;
+        this.dir = new File(plugin.getDataFolder(), "audit");
+    }
+
+    /**
+     * 既存のファイルと索引を読み込み、定期的な書き込みを開始 (設定の再読み込み時にも呼び出す)
+     */
+    public void start() {
+        stop();
+        enabled = plugin.getConfig().getBoolean("audit.enabled", true);
+        if (!enabled) {
+            return;
+        }
+        synchronized (lock) {
+            open();
+        }
+        if (!enabled) {
+            return;
+        }
+        task = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::flush, 20L, 20L);
+    }
+
+    /**
+     * 定期的な書き込みを停止し、残りを書き込む
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+        flush();
+    }
+
+    /**
+     * 変更を記録 (ファイルへの書き込みは非同期)
+     *
+     * @param action     変更の種類
+     * @param partition  ホワイトリストの名前
+     * @param playerName 対象のプレイヤー名
+     * @param previous   変更前のプレイヤー名 (名前の変更以外は空)
+     * @param discordId  対象のエントリーのDiscord ID (なしの場合は空)
+     * @param source     変更を行った者 (discordSource() / senderSource() / SOURCE_SYSTEM)
+     * @param detail     補足 (期限など)
+     */
+    public void record(Action action, String partition, String playerName, String previous, String discordId,
+            String source, String detail) {
+        if (enabled) {
+            queue.add(new Record(System.currentTimeMillis(), action, partition, playerName, previous, discordId,
+                    source, detail));
+        }
+    }
+
+    /**
+     * 書き込み待ちの記録をファイルに追記
+     */
+    public void flush() {
+        if (queue.isEmpty()) {
+            return;
+        }
+        synchronized (lock) {
+            List<Record> records = new ArrayList<>();
+            Record record;
+            while ((record = queue.poll()) != null) {
+                records.add(record);
+            }
+            try {
+                append(records);
+            } catch (IOException e) {
+                plugin.getLogger().severe("監査ログの書き込みに失敗しました: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * プレイヤー名、Discord ID またはメンションで履歴を検索
+     * 統合版のプレフィックスを省略したプレイヤー名も検索する
+     */
+    public History history(String target, int limit) {
+        String trimmed = target.trim();
+        String discordId = WhitelistManager.parseDiscordId(trimmed);
+        if (discordId != null) {
+            return historyOfDiscordUser(discordId, limit);
+        }
+        History history = historyOfPlayer(trimmed, limit);
+        String prefix = plugin.getConfig().getString("bedrock.prefix", ".");
+        if (history.getTotal() == 0 && !prefix.isEmpty() && !trimmed.startsWith(prefix)) {
+            history = historyOfPlayer(prefix + trimmed, limit);
+        }
+        return history;
+    }
+
+    /**
+     * プレイヤーの履歴 (変更前の名前での記録を含む、新しい順)
+     */
+    public History historyOfPlayer(String playerName, int limit) {
+        return lookup("p:" + playerName.toLowerCase(), limit);
+    }
+
+    /**
+     * Discordユーザーの履歴 (ユーザーのエントリーへの変更と、ユーザーが行った変更、新しい順)
+     */
+    public History historyOfDiscordUser(String discordId, int limit) {
+        return lookup("d:" + discordId, limit);
+    }
+
+    private History lookup(String key, int limit) {
+        flush();
+        synchronized (lock) {
+            List<Long> positions = index.get(key);
+            List<Record> records = new ArrayList<>();
+            if (positions == null) {
+                return new History(records, 0);
+            }
+
+            Map<Long, RandomAccessFile> files = new HashMap<>();
+            try {
+                for (int i = positions.size() - 1; i >= 0 && records.size() < limit; i--) {
+                    long position = positions.get(i);
+                    long segment = position >>> 32;
+                    RandomAccessFile file = files.get(segment);
+                    if (file == null) {
+                        file = new RandomAccessFile(logFile(segment), "r");
+                        files.put(segment, file);
+                    }
+                    file.seek(position & 0xFFFFFFFFL);
+                    Record record = Record.parse(readLine(file));
+                    if (record != null) {
+                        records.add(record);
+                    }
+                }
+            } catch (IOException e) {
+                plugin.getLogger().warning("監査ログの読み込みに失敗しました: " + e.getMessage());
+            } finally {
+                for (RandomAccessFile file : files.values()) {
+                    try {
+                        file.close();
+                    } catch (IOException ignored) {
+                        // 読み込み専用のため無視
+                    }
+                }
+            }
+            return new History(records, positions.size());
+        }
+    }
+
+    /**
+     * 既存のファイルの一覧と索引を読み込む
+     * 最新のファイルは途中で停止した場合に備え、索引に含まれない末尾の行を索引に追加する
+     * フォルダを作成できない場合は記録を無効にする
+     */
+    private void open() {
+        index.clear();
+        segments.clear();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            plugin.getLogger().severe("監査ログのフォルダを作成できません: " + dir.getPath());
+            enabled = false;
+            return;
+        }
+
+        File[] files = dir.listFiles((d, name) -> name.startsWith("audit-") && name.endsWith(".log"));
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    segments.put(Long.parseLong(name.substring("audit-".length(), name.length() - ".log".length())),
+                            file.length());
+                } catch (NumberFormatException ignored) {
+                    // 手動で置かれたファイルは無視
+                }
+            }
+        }
+
+        for (long segment : segments.keySet()) {
+            boolean latest = segment == segments.lastKey();
+            try {
+                if (latest) {
+                    segments.put(segment, truncateTornTail(logFile(segment)));
+                    truncateTornTail(indexFile(segment));
+                }
+                long indexedEnd = loadIndex(segment);
+                if (indexedEnd < segments.get(segment)) {
+                    // 索引がない、または索引の書き込み前に停止した
+                    reindex(segment, indexedEnd);
+                }
+            } catch (IOException e) {
+                plugin.getLogger().warning("監査ログの索引を読み込めません (" + logFile(segment).getName() + "): "
+                        + e.getMessage());
+            }
+        }
+        if (segments.isEmpty()) {
+            segments.put(1L, 0L);
+        }
+    }
+
+    /**
+     * 索引ファイルを読み込む
+     *
+     * @return 索引に含まれる最後の行の終端 (ファイル内の位置)
+     */
+    private long loadIndex(long segment) throws IOException {
+        File file = indexFile(segment);
+        if (!file.exists()) {
+            return 0;
+        }
+        long end = 0;
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // キー \t 行の位置 \t 行の長さ
+                String[] fields = line.split("\t");
+                if (fields.length < 3) {
+                    continue;
+                }
+                try {
+                    long offset = Long.parseLong(fields[1]);
+                    addToIndex(fields[0], (segment << 32) | offset);
+                    end = Math.max(end, offset + Long.parseLong(fields[2]));
+                } catch (NumberFormatException ignored) {
+                    // 壊れた行は無視
+                }
+            }
+        }
+        return end;
+    }
+
+    /**
+     * ファイルの指定位置以降の行を索引に追加
+     */
+    private void reindex(long segment, long from) throws IOException {
+        int count = 0;
+        try (InputStream in = new BufferedInputStream(new FileInputStream(logFile(segment)));
+                OutputStream out = new BufferedOutputStream(new FileOutputStream(indexFile(segment), true))) {
+            in.skipNBytes(from);
+            long offset = from;
+            ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+            int b;
+            while ((b = in.read()) != -1) {
+                if (b != '\n') {
+                    line.write(b);
+                    continue;
+                }
+                long length = line.size() + 1;
+                Record record = Record.parse(line.toString(StandardCharsets.UTF_8));
+                if (record != null) {
+                    writeIndex(out, segment, record, offset, length);
+                    count++;
+                }
+                offset += length;
+                line.reset();
+            }
+        }
+        if (count > 0) {
+            plugin.getLogger().info("監査ログの索引を再構築しました: " + logFile(segment).getName() + " (" + count + "件)");
+        }
+    }
+
+    private void append(List<Record> records) throws IOException {
+        long maxBytes = Math.max(16, plugin.getConfig().getLong("audit.max-file-kb", 1024)) * 1024;
+        int i = 0;
+        while (i < records.size()) {
+            long segment = segments.lastKey();
+            long size = segments.get(segment);
+            if (size >= maxBytes) {
+                rotate(segment + 1);
+                continue;
+            }
+
+            try (OutputStream log = new BufferedOutputStream(new FileOutputStream(logFile(segment), true));
+                    OutputStream idx = new BufferedOutputStream(new FileOutputStream(indexFile(segment), true))) {
+                // 本文を先に書き、索引は本文の書き込み後に書く (停止時は起動時に本文から補う)
+                List<long[]> written = new ArrayList<>();
+                int start = i;
+                while (i < records.size() && size < maxBytes) {
+                    byte[] line = records.get(i).toLine().getBytes(StandardCharsets.UTF_8);
+                    log.write(line);
+                    written.add(new long[] { size, line.length });
+                    size += line.length;
+                    i++;
+                }
+                log.flush();
+                for (int j = 0; j < written.size(); j++) {
+                    writeIndex(idx, segment, records.get(start + j), written.get(j)[0], written.get(j)[1]);
+                }
+            }
+            segments.put(segment, size);
+        }
+    }
+
+    /**
+     * 次のファイルに切り替え、上限を超えた古いファイルを削除
+     */
+    private void rotate(long next) {
+        segments.put(next, 0L);
+        int maxFiles = Math.max(1, plugin.getConfig().getInt("audit.max-files", 30));
+        while (segments.size() > maxFiles) {
+            long oldest = segments.pollFirstEntry().getKey();
+            logFile(oldest).delete();
+            indexFile(oldest).delete();
+            Iterator<List<Long>> it = index.values().iterator();
+            while (it.hasNext()) {
+                List<Long> positions = it.next();
+                positions.removeIf(position -> (position >>> 32) == oldest);
+                if (positions.isEmpty()) {
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private void writeIndex(OutputStream out, long segment, Record record, long offset, long length)
+            throws IOException {
+        for (String key : record.keys()) {
+            addToIndex(key, (segment << 32) | offset);
+            out.write((key + "\t" + offset + "\t" + length + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private void addToIndex(String key, long position) {
+        List<Long> positions = index.computeIfAbsent(key, k -> new ArrayList<>());
+        // 同じ行が同じキーで重複して登録されないようにする (変更前後の名前が同じ場合など)
+        if (positions.isEmpty() || positions.get(positions.size() - 1).longValue() != position) {
+            positions.add(position);
+        }
+    }
+
+    /**
+     * 書き込み途中で停止した末尾の行を切り詰める
+     *
+     * @return 切り詰めた後の大きさ
+     */
+    private static long truncateTornTail(File file) throws IOException {
+        if (!file.exists()) {
+            return 0;
+        }
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            long length = raf.length();
+            long end = length;
+            while (end > 0) {
+                raf.seek(end - 1);
+                if (raf.read() == '\n') {
+                    break;
+                }
+                end--;
+            }
+            if (end < length) {
+                raf.setLength(end);
+            }
+            return end;
+        }
+    }
+
+    /**
+     * 1行を読む (UTF-8、行末の改行は含まない)
+     */
+    private static String readLine(RandomAccessFile file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = file.read()) != -1 && b != '\n') {
+            bytes.write(b);
+        }
+        if (b == -1 && bytes.size() == 0) {
+            return null;
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    private File logFile(long segment) {
+        return new File(dir, "audit-" + segment + ".log");
+    }
+
+    private File indexFile(long segment) {
+        return new File(dir, "audit-" + segment + ".idx");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Discordユーザーによる変更
+     */
+    public static String discordSource(String discordId) {
+        return DISCORD_PREFIX + discordId;
+    }
+
+    /**
+     * ゲーム内のコマンド (プレイヤーまたはコンソール) による変更
+     */
+    public static String senderSource(String senderName) {
+        return MINECRAFT_PREFIX + senderName;
+    }
+
+    /**
+     * 変更を行った者の表示
+     *
+     * @param mention Discord向け (メンション形式) にするかどうか
+     */
+    public static String formatSource(String source, boolean mention) {
+        if (source.startsWith(DISCORD_PREFIX)) {
+            String id = source.substring(DISCORD_PREFIX.length());
+            return mention ? "<@" + id + ">" : "Discord " + id;
+        }
+        if (source.startsWith(MINECRAFT_PREFIX)) {
+            return source.substring(MINECRAFT_PREFIX.length());
+        }
+        return "自動";
+    }
+
+    /**
+     * 変更の種類
+     */
+    public enum Action {
+        ADD("追加"),
+        UPDATE("変更"),
+        REMOVE("削除"),
+        RENAME("名前変更"),
+        EXPIRE("期限切れ"),
+        PRUNE("整理"),
+        DISABLE("無効化"),
+        ENABLE("有効化"),
+        RESTORE("復元");
+
+        private final String label;
+
+        Action(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * 1件の記録 (ファイルにはタブ区切りの1行で保存)
+     */
+    public static class Record {
+        private final long time;
+        private final Action action;
+        private final String partition;
+        private final String playerName;
+        private final String previous;
+        private final String discordId;
+        private final String source;
+        private final String detail;
+
+        Record(long time, Action action, String partition, String playerName, String previous, String discordId,
+                String source, String detail) {
+            this.time = time;
+            this.action = action;
+            this.partition = clean(partition);
+            this.playerName = clean(playerName);
+            this.previous = clean(previous);
+            this.discordId = clean(discordId);
+            this.source = source == null || source.isEmpty() ? SOURCE_SYSTEM : clean(source);
+            this.detail = clean(detail);
+        }
+
+        private static String clean(String value) {
+            if (value == null) {
+                return "";
+            }
+            return value.replace('\t', ' ').replace('\n', ' ').replace('\r', ' ');
+        }
+
+        String toLine() {
+            return time + "\t" + action.name() + "\t" + partition + "\t" + playerName + "\t" + previous + "\t"
+                    + discordId + "\t" + source + "\t" + detail + "\n";
+        }
+
+        static Record parse(String line) {
+            if (line == null) {
+                return null;
+            }
+            String[] fields = line.split("\t", -1);
+            if (fields.length < 8) {
+                return null;
+            }
+            try {
+                return new Record(Long.parseLong(fields[0]), Action.valueOf(fields[1]), fields[2], fields[3],
+                        fields[4], fields[5], fields[6], fields[7]);
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+        }
+
+        /**
+         * 索引のキー (プレイヤー名、変更前の名前、エントリーのDiscord ID、変更を行ったDiscordユーザー)
+         */
+        List<String> keys() {
+            List<String> keys = new ArrayList<>(4);
+            if (!playerName.isEmpty()) {
+                keys.add("p:" + playerName.toLowerCase());
+            }
+            if (!previous.isEmpty() && !previous.equalsIgnoreCase(playerName)) {
+                keys.add("p:" + previous.toLowerCase());
+            }
+            if (!discordId.isEmpty()) {
+                keys.add("d:" + discordId);
+            }
+            if (source.startsWith(DISCORD_PREFIX) && !source.substring(DISCORD_PREFIX.length()).equals(discordId)) {
+                keys.add("d:" + source.substring(DISCORD_PREFIX.length()));
+            }
+            return keys;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public Action getAction() {
+            return action;
+        }
+
+        /**
+         * ホワイトリストの名前 (プライマリは "whitelist")
+         */
+        public String getPartition() {
+            return partition;
+        }
+
+        public String getPlayerName() {
+            return playerName;
+        }
+
+        /**
+         * 変更前のプレイヤー名 (名前の変更以外は空)
+         */
+        public String getPrevious() {
+            return previous;
+        }
+
+        public String getDiscordId() {
+            return discordId;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public String getDetail() {
+            return detail;
+        }
+    }
+
+    /**
+     * 履歴の検索結果
+     */
+    public static class History {
+        private final List<Record> records;
+        private final int total;
+
+        History(List<Record> records, int total) {
+            this.records = records;
+            this.total = total;
+        }
+
+        /**
+         * 新しい順の記録 (上限まで)
+         */
+        public List<Record> getRecords() {
+            return records;
+        }
+
+        /**
+         * 該当する記録の総数
+         */
+        public int getTotal() {
+            return total;
+        }
+    }
+}
@@ -0,0 +1,507 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ホワイトリストの差分バックアップと時点指定の復元
+ * 一定間隔でベース (全エントリー) を取り、その後の変更はWhitelistManagerの変更ログから差分として書き出す
+ * どちらもgzipで圧縮し、backups/<ベースの時刻>/ に base.gz と delta-<時刻>.gz として保存する
+ * 取得時のロックはエントリーのコピーと変更ログの差し替えのみで、圧縮と書き込みはロックの外で行う
+ * 最終ログイン時刻の更新は差分に含めず、次のベースで保存する
+ */
+public class BackupManager {
+
+    private final DiscordWhitelistPlugin plugin;
+    private final WhitelistManager manager;
+    private final File backupDir;
+
+    // ファイル操作の排他 (WhitelistManagerのロックとは別)
+    private final Object lock = new Object();
+
+    private BukkitTask task;
+
+    // 現在の差分の書き出し先 (ベース未取得の場合はnull)
+    private File currentChain;
+    private long lastBaseAt;
+
+    public BackupManager(DiscordWhitelistPlugin plugin, WhitelistManager manager) {
+        this.plugin = plugin;
+        this.manager = manager;
+        this.backupDir = new File(plugin.getDataFolder(), "backups");
+    }
+
+    /**
+     * 定期バックアップを開始 (設定の再読み込み時にも呼び出す)
+     * 読み込み直したホワイトリストは外部で編集されている可能性があるため、最初に必ずベースを取り直す
+     */
+    public void start() {
+        stop();
+        synchronized (lock) {
+            currentChain = null;
+            lastBaseAt = 0;
+        }
+        boolean enabled = plugin.getConfig().getBoolean("backup.enabled", true);
+        manager.setRecordMutations(enabled);
+        if (!enabled) {
+            return;
+        }
+
+        long intervalTicks = Math.max(1, plugin.getConfig().getLong("backup.interval-minutes", 5)) * 60 * 20;
+        task = plugin.getServer().getScheduler().runTaskTimerAsynchronously(plugin, this::tick, 20L, intervalTicks);
+    }
+
+    /**
+     * 定期バックアップを停止 (未書き出しの差分は flush() で書き出す)
+     */
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    private void tick() {
+        long baseInterval = TimeUnit.HOURS.toMillis(
+                Math.max(1, plugin.getConfig().getLong("backup.base-interval-hours", 24)));
+        synchronized (lock) {
+            if (currentChain == null || System.currentTimeMillis() - lastBaseAt >= baseInterval) {
+                takeBase();
+            } else {
+                flush();
+            }
+        }
+    }
+
+    /**
+     * 未書き出しの変更を差分として書き出す
+     */
+    public void flush() {
+        synchronized (lock) {
+            if (currentChain == null) {
+                // ベース未取得の変更は次のベースに含まれる
+                return;
+            }
+            writeDelta(currentChain, manager.drainMutations());
+        }
+    }
+
+    /**
+     * ベースを取り直し、新しい差分の系列を開始する
+     */
+    public void takeBase() {
+        synchronized (lock) {
+            WhitelistManager.BackupCapture capture = manager.captureBackup();
+
+            // ベースより前の変更は古い系列の最後の差分にする
+            if (currentChain != null) {
+                writeDelta(currentChain, capture.getMutations());
+            }
+
+            File chain = new File(backupDir, String.valueOf(capture.getTime()));
+            List<String> lines = new ArrayList<>();
+            lines.add("B\t" + capture.getTime() + "\t" + capture.getEntries().size());
+            for (WhitelistManager.WhitelistEntry entry : capture.getEntries()) {
+                lines.add(Mutation.put(capture.getTime(), entry).toLine());
+            }
+            if (!chain.mkdirs() && !chain.isDirectory()) {
+                plugin.getLogger().severe("バックアップのディレクトリを作成できません: " + chain.getPath());
+                return;
+            }
+            if (!writeLines(new File(chain, "base.gz"), lines)) {
+                chain.delete();
+                return;
+            }
+
+            currentChain = chain;
+            lastBaseAt = capture.getTime();
+            purgeExpired();
+        }
+    }
+
+    private void writeDelta(File chain, List<Mutation> mutations) {
+        if (mutations.isEmpty()) {
+            return;
+        }
+        List<String> lines = new ArrayList<>(mutations.size());
+        for (Mutation mutation : mutations) {
+            lines.add(mutation.toLine());
+        }
+        long last = mutations.get(mutations.size() - 1).time;
+        File file = new File(chain, "delta-" + last + ".gz");
+        for (int i = 1; file.exists(); i++) {
+            file = new File(chain, "delta-" + last + "-" + i + ".gz");
+        }
+        writeLines(file, lines);
+    }
+
+    /**
+     * 一時ファイルに書き込んでから置き換える (書き込み途中で停止しても壊れたファイルを残さない)
+     */
+    private boolean writeLines(File file, List<String> lines) {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(tmp.toPath())), StandardCharsets.UTF_8))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } catch (IOException e) {
+            plugin.getLogger().severe("バックアップの書き込みに失敗しました: " + e.getMessage());
+            tmp.delete();
+            return false;
+        }
+        try {
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            plugin.getLogger().severe("バックアップの書き込みに失敗しました: " + e.getMessage());
+            tmp.delete();
+            return false;
+        }
+    }
+
+    /**
+     * 保持期間を過ぎた系列を削除
+     * 系列は次のベースの時刻まで有効なため、次のベースが保持期間内にある系列は残す
+     */
+    private void purgeExpired() {
+        long cutoff = System.currentTimeMillis()
+                - TimeUnit.DAYS.toMillis(Math.max(1, plugin.getConfig().getLong("backup.retention-days", 14)));
+        List<Long> chains = listChains();
+        for (int i = 0; i + 1 < chains.size(); i++) {
+            if (chains.get(i + 1) >= cutoff) {
+                break;
+            }
+            File chain = new File(backupDir, String.valueOf(chains.get(i)));
+            File[] files = chain.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            if (chain.delete()) {
+                plugin.getLogger().info("保持期間を過ぎたバックアップを削除しました: " + chain.getName());
+            }
+        }
+    }
+
+    /**
+     * 系列 (ベースの時刻) を古い順に取得
+     */
+    private List<Long> listChains() {
+        List<Long> chains = new ArrayList<>();
+        File[] dirs = backupDir.listFiles(File::isDirectory);
+        if (dirs == null) {
+            return chains;
+        }
+        for (File dir : dirs) {
+            try {
+                chains.add(Long.parseLong(dir.getName()));
+            } catch (NumberFormatException ignored) {
+                // バックアップ以外のディレクトリ
+            }
+        }
+        chains.sort(null);
+        return chains;
+    }
+
+    /**
+     * 復元できる最も古い時刻 (バックアップがない場合は0)
+     */
+    public long getOldestRestorable() {
+        synchronized (lock) {
+            List<Long> chains = listChains();
+            return chains.isEmpty() ? 0 : chains.get(0);
+        }
+    }
+
+    /**
+     * 指定時刻の状態を再構築し、現在との差分を求める
+     *
+     * @param time 復元する時刻 (エポックミリ秒)
+     * @return 復元の内容 (その時刻のバックアップがない場合はnull)
+     */
+    public RestorePlan plan(long time) throws IOException {
+        synchronized (lock) {
+            // 直近の変更まで含める
+            flush();
+
+            Long base = null;
+            for (long chain : listChains()) {
+                if (chain <= time) {
+                    base = chain;
+                }
+            }
+            if (base == null) {
+                return null;
+            }
+
+            File chain = new File(backupDir, String.valueOf(base));
+            Map<String, WhitelistManager.WhitelistEntry> state = new HashMap<>();
+            apply(new File(chain, "base.gz"), time, state);
+
+            File[] deltas = chain.listFiles((dir, name) -> name.startsWith("delta-") && name.endsWith(".gz"));
+            if (deltas != null) {
+                Arrays.sort(deltas, (a, b) -> compareDeltaNames(a.getName(), b.getName()));
+                for (File delta : deltas) {
+                    if (!apply(delta, time, state)) {
+                        break;
+                    }
+                }
+            }
+            return new RestorePlan(time, state, manager.getWhitelist());
+        }
+    }
+
+    /**
+     * バックアップのファイルを読み、指定時刻までの変更を適用
+     *
+     * @return 指定時刻より後の変更に達していなければtrue
+     */
+    private boolean apply(File file, long time, Map<String, WhitelistManager.WhitelistEntry> state)
+            throws IOException {
+        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(Files.newInputStream(file.toPath())), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith("B\t")) {
+                    continue;
+                }
+                Mutation mutation = Mutation.parse(line);
+                if (mutation == null) {
+                    throw new IOException("不正な行: " + file.getName() + ": " + line);
+                }
+                if (mutation.time > time) {
+                    return false;
+                }
+                if (mutation.entry != null) {
+                    state.put(mutation.name.toLowerCase(), mutation.entry);
+                } else {
+                    state.remove(mutation.name.toLowerCase());
+                }
+            }
+        }
+        return true;
+    }
+
+    private static int compareDeltaNames(String a, String b) {
+        long[] ka = deltaKey(a);
+        long[] kb = deltaKey(b);
+        return ka[0] != kb[0] ? Long.compare(ka[0], kb[0]) : Long.compare(ka[1], kb[1]);
+    }
+
+    private static long[] deltaKey(String name) {
+        String[] parts = name.substring("delta-".length(), name.length() - ".gz".length()).split("-");
+        try {
+            return new long[] { Long.parseLong(parts[0]), parts.length > 1 ? Long.parseLong(parts[1]) : 0 };
+        } catch (NumberFormatException e) {
+            return new long[] { Long.MAX_VALUE, 0 };
+        }
+    }
+
+    /**
+     * 復元を実行し、復元後の状態を新しいベースとして保存する
+     * 復元前の状態も直前の差分として残るため、復元自体を取り消すこともできる
+     *
+     * @param source 実行した者 (監査ログ用)
+     */
+    public void restore(RestorePlan plan, String source) {
+        synchronized (lock) {
+            flush();
+
+            // 最終ログインは差分に残さないため、現在の方が新しい場合は引き継ぐ
+            Map<String, WhitelistManager.WhitelistEntry> current = new HashMap<>();
+            for (WhitelistManager.WhitelistEntry entry : manager.getWhitelist()) {
+                current.put(entry.getPlayerName().toLowerCase(), entry);
+            }
+            List<WhitelistManager.WhitelistEntry> entries = new ArrayList<>(plan.target.size());
+            for (Map.Entry<String, WhitelistManager.WhitelistEntry> e : plan.target.entrySet()) {
+                WhitelistManager.WhitelistEntry now = current.get(e.getKey());
+                entries.add(now != null && now.getLastSeen() > e.getValue().getLastSeen()
+                        ? e.getValue().withLastSeen(now.getLastSeen()) : e.getValue());
+            }
+            manager.withSource(source, () -> {
+                manager.restore(entries);
+                return null;
+            });
+            plugin.getLogger().info("ホワイトリストを復元しました: " + plan.target.size() + "人 (追加 "
+                    + plan.added.size() + " / 削除 " + plan.removed.size() + " / 変更 " + plan.changed.size() + ")");
+            if (plugin.getConfig().getBoolean("backup.enabled", true)) {
+                takeBase();
+            }
+        }
+    }
+
+    /**
+     * ホワイトリストへの1件の変更
+     */
+    public static class Mutation {
+        private final long time;
+        private final String name;
+        // 削除の場合はnull
+        private final WhitelistManager.WhitelistEntry entry;
+
+        private Mutation(long time, String name, WhitelistManager.WhitelistEntry entry) {
+            this.time = time;
+            this.name = name;
+            this.entry = entry;
+        }
+
+        static Mutation put(long time, WhitelistManager.WhitelistEntry entry) {
+            return new Mutation(time, entry.getPlayerName(), entry);
+        }
+
+        static Mutation remove(long time, String playerName) {
+            return new Mutation(time, playerName, null);
+        }
+
+        /**
+         * タブ区切りの1行に変換 (プレイヤー名、登録日時にタブは含まれない)
+         */
+        String toLine() {
+            if (entry == null) {
+                return "D\t" + time + "\t" + name;
+            }
+            return "P\t" + time + "\t" + name
+                    + "\t" + entry.getDiscordId()
+                    + "\t" + entry.getRegisteredAt()
+                    + "\t" + (entry.isBedrock() ? 1 : 0)
+                    + "\t" + (entry.isDisabled() ? 1 : 0)
+                    + "\t" + (entry.getUuid() != null ? entry.getUuid() : "-")
+                    + "\t" + entry.getExpiresAt()
+                    + "\t" + entry.getLastSeen();
+        }
+
+        static Mutation parse(String line) {
+            String[] f = line.split("\t", -1);
+            try {
+                if (f[0].equals("D") && f.length == 3) {
+                    return remove(Long.parseLong(f[1]), f[2]);
+                }
+                if (f[0].equals("P") && f.length == 10) {
+                    UUID uuid = f[7].equals("-") ? null : UUID.fromString(f[7]);
+                    return put(Long.parseLong(f[1]), new WhitelistManager.WhitelistEntry(f[2], f[3], f[4],
+                            f[5].equals("1"), f[6].equals("1"), uuid, Long.parseLong(f[8]), Long.parseLong(f[9])));
+                }
+            } catch (IllegalArgumentException e) {
+                return null;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 復元の内容と現在との差分
+     */
+    public static class RestorePlan {
+        private final long time;
+        private final Map<String, WhitelistManager.WhitelistEntry> target;
+        private final List<WhitelistManager.WhitelistEntry> added = new ArrayList<>();
+        private final List<WhitelistManager.WhitelistEntry> removed = new ArrayList<>();
+        private final List<WhitelistManager.WhitelistEntry> changed = new ArrayList<>();
+
+        RestorePlan(long time, Map<String, WhitelistManager.WhitelistEntry> target,
+                Collection<WhitelistManager.WhitelistEntry> current) {
+            this.time = time;
+            this.target = target;
+
+            Map<String, WhitelistManager.WhitelistEntry> currentByName = new HashMap<>();
+            for (WhitelistManager.WhitelistEntry entry : current) {
+                currentByName.put(entry.getPlayerName().toLowerCase(), entry);
+            }
+            for (Map.Entry<String, WhitelistManager.WhitelistEntry> e : target.entrySet()) {
+                WhitelistManager.WhitelistEntry now = currentByName.remove(e.getKey());
+                if (now == null) {
+                    added.add(e.getValue());
+                } else if (!sameRegistration(now, e.getValue())) {
+                    changed.add(e.getValue());
+                }
+            }
+            removed.addAll(currentByName.values());
+
+            added.sort((a, b) -> a.getPlayerName().compareToIgnoreCase(b.getPlayerName()));
+            removed.sort((a, b) -> a.getPlayerName().compareToIgnoreCase(b.getPlayerName()));
+            changed.sort((a, b) -> a.getPlayerName().compareToIgnoreCase(b.getPlayerName()));
+        }
+
+        /**
+         * 登録内容が同じかどうか (最終ログイン時刻は比較しない)
+         */
+        private static boolean sameRegistration(WhitelistManager.WhitelistEntry a,
+                WhitelistManager.WhitelistEntry b) {
+            return a.getPlayerName().equals(b.getPlayerName())
+                    && a.getDiscordId().equals(b.getDiscordId())
+                    && a.getRegisteredAt().equals(b.getRegisteredAt())
+                    && a.isBedrock() == b.isBedrock()
+                    && a.isDisabled() == b.isDisabled()
+                    && Objects.equals(a.getUuid(), b.getUuid())
+                    && a.getExpiresAt() == b.getExpiresAt();
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        /**
+         * 復元後の人数
+         */
+        public int getSize() {
+            return target.size();
+        }
+
+        /**
+         * 復元後の全エントリー
+         */
+        Collection<WhitelistManager.WhitelistEntry> getEntries() {
+            return target.values();
+        }
+
+        /**
+         * 復元で追加されるエントリー
+         */
+        public List<WhitelistManager.WhitelistEntry> getAdded() {
+            return added;
+        }
+
+        /**
+         * 復元で削除されるエントリー
+         */
+        public List<WhitelistManager.WhitelistEntry> getRemoved() {
+            return removed;
+        }
+
+        /**
+         * 復元で内容が変わるエントリー (復元後の内容)
+         */
+        public List<WhitelistManager.WhitelistEntry> getChanged() {
+            return changed;
+        }
+
+        public boolean isEmpty() {
+            return added.isEmpty() && removed.isEmpty() && changed.isEmpty();
+        }
+    }
+}
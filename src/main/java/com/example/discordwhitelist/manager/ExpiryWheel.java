@@ -0,0 +1,144 @@
+package com.example.discordwhitelist.manager;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 有効期限の管理 (階層型タイミングホイール)
+ * 登録・1ティックあたりの処理はO(1)で、期限切れ候補を全件走査せずに取り出せる
+ * 64スロット × 4階層で、1秒ティックの場合は約194日先までを直接扱い、それ以上は再配置で対応する
+ * 取り消しは行わないため、取り出した側で現在の期限を確認すること
+ * スレッドセーフではない (呼び出し側で同期する)
+ */
+public class ExpiryWheel {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+    private static final long MAX_SPAN = 1L << (BITS * LEVELS);
+
+    private final long tickMillis;
+    private final List<Item>[][] wheels;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    public ExpiryWheel(long tickMillis, long nowMillis) {
+        this.tickMillis = tickMillis;
+        this.wheels = new List[LEVELS][SLOTS];
+        for (int level = 0; level < LEVELS; level++) {
+            for (int slot = 0; slot < SLOTS; slot++) {
+                wheels[level][slot] = new ArrayList<>();
+            }
+        }
+        this.currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * 期限を登録 (既に期限切れの場合は次のティックで取り出される)
+     *
+     * @param key      キー (小文字のプレイヤー名)
+     * @param deadline 期限 (エポックミリ秒)
+     */
+    public void schedule(String key, long deadline) {
+        long tick = Math.max((deadline + tickMillis - 1) / tickMillis, currentTick + 1);
+        place(new Item(key, tick), null);
+    }
+
+    private void place(Item item, List<String> overdue) {
+        long delta = item.tick - currentTick;
+        if (delta <= 0) {
+            overdue.add(item.key);
+            return;
+        }
+
+        // 範囲外の期限は最上位階層の最後尾に置き、到達時に再配置する
+        long placed = delta < MAX_SPAN ? item.tick : currentTick + MAX_SPAN - 1;
+        delta = placed - currentTick;
+
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << (BITS * (level + 1)))) {
+            level++;
+        }
+        int slot = (int) ((placed >> (BITS * level)) & MASK);
+        wheels[level][slot].add(item);
+        size++;
+    }
+
+    /**
+     * 現在時刻まで進め、期限に達したキーを取り出す
+     *
+     * @param nowMillis 現在時刻 (エポックミリ秒)
+     * @return 期限に達したキー
+     */
+    public List<String> advance(long nowMillis) {
+        List<String> expired = new ArrayList<>();
+        long targetTick = nowMillis / tickMillis;
+
+        while (currentTick < targetTick) {
+            currentTick++;
+
+            // 下位の階層が一周したら上位の階層のスロットを下ろす
+            for (int level = 1; level < LEVELS; level++) {
+                if ((currentTick & ((1L << (BITS * level)) - 1)) != 0) {
+                    break;
+                }
+                int slot = (int) ((currentTick >> (BITS * level)) & MASK);
+                cascade(level, slot, expired);
+            }
+
+            List<Item> due = wheels[0][(int) (currentTick & MASK)];
+            if (!due.isEmpty()) {
+                for (Item item : due) {
+                    expired.add(item.key);
+                }
+                size -= due.size();
+                due.clear();
+            }
+        }
+        return expired;
+    }
+
+    private void cascade(int level, int slot, List<String> expired) {
+        List<Item> items = wheels[level][slot];
+        if (items.isEmpty()) {
+            return;
+        }
+        wheels[level][slot] = new ArrayList<>();
+        size -= items.size();
+        for (Item item : items) {
+            place(item, expired);
+        }
+    }
+
+    /**
+     * 全ての登録を削除
+     */
+    public void clear(long nowMillis) {
+        for (List<Item>[] wheel : wheels) {
+            for (List<Item> slot : wheel) {
+                slot.clear();
+            }
+        }
+        size = 0;
+        currentTick = nowMillis / tickMillis;
+    }
+
+    /**
+     * 登録数 (取り消し済みのものを含む)
+     */
+    public int size() {
+        return size;
+    }
+
+    private static class Item {
+        private final String key;
+        private final long tick;
+
+        Item(String key, long tick) {
+            this.key = key;
+            this.tick = tick;
+        }
+    }
+}
@@ -0,0 +1,622 @@
+package com.example.discordwhitelist.manager;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.TreeMap;
+import java.util.UUID;
+
+/**
+ * メモリマップドファイル上のホワイトリストの索引 (オープンアドレス法のハッシュテーブル)
+ * プレイヤー名 → レコード、Discord ID → レコード、UUID → レコード の3つの表を1つのファイルに置き、
+ * ヒープの外 (OSのページキャッシュ) に保持する。ログイン時の判定は文字列を生成せずに行う
+ * 変更はWhitelistManagerのロック内で行い、読み取りはロックなしで行う (レコードの状態を最後に書き込む)
+ * 書き込んだレコードは変更しない。更新は新しいレコードを書き込んでから古いレコードを削除する
+ * 読み取りはsnapshot()の表に対して行い、検索とレコードの参照に同じ表を使う (作り直し後の番号と混ざらない)
+ * 削除したレコードの場所は再利用せず、使用率が半分を超えたら大きなファイルに作り直す
+ * 作り直しのたびに別の名前 (<名前>-<世代>.dat) のファイルを作成し、マップ中のファイルを置き換えたり削除したりしない
+ * (Windowsではマップ中のファイルを削除できない)。古い世代のファイルは削除できた時点で削除する
+ * 名前がASCII以外を含むなど表に入らないエントリーは、呼び出し側がヒープのマップで管理する
+ */
+class MappedWhitelistTable {
+
+    // Tables.findName() の戻り値
+    static final int ABSENT = -1;
+    static final int UNSUPPORTED = -2;
+
+    // レコードのフラグ
+    static final int FLAG_BEDROCK = 1;
+    static final int FLAG_DISABLED = 2;
+
+    private static final int MAGIC = 0x44574C4D; // "DWLM"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 64;
+
+    // 状態
+    private static final int EMPTY = 0;
+    private static final int USED = 1;
+    private static final int DELETED = 2;
+
+    // レコード (96バイト): 状態, フラグ, Discord ID, 期限, UUID, 名前のハッシュ, 名前の長さ, 名前 (小文字)
+    private static final int NAME_BYTES = 48;
+    private static final int R_STATE = 0;
+    private static final int R_FLAGS = 4;
+    private static final int R_DISCORD = 8;
+    private static final int R_EXPIRES = 16;
+    private static final int R_UUID_MSB = 24;
+    private static final int R_UUID_LSB = 32;
+    private static final int R_HASH = 40;
+    private static final int R_NAME_LENGTH = 44;
+    private static final int R_NAME = 48;
+    private static final int RECORD_SIZE = 96;
+
+    // 参照 (24バイト): キー1, キー2, 状態, レコードの番号
+    private static final int L_KEY1 = 0;
+    private static final int L_KEY2 = 8;
+    private static final int L_STATE = 16;
+    private static final int L_RECORD = 20;
+    private static final int LINK_SIZE = 24;
+
+    // 状態の読み書き (書き込みの順序を保証する)
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class,
+            ByteOrder.nativeOrder());
+
+    private final File dir;
+    // ファイル名の先頭 ("whitelist-")
+    private final String prefix;
+    private final int initialCapacity;
+
+    // 現在のファイルの世代
+    private long generation;
+
+    // 読み取りスレッドは1回の検索の間、同じ表を参照する
+    private volatile Tables tables;
+
+    // 使用中/削除済みのレコード数 (変更はWhitelistManagerのロック内のみ)
+    private int used;
+    private int deleted;
+
+    /**
+     * @param file            保存先 (whitelist.dat の場合は whitelist-<世代>.dat に保存)
+     * @param initialCapacity 初期のレコード数 (2のべき乗に切り上げ)
+     */
+    MappedWhitelistTable(File file, int initialCapacity) throws IOException {
+        this.dir = file.getAbsoluteFile().getParentFile();
+        this.prefix = prefix(file);
+        this.initialCapacity = Math.max(1024, Integer.highestOneBit(Math.max(1, initialCapacity - 1)) << 1);
+        // 既存の内容は使わない (ホワイトリストの読み込み時に作り直す)。削除できなかった世代の次から使う
+        deleteFiles(file);
+        TreeMap<Long, File> remaining = generations(dir, prefix);
+        generation = remaining.isEmpty() ? 0 : remaining.lastKey();
+        this.tables = create(nextFile(), this.initialCapacity);
+    }
+
+    /**
+     * 索引のファイルを全ての世代について削除 (マップ中で削除できないファイルは残す)
+     */
+    static void deleteFiles(File file) {
+        // 世代のない以前の形式
+        file.delete();
+        for (File old : generations(file.getAbsoluteFile().getParentFile(), prefix(file)).values()) {
+            old.delete();
+        }
+    }
+
+    /**
+     * エントリーを表に入れられるかどうか (名前がASCIIで48文字以内、Discord IDが数値)
+     */
+    static boolean fits(WhitelistManager.WhitelistEntry entry) {
+        String name = entry.getPlayerName();
+        if (name.isEmpty() || name.length() > NAME_BYTES) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) >= 0x80) {
+                return false;
+            }
+        }
+        return entry.getDiscordId().isEmpty() || parseDiscordId(entry.getDiscordId()) > 0;
+    }
+
+    /**
+     * 全てのレコードを削除 (初期サイズのファイルに作り直す)
+     */
+    void clear() throws IOException {
+        tables = create(nextFile(), initialCapacity);
+        used = 0;
+        deleted = 0;
+        deleteOldGenerations();
+    }
+
+    /**
+     * エントリーを登録 (同じ名前のレコードは置き換える)
+     *
+     * @return 登録したかどうか (fits() がfalseの場合は登録しない)
+     */
+    boolean put(WhitelistManager.WhitelistEntry entry) throws IOException {
+        if (!fits(entry)) {
+            return false;
+        }
+        byte[] name = entry.getPlayerName().toLowerCase().getBytes(StandardCharsets.US_ASCII);
+        int hash = hash(name);
+        long discordId = entry.getDiscordId().isEmpty() ? 0 : parseDiscordId(entry.getDiscordId());
+        int flags = (entry.isBedrock() ? FLAG_BEDROCK : 0) | (entry.isDisabled() ? FLAG_DISABLED : 0);
+        UUID uuid = entry.getUuid();
+
+        long uuidMsb = uuid != null ? uuid.getMostSignificantBits() : 0;
+        long uuidLsb = uuid != null ? uuid.getLeastSignificantBits() : 0;
+
+        Tables t = tables;
+        int old = findRecord(t, name, hash);
+        if (old >= 0 && sameRecord(t, old, flags, discordId, entry.getExpiresAt(), uuidMsb, uuidLsb)) {
+            return true;
+        }
+        if ((used + deleted + 1) * 2 > t.capacity) {
+            grow();
+            t = tables;
+            old = findRecord(t, name, hash);
+        }
+        // 読み取り中のレコードは書き換えない: 新しいレコードを書き込んで参照を向け直し、古いレコードを削除する
+        insert(t, name, hash, flags, discordId, entry.getExpiresAt(), uuidMsb, uuidLsb);
+        if (old >= 0) {
+            unlink(t, old);
+            INT.setRelease(t.buffer, t.record(old) + R_STATE, DELETED);
+            deleted++;
+        } else {
+            used++;
+        }
+        return true;
+    }
+
+    /**
+     * 名前のレコードを削除
+     *
+     * @param lowerName 小文字のプレイヤー名
+     * @return 削除したかどうか
+     */
+    boolean remove(String lowerName) {
+        if (lowerName.length() > NAME_BYTES) {
+            return false;
+        }
+        byte[] name = lowerName.getBytes(StandardCharsets.US_ASCII);
+        Tables t = tables;
+        int slot = findRecord(t, name, hash(name));
+        if (slot < 0) {
+            return false;
+        }
+        unlink(t, slot);
+        INT.setRelease(t.buffer, t.record(slot) + R_STATE, DELETED);
+        used--;
+        deleted++;
+        return true;
+    }
+
+    /**
+     * 現在の表 (検索とレコードの参照は同じ表に対して行う)
+     */
+    Tables snapshot() {
+        return tables;
+    }
+
+    /**
+     * 使用中のレコード数
+     */
+    int size() {
+        return used;
+    }
+
+    /**
+     * 表のレコード数 (使用中、削除済み、空きの合計)
+     */
+    int capacity() {
+        return tables.capacity;
+    }
+
+    /**
+     * ファイルの大きさ (バイト)
+     */
+    long getFileSize() {
+        return tables.buffer.capacity();
+    }
+
+    private int findRecord(Tables t, byte[] name, int hash) {
+        int mask = t.capacity - 1;
+        for (int i = hash & mask, probes = 0; probes < t.capacity; i = (i + 1) & mask, probes++) {
+            int base = t.record(i);
+            int state = t.buffer.getInt(base + R_STATE);
+            if (state == EMPTY) {
+                return -1;
+            }
+            if (state == USED && t.buffer.getInt(base + R_HASH) == hash && nameEquals(t, base, name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean sameRecord(Tables t, int slot, int flags, long discordId, long expiresAt,
+            long uuidMsb, long uuidLsb) {
+        int base = t.record(slot);
+        return t.buffer.getInt(base + R_FLAGS) == flags && t.buffer.getLong(base + R_DISCORD) == discordId
+                && t.buffer.getLong(base + R_EXPIRES) == expiresAt && t.buffer.getLong(base + R_UUID_MSB) == uuidMsb
+                && t.buffer.getLong(base + R_UUID_LSB) == uuidLsb;
+    }
+
+    private static boolean nameEquals(Tables t, int base, byte[] name) {
+        if (t.buffer.getInt(base + R_NAME_LENGTH) != name.length) {
+            return false;
+        }
+        for (int i = 0; i < name.length; i++) {
+            if (t.buffer.get(base + R_NAME + i) != name[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 空きの場所にレコードを書き込み、参照を張る (削除済みの場所は使わない)
+     */
+    private static void insert(Tables t, byte[] name, int hash, int flags, long discordId, long expiresAt,
+            long uuidMsb, long uuidLsb) {
+        int mask = t.capacity - 1;
+        int slot = hash & mask;
+        while (t.buffer.getInt(t.record(slot) + R_STATE) != EMPTY) {
+            slot = (slot + 1) & mask;
+        }
+        int base = t.record(slot);
+        t.buffer.putInt(base + R_FLAGS, flags);
+        t.buffer.putLong(base + R_DISCORD, discordId);
+        t.buffer.putLong(base + R_EXPIRES, expiresAt);
+        t.buffer.putLong(base + R_UUID_MSB, uuidMsb);
+        t.buffer.putLong(base + R_UUID_LSB, uuidLsb);
+        t.buffer.putInt(base + R_HASH, hash);
+        t.buffer.putInt(base + R_NAME_LENGTH, name.length);
+        t.buffer.put(base + R_NAME, name);
+        // 読み取りスレッドには全ての項目を書き込んだ後に見えるようにする
+        INT.setRelease(t.buffer, base + R_STATE, USED);
+        link(t, slot);
+    }
+
+    /**
+     * レコードのDiscord ID/UUIDの参照を張る
+     */
+    private static void link(Tables t, int slot) {
+        int base = t.record(slot);
+        long discordId = t.buffer.getLong(base + R_DISCORD);
+        if (discordId != 0) {
+            int edition = (t.buffer.getInt(base + R_FLAGS) & FLAG_BEDROCK) != 0 ? 1 : 0;
+            putLink(t, true, discordId, edition, slot);
+        }
+        long msb = t.buffer.getLong(base + R_UUID_MSB);
+        long lsb = t.buffer.getLong(base + R_UUID_LSB);
+        if (msb != 0 || lsb != 0) {
+            putLink(t, false, msb, lsb, slot);
+        }
+    }
+
+    /**
+     * レコードを指す参照を削除
+     */
+    private static void unlink(Tables t, int slot) {
+        int base = t.record(slot);
+        long discordId = t.buffer.getLong(base + R_DISCORD);
+        if (discordId != 0) {
+            int edition = (t.buffer.getInt(base + R_FLAGS) & FLAG_BEDROCK) != 0 ? 1 : 0;
+            removeLink(t, true, discordId, edition, slot);
+        }
+        long msb = t.buffer.getLong(base + R_UUID_MSB);
+        long lsb = t.buffer.getLong(base + R_UUID_LSB);
+        if (msb != 0 || lsb != 0) {
+            removeLink(t, false, msb, lsb, slot);
+        }
+    }
+
+    private static void putLink(Tables t, boolean discord, long key1, long key2, int record) {
+        int mask = t.capacity - 1;
+        for (int i = linkHash(key1, key2) & mask, probes = 0; probes < t.capacity; i = (i + 1) & mask, probes++) {
+            int base = t.link(discord, i);
+            int state = t.buffer.getInt(base + L_STATE);
+            if (state == USED && t.buffer.getLong(base + L_KEY1) == key1 && t.buffer.getLong(base + L_KEY2) == key2) {
+                // 同じキーの参照は新しいレコードに向け直す
+                INT.setRelease(t.buffer, base + L_RECORD, record);
+                return;
+            }
+            if (state == EMPTY) {
+                t.buffer.putLong(base + L_KEY1, key1);
+                t.buffer.putLong(base + L_KEY2, key2);
+                t.buffer.putInt(base + L_RECORD, record);
+                INT.setRelease(t.buffer, base + L_STATE, USED);
+                return;
+            }
+        }
+    }
+
+    private static void removeLink(Tables t, boolean discord, long key1, long key2, int record) {
+        int mask = t.capacity - 1;
+        for (int i = linkHash(key1, key2) & mask, probes = 0; probes < t.capacity; i = (i + 1) & mask, probes++) {
+            int base = t.link(discord, i);
+            int state = t.buffer.getInt(base + L_STATE);
+            if (state == EMPTY) {
+                return;
+            }
+            if (state == USED && t.buffer.getLong(base + L_KEY1) == key1 && t.buffer.getLong(base + L_KEY2) == key2) {
+                // 他のレコードに向け直された参照は残す
+                if (t.buffer.getInt(base + L_RECORD) == record) {
+                    INT.setRelease(t.buffer, base + L_STATE, DELETED);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 2倍の大きさ (削除済みが多い場合は同じ大きさ) のファイルに作り直す
+     * 作り直している間も読み取りスレッドは古い表を参照できる
+     */
+    private void grow() throws IOException {
+        Tables old = tables;
+        int capacity = old.capacity;
+        while ((used + 1) * 2 > capacity) {
+            capacity <<= 1;
+        }
+        if (capacity == old.capacity && deleted == 0) {
+            capacity <<= 1;
+        }
+
+        Tables fresh = create(nextFile(), capacity);
+        for (int i = 0; i < old.capacity; i++) {
+            int base = old.record(i);
+            if (old.buffer.getInt(base + R_STATE) != USED) {
+                continue;
+            }
+            byte[] name = new byte[old.buffer.getInt(base + R_NAME_LENGTH)];
+            old.buffer.get(base + R_NAME, name);
+            insert(fresh, name, old.buffer.getInt(base + R_HASH), old.buffer.getInt(base + R_FLAGS),
+                    old.buffer.getLong(base + R_DISCORD), old.buffer.getLong(base + R_EXPIRES),
+                    old.buffer.getLong(base + R_UUID_MSB), old.buffer.getLong(base + R_UUID_LSB));
+        }
+        tables = fresh;
+        deleted = 0;
+        deleteOldGenerations();
+    }
+
+    /**
+     * 次の世代のファイル (既に存在する名前は使わない)
+     */
+    private File nextFile() {
+        File next;
+        do {
+            generation++;
+            next = new File(dir, prefix + generation + ".dat");
+        } while (next.exists());
+        return next;
+    }
+
+    /**
+     * 現在より古い世代のファイルを削除 (古い表を参照中の読み取りがあっても、Linuxではマップは有効なまま)
+     * Windowsでマップが解放されておらず削除できない場合は、次の作り直しや起動時に再度削除する
+     */
+    private void deleteOldGenerations() {
+        for (File old : generations(dir, prefix).headMap(generation).values()) {
+            old.delete();
+        }
+    }
+
+    private static String prefix(File file) {
+        return file.getName().replaceFirst("\\.dat$", "") + "-";
+    }
+
+    /**
+     * フォルダ内の世代 -> ファイル
+     */
+    private static TreeMap<Long, File> generations(File dir, String prefix) {
+        TreeMap<Long, File> generations = new TreeMap<>();
+        File[] files = dir != null ? dir.listFiles((d, name) -> name.startsWith(prefix) && name.endsWith(".dat"))
+                : null;
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                try {
+                    generations.put(Long.parseLong(name.substring(prefix.length(), name.length() - ".dat".length())),
+                            file);
+                } catch (NumberFormatException ignored) {
+                    // 別のホワイトリストのファイル
+                }
+            }
+        }
+        return generations;
+    }
+
+    /**
+     * 空の表のファイルを作成してマップする
+     */
+    private static Tables create(File file, int capacity) throws IOException {
+        long size = HEADER_SIZE + (long) capacity * (RECORD_SIZE + 2L * LINK_SIZE);
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("索引が大きすぎます: " + capacity + "件");
+        }
+        File parent = file.getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE_NEW,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.nativeOrder());
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, capacity);
+            return new Tables(buffer, capacity);
+        }
+    }
+
+    private static byte lower(char c) {
+        return (byte) (c >= 'A' && c <= 'Z' ? c + ('a' - 'A') : c);
+    }
+
+    private static int hash(byte[] name) {
+        int hash = 0x811C9DC5;
+        for (byte b : name) {
+            hash = (hash ^ b) * 0x01000193;
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static int linkHash(long key1, long key2) {
+        long h = key1 * 0x9E3779B97F4A7C15L + key2;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        return (int) h;
+    }
+
+    private static long parseDiscordId(String discordId) {
+        if (discordId.isEmpty() || discordId.length() > 19) {
+            return -1;
+        }
+        long id = 0;
+        for (int i = 0; i < discordId.length(); i++) {
+            char c = discordId.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            id = id * 10 + (c - '0');
+        }
+        return id;
+    }
+
+    /**
+     * マップしたファイルと各表の位置
+     * 作り直し後も古い表のレコードは変更されないため、読み取りスレッドは1つの表の中で検索と参照を行う
+     */
+    static final class Tables {
+        final MappedByteBuffer buffer;
+        final int capacity;
+        final int discordBase;
+        final int uuidBase;
+
+        Tables(MappedByteBuffer buffer, int capacity) {
+            this.buffer = buffer;
+            this.capacity = capacity;
+            this.discordBase = HEADER_SIZE + capacity * RECORD_SIZE;
+            this.uuidBase = discordBase + capacity * LINK_SIZE;
+        }
+
+        int record(int slot) {
+            return HEADER_SIZE + slot * RECORD_SIZE;
+        }
+
+        int link(boolean discord, int slot) {
+            return (discord ? discordBase : uuidBase) + slot * LINK_SIZE;
+        }
+
+        /**
+         * プレイヤー名でレコードを検索 (大文字/小文字を区別しない、文字列を生成しない)
+         *
+         * @return レコードの番号、ABSENT (登録なし)、UNSUPPORTED (ASCII以外を含むため検索できない)
+         */
+        int findName(CharSequence playerName) {
+            int length = playerName.length();
+            if (length == 0 || length > NAME_BYTES) {
+                return length == 0 ? ABSENT : UNSUPPORTED;
+            }
+            int hash = 0x811C9DC5;
+            for (int i = 0; i < length; i++) {
+                char c = playerName.charAt(i);
+                if (c >= 0x80) {
+                    return UNSUPPORTED;
+                }
+                hash = (hash ^ lower(c)) * 0x01000193;
+            }
+            hash ^= hash >>> 16;
+
+            int mask = capacity - 1;
+            for (int i = hash & mask, probes = 0; probes < capacity; i = (i + 1) & mask, probes++) {
+                int base = record(i);
+                int state = (int) INT.getAcquire(buffer, base + R_STATE);
+                if (state == EMPTY) {
+                    return ABSENT;
+                }
+                if (state != USED || buffer.getInt(base + R_HASH) != hash
+                        || buffer.getInt(base + R_NAME_LENGTH) != length) {
+                    continue;
+                }
+                boolean match = true;
+                for (int j = 0; j < length; j++) {
+                    if (buffer.get(base + R_NAME + j) != lower(playerName.charAt(j))) {
+                        match = false;
+                        break;
+                    }
+                }
+                if (match) {
+                    return i;
+                }
+            }
+            return ABSENT;
+        }
+
+        /**
+         * Discord IDでレコードを検索
+         *
+         * @return レコードの番号 (登録なしの場合は-1)
+         */
+        int findDiscord(String discordId, boolean bedrock) {
+            long id = parseDiscordId(discordId);
+            return id > 0 ? findLink(true, id, bedrock ? 1 : 0) : -1;
+        }
+
+        /**
+         * UUIDでレコードを検索
+         *
+         * @return レコードの番号 (登録なしの場合は-1)
+         */
+        int findUuid(UUID uuid) {
+            return findLink(false, uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+        }
+
+        int getFlags(int slot) {
+            return buffer.getInt(record(slot) + R_FLAGS);
+        }
+
+        long getDiscordId(int slot) {
+            return buffer.getLong(record(slot) + R_DISCORD);
+        }
+
+        long getExpiresAt(int slot) {
+            return buffer.getLong(record(slot) + R_EXPIRES);
+        }
+
+        /**
+         * レコードの小文字のプレイヤー名 (文字列を生成する)
+         */
+        String getLowerName(int slot) {
+            int base = record(slot);
+            byte[] name = new byte[buffer.getInt(base + R_NAME_LENGTH)];
+            buffer.get(base + R_NAME, name);
+            return new String(name, StandardCharsets.US_ASCII);
+        }
+
+        private int findLink(boolean discord, long key1, long key2) {
+            int mask = capacity - 1;
+            for (int i = linkHash(key1, key2) & mask, probes = 0; probes < capacity; i = (i + 1) & mask, probes++) {
+                int base = link(discord, i);
+                int state = (int) INT.getAcquire(buffer, base + L_STATE);
+                if (state == EMPTY) {
+                    return -1;
+                }
+                if (state == USED && buffer.getLong(base + L_KEY1) == key1 && buffer.getLong(base + L_KEY2) == key2) {
+                    int slot = (int) INT.getAcquire(buffer, base + L_RECORD);
+                    return (int) INT.getAcquire(buffer, record(slot) + R_STATE) == USED ? slot : -1;
+                }
+            }
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,380 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+import org.bukkit.configuration.ConfigurationSection;
+import org.bukkit.configuration.file.FileConfiguration;
+import org.bukkit.configuration.file.YamlConfiguration;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mojang APIを使用したプロフィール解決
+ * 短時間に集まった問い合わせを最大10件ずつまとめて一括APIに送信する
+ * 結果はサイズ上限付きのLRUキャッシュに保持し、有効期限付きでprofiles.ymlに保存する
+ */
+public class MojangProfileResolver implements ProfileResolver {
+
+    // 一括APIが受け付ける最大件数
+    private static final int MAX_BATCH_SIZE = 10;
+
+    // 問い合わせをまとめるための待ち時間
+    private static final long BATCH_DELAY_MS = 100;
+
+    // キャッシュをファイルに保存する間隔
+    private static final long SAVE_INTERVAL_SECONDS = 60;
+
+    private final DiscordWhitelistPlugin plugin;
+    private final String url;
+    private final int timeoutMs;
+    private final long ttlMillis;
+    private final long notFoundTtlMillis;
+    private final File cacheFile;
+    private final ScheduledExecutorService executor;
+
+    // 小文字のプレイヤー名 -> キャッシュ (アクセス順)
+    private final LinkedHashMap<String, CacheEntry> cache;
+
+    // 問い合わせ待ちのプレイヤー名 (同じ名前の問い合わせは1つにまとめる)
+    private final Map<String, CompletableFuture<Optional<Profile>>> inflight = new HashMap<>();
+    private final Deque<String> queue = new ArrayDeque<>();
+    private boolean flushScheduled;
+    private boolean dirty;
+
+    // レート制限が解除される時刻 (System.nanoTime()、それまでは送信しない)
+    private long rateLimitedUntil = System.nanoTime();
+
+    public MojangProfileResolver(DiscordWhitelistPlugin plugin) {
+        this.plugin = plugin;
+        this.url = plugin.getConfig().getString("profile-resolver.url",
+                "https://api.minecraftservices.com/minecraft/profile/lookup/bulk/byname");
+        this.timeoutMs = plugin.getConfig().getInt("profile-resolver.timeout-ms", 5000);
+        this.ttlMillis = TimeUnit.HOURS.toMillis(plugin.getConfig().getLong("profile-resolver.cache-ttl-hours", 24));
+        this.notFoundTtlMillis = TimeUnit.MINUTES
+                .toMillis(plugin.getConfig().getLong("profile-resolver.not-found-ttl-minutes", 10));
+        this.cacheFile = new File(plugin.getDataFolder(), "profiles.yml");
+
+        int cacheSize = Math.max(1, plugin.getConfig().getInt("profile-resolver.cache-size", 1000));
+        this.cache = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry> eldest) {
+                return size() > cacheSize;
+            }
+        };
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "DiscordWhitelist-ProfileResolver");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        loadCache();
+        executor.scheduleWithFixedDelay(this::saveCache, SAVE_INTERVAL_SECONDS, SAVE_INTERVAL_SECONDS,
+                TimeUnit.SECONDS);
+    }
+
+    @Override
+    public CompletableFuture<Optional<Profile>> resolve(String playerName) {
+        String key = playerName.toLowerCase();
+
+        synchronized (this) {
+            CacheEntry cached = cache.get(key);
+            if (cached != null && !cached.isExpired(System.currentTimeMillis())) {
+                return CompletableFuture.completedFuture(cached.toProfile());
+            }
+
+            CompletableFuture<Optional<Profile>> future = inflight.get(key);
+            if (future != null) {
+                return future;
+            }
+
+            future = new CompletableFuture<>();
+            inflight.put(key, future);
+            queue.add(playerName);
+
+            if (queue.size() >= MAX_BATCH_SIZE && !isRateLimited()) {
+                executor.execute(this::flush);
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                executor.schedule(this::flush, BATCH_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+            return future;
+        }
+    }
+
+    /**
+     * 問い合わせ待ちのプレイヤー名を最大10件ずつ送信
+     */
+    private void flush() {
+        while (true) {
+            List<String> batch = new ArrayList<>(MAX_BATCH_SIZE);
+            synchronized (this) {
+                // レート制限中は解除時に予約した送信に任せる
+                if (isRateLimited()) {
+                    return;
+                }
+                flushScheduled = false;
+                while (batch.size() < MAX_BATCH_SIZE && !queue.isEmpty()) {
+                    batch.add(queue.poll());
+                }
+            }
+            if (batch.isEmpty()) {
+                return;
+            }
+
+            try {
+                Map<String, Profile> found = lookup(batch);
+                complete(batch, found);
+            } catch (RateLimitedException e) {
+                // レート制限中はキューに戻して待機
+                synchronized (this) {
+                    for (int i = batch.size() - 1; i >= 0; i--) {
+                        queue.addFirst(batch.get(i));
+                    }
+                    flushScheduled = true;
+                    rateLimitedUntil = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(e.retryAfterMillis);
+                }
+                executor.schedule(this::flush, e.retryAfterMillis, TimeUnit.MILLISECONDS);
+                return;
+            } catch (Exception e) {
+                plugin.getLogger().warning("プロフィールの取得に失敗: " + e.getMessage());
+                fail(batch, e);
+            }
+        }
+    }
+
+    private synchronized boolean isRateLimited() {
+        return System.nanoTime() - rateLimitedUntil < 0;
+    }
+
+    /**
+     * 一括APIに問い合わせ
+     *
+     * @return 小文字のプレイヤー名 -> プロフィール (存在するアカウントのみ)
+     */
+    private Map<String, Profile> lookup(List<String> names) throws IOException, RateLimitedException {
+        HttpURLConnection connection = (HttpURLConnection) URI.create(url).toURL().openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
+            connection.setDoOutput(true);
+            connection.setConnectTimeout(timeoutMs);
+            connection.setReadTimeout(timeoutMs);
+
+            try (OutputStream os = connection.getOutputStream()) {
+                os.write(DataArray.fromCollection(names).toString().getBytes(StandardCharsets.UTF_8));
+            }
+
+            int responseCode = connection.getResponseCode();
+            if (responseCode == 429) {
+                throw new RateLimitedException(parseRetryAfter(connection.getHeaderField("Retry-After")));
+            }
+            if (responseCode < 200 || responseCode >= 300) {
+                throw new IOException("HTTP " + responseCode);
+            }
+
+            DataArray array;
+            try (InputStream is = connection.getInputStream()) {
+                array = DataArray.fromJson(is);
+            }
+
+            Map<String, Profile> result = new HashMap<>();
+            for (int i = 0; i < array.length(); i++) {
+                DataObject object = array.getObject(i);
+                String name = object.getString("name");
+                UUID uuid = parseUuid(object.getString("id"));
+                result.put(name.toLowerCase(), new Profile(name, uuid));
+            }
+            return result;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * 問い合わせ結果でキャッシュを更新し、待機中のFutureを完了
+     */
+    private void complete(List<String> batch, Map<String, Profile> found) {
+        long now = System.currentTimeMillis();
+        List<Runnable> completions = new ArrayList<>(batch.size());
+
+        synchronized (this) {
+            for (String name : batch) {
+                String key = name.toLowerCase();
+                Profile profile = found.get(key);
+                CacheEntry entry = profile != null
+                        ? new CacheEntry(profile.getName(), profile.getUuid(), now + ttlMillis)
+                        : new CacheEntry(name, null, now + notFoundTtlMillis);
+                cache.put(key, entry);
+                dirty = true;
+
+                CompletableFuture<Optional<Profile>> future = inflight.remove(key);
+                if (future != null) {
+                    Optional<Profile> result = entry.toProfile();
+                    completions.add(() -> future.complete(result));
+                }
+            }
+        }
+
+        // ロック外で完了させる (後続処理が同じスレッドで実行されるため)
+        completions.forEach(Runnable::run);
+    }
+
+    private void fail(List<String> batch, Exception cause) {
+        List<CompletableFuture<Optional<Profile>>> futures = new ArrayList<>(batch.size());
+        synchronized (this) {
+            for (String name : batch) {
+                CompletableFuture<Optional<Profile>> future = inflight.remove(name.toLowerCase());
+                if (future != null) {
+                    futures.add(future);
+                }
+            }
+        }
+        futures.forEach(future -> future.completeExceptionally(cause));
+    }
+
+    /**
+     * profiles.ymlからキャッシュを読み込み (期限切れのものは除外)
+     */
+    private void loadCache() {
+        if (!cacheFile.exists()) {
+            return;
+        }
+
+        FileConfiguration config = YamlConfiguration.loadConfiguration(cacheFile);
+        ConfigurationSection section = config.getConfigurationSection("profiles");
+        if (section == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            for (String key : section.getKeys(false)) {
+                ConfigurationSection profile = section.getConfigurationSection(key);
+                if (profile == null) {
+                    continue;
+                }
+                long expiresAt = profile.getLong("expires-at", 0);
+                if (expiresAt <= now) {
+                    continue;
+                }
+                String uuid = profile.getString("uuid", "");
+                cache.put(key, new CacheEntry(profile.getString("name", key),
+                        uuid.isEmpty() ? null : UUID.fromString(uuid), expiresAt));
+            }
+        }
+    }
+
+    /**
+     * キャッシュをprofiles.ymlに保存 (変更がある場合のみ)
+     */
+    private void saveCache() {
+        FileConfiguration config = new YamlConfiguration();
+        long now = System.currentTimeMillis();
+
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            for (Map.Entry<String, CacheEntry> entry : cache.entrySet()) {
+                CacheEntry value = entry.getValue();
+                if (value.isExpired(now)) {
+                    continue;
+                }
+                String path = "profiles." + entry.getKey();
+                config.set(path + ".name", value.name);
+                config.set(path + ".uuid", value.uuid != null ? value.uuid.toString() : "");
+                config.set(path + ".expires-at", value.expiresAt);
+            }
+        }
+
+        try {
+            config.save(cacheFile);
+        } catch (IOException e) {
+            plugin.getLogger().warning("profiles.ymlの保存に失敗しました: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdownNow();
+
+        // 送信されなくなった問い合わせを待っている処理に失敗を通知
+        List<CompletableFuture<Optional<Profile>>> pending;
+        synchronized (this) {
+            pending = new ArrayList<>(inflight.values());
+            inflight.clear();
+            queue.clear();
+        }
+        IllegalStateException cause = new IllegalStateException("プロフィールの解決を停止しました");
+        pending.forEach(future -> future.completeExceptionally(cause));
+
+        saveCache();
+    }
+
+    /**
+     * ハイフンなしのUUID文字列を変換
+     */
+    private static UUID parseUuid(String id) {
+        if (id.length() == 32) {
+            id = id.substring(0, 8) + "-" + id.substring(8, 12) + "-" + id.substring(12, 16) + "-"
+                    + id.substring(16, 20) + "-" + id.substring(20);
+        }
+        return UUID.fromString(id);
+    }
+
+    private static long parseRetryAfter(String value) {
+        if (value != null) {
+            try {
+                return Math.max(1000, (long) (Double.parseDouble(value) * 1000));
+            } catch (NumberFormatException ignored) {
+                // 既定値を使用
+            }
+        }
+        return 5000;
+    }
+
+    /**
+     * キャッシュエントリー (uuidがnullの場合は存在しないアカウント)
+     */
+    private static class CacheEntry {
+        private final String name;
+        private final UUID uuid;
+        private final long expiresAt;
+
+        CacheEntry(String name, UUID uuid, long expiresAt) {
+            this.name = name;
+            this.uuid = uuid;
+            this.expiresAt = expiresAt;
+        }
+
+        boolean isExpired(long now) {
+            return now >= expiresAt;
+        }
+
+        Optional<Profile> toProfile() {
+            return uuid != null ? Optional.of(new Profile(name, uuid)) : Optional.empty();
+        }
+    }
+
+    private static class RateLimitedException extends Exception {
+        private final long retryAfterMillis;
+
+        RateLimitedException(long retryAfterMillis) {
+            this.retryAfterMillis = retryAfterMillis;
+        }
+    }
+}
@@ -0,0 +1,148 @@
+package com.example.discordwhitelist.manager;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * プレイヤー名のあいまい検索用のトライグラム (3文字) インデックス
+ * 名前は小文字化し英数字以外を除いた形で分割するため、"Steve_01" と "steeve01" のような表記揺れも候補になる
+ * 類似度は共通するトライグラムの割合 (Dice係数) で、候補は検索語のトライグラムを含む名前に限られる
+ * WhitelistManagerがエントリーの追加/削除のたびに差分で更新する
+ */
+public class NameSearchIndex {
+
+    // トライグラム -> 小文字のプレイヤー名
+    private final Map<String, Set<String>> postings = new HashMap<>();
+
+    // 小文字のプレイヤー名 -> トライグラム数
+    private final Map<String, Integer> gramCounts = new HashMap<>();
+
+    synchronized void clear() {
+        postings.clear();
+        gramCounts.clear();
+    }
+
+    synchronized void add(String lowerName) {
+        Set<String> grams = trigrams(lowerName);
+        if (gramCounts.put(lowerName, grams.size()) != null) {
+            return;
+        }
+        for (String gram : grams) {
+            postings.computeIfAbsent(gram, k -> new HashSet<>()).add(lowerName);
+        }
+    }
+
+    synchronized void remove(String lowerName) {
+        if (gramCounts.remove(lowerName) == null) {
+            return;
+        }
+        for (String gram : trigrams(lowerName)) {
+            Set<String> names = postings.get(gram);
+            if (names != null) {
+                names.remove(lowerName);
+                if (names.isEmpty()) {
+                    postings.remove(gram);
+                }
+            }
+        }
+    }
+
+    /**
+     * 登録されている名前の数
+     */
+    public synchronized int size() {
+        return gramCounts.size();
+    }
+
+    /**
+     * 類似する名前を検索
+     *
+     * @param query    検索語
+     * @param limit    最大件数
+     * @param minScore 最低の類似度 (0〜1)
+     * @return 類似度の高い順の結果
+     */
+    public synchronized List<Match> search(String query, int limit, double minScore) {
+        Set<String> queryGrams = trigrams(query.toLowerCase());
+        if (queryGrams.isEmpty()) {
+            return new ArrayList<>();
+        }
+
+        // 共通するトライグラムの数を数える
+        Map<String, Integer> common = new HashMap<>();
+        for (String gram : queryGrams) {
+            Set<String> names = postings.get(gram);
+            if (names == null) {
+                continue;
+            }
+            for (String name : names) {
+                common.merge(name, 1, Integer::sum);
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : common.entrySet()) {
+            double score = 2.0 * e.getValue() / (queryGrams.size() + gramCounts.get(e.getKey()));
+            if (score >= minScore) {
+                matches.add(new Match(e.getKey(), score));
+            }
+        }
+        matches.sort((a, b) -> a.score != b.score
+                ? Double.compare(b.score, a.score)
+                : a.lowerName.compareTo(b.lowerName));
+        return matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+    }
+
+    /**
+     * 名前をトライグラムに分割 (前後に境界記号を付け、短い名前や先頭/末尾の一致も拾う)
+     */
+    static Set<String> trigrams(String name) {
+        StringBuilder sb = new StringBuilder(name.length() + 3);
+        sb.append("^^");
+        for (int i = 0; i < name.length(); i++) {
+            char c = Character.toLowerCase(name.charAt(i));
+            if (Character.isLetterOrDigit(c)) {
+                sb.append(c);
+            }
+        }
+        if (sb.length() == 2) {
+            return new LinkedHashSet<>();
+        }
+        sb.append('$');
+
+        Set<String> grams = new LinkedHashSet<>();
+        for (int i = 0; i + 3 <= sb.length(); i++) {
+            grams.add(sb.substring(i, i + 3));
+        }
+        return grams;
+    }
+
+    /**
+     * 検索結果
+     */
+    public static class Match {
+        private final String lowerName;
+        private final double score;
+
+        Match(String lowerName, double score) {
+            this.lowerName = lowerName;
+            this.score = score;
+        }
+
+        public String getLowerName() {
+            return lowerName;
+        }
+
+        /**
+         * 類似度 (0〜1)
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.discordwhitelist.manager;
+
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Java版プレイヤー名からUUIDを解決するインターフェース
+ * 実装は非同期で動作し、呼び出し元のスレッドをブロックしてはならない
+ */
+public interface ProfileResolver {
+
+    /**
+     * プレイヤー名を解決
+     *
+     * @param playerName Java版プレイヤー名
+     * @return 解決結果 (存在しないアカウントの場合は空)。通信エラー時は例外で完了する
+     */
+    CompletableFuture<Optional<Profile>> resolve(String playerName);
+
+    /**
+     * 停止 (キャッシュの保存など)
+     */
+    void shutdown();
+
+    /**
+     * 解決されたプロフィール
+     */
+    class Profile {
+        private final String name;
+        private final UUID uuid;
+
+        public Profile(String name, UUID uuid) {
+            this.name = name;
+            this.uuid = uuid;
+        }
+
+        /**
+         * 正しい大文字/小文字のプレイヤー名
+         */
+        public String getName() {
+            return name;
+        }
+
+        public UUID getUuid() {
+            return uuid;
+        }
+    }
+}
@@ -0,0 +1,198 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Discordからの自己登録を専用スレッドで順番に処理するパイプライン
+ * キューに溜まった登録をまとめて適用し、保存は1バッチにつき1回だけ行う (グループコミット)
+ * JDAのイベントスレッドはディスクI/Oを待たずに応答を保留して戻る
+ */
+public class RegistrationPipeline {
+
+    // 停止の合図 (キューの最後に入れ、以降は登録を受け付けない)
+    private static final Request STOP = new Request(null, null, false, null);
+
+    private final DiscordWhitelistPlugin plugin;
+    private final WhitelistManager manager;
+    private final int batchSize;
+    private final BlockingQueue<Request> queue = new LinkedBlockingQueue<>();
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    // 統計情報
+    private final AtomicLong processed = new AtomicLong();
+    private final AtomicLong batches = new AtomicLong();
+
+    public RegistrationPipeline(DiscordWhitelistPlugin plugin, WhitelistManager manager) {
+        this.plugin = plugin;
+        this.manager = manager;
+        this.batchSize = Math.max(1, plugin.getConfig().getInt("registration.batch-size", 32));
+        this.worker = new Thread(this::run, "DiscordWhitelist-Registration");
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /**
+     * 登録をキューに追加
+     *
+     * @param playerName Minecraft ID
+     * @param discordId  Discord ID
+     * @param isBedrock  Bedrock版かどうか
+     * @param uuid       解決済みのUUID (不明な場合はnull)
+     * @return 保存完了後に登録結果で完了するFuture
+     */
+    public CompletableFuture<WhitelistManager.AddResult> submit(String playerName, String discordId,
+            boolean isBedrock, UUID uuid) {
+        Request request = new Request(playerName, discordId, isBedrock, uuid);
+        // 停止の合図より後にキューに入らないよう、shutdown()と同じロックで判定と追加を行う
+        synchronized (this) {
+            if (running) {
+                queue.add(request);
+                return request.future;
+            }
+        }
+        request.future.completeExceptionally(stopped());
+        return request.future;
+    }
+
+    private void run() {
+        List<Request> batch = new ArrayList<>(batchSize);
+        boolean stopping = false;
+        while (!stopping) {
+            try {
+                batch.add(queue.take());
+            } catch (InterruptedException e) {
+                // 残りの登録はshutdown()が失敗として応答する
+                return;
+            }
+            queue.drainTo(batch, batchSize - 1);
+            // 停止の合図は常にキューの最後にある
+            if (batch.get(batch.size() - 1) == STOP) {
+                batch.remove(batch.size() - 1);
+                stopping = true;
+            }
+            if (!batch.isEmpty()) {
+                process(batch);
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * バッチ内の登録を順番に適用し、1回の保存の後に結果を通知
+     */
+    private void process(List<Request> batch) {
+        WhitelistManager.AddResult[] results = new WhitelistManager.AddResult[batch.size()];
+        try {
+            manager.batch(() -> {
+                for (int i = 0; i < batch.size(); i++) {
+                    Request request = batch.get(i);
+                    results[i] = manager.withSource(AuditJournal.discordSource(request.discordId),
+                            () -> manager.registerPlayer(request.playerName, request.discordId, request.bedrock,
+                                    request.uuid));
+                }
+            });
+        } catch (RuntimeException e) {
+            plugin.getLogger().warning("登録処理中にエラーが発生しました: " + e.getMessage());
+            for (Request request : batch) {
+                request.future.completeExceptionally(e);
+            }
+            return;
+        }
+
+        processed.addAndGet(batch.size());
+        batches.incrementAndGet();
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).future.complete(results[i]);
+        }
+    }
+
+    /**
+     * 停止 (キューに残っている登録は処理してから終了)
+     * 保存中のバッチを中断しないよう割り込みは使わず、キューの最後に停止の合図を入れる
+     * 時間内に処理できなかった登録は失敗として応答する (Discordの応答が保留されたままにならないように)
+     */
+    public void shutdown() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            queue.add(STOP);
+        }
+        try {
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+
+        List<Request> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        int abandoned = 0;
+        for (Request request : remaining) {
+            if (request != STOP) {
+                request.future.completeExceptionally(stopped());
+                abandoned++;
+            }
+        }
+        if (worker.isAlive()) {
+            // 処理中のバッチが終わったらスレッドを終了させる
+            queue.add(STOP);
+        }
+        if (abandoned > 0) {
+            plugin.getLogger().warning("停止までに処理できなかった登録: " + abandoned + "件");
+        }
+        if (processed.get() > 0) {
+            plugin.getLogger().info("登録パイプライン: " + processed.get() + "件 / " + batches.get() + "回の保存");
+        }
+    }
+
+    private static IllegalStateException stopped() {
+        return new IllegalStateException("登録パイプラインは停止しています");
+    }
+
+    /**
+     * 処理待ちの登録数
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    /**
+     * 処理済みの登録数
+     */
+    public long getProcessedCount() {
+        return processed.get();
+    }
+
+    /**
+     * 保存 (バッチ) の回数
+     */
+    public long getBatchCount() {
+        return batches.get();
+    }
+
+    private static class Request {
+        private final String playerName;
+        private final String discordId;
+        private final boolean bedrock;
+        private final UUID uuid;
+        private final CompletableFuture<WhitelistManager.AddResult> future = new CompletableFuture<>();
+
+        Request(String playerName, String discordId, boolean bedrock, UUID uuid) {
+            this.playerName = playerName;
+            this.discordId = discordId;
+            this.bedrock = bedrock;
+            this.uuid = uuid;
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.discordwhitelist.manager;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Discordロールによるアクセス制御用のインデックス
+ * 対象ロールを持つDiscord IDの集合をメモリ上に保持し、O(1)で判定する
+ * 初回はメンバー一覧の走査で構築し、以降はロール変更イベントで差分更新する
+ */
+public class RoleGateIndex {
+
+    // ホワイトリストへのアクセスを許可するロールを持つDiscord ID
+    private final Set<String> eligible = ConcurrentHashMap.newKeySet();
+
+    // 管理者ロールを持つDiscord ID
+    private final Set<String> admins = ConcurrentHashMap.newKeySet();
+
+    private volatile Set<String> gateRoleIds = Set.of();
+    private volatile String adminRoleId = "";
+    private volatile boolean enabled;
+    private volatile boolean ready;
+
+    /**
+     * 対象ロールを設定し、インデックスをリセット
+     * 再構築が完了するまでisReady()はfalseを返す
+     *
+     * @param enabled     ロールによるアクセス制御を行うかどうか
+     * @param gateRoleIds アクセスを許可するロールID
+     * @param adminRoleId 管理者ロールID (未設定の場合は空文字)
+     */
+    public void configure(boolean enabled, Collection<String> gateRoleIds, String adminRoleId) {
+        this.ready = false;
+        this.enabled = enabled && !gateRoleIds.isEmpty();
+        this.gateRoleIds = Set.copyOf(gateRoleIds);
+        this.adminRoleId = adminRoleId != null ? adminRoleId : "";
+        eligible.clear();
+        admins.clear();
+    }
+
+    /**
+     * メンバーのロール一覧を反映
+     *
+     * @param discordId Discord ID
+     * @param roleIds   メンバーが現在持っている全ロールのID
+     */
+    public void update(String discordId, Collection<String> roleIds) {
+        boolean isEligible = false;
+        boolean isAdmin = false;
+        for (String roleId : roleIds) {
+            if (gateRoleIds.contains(roleId)) {
+                isEligible = true;
+            }
+            if (roleId.equals(adminRoleId)) {
+                isAdmin = true;
+            }
+        }
+
+        if (isEligible) {
+            eligible.add(discordId);
+        } else {
+            eligible.remove(discordId);
+        }
+        if (isAdmin) {
+            admins.add(discordId);
+        } else {
+            admins.remove(discordId);
+        }
+    }
+
+    /**
+     * メンバーがサーバーから退出した場合に削除
+     */
+    public void remove(String discordId) {
+        eligible.remove(discordId);
+        admins.remove(discordId);
+    }
+
+    /**
+     * 初回構築の完了を通知
+     */
+    public void markReady() {
+        ready = true;
+    }
+
+    /**
+     * ロールによるアクセス制御が有効かどうか
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 初回構築が完了しているかどうか
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * ホワイトリストへのアクセスを許可されているかどうか
+     * 無効時、または初回構築前は常にtrue
+     */
+    public boolean isEligible(String discordId) {
+        if (!enabled || !ready) {
+            return true;
+        }
+        return eligible.contains(discordId);
+    }
+
+    /**
+     * 管理者ロールを持っているかどうか
+     */
+    public boolean isAdmin(String discordId) {
+        return admins.contains(discordId);
+    }
+
+    /**
+     * アクセスを許可されているユーザー数
+     */
+    public int getEligibleCount() {
+        return eligible.size();
+    }
+}
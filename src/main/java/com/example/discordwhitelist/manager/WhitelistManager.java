@@ -1,104 +1,372 @@
 package com.example.discordwhitelist.manager;
 
 import com.example.discordwhitelist.DiscordWhitelistPlugin;
-import org.bukkit.configuration.ConfigurationSection;
-import org.bukkit.configuration.file.FileConfiguration;
-import org.bukkit.configuration.file.YamlConfiguration;
 
 import java.io.File;
 import java.io.IOException;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
 
 /**
  * ホワイトリスト管理クラス
  */
 public class WhitelistManager {
 
+    private static final DateTimeFormatter AUDIT_TIME_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm");
+
     private final DiscordWhitelistPlugin plugin;
     private final File whitelistFile;
-    private FileConfiguration whitelistConfig;
+
+    // 読み取りはログインスレッドやJDAスレッドから行われるためConcurrentHashMapを使用し、
+    // 変更はこのインスタンスで同期する
 
     // Minecraft名 -> WhitelistEntry
-    private final Map<String, WhitelistEntry> whitelist = new HashMap<>();
+    private final Map<String, WhitelistEntry> whitelist = new ConcurrentHashMap<>();
 
     // Discord ID -> Minecraft名 (Java版)
-    private final Map<String, String> discordToJava = new HashMap<>();
+    private final Map<String, String> discordToJava = new ConcurrentHashMap<>();
 
     // Discord ID -> Minecraft名 (Bedrock版)
-    private final Map<String, String> discordToBedrock = new HashMap<>();
+    private final Map<String, String> discordToBedrock = new ConcurrentHashMap<>();
+
+    // UUID -> Minecraft名 (小文字, Java版のみ)
+    private final Map<UUID, String> uuidToName = new ConcurrentHashMap<>();
+
+    // Discord ID/UUIDの索引とログイン時の判定用のメモリマップドファイル (無効の場合はnull)
+    // 有効な場合、上の3つのマップには表に入らないエントリー (ASCII以外の名前など) のみを登録する
+    private volatile MappedWhitelistTable mappedTable;
+
+    // Discordロールによるアクセス制御
+    private final RoleGateIndex roleGate = new RoleGateIndex();
+
+    // 期限付きエントリーの期限 (小文字のプレイヤー名)
+    private final ExpiryWheel expiryWheel = new ExpiryWheel(1000, System.currentTimeMillis());
+
+    // 最終アクティブ時刻 -> 小文字のプレイヤー名 (非アクティブなエントリーを古い順に取り出す)
+    private final TreeMap<Long, Set<String>> activityIndex = new TreeMap<>();
+
+    // 種類別の人数などの集計
+    private final WhitelistStats stats = new WhitelistStats();
+
+    // プレイヤー名のあいまい検索用インデックス
+    private final NameSearchIndex nameIndex = new NameSearchIndex();
+
+    // 未反映の最終ログイン時刻 (小文字のプレイヤー名 -> エポックミリ秒)
+    // ログインごとに保存せず、次の保存時にまとめて反映する
+    private final Map<String, Long> pendingSeen = new ConcurrentHashMap<>();
+
+    // 最終ログインの記録を開始した時刻 (記録のないエントリーはこの時刻以降をアクティブとみなす)
+    private long trackingSince;
+
+    // バックアップ用の変更ログ (BackupManagerが差分として書き出す)
+    private List<BackupManager.Mutation> mutationLog = new ArrayList<>();
+    private boolean recordMutations;
+
+    // 複数のDiscordサーバーの統合ビュー (単独で使う場合はnull)
+    private WhitelistPartitions partitions;
+
+    // Discordからの自己登録の上限 (0で無制限)
+    private int maxPlayers;
+
+    // batch()の実行中は保存を遅延し、最後にまとめて1回だけ保存する
+    private int batchDepth;
+    private boolean savePending;
+
+    // 変更を行った者 (監査ログ用、withSource()の実行中のみ設定)
+    private String source = AuditJournal.SOURCE_SYSTEM;
 
     public WhitelistManager(DiscordWhitelistPlugin plugin) {
+        this(plugin, new File(plugin.getDataFolder(), "whitelist.yml"));
+    }
+
+    /**
+     * @param whitelistFile 保存先 (Discordサーバーごとに分ける場合)
+     */
+    public WhitelistManager(DiscordWhitelistPlugin plugin, File whitelistFile) {
         this.plugin = plugin;
-        this.whitelistFile = new File(plugin.getDataFolder(), "whitelist.yml");
+        this.whitelistFile = whitelistFile;
         load();
     }
 
     /**
      * ホワイトリストを読み込み
      */
-    public void load() {
+    public synchronized void load() {
         if (!whitelistFile.exists()) {
             try {
                 whitelistFile.getParentFile().mkdirs();
                 whitelistFile.createNewFile();
             } catch (IOException e) {
-                plugin.getLogger().severe("whitelist.ymlの作成に失敗しました: " + e.getMessage());
+                plugin.getLogger().severe(whitelistFile.getName() + "の作成に失敗しました: " + e.getMessage());
             }
         }
 
-        whitelistConfig = YamlConfiguration.loadConfiguration(whitelistFile);
-        whitelist.clear();
-        discordToJava.clear();
-        discordToBedrock.clear();
+        openMappedTable();
+        clearEntries();
 
-        ConfigurationSection playersSection = whitelistConfig.getConfigurationSection("players");
-        if (playersSection != null) {
-            for (String playerName : playersSection.getKeys(false)) {
-                ConfigurationSection playerSection = playersSection.getConfigurationSection(playerName);
-                if (playerSection != null) {
-                    String discordId = playerSection.getString("discord-id", "");
-                    String registeredAt = playerSection.getString("registered-at", "");
-                    boolean isBedrock = playerSection.getBoolean("bedrock", false);
-
-                    WhitelistEntry entry = new WhitelistEntry(playerName, discordId, registeredAt, isBedrock);
-                    whitelist.put(playerName.toLowerCase(), entry);
-
-                    if (!discordId.isEmpty()) {
-                        if (isBedrock) {
-                            discordToBedrock.put(discordId, playerName);
-                        } else {
-                            discordToJava.put(discordId, playerName);
-                        }
-                    }
+        // 読み込んだ内容は次のベースに含まれるため、変更ログには残さない
+        mutationLog = new ArrayList<>();
+
+        // エントリーは1件ずつ直接インデックスに登録する (文書全体を読み込んでから変換しない)
+        trackingSince = 0;
+        try {
+            trackingSince = WhitelistYaml.read(whitelistFile, plugin.getLogger(), entry -> {
+                if (whitelist.containsKey(entry.getPlayerName().toLowerCase())) {
+                    return false;
                 }
-            }
+                putEntryUnlogged(entry);
+                return true;
+            });
+        } catch (IOException e) {
+            plugin.getLogger().severe(whitelistFile.getName() + "の読み込みに失敗しました: " + e.getMessage());
+        }
+        if (trackingSince <= 0) {
+            trackingSince = System.currentTimeMillis();
         }
 
-        plugin.getLogger().info("ホワイトリストを読み込みました: " + whitelist.size() + "人");
+        plugin.getLogger().info("ホワイトリストを読み込みました: " + whitelist.size() + "人 (" + whitelistFile.getName() + ")");
     }
 
     /**
-     * ホワイトリストを保存
+     * 設定に従ってメモリマップドファイルの索引を開く/閉じる (内容は読み込み時に作り直す)
      */
-    public void save() {
-        whitelistConfig.set("players", null);
+    private void openMappedTable() {
+        File file = new File(whitelistFile.getParentFile(), whitelistFile.getName().replaceFirst("\\.yml$", "") + ".dat");
+        if (!plugin.getConfig().getBoolean("storage.mapped-index", false)) {
+            if (mappedTable != null) {
+                mappedTable = null;
+                MappedWhitelistTable.deleteFiles(file);
+            }
+            return;
+        }
+        if (mappedTable != null) {
+            return;
+        }
+        try {
+            mappedTable = new MappedWhitelistTable(file,
+                    plugin.getConfig().getInt("storage.mapped-initial-capacity", 65536));
+        } catch (IOException e) {
+            plugin.getLogger().severe(file.getName() + "の作成に失敗しました (ヒープ上の索引を使用します): " + e.getMessage());
+        }
+    }
 
+    /**
+     * メモリマップドファイルの索引の更新に失敗した場合、ヒープ上の索引に切り替える
+     */
+    private void closeMappedTable(IOException e) {
+        plugin.getLogger().severe("索引ファイルの更新に失敗しました (ヒープ上の索引に切り替えます): " + e.getMessage());
+        mappedTable = null;
         for (WhitelistEntry entry : whitelist.values()) {
-            String path = "players." + entry.getPlayerName();
-            whitelistConfig.set(path + ".discord-id", entry.getDiscordId());
-            whitelistConfig.set(path + ".registered-at", entry.getRegisteredAt());
-            whitelistConfig.set(path + ".bedrock", entry.isBedrock());
+            indexLinksOnHeap(entry);
         }
+    }
+
+    /**
+     * メモリマップドファイルの索引の状態 (無効の場合はnull)
+     */
+    public MappedIndexStatus getMappedIndexStatus() {
+        MappedWhitelistTable table = mappedTable;
+        return table != null ? new MappedIndexStatus(table.size(), table.capacity(), table.getFileSize()) : null;
+    }
 
+    /**
+     * ホワイトリストを保存
+     */
+    public synchronized void save() {
+        applyPendingSeen();
         try {
-            whitelistConfig.save(whitelistFile);
+            WhitelistYaml.write(whitelistFile, trackingSince, whitelist.values());
         } catch (IOException e) {
-            plugin.getLogger().severe("whitelist.ymlの保存に失敗しました: " + e.getMessage());
+            plugin.getLogger().severe(whitelistFile.getName() + "の保存に失敗しました: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 複数の変更をまとめて適用し、保存は最後に1回だけ行う
+     * 実行中は他スレッドからの変更を待機させる
+     *
+     * @param mutations 変更処理 (addPlayerなどを呼び出す)
+     */
+    public synchronized void batch(Runnable mutations) {
+        batchDepth++;
+        try {
+            mutations.run();
+        } finally {
+            batchDepth--;
+            if (batchDepth == 0 && savePending) {
+                savePending = false;
+                save();
+            }
+        }
+    }
+
+    /**
+     * 変更を行った者を指定して変更を実行 (監査ログに記録される)
+     * 実行中は他スレッドからの変更を待機させる
+     *
+     * @param source    AuditJournal.discordSource() / AuditJournal.senderSource() で作成した値
+     * @param mutations 変更処理 (addPlayerなどを呼び出す)
+     * @return 変更処理の戻り値
+     */
+    public synchronized <T> T withSource(String source, Supplier<T> mutations) {
+        String previous = this.source;
+        this.source = source;
+        try {
+            return mutations.get();
+        } finally {
+            this.source = previous;
+        }
+    }
+
+    /**
+     * 監査ログに記録
+     *
+     * @param previous 変更前のプレイヤー名 (名前の変更以外はnull)
+     */
+    private void audit(AuditJournal.Action action, WhitelistEntry entry, String previous, String detail) {
+        AuditJournal journal = plugin.getAuditJournal();
+        if (journal == null) {
+            return;
+        }
+        String name = whitelistFile.getName();
+        String partition = name.endsWith(".yml") ? name.substring(0, name.length() - ".yml".length()) : name;
+        journal.record(action, partition, entry != null ? entry.getPlayerName() : "", previous,
+                entry != null ? entry.getDiscordId() : "", source, detail);
+    }
+
+    private static String formatAuditTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault())
+                .format(AUDIT_TIME_FORMAT);
+    }
+
+    /**
+     * 変更を保存 (batch()の実行中は終了時まで遅延)
+     */
+    private void persist() {
+        if (batchDepth > 0) {
+            savePending = true;
+        } else {
+            save();
+        }
+    }
+
+    /**
+     * 全エントリーとインデックスを削除
+     */
+    private void clearEntries() {
+        if (partitions != null) {
+            for (WhitelistEntry entry : whitelist.values()) {
+                partitions.unindex(entry, this);
+            }
+        }
+        whitelist.clear();
+        discordToJava.clear();
+        discordToBedrock.clear();
+        uuidToName.clear();
+        MappedWhitelistTable table = mappedTable;
+        if (table != null) {
+            try {
+                table.clear();
+            } catch (IOException e) {
+                closeMappedTable(e);
+            }
+        }
+        expiryWheel.clear(System.currentTimeMillis());
+        activityIndex.clear();
+        stats.clear();
+        nameIndex.clear();
+    }
+
+    /**
+     * 変更ログに残さずにエントリーを登録 (読み込み・復元用)
+     */
+    private void putEntryUnlogged(WhitelistEntry entry) {
+        boolean record = recordMutations;
+        recordMutations = false;
+        try {
+            putEntry(entry);
+        } finally {
+            recordMutations = record;
+        }
+    }
+
+    /**
+     * バックアップから復元 (全エントリーを置き換えて保存)
+     *
+     * @param entries 復元後のエントリー
+     */
+    public synchronized void restore(Collection<WhitelistEntry> entries) {
+        clearEntries();
+        for (WhitelistEntry entry : entries) {
+            putEntryUnlogged(entry);
+        }
+        audit(AuditJournal.Action.RESTORE, null, null, entries.size() + "人");
+        persist();
+    }
+
+    /**
+     * 統合ビューに登録し、現在のエントリーを反映
+     */
+    synchronized void attach(WhitelistPartitions partitions) {
+        this.partitions = partitions;
+        for (WhitelistEntry entry : whitelist.values()) {
+            partitions.index(entry, this);
+        }
+    }
+
+    /**
+     * 統合ビューから外す
+     */
+    synchronized void detach() {
+        if (partitions != null) {
+            for (WhitelistEntry entry : whitelist.values()) {
+                partitions.unindex(entry, this);
+            }
+            partitions = null;
+        }
+    }
+
+    /**
+     * Discordからの自己登録の上限を設定 (0で無制限、管理者による追加は制限しない)
+     */
+    synchronized void setMaxPlayers(int maxPlayers) {
+        this.maxPlayers = Math.max(0, maxPlayers);
+    }
+
+    /**
+     * 変更ログの記録を切り替え (無効にすると未書き出しの変更も破棄)
+     */
+    synchronized void setRecordMutations(boolean recordMutations) {
+        this.recordMutations = recordMutations;
+        if (!recordMutations) {
+            mutationLog = new ArrayList<>();
         }
     }
 
+    /**
+     * 未書き出しの変更を取り出す
+     */
+    synchronized List<BackupManager.Mutation> drainMutations() {
+        List<BackupManager.Mutation> drained = mutationLog;
+        mutationLog = new ArrayList<>();
+        return drained;
+    }
+
+    /**
+     * ベース用に全エントリーを複製し、それまでの変更ログを取り出す
+     * ロック中はコピーのみ行い、圧縮と書き込みは呼び出し側がロックの外で行う
+     */
+    synchronized BackupCapture captureBackup() {
+        return new BackupCapture(System.currentTimeMillis(), new ArrayList<>(whitelist.values()),
+                drainMutations());
+    }
+
     /**
      * リロード
      */
@@ -106,6 +374,27 @@ public class WhitelistManager {
         load();
     }
 
+    /**
+     * Discordユーザーの自己登録 (未登録なら追加、登録済みなら変更)
+     *
+     * @param playerName Minecraft ID
+     * @param discordId  Discord ID
+     * @param isBedrock  Bedrock版かどうか
+     * @param uuid       解決済みのUUID (不明な場合はnull)
+     * @return 登録結果
+     */
+    public synchronized AddResult registerPlayer(String playerName, String discordId, boolean isBedrock,
+            UUID uuid) {
+        String existingPlayer = linkedName(discordId, isBedrock);
+        if (existingPlayer != null) {
+            return updatePlayer(playerName, discordId, isBedrock, uuid);
+        }
+        if (maxPlayers > 0 && whitelist.size() >= maxPlayers) {
+            return AddResult.QUOTA_EXCEEDED;
+        }
+        return addPlayer(playerName, discordId, isBedrock, uuid);
+    }
+
     /**
      * プレイヤーをホワイトリストに追加 (Java版)
      */
@@ -122,15 +411,37 @@ public class WhitelistManager {
      * @return 追加結果
      */
     public AddResult addPlayer(String playerName, String discordId, boolean isBedrock) {
+        return addPlayer(playerName, discordId, isBedrock, null);
+    }
+
+    /**
+     * プレイヤーをホワイトリストに追加 (UUID付き)
+     *
+     * @param playerName Minecraft ID
+     * @param discordId  Discord ID
+     * @param isBedrock  Bedrock版かどうか
+     * @param uuid       解決済みのUUID (不明な場合はnull)
+     * @return 追加結果
+     */
+    public AddResult addPlayer(String playerName, String discordId, boolean isBedrock, UUID uuid) {
+        return addPlayer(playerName, discordId, isBedrock, uuid, 0);
+    }
+
+    /**
+     * プレイヤーをホワイトリストに追加 (期限付き)
+     *
+     * @param playerName Minecraft ID
+     * @param discordId  Discord ID
+     * @param isBedrock  Bedrock版かどうか
+     * @param uuid       解決済みのUUID (不明な場合はnull)
+     * @param expiresAt  有効期限 (エポックミリ秒、0の場合は無期限)
+     * @return 追加結果
+     */
+    public synchronized AddResult addPlayer(String playerName, String discordId, boolean isBedrock, UUID uuid,
+            long expiresAt) {
         // Minecraft名のバリデーション
-        if (isBedrock) {
-            if (!isValidBedrockName(playerName)) {
-                return AddResult.INVALID_NAME;
-            }
-        } else {
-            if (!isValidJavaName(playerName)) {
-                return AddResult.INVALID_NAME;
-            }
+        if (!isValidName(playerName, isBedrock)) {
+            return AddResult.INVALID_NAME;
         }
 
         // Bedrock版の場合、プレフィックスを付けて保存
@@ -149,10 +460,7 @@ public class WhitelistManager {
 
         // Discord IDが既に同じエディションで登録されているかチェック
         if (discordId != null && !discordId.isEmpty()) {
-            if (isBedrock && discordToBedrock.containsKey(discordId)) {
-                return AddResult.DISCORD_ALREADY_REGISTERED;
-            }
-            if (!isBedrock && discordToJava.containsKey(discordId)) {
+            if (linkedName(discordId, isBedrock) != null) {
                 return AddResult.DISCORD_ALREADY_REGISTERED;
             }
         }
@@ -160,18 +468,11 @@ public class WhitelistManager {
         // 登録
         String registeredAt = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
         WhitelistEntry entry = new WhitelistEntry(storedName, discordId != null ? discordId : "", registeredAt,
-                isBedrock);
-        whitelist.put(lowerName, entry);
-
-        if (discordId != null && !discordId.isEmpty()) {
-            if (isBedrock) {
-                discordToBedrock.put(discordId, storedName);
-            } else {
-                discordToJava.put(discordId, storedName);
-            }
-        }
+                isBedrock, false, uuid, expiresAt);
+        putEntry(entry);
+        audit(AuditJournal.Action.ADD, entry, null, expiresAt > 0 ? "期限 " + formatAuditTime(expiresAt) : "");
 
-        save();
+        persist();
         return AddResult.SUCCESS;
     }
 
@@ -184,26 +485,23 @@ public class WhitelistManager {
      * @return 更新結果
      */
     public AddResult updatePlayer(String newPlayerName, String discordId, boolean isBedrock) {
-        // Minecraft名のバリデーション
-        if (isBedrock) {
-            if (!isValidBedrockName(newPlayerName)) {
-                return AddResult.INVALID_NAME;
-            }
-        } else {
-            if (!isValidJavaName(newPlayerName)) {
-                return AddResult.INVALID_NAME;
-            }
-        }
+        return updatePlayer(newPlayerName, discordId, isBedrock, null);
+    }
 
-        // 古いエントリーを取得して削除
-        String oldPlayerName = isBedrock ? discordToBedrock.get(discordId) : discordToJava.get(discordId);
-        if (oldPlayerName != null) {
-            whitelist.remove(oldPlayerName.toLowerCase());
-            if (isBedrock) {
-                discordToBedrock.remove(discordId);
-            } else {
-                discordToJava.remove(discordId);
-            }
+    /**
+     * プレイヤーのMinecraft IDを更新 (UUID付き)
+     *
+     * @param newPlayerName 新しいMinecraft ID
+     * @param discordId     Discord ID
+     * @param isBedrock     Bedrock版かどうか
+     * @param uuid          解決済みのUUID (不明な場合はnull)
+     * @return 更新結果
+     */
+    public synchronized AddResult updatePlayer(String newPlayerName, String discordId, boolean isBedrock,
+            UUID uuid) {
+        // Minecraft名のバリデーション
+        if (!isValidName(newPlayerName, isBedrock)) {
+            return AddResult.INVALID_NAME;
         }
 
         // Bedrock版の場合、プレフィックスを付けて保存
@@ -214,24 +512,34 @@ public class WhitelistManager {
         }
 
         String lowerName = storedName.toLowerCase();
+        String oldPlayerName = linkedName(discordId, isBedrock);
+        WhitelistEntry oldEntry = oldPlayerName != null ? whitelist.get(oldPlayerName.toLowerCase()) : null;
 
-        // 新しい名前が既に使用されているかチェック
-        if (whitelist.containsKey(lowerName)) {
+        // 現在の登録と同じ場合は何もしない (保存もしない)
+        if (oldEntry != null && oldEntry.getPlayerName().equals(storedName)
+                && (uuid == null || uuid.equals(oldEntry.getUuid()))) {
+            return AddResult.UNCHANGED;
+        }
+
+        // 新しい名前が他のエントリーで既に使用されているかチェック
+        WhitelistEntry existing = whitelist.get(lowerName);
+        if (existing != null && existing != oldEntry) {
             return AddResult.ALREADY_EXISTS;
         }
 
-        // 登録
-        String registeredAt = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
-        WhitelistEntry entry = new WhitelistEntry(storedName, discordId, registeredAt, isBedrock);
-        whitelist.put(lowerName, entry);
+        // 古いエントリーを削除
+        removeEntry(oldEntry);
 
-        if (isBedrock) {
-            discordToBedrock.put(discordId, storedName);
-        } else {
-            discordToJava.put(discordId, storedName);
-        }
+        // 登録 (無効化、有効期限、最終ログインは引き継ぐ)
+        String registeredAt = LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME);
+        WhitelistEntry entry = oldEntry != null
+                ? new WhitelistEntry(storedName, discordId, registeredAt, isBedrock, oldEntry.isDisabled(), uuid,
+                        oldEntry.getExpiresAt(), oldEntry.getLastSeen())
+                : new WhitelistEntry(storedName, discordId, registeredAt, isBedrock, false, uuid, 0);
+        putEntry(entry);
+        audit(AuditJournal.Action.UPDATE, entry, oldEntry != null ? oldEntry.getPlayerName() : null, "");
 
-        save();
+        persist();
         return AddResult.UPDATED;
     }
 
@@ -241,19 +549,13 @@ public class WhitelistManager {
      * @param playerName Minecraft ID
      * @return 削除できたかどうか
      */
-    public boolean removePlayer(String playerName) {
-        String lowerName = playerName.toLowerCase();
-        WhitelistEntry entry = whitelist.remove(lowerName);
+    public synchronized boolean removePlayer(String playerName) {
+        WhitelistEntry entry = whitelist.get(playerName.toLowerCase());
 
         if (entry != null) {
-            if (!entry.getDiscordId().isEmpty()) {
-                if (entry.isBedrock()) {
-                    discordToBedrock.remove(entry.getDiscordId());
-                } else {
-                    discordToJava.remove(entry.getDiscordId());
-                }
-            }
-            save();
+            removeEntry(entry);
+            audit(AuditJournal.Action.REMOVE, entry, null, "");
+            persist();
             return true;
         }
 
@@ -261,90 +563,931 @@ public class WhitelistManager {
     }
 
     /**
-     * プレイヤーがホワイトリストに登録されているかチェック
-     * Floodgateプレフィックスを考慮
+     * UUIDが一致するエントリーのプレイヤー名を変更 (Java版の名前変更への追従)
      *
-     * @param playerName Minecraft ID (Floodgateプレフィックス付きの場合あり)
-     * @return 登録されているかどうか
+     * @param uuid    プレイヤーのUUID
+     * @param newName 現在のプレイヤー名
+     * @return 変更したかどうか
      */
-    public boolean isWhitelisted(String playerName) {
-        return whitelist.containsKey(playerName.toLowerCase());
+    public synchronized boolean renamePlayer(UUID uuid, String newName) {
+        String oldLowerName = nameOfUuid(uuid);
+        if (oldLowerName == null || oldLowerName.equals(newName.toLowerCase())) {
+            return false;
+        }
+        WhitelistEntry entry = whitelist.get(oldLowerName);
+        if (entry == null || whitelist.containsKey(newName.toLowerCase())) {
+            return false;
+        }
+
+        removeEntry(entry);
+        WhitelistEntry renamed = entry.withPlayerName(newName);
+        putEntry(renamed);
+        audit(AuditJournal.Action.RENAME, renamed, entry.getPlayerName(), "");
+        persist();
+        plugin.getLogger().info("名前の変更を反映: " + entry.getPlayerName() + " -> " + newName);
+        return true;
     }
 
     /**
-     * Discord IDでJava版プレイヤー名を取得
+     * ログイン/ログアウトを記録 (メモリ上に保持し、flushLastSeen()または次の保存時に反映)
+     * ログインスレッドから呼ばれるため、ロックは取らない
+     *
+     * @param playerName プレイヤー名
+     * @param time       時刻 (エポックミリ秒)
      */
-    public String getJavaPlayerByDiscordId(String discordId) {
-        return discordToJava.get(discordId);
+    public void recordSeen(String playerName, long time) {
+        pendingSeen.merge(playerName.toLowerCase(), time, Math::max);
     }
 
     /**
-     * Discord IDでBedrock版プレイヤー名を取得
+     * 記録済みのログイン時刻をまとめて保存
+     *
+     * @return 反映した件数
      */
-    public String getBedrockPlayerByDiscordId(String discordId) {
-        return discordToBedrock.get(discordId);
+    public synchronized int flushLastSeen() {
+        int count = applyPendingSeen();
+        if (count > 0) {
+            persist();
+        }
+        return count;
     }
 
     /**
-     * Discord IDでプレイヤー名を取得 (Java版優先)
-     * 
-     * @deprecated Use getJavaPlayerByDiscordId or getBedrockPlayerByDiscordId
+     * 未反映のログイン時刻をエントリーに反映 (保存はしない)
+     * ログインのたびに差分が増えないよう変更ログには残さず、次のベースに含める
      */
-    @Deprecated
-    public String getPlayerByDiscordId(String discordId) {
-        String java = discordToJava.get(discordId);
-        if (java != null)
-            return java;
-        return discordToBedrock.get(discordId);
+    private int applyPendingSeen() {
+        int count = 0;
+        for (String lowerName : pendingSeen.keySet()) {
+            // 取り出しと同時に削除し、並行して記録された時刻を取りこぼさない
+            Long time = pendingSeen.remove(lowerName);
+            WhitelistEntry entry = whitelist.get(lowerName);
+            if (time != null && entry != null && time > entry.getLastSeen()) {
+                putEntryUnlogged(entry.withLastSeen(time));
+                count++;
+            }
+        }
+        return count;
     }
 
     /**
-     * ホワイトリスト一覧を取得
+     * 指定時刻より前から非アクティブなエントリーを取得 (古い順)
+     * 最終ログイン (記録がない場合は登録日時と記録開始時刻の遅い方) で判定する
      *
-     * @return エントリーのリスト
+     * @param cutoff 基準時刻 (エポックミリ秒)
+     * @return 非アクティブなエントリー
      */
-    public List<WhitelistEntry> getWhitelist() {
-        return new ArrayList<>(whitelist.values());
+    public synchronized List<WhitelistEntry> getInactive(long cutoff) {
+        applyPendingSeen();
+        List<WhitelistEntry> inactive = new ArrayList<>();
+        for (Set<String> names : activityIndex.headMap(cutoff, false).values()) {
+            for (String lowerName : names) {
+                WhitelistEntry entry = whitelist.get(lowerName);
+                if (entry != null) {
+                    inactive.add(entry);
+                }
+            }
+        }
+        return inactive;
     }
 
     /**
-     * ホワイトリストの人数を取得
+     * 非アクティブなエントリーをまとめて削除 (保存は1回のみ)
+     * 確認後にログインしたエントリーは削除しない
+     *
+     * @param entries getInactive()で取得したエントリー
+     * @param cutoff  基準時刻 (エポックミリ秒)
+     * @return 削除したエントリー
      */
-    public int getSize() {
-        return whitelist.size();
+    public synchronized List<WhitelistEntry> removeInactive(Collection<WhitelistEntry> entries, long cutoff) {
+        applyPendingSeen();
+        List<WhitelistEntry> removed = new ArrayList<>();
+        for (WhitelistEntry entry : entries) {
+            WhitelistEntry current = whitelist.get(entry.getPlayerName().toLowerCase());
+            if (current != null && getLastActive(current) < cutoff) {
+                removeEntry(current);
+                audit(AuditJournal.Action.PRUNE, current, null, "最終アクティブ " + formatAuditTime(getLastActive(current)));
+                removed.add(current);
+            }
+        }
+        if (!removed.isEmpty()) {
+            persist();
+        }
+        return removed;
     }
 
     /**
-     * Java版Minecraft名のバリデーション
+     * 最終アクティブ時刻 (最終ログイン、記録がない場合は登録日時と記録開始時刻の遅い方)
      */
-    private boolean isValidJavaName(String name) {
-        if (name == null || name.length() < 3 || name.length() > 16) {
-            return false;
+    public long getLastActive(WhitelistEntry entry) {
+        if (entry.getLastSeen() > 0) {
+            return entry.getLastSeen();
         }
-        return name.matches("^[a-zA-Z0-9_]+$");
+        return Math.max(parseRegisteredAt(entry.getRegisteredAt()), trackingSince);
     }
 
     /**
-     * Bedrock版ゲーマータグのバリデーション
-     * スペースを含むことができる
+     * 期限切れのエントリーをまとめて削除 (保存は1回のみ)
+     *
+     * @param now 現在時刻 (エポックミリ秒)
+     * @return 削除したエントリー
      */
-    private boolean isValidBedrockName(String name) {
-        if (name == null || name.length() < 3 || name.length() > 16) {
-            return false;
+    public synchronized List<WhitelistEntry> removeExpired(long now) {
+        List<String> due = expiryWheel.advance(now);
+        if (due.isEmpty()) {
+            return Collections.emptyList();
         }
-        // Bedrockのゲーマータグは英数字とスペースを含むことができる
-        return name.matches("^[a-zA-Z0-9_ ]+$");
-    }
 
-    /**
-     * 追加結果
-     */
+        List<WhitelistEntry> removed = new ArrayList<>();
+        for (String lowerName : due) {
+            // 期限の変更や削除は取り消さないため、現在のエントリーの期限を確認する
+            WhitelistEntry entry = whitelist.get(lowerName);
+            if (entry != null && entry.isExpired(now)) {
+                removeEntry(entry);
+                audit(AuditJournal.Action.EXPIRE, entry, null, "");
+                removed.add(entry);
+            }
+        }
+
+        if (!removed.isEmpty()) {
+            persist();
+        }
+        return removed;
+    }
+
+    /**
+     * Discordサーバーから退出したユーザーのエントリーをまとめて処理
+     * 変更がある場合も保存は1回のみ
+     *
+     * @param orphanIds  サーバーに存在しないDiscord IDの集合
+     * @param rejoinedIds 無効化されていたがサーバーに戻ったDiscord IDの集合
+     * @param action     孤立エントリーへの処理
+     * @return 処理対象となった孤立エントリー
+     */
+    public synchronized List<WhitelistEntry> reconcileMembership(Collection<String> orphanIds,
+            Collection<String> rejoinedIds, OrphanAction action) {
+        List<WhitelistEntry> orphans = new ArrayList<>();
+        boolean changed = false;
+
+        for (String discordId : orphanIds) {
+            for (WhitelistEntry entry : getEntriesByDiscordId(discordId)) {
+                switch (action) {
+                    case FLAG -> orphans.add(entry);
+                    case DISABLE -> {
+                        if (!entry.isDisabled()) {
+                            putEntry(entry.withDisabled(true));
+                            audit(AuditJournal.Action.DISABLE, entry, null, "Discordサーバーから退出");
+                            orphans.add(entry);
+                            changed = true;
+                        }
+                    }
+                    case REMOVE -> {
+                        removeEntry(entry);
+                        audit(AuditJournal.Action.REMOVE, entry, null, "Discordサーバーから退出");
+                        orphans.add(entry);
+                        changed = true;
+                    }
+                }
+            }
+        }
+
+        for (String discordId : rejoinedIds) {
+            for (WhitelistEntry entry : getEntriesByDiscordId(discordId)) {
+                if (entry.isDisabled()) {
+                    putEntry(entry.withDisabled(false));
+                    audit(AuditJournal.Action.ENABLE, entry, null, "Discordサーバーに再参加");
+                    changed = true;
+                }
+            }
+        }
+
+        if (changed) {
+            persist();
+        }
+        return orphans;
+    }
+
+    /**
+     * Discord IDに紐付いたエントリーを取得 (Java版・Bedrock版)
+     */
+    private List<WhitelistEntry> getEntriesByDiscordId(String discordId) {
+        List<WhitelistEntry> entries = new ArrayList<>(2);
+        String java = linkedName(discordId, false);
+        if (java != null) {
+            WhitelistEntry entry = whitelist.get(java.toLowerCase());
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        String bedrock = linkedName(discordId, true);
+        if (bedrock != null) {
+            WhitelistEntry entry = whitelist.get(bedrock.toLowerCase());
+            if (entry != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * エントリーを登録し、Discord IDのインデックスを更新
+     */
+    private void putEntry(WhitelistEntry entry) {
+        String lowerName = entry.getPlayerName().toLowerCase();
+        WhitelistEntry previous = whitelist.put(lowerName, entry);
+        if (partitions != null) {
+            if (previous != null) {
+                partitions.unindex(previous, this);
+            }
+            partitions.index(entry, this);
+        }
+        if (recordMutations) {
+            mutationLog.add(BackupManager.Mutation.put(System.currentTimeMillis(), entry));
+        }
+        if (previous != null) {
+            unindexActivity(previous);
+            stats.remove(previous);
+        }
+        indexActivity(entry);
+        stats.add(entry);
+        nameIndex.add(lowerName);
+        indexLinks(entry);
+
+        // 同じ期限で置き換える場合 (無効化、最終ログインの更新など) は登録し直さない
+        if (entry.getExpiresAt() > 0 && (previous == null || previous.getExpiresAt() != entry.getExpiresAt())) {
+            expiryWheel.schedule(lowerName, entry.getExpiresAt());
+        }
+    }
+
+    /**
+     * Discord ID/UUIDの索引にエントリーを登録
+     */
+    private void indexLinks(WhitelistEntry entry) {
+        MappedWhitelistTable table = mappedTable;
+        if (table != null) {
+            try {
+                if (table.put(entry)) {
+                    return;
+                }
+                // 表に入らないエントリーに置き換わる場合は古いレコードを削除
+                table.remove(entry.getPlayerName().toLowerCase());
+            } catch (IOException e) {
+                closeMappedTable(e);
+                return;
+            }
+        }
+        indexLinksOnHeap(entry);
+    }
+
+    private void indexLinksOnHeap(WhitelistEntry entry) {
+        if (entry.getUuid() != null) {
+            uuidToName.put(entry.getUuid(), entry.getPlayerName().toLowerCase());
+        }
+        if (!entry.getDiscordId().isEmpty()) {
+            if (entry.isBedrock()) {
+                discordToBedrock.put(entry.getDiscordId(), entry.getPlayerName());
+            } else {
+                discordToJava.put(entry.getDiscordId(), entry.getPlayerName());
+            }
+        }
+    }
+
+    /**
+     * Discord IDに紐付いたプレイヤー名を取得 (エディション別)
+     */
+    private String linkedName(String discordId, boolean bedrock) {
+        MappedWhitelistTable table = mappedTable;
+        if (table != null) {
+            MappedWhitelistTable.Tables snapshot = table.snapshot();
+            int slot = snapshot.findDiscord(discordId, bedrock);
+            if (slot >= 0) {
+                WhitelistEntry entry = whitelist.get(snapshot.getLowerName(slot));
+                if (entry != null) {
+                    return entry.getPlayerName();
+                }
+            }
+        }
+        return (bedrock ? discordToBedrock : discordToJava).get(discordId);
+    }
+
+    /**
+     * UUIDで登録されている小文字のプレイヤー名を取得
+     */
+    private String nameOfUuid(UUID uuid) {
+        MappedWhitelistTable table = mappedTable;
+        if (table != null) {
+            MappedWhitelistTable.Tables snapshot = table.snapshot();
+            int slot = snapshot.findUuid(uuid);
+            if (slot >= 0) {
+                return snapshot.getLowerName(slot);
+            }
+        }
+        return uuidToName.get(uuid);
+    }
+
+    /**
+     * エントリーを削除し、Discord IDのインデックスを更新
+     */
+    private void removeEntry(WhitelistEntry entry) {
+        if (entry == null) {
+            return;
+        }
+        WhitelistEntry current = whitelist.remove(entry.getPlayerName().toLowerCase());
+        if (current != null) {
+            if (recordMutations) {
+                mutationLog.add(BackupManager.Mutation.remove(System.currentTimeMillis(), current.getPlayerName()));
+            }
+            if (partitions != null) {
+                partitions.unindex(current, this);
+            }
+            unindexActivity(current);
+            stats.remove(current);
+            nameIndex.remove(current.getPlayerName().toLowerCase());
+        }
+
+        MappedWhitelistTable table = mappedTable;
+        if (table != null) {
+            table.remove(entry.getPlayerName().toLowerCase());
+        }
+        if (entry.getUuid() != null) {
+            uuidToName.remove(entry.getUuid());
+        }
+
+        if (!entry.getDiscordId().isEmpty()) {
+            if (entry.isBedrock()) {
+                discordToBedrock.remove(entry.getDiscordId());
+            } else {
+                discordToJava.remove(entry.getDiscordId());
+            }
+        }
+    }
+
+    private void indexActivity(WhitelistEntry entry) {
+        activityIndex.computeIfAbsent(getLastActive(entry), k -> new HashSet<>())
+                .add(entry.getPlayerName().toLowerCase());
+    }
+
+    private void unindexActivity(WhitelistEntry entry) {
+        long key = getLastActive(entry);
+        Set<String> names = activityIndex.get(key);
+        if (names != null) {
+            names.remove(entry.getPlayerName().toLowerCase());
+            if (names.isEmpty()) {
+                activityIndex.remove(key);
+            }
+        }
+    }
+
+    /**
+     * プレイヤーがホワイトリストに登録されているかチェック
+     * Floodgateプレフィックスを考慮
+     * ロールによるアクセス制御が有効な場合、Discord IDが紐付いたエントリーは対象ロールも必要
+     *
+     * @param playerName Minecraft ID (Floodgateプレフィックス付きの場合あり)
+     * @return 登録されているかどうか
+     */
+    public boolean isWhitelisted(String playerName) {
+        // 索引ファイルに登録されている場合は文字列を生成せずに判定する
+        MappedWhitelistTable table = mappedTable;
+        if (table != null) {
+            MappedWhitelistTable.Tables snapshot = table.snapshot();
+            int slot = snapshot.findName(playerName);
+            if (slot >= 0) {
+                return canJoin(snapshot, slot);
+            }
+        }
+        return canJoin(whitelist.get(playerName.toLowerCase()));
+    }
+
+    /**
+     * プレイヤーがホワイトリストに登録されているかチェック (名前またはUUID)
+     * 名前が変更されたJava版プレイヤーもUUIDで判定できる
+     *
+     * @param playerName Minecraft ID
+     * @param uuid       プレイヤーのUUID
+     * @return 登録されているかどうか
+     */
+    public boolean isWhitelisted(String playerName, UUID uuid) {
+        MappedWhitelistTable table = mappedTable;
+        if (table != null) {
+            MappedWhitelistTable.Tables snapshot = table.snapshot();
+            int slot = snapshot.findName(playerName);
+            if (slot < 0 && uuid != null) {
+                slot = snapshot.findUuid(uuid);
+            }
+            if (slot >= 0) {
+                return canJoin(snapshot, slot);
+            }
+        }
+        return canJoin(getEntry(playerName, uuid));
+    }
+
+    /**
+     * 名前またはUUIDでエントリーを取得
+     *
+     * @param playerName Minecraft ID
+     * @param uuid       プレイヤーのUUID (不明な場合はnull)
+     * @return エントリー (登録されていない場合はnull)
+     */
+    public WhitelistEntry getEntry(String playerName, UUID uuid) {
+        WhitelistEntry entry = whitelist.get(playerName.toLowerCase());
+        if (entry == null && uuid != null) {
+            String lowerName = nameOfUuid(uuid);
+            if (lowerName != null) {
+                entry = whitelist.get(lowerName);
+            }
+        }
+        return entry;
+    }
+
+    /**
+     * UUIDで登録されているプレイヤー名を取得
+     */
+    public String getPlayerByUuid(UUID uuid) {
+        String lowerName = nameOfUuid(uuid);
+        if (lowerName == null) {
+            return null;
+        }
+        WhitelistEntry entry = whitelist.get(lowerName);
+        return entry != null ? entry.getPlayerName() : null;
+    }
+
+    private boolean canJoin(WhitelistEntry entry) {
+        if (entry == null || entry.isDisabled() || entry.isExpired(System.currentTimeMillis())) {
+            return false;
+        }
+        return entry.getDiscordId().isEmpty() || roleGate.isEligible(entry.getDiscordId());
+    }
+
+    /**
+     * 索引ファイルのレコードで判定 (ロールによるアクセス制御が無効な場合は文字列を生成しない)
+     *
+     * @param snapshot レコードを検索した表
+     */
+    private boolean canJoin(MappedWhitelistTable.Tables snapshot, int slot) {
+        if ((snapshot.getFlags(slot) & MappedWhitelistTable.FLAG_DISABLED) != 0) {
+            return false;
+        }
+        long expiresAt = snapshot.getExpiresAt(slot);
+        if (expiresAt > 0 && System.currentTimeMillis() >= expiresAt) {
+            return false;
+        }
+        long discordId = snapshot.getDiscordId(slot);
+        return discordId == 0 || !roleGate.isEnabled() || !roleGate.isReady()
+                || roleGate.isEligible(Long.toString(discordId));
+    }
+
+    /**
+     * プレイヤーを検索
+     * Discord ID またはメンション (<@ID>) の場合は紐付いたエントリーを完全一致で返し、
+     * それ以外はプレイヤー名の類似度の高い順に返す
+     *
+     * @param query 検索語
+     * @param limit 最大件数
+     * @return 一致したエントリーと類似度 (完全一致は1.0)
+     */
+    public List<SearchResult> search(String query, int limit) {
+        List<SearchResult> results = new ArrayList<>();
+        String trimmed = query.trim();
+        String discordId = parseDiscordId(trimmed);
+        if (discordId != null) {
+            for (String name : new String[] { linkedName(discordId, false), linkedName(discordId, true) }) {
+                WhitelistEntry entry = name != null ? whitelist.get(name.toLowerCase()) : null;
+                if (entry != null) {
+                    results.add(new SearchResult(entry, 1.0));
+                }
+            }
+            if (!results.isEmpty()) {
+                return results;
+            }
+        }
+
+        for (NameSearchIndex.Match match : nameIndex.search(trimmed, limit, 0.3)) {
+            WhitelistEntry entry = whitelist.get(match.getLowerName());
+            if (entry != null) {
+                double score = match.getLowerName().equals(trimmed.toLowerCase()) ? 1.0 : match.getScore();
+                results.add(new SearchResult(entry, score));
+            }
+        }
+        results.sort((a, b) -> Double.compare(b.getScore(), a.getScore()));
+        return results;
+    }
+
+    /**
+     * Discord ID またはメンションからIDを取り出す (該当しない場合はnull)
+     */
+    static String parseDiscordId(String text) {
+        String id = text;
+        if (id.startsWith("<@") && id.endsWith(">")) {
+            id = id.substring(id.startsWith("<@!") ? 3 : 2, id.length() - 1);
+        }
+        if (id.length() < 17 || id.length() > 20) {
+            return null;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9') {
+                return null;
+            }
+        }
+        return id;
+    }
+
+    /**
+     * 集計を取得
+     */
+    public WhitelistStats getStats() {
+        return stats;
+    }
+
+    /**
+     * ロールによるアクセス制御のインデックスを取得
+     */
+    public RoleGateIndex getRoleGate() {
+        return roleGate;
+    }
+
+    /**
+     * Discord IDでJava版プレイヤー名を取得
+     */
+    public String getJavaPlayerByDiscordId(String discordId) {
+        return linkedName(discordId, false);
+    }
+
+    /**
+     * Discord IDでBedrock版プレイヤー名を取得
+     */
+    public String getBedrockPlayerByDiscordId(String discordId) {
+        return linkedName(discordId, true);
+    }
+
+    /**
+     * Discord IDでプレイヤー名を取得 (Java版優先)
+     * 
+     * @deprecated Use getJavaPlayerByDiscordId or getBedrockPlayerByDiscordId
+     */
+    @Deprecated
+    public String getPlayerByDiscordId(String discordId) {
+        String java = linkedName(discordId, false);
+        if (java != null)
+            return java;
+        return linkedName(discordId, true);
+    }
+
+    /**
+     * ホワイトリスト一覧を取得
+     *
+     * @return エントリーのリスト
+     */
+    public List<WhitelistEntry> getWhitelist() {
+        return new ArrayList<>(whitelist.values());
+    }
+
+    /**
+     * インデックスの整合性を検査
+     * 1つの名前が複数のDiscord IDに紐付いていないこと、Discord ID/UUIDのインデックスと
+     * エントリーが一致していることを確認する
+     *
+     * @return 検出した不整合の説明 (問題がなければ空)
+     */
+    public synchronized List<String> checkConsistency() {
+        List<String> problems = new ArrayList<>();
+        Map<String, String> owners = new HashMap<>();
+
+        checkDiscordIndex(discordToJava, false, owners, problems);
+        checkDiscordIndex(discordToBedrock, true, owners, problems);
+
+        for (Map.Entry<String, WhitelistEntry> e : whitelist.entrySet()) {
+            WhitelistEntry entry = e.getValue();
+            if (!e.getKey().equals(entry.getPlayerName().toLowerCase())) {
+                problems.add("キーと名前が一致しません: " + e.getKey() + " -> " + entry.getPlayerName());
+            }
+            if (!entry.getDiscordId().isEmpty()) {
+                if (!entry.getPlayerName().equals(linkedName(entry.getDiscordId(), entry.isBedrock()))) {
+                    problems.add("インデックスに存在しないエントリー: " + entry.getPlayerName()
+                            + " (Discord: " + entry.getDiscordId() + ")");
+                }
+            }
+            if (entry.getUuid() != null && !e.getKey().equals(nameOfUuid(entry.getUuid()))) {
+                problems.add("UUIDインデックスが一致しません: " + entry.getPlayerName());
+            }
+        }
+
+        for (Map.Entry<UUID, String> e : uuidToName.entrySet()) {
+            WhitelistEntry entry = whitelist.get(e.getValue());
+            if (entry == null || !e.getKey().equals(entry.getUuid())) {
+                problems.add("UUIDインデックスの参照先が存在しません: " + e.getKey() + " -> " + e.getValue());
+            }
+        }
+
+        MappedWhitelistTable table = mappedTable;
+        if (table != null) {
+            int onHeap = 0;
+            for (WhitelistEntry entry : whitelist.values()) {
+                if (!MappedWhitelistTable.fits(entry)) {
+                    onHeap++;
+                } else if (table.snapshot().findName(entry.getPlayerName()) < 0) {
+                    problems.add("索引ファイルに存在しないエントリー: " + entry.getPlayerName());
+                }
+            }
+            if (table.size() + onHeap != whitelist.size()) {
+                problems.add("索引ファイルの件数が一致しません: " + (table.size() + onHeap) + " / " + whitelist.size());
+            }
+        }
+
+        int indexed = 0;
+        for (Map.Entry<Long, Set<String>> e : activityIndex.entrySet()) {
+            for (String lowerName : e.getValue()) {
+                indexed++;
+                WhitelistEntry entry = whitelist.get(lowerName);
+                if (entry == null || getLastActive(entry) != e.getKey()) {
+                    problems.add("最終ログインのインデックスが一致しません: " + lowerName);
+                }
+            }
+        }
+        if (indexed != whitelist.size()) {
+            problems.add("最終ログインのインデックスの件数が一致しません: " + indexed + " / " + whitelist.size());
+        }
+        if (nameIndex.size() != whitelist.size()) {
+            problems.add("検索インデックスの件数が一致しません: " + nameIndex.size() + " / " + whitelist.size());
+        }
+        int counted = stats.snapshot(1).getTotal();
+        if (counted != whitelist.size()) {
+            problems.add("集計の人数が一致しません: " + counted + " / " + whitelist.size());
+        }
+        return problems;
+    }
+
+    private void checkDiscordIndex(Map<String, String> index, boolean bedrock, Map<String, String> owners,
+            List<String> problems) {
+        for (Map.Entry<String, String> e : index.entrySet()) {
+            String discordId = e.getKey();
+            String lowerName = e.getValue().toLowerCase();
+
+            String owner = owners.putIfAbsent(lowerName, discordId);
+            if (owner != null && !owner.equals(discordId)) {
+                problems.add("名前が複数のDiscord IDに紐付いています: " + e.getValue() + " (" + owner + ", " + discordId + ")");
+            }
+
+            WhitelistEntry entry = whitelist.get(lowerName);
+            if (entry == null) {
+                problems.add("Discord IDの参照先が存在しません: " + discordId + " -> " + e.getValue());
+            } else if (!entry.getDiscordId().equals(discordId) || entry.isBedrock() != bedrock) {
+                problems.add("Discord IDとエントリーが一致しません: " + discordId + " -> " + e.getValue());
+            }
+        }
+    }
+
+    /**
+     * Discord IDが紐付いている全ユーザーのIDを取得 (スナップショット)
+     */
+    public Set<String> getLinkedDiscordIds() {
+        if (mappedTable != null) {
+            Set<String> ids = new HashSet<>();
+            for (WhitelistEntry entry : whitelist.values()) {
+                if (!entry.getDiscordId().isEmpty()) {
+                    ids.add(entry.getDiscordId());
+                }
+            }
+            return ids;
+        }
+        Set<String> ids = new HashSet<>(discordToJava.keySet());
+        ids.addAll(discordToBedrock.keySet());
+        return ids;
+    }
+
+    /**
+     * 無効化されたエントリーを持つDiscord IDを取得 (スナップショット)
+     */
+    public Set<String> getDisabledDiscordIds() {
+        Set<String> ids = new HashSet<>();
+        for (WhitelistEntry entry : whitelist.values()) {
+            if (entry.isDisabled() && !entry.getDiscordId().isEmpty()) {
+                ids.add(entry.getDiscordId());
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * ホワイトリストの人数を取得
+     */
+    public int getSize() {
+        return whitelist.size();
+    }
+
+    /**
+     * Minecraft名のバリデーション
+     *
+     * @param name      Minecraft ID (Bedrock版はプレフィックスなし)
+     * @param isBedrock Bedrock版かどうか
+     */
+    public boolean isValidName(String name, boolean isBedrock) {
+        return isBedrock ? isValidBedrockName(name) : isValidJavaName(name);
+    }
+
+    /**
+     * 期間の文字列をミリ秒に変換 (例: 30m, 12h, 3d, 1d12h)
+     *
+     * @return ミリ秒 (形式が不正な場合は-1)
+     */
+    public static long parseDuration(String text) {
+        if (text == null || text.isEmpty()) {
+            return -1;
+        }
+        long total = 0;
+        long value = -1;
+        for (char c : text.toLowerCase().toCharArray()) {
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 100000) {
+                    return -1;
+                }
+                continue;
+            }
+            if (value < 0) {
+                return -1;
+            }
+            switch (c) {
+                case 'm' -> total += value * 60_000L;
+                case 'h' -> total += value * 3_600_000L;
+                case 'd' -> total += value * 86_400_000L;
+                case 'w' -> total += value * 604_800_000L;
+                default -> {
+                    return -1;
+                }
+            }
+            value = -1;
+        }
+        // 末尾に単位がない場合は不正
+        return value >= 0 || total <= 0 ? -1 : total;
+    }
+
+    private long parseRegisteredAt(String registeredAt) {
+        if (registeredAt == null || registeredAt.isEmpty()) {
+            return 0;
+        }
+        try {
+            return LocalDateTime.parse(registeredAt, DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+                    .atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Java版Minecraft名のバリデーション
+     */
+    private boolean isValidJavaName(String name) {
+        if (name == null || name.length() < 3 || name.length() > 16) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (!isNameChar(name.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Bedrock版ゲーマータグのバリデーション
+     * スペースを含むことができる
+     */
+    private boolean isValidBedrockName(String name) {
+        if (name == null || name.length() < 3 || name.length() > 16) {
+            return false;
+        }
+        // Bedrockのゲーマータグは英数字とスペースを含むことができる
+        for (int i = 0; i < name.length(); i++) {
+            char c = name.charAt(i);
+            if (c != ' ' && !isNameChar(c)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Minecraft名に使用できる文字 (英数字とアンダースコア)
+     */
+    private static boolean isNameChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    /**
+     * 追加結果
+     */
     public enum AddResult {
         SUCCESS,
         UPDATED,
+        UNCHANGED,
         ALREADY_EXISTS,
         INVALID_NAME,
-        DISCORD_ALREADY_REGISTERED
+        DISCORD_ALREADY_REGISTERED,
+        QUOTA_EXCEEDED
+    }
+
+    /**
+     * Discordサーバーから退出したユーザーのエントリーへの処理
+     */
+    public enum OrphanAction {
+        // 通知のみ
+        FLAG,
+        // ログインを無効化 (サーバーに戻ると再度有効化)
+        DISABLE,
+        // ホワイトリストから削除
+        REMOVE
+    }
+
+    /**
+     * バックアップのベースを取る時点の内容
+     */
+    static class BackupCapture {
+        private final long time;
+        private final List<WhitelistEntry> entries;
+        private final List<BackupManager.Mutation> mutations;
+
+        BackupCapture(long time, List<WhitelistEntry> entries, List<BackupManager.Mutation> mutations) {
+            this.time = time;
+            this.entries = entries;
+            this.mutations = mutations;
+        }
+
+        long getTime() {
+            return time;
+        }
+
+        List<WhitelistEntry> getEntries() {
+            return entries;
+        }
+
+        /**
+         * ベースより前の未書き出しの変更
+         */
+        List<BackupManager.Mutation> getMutations() {
+            return mutations;
+        }
+    }
+
+    /**
+     * 検索結果
+     */
+    public static class SearchResult {
+        private final WhitelistEntry entry;
+        private final double score;
+
+        SearchResult(WhitelistEntry entry, double score) {
+            this.entry = entry;
+            this.score = score;
+        }
+
+        public WhitelistEntry getEntry() {
+            return entry;
+        }
+
+        /**
+         * 類似度 (0〜1、完全一致は1.0)
+         */
+        public double getScore() {
+            return score;
+        }
+    }
+
+    /**
+     * メモリマップドファイルの索引の状態
+     */
+    public static class MappedIndexStatus {
+        private final int size;
+        private final int capacity;
+        private final long fileSize;
+
+        MappedIndexStatus(int size, int capacity, long fileSize) {
+            this.size = size;
+            this.capacity = capacity;
+            this.fileSize = fileSize;
+        }
+
+        /**
+         * 索引ファイルに登録されているエントリー数
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * 表のレコード数 (使用率が半分を超えたら拡張)
+         */
+        public int getCapacity() {
+            return capacity;
+        }
+
+        /**
+         * ファイルの大きさ (バイト)
+         */
+        public long getFileSize() {
+            return fileSize;
+        }
     }
 
     /**
@@ -355,12 +1498,54 @@ public class WhitelistManager {
         private final String discordId;
         private final String registeredAt;
         private final boolean bedrock;
+        private final boolean disabled;
+        private final UUID uuid;
+        private final long expiresAt;
+        private final long lastSeen;
 
         public WhitelistEntry(String playerName, String discordId, String registeredAt, boolean bedrock) {
+            this(playerName, discordId, registeredAt, bedrock, false, null, 0, 0);
+        }
+
+        public WhitelistEntry(String playerName, String discordId, String registeredAt, boolean bedrock,
+                boolean disabled, UUID uuid, long expiresAt) {
+            this(playerName, discordId, registeredAt, bedrock, disabled, uuid, expiresAt, 0);
+        }
+
+        public WhitelistEntry(String playerName, String discordId, String registeredAt, boolean bedrock,
+                boolean disabled, UUID uuid, long expiresAt, long lastSeen) {
             this.playerName = playerName;
             this.discordId = discordId;
             this.registeredAt = registeredAt;
             this.bedrock = bedrock;
+            this.disabled = disabled;
+            this.uuid = uuid;
+            this.expiresAt = expiresAt;
+            this.lastSeen = lastSeen;
+        }
+
+        /**
+         * 無効化状態を変更したコピーを作成
+         */
+        public WhitelistEntry withDisabled(boolean disabled) {
+            return new WhitelistEntry(playerName, discordId, registeredAt, bedrock, disabled, uuid, expiresAt,
+                    lastSeen);
+        }
+
+        /**
+         * プレイヤー名を変更したコピーを作成
+         */
+        public WhitelistEntry withPlayerName(String playerName) {
+            return new WhitelistEntry(playerName, discordId, registeredAt, bedrock, disabled, uuid, expiresAt,
+                    lastSeen);
+        }
+
+        /**
+         * 最終ログイン時刻を変更したコピーを作成
+         */
+        public WhitelistEntry withLastSeen(long lastSeen) {
+            return new WhitelistEntry(playerName, discordId, registeredAt, bedrock, disabled, uuid, expiresAt,
+                    lastSeen);
         }
 
         public String getPlayerName() {
@@ -378,5 +1563,37 @@ public class WhitelistManager {
         public boolean isBedrock() {
             return bedrock;
         }
+
+        public boolean isDisabled() {
+            return disabled;
+        }
+
+        /**
+         * 解決済みのUUID (Bedrock版や未解決の場合はnull)
+         */
+        public UUID getUuid() {
+            return uuid;
+        }
+
+        /**
+         * 有効期限 (エポックミリ秒、0の場合は無期限)
+         */
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+
+        /**
+         * 期限切れかどうか
+         */
+        public boolean isExpired(long now) {
+            return expiresAt > 0 && now >= expiresAt;
+        }
+
+        /**
+         * 最終ログイン時刻 (エポックミリ秒、記録がない場合は0)
+         */
+        public long getLastSeen() {
+            return lastSeen;
+        }
     }
 }
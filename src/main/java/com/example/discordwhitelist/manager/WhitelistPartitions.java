@@ -0,0 +1,317 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Discordサーバーごとに分けたホワイトリスト
+ * discord.guild-id のサーバー (プライマリ) は従来通り whitelist.yml を使い、partitions に設定したサーバーは
+ * whitelists/<ギルドID>.yml に別々に保存する
+ * 各パーティションは独自のインデックス・ロック・登録パイプラインを持つため、1つのサーバーでの登録の集中が
+ * 他のサーバーの登録を待たせない
+ * ログイン判定用に、名前/UUID -> 所属するパーティションの統合インデックスを各パーティションの変更時に更新する
+ */
+public class WhitelistPartitions {
+
+    private final DiscordWhitelistPlugin plugin;
+    private final Partition primary;
+
+    // ギルドID -> パーティション (プライマリ以外)
+    private final Map<String, Partition> partitions = new ConcurrentHashMap<>();
+
+    // 小文字のプレイヤー名 / UUID -> エントリーを持つパーティション (同じ名前が複数のサーバーで登録されている場合は複数)
+    private final Map<String, List<WhitelistManager>> nameOwners = new ConcurrentHashMap<>();
+    private final Map<UUID, List<WhitelistManager>> uuidOwners = new ConcurrentHashMap<>();
+
+    public WhitelistPartitions(DiscordWhitelistPlugin plugin, WhitelistManager primaryManager,
+            RegistrationPipeline primaryPipeline) {
+        this.plugin = plugin;
+        this.primary = new Partition(null, primaryManager, primaryPipeline);
+        primaryManager.attach(this);
+        reload();
+    }
+
+    /**
+     * 設定を読み込み、パーティションを追加/削除 (設定の再読み込み時にも呼び出す)
+     * 既存のパーティションのホワイトリストは呼び出し側で読み込み直さない限りそのまま使う
+     */
+    public void reload() {
+        String primaryGuildId = plugin.getConfig().getString("discord.guild-id", "");
+        primary.guildId = primaryGuildId.isEmpty() || primaryGuildId.equals("YOUR_GUILD_ID") ? null : primaryGuildId;
+        primary.adminRoleId = plugin.getConfig().getString("discord.admin-role-id", "");
+        primary.manager.setMaxPlayers(plugin.getConfig().getInt("registration.max-players", 0));
+
+        Map<String, ConfigurationSection> configured = new LinkedHashMap<>();
+        ConfigurationSection section = plugin.getConfig().getConfigurationSection("partitions");
+        if (section != null) {
+            for (String guildId : section.getKeys(false)) {
+                ConfigurationSection guildSection = section.getConfigurationSection(guildId);
+                if (guildSection == null || !guildId.matches("^\\d{17,20}$")) {
+                    plugin.getLogger().warning("partitions のギルドIDが不正です: " + guildId);
+                } else if (guildId.equals(primary.guildId)) {
+                    plugin.getLogger().warning("discord.guild-id のサーバーは partitions に指定できません: " + guildId);
+                } else {
+                    configured.put(guildId, guildSection);
+                }
+            }
+        }
+
+        // 設定から削除されたパーティションを停止
+        for (String guildId : new HashSet<>(partitions.keySet())) {
+            if (!configured.containsKey(guildId)) {
+                Partition removed = partitions.remove(guildId);
+                removed.pipeline.shutdown();
+                removed.manager.save();
+                removed.manager.detach();
+                plugin.getLogger().info("パーティションを停止しました: " + guildId);
+            }
+        }
+
+        for (Map.Entry<String, ConfigurationSection> e : configured.entrySet()) {
+            Partition partition = partitions.get(e.getKey());
+            if (partition == null) {
+                File file = new File(new File(plugin.getDataFolder(), "whitelists"), e.getKey() + ".yml");
+                WhitelistManager manager = new WhitelistManager(plugin, file);
+                partition = new Partition(e.getKey(), manager, new RegistrationPipeline(plugin, manager));
+                manager.attach(this);
+                partitions.put(e.getKey(), partition);
+            }
+            partition.adminRoleId = e.getValue().getString("admin-role-id", "");
+            partition.manager.setMaxPlayers(e.getValue().getInt("max-players", 0));
+        }
+    }
+
+    /**
+     * プライマリ以外のパーティションのホワイトリストを読み込み直す
+     */
+    public void reloadWhitelists() {
+        for (Partition partition : partitions.values()) {
+            partition.manager.flushLastSeen();
+            partition.manager.reload();
+        }
+    }
+
+    /**
+     * 登録パイプラインを停止し、ホワイトリストを保存 (プライマリは呼び出し側で処理)
+     */
+    public void shutdown() {
+        for (Partition partition : partitions.values()) {
+            partition.pipeline.shutdown();
+            partition.manager.save();
+        }
+    }
+
+    /**
+     * Discordサーバーのパーティションを取得 (設定されていないサーバーはプライマリ)
+     *
+     * @param guildId ギルドID (DMなどの場合はnull)
+     */
+    public Partition forGuild(String guildId) {
+        Partition partition = guildId != null ? partitions.get(guildId) : null;
+        return partition != null ? partition : primary;
+    }
+
+    /**
+     * プライマリ (discord.guild-id のサーバー) のパーティション
+     */
+    public Partition getPrimary() {
+        return primary;
+    }
+
+    /**
+     * 全てのパーティション (プライマリを含む)
+     */
+    public List<Partition> getAll() {
+        List<Partition> all = new ArrayList<>(partitions.size() + 1);
+        all.add(primary);
+        all.addAll(partitions.values());
+        return all;
+    }
+
+    /**
+     * ログインを許可するパーティションを取得 (統合インデックスを参照し、全パーティションは走査しない)
+     *
+     * @return 許可するパーティションのホワイトリスト (どのパーティションも許可しない場合はnull)
+     */
+    public WhitelistManager findOwner(String playerName, UUID uuid) {
+        List<WhitelistManager> byName = nameOwners.get(playerName.toLowerCase());
+        List<WhitelistManager> byUuid = uuid != null ? uuidOwners.get(uuid) : null;
+
+        // 同じ名前が複数のサーバーにある場合はプライマリを優先
+        WhitelistManager found = null;
+        for (List<WhitelistManager> owners : Arrays.asList(byName, byUuid)) {
+            if (owners == null) {
+                continue;
+            }
+            for (WhitelistManager owner : owners) {
+                if ((owner == primary.manager || found == null) && owner.isWhitelisted(playerName, uuid)) {
+                    if (owner == primary.manager) {
+                        return owner;
+                    }
+                    found = owner;
+                }
+            }
+        }
+        return found;
+    }
+
+    private static boolean isOwner(List<WhitelistManager> owners, WhitelistManager manager) {
+        return owners != null && owners.contains(manager);
+    }
+
+    /**
+     * ログイン/ログアウトを、その名前のエントリーを持つパーティションに記録
+     */
+    public void recordSeen(String playerName, long time) {
+        List<WhitelistManager> owners = nameOwners.get(playerName.toLowerCase());
+        if (owners != null) {
+            for (WhitelistManager owner : owners) {
+                owner.recordSeen(playerName, time);
+            }
+        }
+    }
+
+    /**
+     * 全パーティションの最終ログイン時刻を保存
+     */
+    public void flushLastSeen() {
+        for (Partition partition : getAll()) {
+            partition.manager.flushLastSeen();
+        }
+    }
+
+    /**
+     * 全パーティションの期限切れエントリーを削除
+     */
+    public List<WhitelistManager.WhitelistEntry> removeExpired(long now) {
+        List<WhitelistManager.WhitelistEntry> removed = new ArrayList<>();
+        for (Partition partition : getAll()) {
+            removed.addAll(partition.manager.removeExpired(now));
+        }
+        return removed;
+    }
+
+    /**
+     * 統合インデックスにエントリーを追加 (WhitelistManagerのロック中に呼ばれる)
+     */
+    void index(WhitelistManager.WhitelistEntry entry, WhitelistManager owner) {
+        nameOwners.compute(entry.getPlayerName().toLowerCase(), (key, owners) -> with(owners, owner));
+        if (entry.getUuid() != null) {
+            uuidOwners.compute(entry.getUuid(), (key, owners) -> with(owners, owner));
+        }
+    }
+
+    /**
+     * 統合インデックスからエントリーを削除 (WhitelistManagerのロック中に呼ばれる)
+     */
+    void unindex(WhitelistManager.WhitelistEntry entry, WhitelistManager owner) {
+        nameOwners.computeIfPresent(entry.getPlayerName().toLowerCase(), (key, owners) -> without(owners, owner));
+        if (entry.getUuid() != null) {
+            uuidOwners.computeIfPresent(entry.getUuid(), (key, owners) -> without(owners, owner));
+        }
+    }
+
+    // パーティションごとのロックは別々のため、所属の一覧は置き換えのみで更新する (読み取りはロック不要)
+    private static List<WhitelistManager> with(List<WhitelistManager> owners, WhitelistManager owner) {
+        if (owners == null) {
+            return List.of(owner);
+        }
+        if (owners.contains(owner)) {
+            return owners;
+        }
+        List<WhitelistManager> updated = new ArrayList<>(owners);
+        updated.add(owner);
+        return List.copyOf(updated);
+    }
+
+    private static List<WhitelistManager> without(List<WhitelistManager> owners, WhitelistManager owner) {
+        if (!owners.contains(owner)) {
+            return owners;
+        }
+        List<WhitelistManager> updated = new ArrayList<>(owners);
+        updated.remove(owner);
+        return updated.isEmpty() ? null : List.copyOf(updated);
+    }
+
+    /**
+     * 統合インデックスの整合性を検査
+     *
+     * @return 検出した不整合の説明 (問題がなければ空)
+     */
+    public List<String> checkConsistency() {
+        List<String> problems = new ArrayList<>();
+        Set<String> indexed = new HashSet<>();
+        for (Partition partition : getAll()) {
+            for (WhitelistManager.WhitelistEntry entry : partition.manager.getWhitelist()) {
+                String lowerName = entry.getPlayerName().toLowerCase();
+                if (!isOwner(nameOwners.get(lowerName), partition.manager)) {
+                    problems.add("統合インデックスに存在しないエントリー: " + entry.getPlayerName()
+                            + " (" + partition.getLabel() + ")");
+                }
+                indexed.add(lowerName);
+            }
+        }
+        for (String lowerName : nameOwners.keySet()) {
+            if (!indexed.contains(lowerName)) {
+                problems.add("統合インデックスの参照先が存在しません: " + lowerName);
+            }
+        }
+        return problems;
+    }
+
+    /**
+     * 1つのDiscordサーバーのホワイトリスト
+     */
+    public static class Partition {
+        private volatile String guildId;
+        private final WhitelistManager manager;
+        private final RegistrationPipeline pipeline;
+        private volatile String adminRoleId = "";
+
+        Partition(String guildId, WhitelistManager manager, RegistrationPipeline pipeline) {
+            this.guildId = guildId;
+            this.manager = manager;
+            this.pipeline = pipeline;
+        }
+
+        /**
+         * ギルドID (プライマリでギルド未設定の場合はnull)
+         */
+        public String getGuildId() {
+            return guildId;
+        }
+
+        public WhitelistManager getManager() {
+            return manager;
+        }
+
+        public RegistrationPipeline getPipeline() {
+            return pipeline;
+        }
+
+        /**
+         * 管理者ロールのID (未設定の場合は空)
+         */
+        public String getAdminRoleId() {
+            return adminRoleId == null || adminRoleId.equals("ADMIN_ROLE_ID") ? "" : adminRoleId;
+        }
+
+        /**
+         * ログなどに表示する名前
+         */
+        public String getLabel() {
+            return guildId != null ? "ギルド " + guildId : "プライマリ";
+        }
+    }
+}
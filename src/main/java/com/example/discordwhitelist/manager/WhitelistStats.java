@@ -0,0 +1,169 @@
+package com.example.discordwhitelist.manager;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * ホワイトリストの集計
+ * WhitelistManagerがエントリーの追加/削除のたびに差分で更新し、読み込み時に1回だけ再構築する
+ * 参照は全件を走査せずにスナップショットを返す
+ */
+public class WhitelistStats {
+
+    private int total;
+    private int bedrock;
+    private int linked;
+    private int disabled;
+    private int temporary;
+
+    // 登録日 -> 現在残っているエントリー数
+    private final TreeMap<LocalDate, Integer> registrationsPerDay = new TreeMap<>();
+
+    // 変更のたびに増える (表示の更新が必要か判定するため)
+    private long version;
+
+    synchronized void clear() {
+        total = 0;
+        bedrock = 0;
+        linked = 0;
+        disabled = 0;
+        temporary = 0;
+        registrationsPerDay.clear();
+        version++;
+    }
+
+    synchronized void add(WhitelistManager.WhitelistEntry entry) {
+        apply(entry, 1);
+    }
+
+    synchronized void remove(WhitelistManager.WhitelistEntry entry) {
+        apply(entry, -1);
+    }
+
+    private void apply(WhitelistManager.WhitelistEntry entry, int delta) {
+        total += delta;
+        if (entry.isBedrock()) {
+            bedrock += delta;
+        }
+        if (!entry.getDiscordId().isEmpty()) {
+            linked += delta;
+        }
+        if (entry.isDisabled()) {
+            disabled += delta;
+        }
+        if (entry.getExpiresAt() > 0) {
+            temporary += delta;
+        }
+
+        LocalDate day = parseDay(entry.getRegisteredAt());
+        if (day != null) {
+            registrationsPerDay.merge(day, delta, (a, b) -> a + b == 0 ? null : a + b);
+        }
+        version++;
+    }
+
+    /**
+     * 現在の集計を取得
+     *
+     * @param days 日別の登録数を含める日数 (今日を含む)
+     */
+    public synchronized Snapshot snapshot(int days) {
+        LocalDate today = LocalDate.now();
+        NavigableMap<LocalDate, Integer> recent = new TreeMap<>(
+                registrationsPerDay.subMap(today.minusDays(days - 1L), true, today, true));
+        return new Snapshot(total, bedrock, linked, disabled, temporary, recent, version);
+    }
+
+    /**
+     * 変更のたびに増える番号
+     */
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    private static LocalDate parseDay(String registeredAt) {
+        if (registeredAt == null || registeredAt.length() < 10) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(registeredAt.substring(0, 10));
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 集計のスナップショット
+     */
+    public static class Snapshot {
+        private final int total;
+        private final int bedrock;
+        private final int linked;
+        private final int disabled;
+        private final int temporary;
+        private final NavigableMap<LocalDate, Integer> registrationsPerDay;
+        private final long version;
+
+        Snapshot(int total, int bedrock, int linked, int disabled, int temporary,
+                NavigableMap<LocalDate, Integer> registrationsPerDay, long version) {
+            this.total = total;
+            this.bedrock = bedrock;
+            this.linked = linked;
+            this.disabled = disabled;
+            this.temporary = temporary;
+            this.registrationsPerDay = registrationsPerDay;
+            this.version = version;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        public int getJava() {
+            return total - bedrock;
+        }
+
+        public int getBedrock() {
+            return bedrock;
+        }
+
+        /**
+         * Discord IDが紐付いたエントリー数
+         */
+        public int getLinked() {
+            return linked;
+        }
+
+        /**
+         * 管理者が手動で追加したDiscord未連携のエントリー数
+         */
+        public int getUnlinked() {
+            return total - linked;
+        }
+
+        public int getDisabled() {
+            return disabled;
+        }
+
+        /**
+         * 期限付きのエントリー数
+         */
+        public int getTemporary() {
+            return temporary;
+        }
+
+        /**
+         * 日別の登録数 (現在残っているエントリーのみ)
+         */
+        public Map<LocalDate, Integer> getRegistrationsPerDay() {
+            return registrationsPerDay;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
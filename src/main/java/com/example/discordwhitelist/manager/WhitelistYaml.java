@@ -0,0 +1,347 @@
+package com.example.discordwhitelist.manager;
+
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.Yaml;
+import org.yaml.snakeyaml.error.Mark;
+import org.yaml.snakeyaml.error.MarkedYAMLException;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.ScalarEvent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+
+/**
+ * whitelist.yml の読み書き
+ * 読み込みはYAMLのイベントを順に処理してエントリーを直接登録し、文書全体の木構造を作らない
+ * 不正なエントリーは行番号付きで報告する (読み込めない項目のみスキップ)
+ * 書き出しはエントリーから直接YAMLを出力し、一時ファイルに書いてから置き換える
+ */
+class WhitelistYaml {
+
+    private static final String TRACKING_SINCE = "activity-tracking-since";
+
+    // 個別に報告する問題の数 (以降は件数のみ)
+    private static final int MAX_REPORTS = 50;
+
+    private final File file;
+    private final Logger logger;
+    private final Predicate<WhitelistManager.WhitelistEntry> sink;
+
+    private Iterator<Event> events;
+    private long trackingSince;
+    private int problems;
+
+    private WhitelistYaml(File file, Logger logger, Predicate<WhitelistManager.WhitelistEntry> sink) {
+        this.file = file;
+        this.logger = logger;
+        this.sink = sink;
+    }
+
+    /**
+     * 読み込み
+     * 構文エラーの場合はそこまでのエントリーを登録し、元のファイルを .broken として残す
+     *
+     * @param sink 読み込んだエントリーの登録先 (同じ名前が登録済みの場合はfalse)
+     * @return 最終ログインの記録を開始した時刻 (未記録の場合は0)
+     */
+    static long read(File file, Logger logger, Predicate<WhitelistManager.WhitelistEntry> sink)
+            throws IOException {
+        WhitelistYaml yaml = new WhitelistYaml(file, logger, sink);
+        LoaderOptions options = new LoaderOptions();
+        options.setCodePointLimit(Integer.MAX_VALUE);
+        try (Reader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            yaml.events = new Yaml(options).parse(reader).iterator();
+            yaml.document();
+        } catch (YAMLException e) {
+            Mark mark = e instanceof MarkedYAMLException marked ? marked.getProblemMark() : null;
+            String position = mark != null ? ":" + (mark.getLine() + 1) : "";
+            File broken = new File(file.getParentFile(), file.getName() + ".broken");
+            Files.copy(file.toPath(), broken.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            logger.severe(file.getName() + position + ": YAMLの構文エラーのため、ここまでのエントリーのみ読み込みました ("
+                    + (e instanceof MarkedYAMLException marked ? marked.getProblem() : e.getMessage())
+                    + ")。元のファイルは " + broken.getName() + " に保存しました");
+        }
+        if (yaml.problems > MAX_REPORTS) {
+            logger.warning(file.getName() + ": 他 " + (yaml.problems - MAX_REPORTS) + "件の問題がありました");
+        }
+        return yaml.trackingSince;
+    }
+
+    private void document() {
+        // StreamStart
+        events.next();
+        Event event = events.next();
+        if (event.is(Event.ID.StreamEnd)) {
+            // 空のファイル
+            return;
+        }
+        Event root = events.next();
+        if (isNull(root)) {
+            return;
+        }
+        if (!root.is(Event.ID.MappingStart)) {
+            report(root, "マッピングではないため読み込めません");
+            skip(root);
+            return;
+        }
+
+        while (true) {
+            Event key = events.next();
+            if (key.is(Event.ID.MappingEnd)) {
+                return;
+            }
+            // 複合キーは読み飛ばしてから値を読む
+            skip(key);
+            Event value = events.next();
+            String name = scalar(key);
+            if (name == null) {
+                report(key, "不正なキーを無視します");
+                skip(value);
+                continue;
+            }
+            switch (name) {
+                case TRACKING_SINCE -> trackingSince = parseLong(name, value);
+                case "players" -> players(value);
+                default -> {
+                    report(key, "不明な項目を無視します: " + name);
+                    skip(value);
+                }
+            }
+        }
+    }
+
+    private void players(Event start) {
+        if (isNull(start)) {
+            return;
+        }
+        if (!start.is(Event.ID.MappingStart)) {
+            report(start, "players がマッピングではないため読み込めません");
+            skip(start);
+            return;
+        }
+
+        while (true) {
+            Event key = events.next();
+            if (key.is(Event.ID.MappingEnd)) {
+                return;
+            }
+            skip(key);
+            Event value = events.next();
+            String playerName = scalar(key);
+            if (playerName == null || playerName.isEmpty()) {
+                report(key, "プレイヤー名が不正なエントリーをスキップします");
+                skip(value);
+                continue;
+            }
+            if (!value.is(Event.ID.MappingStart)) {
+                report(value, playerName + ": エントリーがマッピングではないためスキップします");
+                skip(value);
+                continue;
+            }
+            WhitelistManager.WhitelistEntry entry = entry(playerName);
+            if (!sink.test(entry)) {
+                report(key, playerName + ": 同じ名前のエントリーが既にあるためスキップします");
+            }
+        }
+    }
+
+    /**
+     * 1人分のエントリーを読み込む (MappingStartの次から)
+     */
+    private WhitelistManager.WhitelistEntry entry(String playerName) {
+        String discordId = "";
+        String registeredAt = "";
+        boolean bedrock = false;
+        boolean disabled = false;
+        UUID uuid = null;
+        long expiresAt = 0;
+        long lastSeen = 0;
+
+        while (true) {
+            Event key = events.next();
+            if (key.is(Event.ID.MappingEnd)) {
+                break;
+            }
+            skip(key);
+            Event value = events.next();
+            String field = scalar(key);
+            if (field == null || !(value instanceof ScalarEvent)) {
+                report(value, playerName + ": 不正な値を無視します" + (field != null ? " (" + field + ")" : ""));
+                skip(value);
+                continue;
+            }
+            String text = scalar(value);
+            switch (field) {
+                case "discord-id" -> discordId = text != null ? text : "";
+                case "registered-at" -> registeredAt = text != null ? text : "";
+                case "bedrock" -> bedrock = parseBoolean(playerName, field, value);
+                case "disabled" -> disabled = parseBoolean(playerName, field, value);
+                case "uuid" -> uuid = parseUuid(playerName, value);
+                case "expires-at" -> expiresAt = parseLong(playerName + ": " + field, value);
+                case "last-seen" -> lastSeen = parseLong(playerName + ": " + field, value);
+                default -> report(key, playerName + ": 不明な項目を無視します: " + field);
+            }
+        }
+        return new WhitelistManager.WhitelistEntry(playerName, discordId, registeredAt, bedrock, disabled, uuid,
+                expiresAt, lastSeen);
+    }
+
+    private long parseLong(String label, Event value) {
+        String text = scalar(value);
+        if (text == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(text);
+        } catch (NumberFormatException e) {
+            report(value, label + " が数値ではないため無視します: " + text);
+            return 0;
+        }
+    }
+
+    private boolean parseBoolean(String playerName, String field, Event value) {
+        String text = scalar(value);
+        if (text == null) {
+            return false;
+        }
+        switch (text.toLowerCase()) {
+            case "true", "yes", "on" -> {
+                return true;
+            }
+            case "false", "no", "off" -> {
+                return false;
+            }
+            default -> {
+                report(value, playerName + ": " + field + " が true/false ではないため無視します: " + text);
+                return false;
+            }
+        }
+    }
+
+    private UUID parseUuid(String playerName, Event value) {
+        String text = scalar(value);
+        if (text == null || text.isEmpty()) {
+            return null;
+        }
+        try {
+            return UUID.fromString(text);
+        } catch (IllegalArgumentException e) {
+            report(value, playerName + ": UUIDが不正なため無視します: " + text);
+            return null;
+        }
+    }
+
+    /**
+     * スカラーの値 (スカラーでない場合やnullの場合はnull)
+     */
+    private static String scalar(Event event) {
+        if (!(event instanceof ScalarEvent scalar) || isNull(event)) {
+            return null;
+        }
+        return scalar.getValue();
+    }
+
+    private static boolean isNull(Event event) {
+        if (!(event instanceof ScalarEvent scalar) || !scalar.isPlain()) {
+            return false;
+        }
+        String value = scalar.getValue();
+        return value.isEmpty() || value.equals("~") || value.equalsIgnoreCase("null");
+    }
+
+    /**
+     * 値を読み飛ばす (マッピング/シーケンスの場合は対応する終わりまで)
+     */
+    private void skip(Event start) {
+        if (!start.is(Event.ID.MappingStart) && !start.is(Event.ID.SequenceStart)) {
+            return;
+        }
+        int depth = 1;
+        while (depth > 0) {
+            Event event = events.next();
+            if (event.is(Event.ID.MappingStart) || event.is(Event.ID.SequenceStart)) {
+                depth++;
+            } else if (event.is(Event.ID.MappingEnd) || event.is(Event.ID.SequenceEnd)) {
+                depth--;
+            }
+        }
+    }
+
+    private void report(Event event, String message) {
+        problems++;
+        if (problems <= MAX_REPORTS) {
+            logger.warning(file.getName() + ":" + (event.getStartMark().getLine() + 1) + ": " + message);
+        }
+    }
+
+    /**
+     * 書き出し (一時ファイルに書き込んでから置き換える)
+     *
+     * @param trackingSince 最終ログインの記録を開始した時刻
+     * @param entries       全エントリー
+     */
+    static void write(File file, long trackingSince, Collection<WhitelistManager.WhitelistEntry> entries)
+            throws IOException {
+        File tmp = new File(file.getParentFile(), file.getName() + ".tmp");
+        try (Writer writer = Files.newBufferedWriter(tmp.toPath(), StandardCharsets.UTF_8)) {
+            writer.write(TRACKING_SINCE + ": " + trackingSince + "\n");
+            writer.write(entries.isEmpty() ? "players: {}\n" : "players:\n");
+            for (WhitelistManager.WhitelistEntry entry : entries) {
+                writer.write("  " + quote(entry.getPlayerName()) + ":\n");
+                writer.write("    discord-id: " + quote(entry.getDiscordId()) + "\n");
+                writer.write("    registered-at: " + quote(entry.getRegisteredAt()) + "\n");
+                writer.write("    bedrock: " + entry.isBedrock() + "\n");
+                if (entry.isDisabled()) {
+                    writer.write("    disabled: true\n");
+                }
+                if (entry.getUuid() != null) {
+                    writer.write("    uuid: " + entry.getUuid() + "\n");
+                }
+                if (entry.getExpiresAt() > 0) {
+                    writer.write("    expires-at: " + entry.getExpiresAt() + "\n");
+                }
+                if (entry.getLastSeen() > 0) {
+                    writer.write("    last-seen: " + entry.getLastSeen() + "\n");
+                }
+            }
+        } catch (IOException e) {
+            tmp.delete();
+            throw e;
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * 文字列をYAMLのスカラーとして出力 (英字で始まる単純な名前以外は引用符で囲む)
+     */
+    private static String quote(String value) {
+        if (value == null) {
+            return "''";
+        }
+        boolean plain = !value.isEmpty() && (Character.isLetter(value.charAt(0)) || value.charAt(0) == '_')
+                && value.length() <= 64;
+        for (int i = 0; plain && i < value.length(); i++) {
+            char c = value.charAt(i);
+            plain = c < 0x80 && (Character.isLetterOrDigit(c) || c == '_' || c == '-' || c == '.');
+        }
+        if (plain) {
+            switch (value.toLowerCase()) {
+                case "true", "false", "yes", "no", "on", "off", "null", "y", "n" -> plain = false;
+                default -> {
+                }
+            }
+        }
+        return plain ? value : "'" + value.replace("'", "''") + "'";
+    }
+}
@@ -0,0 +1,566 @@
+package com.example.discordwhitelist.relay;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.discord.DiscordBot;
+import com.example.discordwhitelist.discord.OutboundSender;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.serializer.legacy.LegacyComponentSerializer;
+import org.bukkit.Bukkit;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.net.UnixDomainSocketAddress;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * 同じマシン上の複数のサーバー間のチャット中継
+ * 各サーバーがTCPまたはUnixドメインソケットで互いに接続し、チャットや参加/退出などのイベントを直接他のサーバーに送る
+ * Discordへの送信は接続中のサーバーから選ばれた1台 (Discordに送信できるサーバーのうちサーバー名が最小のもの) のみが
+ * まとめて行い、サーバーの台数分のWebhookの送信を1台分にする
+ * リーダーが停止すると残りのサーバーで選び直す (全てのサーバーが互いに接続する構成を前提とする)
+ */
+public class ChatRelay {
+
+    // 再接続とPINGの間隔
+    private static final long MAINTENANCE_INTERVAL_MS = 5000;
+
+    // この時間受信がない接続は切断する
+    private static final long IDLE_TIMEOUT_MS = 15000;
+
+    private final DiscordWhitelistPlugin plugin;
+
+    private volatile boolean enabled;
+    private volatile String serverName = "";
+    private String listenAddress = "";
+    private final List<String> peerAddresses = new ArrayList<>();
+    private byte[] secret = new byte[0];
+
+    private ServerSocketChannelHolder server;
+    private Thread acceptor;
+    private Thread maintenance;
+    private volatile boolean running;
+
+    // 全ての接続 (HELLOの受信前を含む)
+    private final Set<RelayConnection> connections = ConcurrentHashMap.newKeySet();
+    // サーバー名 → 接続 (サーバーごとに1本)
+    private final Map<String, RelayConnection> peers = new ConcurrentHashMap<>();
+    // 接続先アドレス → サーバー名 (接続済みのサーバーに重複して接続しない)
+    private final Map<String, String> addressNames = new ConcurrentHashMap<>();
+
+    private volatile String leader;
+
+    // 統計情報
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong received = new AtomicLong();
+    private final AtomicLong forwarded = new AtomicLong();
+
+    public ChatRelay(DiscordWhitelistPlugin plugin) {
+        this.plugin = plugin;
+    }
+
+    /**
+     * 設定を読み込んで待ち受けと接続を開始
+     */
+    public void start() {
+        stop();
+        enabled = plugin.getConfig().getBoolean("relay.enabled", false);
+        if (!enabled) {
+            return;
+        }
+
+        serverName = plugin.getConfig().getString("relay.server-name", "");
+        listenAddress = plugin.getConfig().getString("relay.listen", "127.0.0.1:25580");
+        secret = plugin.getConfig().getString("relay.secret", "").getBytes(StandardCharsets.UTF_8);
+        peerAddresses.clear();
+        for (String address : plugin.getConfig().getStringList("relay.peers")) {
+            // 全てのサーバーで同じ一覧を使えるように、自分の待ち受けアドレスは除く
+            if (!address.isEmpty() && !address.equals(listenAddress)) {
+                peerAddresses.add(address);
+            }
+        }
+        if (serverName.isEmpty()) {
+            plugin.getLogger().warning("relay.server-name が設定されていないため、チャット中継を無効にします。");
+            enabled = false;
+            return;
+        }
+
+        try {
+            server = ServerSocketChannelHolder.bind(listenAddress);
+        } catch (IOException | IllegalArgumentException e) {
+            plugin.getLogger().warning("チャット中継の待ち受けを開始できません (" + listenAddress + "): " + e.getMessage());
+            enabled = false;
+            return;
+        }
+
+        running = true;
+        electLeader();
+        acceptor = new Thread(this::acceptLoop, "DiscordWhitelist-Relay-Accept");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        maintenance = new Thread(this::maintenanceLoop, "DiscordWhitelist-Relay");
+        maintenance.setDaemon(true);
+        maintenance.start();
+        plugin.getLogger().info("チャット中継を開始しました: " + serverName + " (" + listenAddress + "、接続先 "
+                + peerAddresses.size() + "台)");
+    }
+
+    /**
+     * 待ち受けと全ての接続を終了
+     */
+    public void stop() {
+        running = false;
+        if (acceptor != null) {
+            acceptor.interrupt();
+            acceptor = null;
+        }
+        if (maintenance != null) {
+            maintenance.interrupt();
+            maintenance = null;
+        }
+        if (server != null) {
+            server.close();
+            server = null;
+        }
+        for (RelayConnection connection : new ArrayList<>(connections)) {
+            connection.close();
+        }
+        connections.clear();
+        peers.clear();
+        addressNames.clear();
+        leader = null;
+    }
+
+    /**
+     * Minecraftのイベントを他のサーバーに送り、このサーバーがリーダーならDiscordに送信
+     * 中継が無効の場合はそのままDiscordに送信する
+     *
+     * @param category    メッセージの種類
+     * @param playerName  プレイヤー名 (チャット以外はnull)
+     * @param discordText Discordに送信する内容
+     * @param chatText    他のサーバーのゲーム内に表示する内容 (表示しない場合はnull)
+     */
+    public void publish(OutboundSender.Category category, String playerName, String discordText, String chatText) {
+        if (!enabled) {
+            DiscordBot bot = plugin.getDiscordBot();
+            if (bot == null) {
+                return;
+            }
+            if (category == OutboundSender.Category.CHAT && playerName != null) {
+                bot.sendWebhookMessage(playerName, discordText);
+            } else {
+                bot.sendChatMessage(category, discordText);
+            }
+            return;
+        }
+
+        RelayMessage message = new RelayMessage(serverName, category, playerName, discordText, chatText);
+        published.incrementAndGet();
+        for (RelayConnection connection : peers.values()) {
+            connection.sendMessage(message);
+        }
+        if (isLeader()) {
+            forward(message);
+        }
+    }
+
+    /**
+     * リーダーとしてDiscordに送信 (送信元のサーバー名を付ける)
+     */
+    private void forward(RelayMessage message) {
+        DiscordBot bot = plugin.getDiscordBot();
+        if (bot == null) {
+            return;
+        }
+        forwarded.incrementAndGet();
+        if (message.getCategory() == OutboundSender.Category.CHAT && !message.getPlayerName().isEmpty()) {
+            String username = plugin.getConfig().getString("relay.discord-username", "%player% [%server%]")
+                    .replace("%player%", message.getPlayerName())
+                    .replace("%server%", message.getOrigin());
+            bot.sendWebhookSystemMessage(username, DiscordBot.getAvatarUrl(message.getPlayerName()),
+                    message.getDiscordText());
+        } else {
+            String prefix = plugin.getConfig().getString("relay.discord-prefix", "`[%server%]` ")
+                    .replace("%server%", message.getOrigin());
+            bot.sendChatMessage(message.getCategory(), prefix + message.getDiscordText());
+        }
+    }
+
+    /**
+     * 他のサーバーからのメッセージを受信 (受信スレッドから呼ばれる)
+     */
+    void onMessage(RelayConnection connection, RelayMessage message) {
+        received.incrementAndGet();
+        if (!message.getChatText().isEmpty()) {
+            String format = plugin.getConfig().getString("relay.chat-format", "§7[%server%]§r <%player%> %message%")
+                    .replace("%server%", message.getOrigin())
+                    .replace("%player%", message.getPlayerName())
+                    .replace("%message%", message.getChatText());
+            Bukkit.getScheduler().runTask(plugin, () -> {
+                Component component = LegacyComponentSerializer.legacySection().deserialize(format);
+                Bukkit.getServer().sendMessage(component);
+            });
+        }
+        if (isLeader()) {
+            forward(message);
+        }
+    }
+
+    /**
+     * HELLOを受信した接続を登録
+     * 同じサーバーとの接続が2本になった場合は、サーバー名が小さい側から接続したものを残す (両側で同じ結果になる)
+     *
+     * @return 接続を使用する場合はtrue (falseの場合は切断する)
+     */
+    synchronized boolean onHello(RelayConnection connection, String remoteSecret) {
+        String name = connection.getRemoteName();
+        if (!MessageDigest.isEqual(secret, remoteSecret.getBytes(StandardCharsets.UTF_8))) {
+            plugin.getLogger().warning("チャット中継の接続を拒否しました (共有鍵が一致しません): " + connection.describe());
+            return false;
+        }
+        if (name.equals(serverName)) {
+            plugin.getLogger().warning("同じサーバー名のサーバーからの接続を拒否しました: " + connection.describe());
+            return false;
+        }
+        if (!running || !connection.isOpen()) {
+            return false;
+        }
+        if (connection.isOutbound()) {
+            addressNames.put(connection.getAddress(), name);
+        }
+
+        RelayConnection existing = peers.get(name);
+        if (existing != null && existing.isOpen()) {
+            String preferredDialer = serverName.compareTo(name) < 0 ? serverName : name;
+            String dialer = connection.isOutbound() ? serverName : name;
+            if (!dialer.equals(preferredDialer)) {
+                return false;
+            }
+            peers.put(name, connection);
+            existing.close();
+        } else {
+            peers.put(name, connection);
+            plugin.getLogger().info("チャット中継: " + name + " に接続しました (" + connection.getAddress() + ")");
+        }
+        electLeader();
+        return true;
+    }
+
+    /**
+     * 接続の切断 (RelayConnectionから呼ばれる)
+     */
+    synchronized void onClosed(RelayConnection connection) {
+        connections.remove(connection);
+        String name = connection.getRemoteName();
+        if (name != null && peers.remove(name, connection)) {
+            if (running) {
+                plugin.getLogger().info("チャット中継: " + name + " から切断されました");
+            }
+            electLeader();
+        }
+    }
+
+    /**
+     * リーダーを選び直す (Discordに送信できるサーバーのうちサーバー名が最小のもの)
+     */
+    private synchronized void electLeader() {
+        String elected = plugin.getDiscordBot() != null ? serverName : null;
+        for (RelayConnection connection : peers.values()) {
+            String name = connection.getRemoteName();
+            if (connection.canRemoteForward() && (elected == null || name.compareTo(elected) < 0)) {
+                elected = name;
+            }
+        }
+        String previous = leader;
+        leader = elected;
+        if (running && elected != null && !elected.equals(previous)) {
+            plugin.getLogger().info("チャット中継: Discordへの送信は " + elected + " が担当します"
+                    + (elected.equals(serverName) ? " (このサーバー)" : ""));
+        }
+    }
+
+    private void acceptLoop() {
+        ServerSocketChannelHolder holder = server;
+        while (running && holder != null) {
+            try {
+                SocketChannel channel = holder.accept();
+                open(channel, holder.describeRemote(channel), false);
+            } catch (IOException e) {
+                if (running) {
+                    plugin.getLogger().fine("チャット中継の接続を受け付けられません: " + e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * 未接続のサーバーへの接続、PINGの送信、応答のない接続の切断を定期的に行う
+     */
+    private void maintenanceLoop() {
+        while (running) {
+            long now = System.currentTimeMillis();
+            for (RelayConnection connection : connections) {
+                if (now - connection.getLastReceived() > IDLE_TIMEOUT_MS) {
+                    plugin.getLogger().fine("チャット中継の応答がないため切断します: " + connection.describe());
+                    connection.close();
+                } else {
+                    connection.sendPing();
+                }
+            }
+
+            for (String address : peerAddresses) {
+                if (!running) {
+                    return;
+                }
+                if (isConnected(address)) {
+                    continue;
+                }
+                try {
+                    SocketAddress target = parseAddress(address);
+                    SocketChannel channel = SocketChannel.open(target);
+                    open(channel, address, true);
+                } catch (IOException | IllegalArgumentException e) {
+                    plugin.getLogger().fine("チャット中継: " + address + " に接続できません: " + e.getMessage());
+                }
+            }
+
+            try {
+                Thread.sleep(MAINTENANCE_INTERVAL_MS);
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 接続先アドレスのサーバーと接続済みかどうか (どちらから接続したかは問わない)
+     */
+    private boolean isConnected(String address) {
+        for (RelayConnection connection : connections) {
+            if (connection.isOutbound() && connection.getAddress().equals(address)) {
+                return true;
+            }
+        }
+        String name = addressNames.get(address);
+        return name != null && peers.containsKey(name);
+    }
+
+    private void open(SocketChannel channel, String address, boolean outbound) throws IOException {
+        if (channel.getRemoteAddress() instanceof InetSocketAddress) {
+            // 送信は専用スレッドでまとめているため、Nagleによる遅延は不要
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+        }
+        RelayConnection connection = new RelayConnection(this, channel, address, outbound);
+        connections.add(connection);
+        if (!running) {
+            connection.close();
+            return;
+        }
+        connection.start(serverName, plugin.getDiscordBot() != null,
+                new String(secret, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * アドレスを解析 ("unix:<パス>" または "<ホスト>:<ポート>")
+     */
+    static SocketAddress parseAddress(String address) {
+        if (address.startsWith("unix:")) {
+            return UnixDomainSocketAddress.of(address.substring("unix:".length()));
+        }
+        int colon = address.lastIndexOf(':');
+        if (colon <= 0) {
+            throw new IllegalArgumentException("アドレスの形式が不正です: " + address);
+        }
+        String host = address.substring(0, colon);
+        if (host.startsWith("[") && host.endsWith("]")) {
+            host = host.substring(1, host.length() - 1);
+        }
+        return new InetSocketAddress(host, Integer.parseInt(address.substring(colon + 1)));
+    }
+
+    Logger getLogger() {
+        return plugin.getLogger();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String getServerName() {
+        return serverName;
+    }
+
+    /**
+     * Discordに送信するサーバー名 (該当なしの場合はnull)
+     */
+    public String getLeader() {
+        return leader;
+    }
+
+    /**
+     * このサーバーがDiscordへの送信を担当しているかどうか
+     */
+    public boolean isLeader() {
+        return serverName.equals(leader);
+    }
+
+    /**
+     * 接続中のサーバーの状況
+     */
+    public List<PeerStatus> getPeers() {
+        List<PeerStatus> result = new ArrayList<>();
+        for (Map.Entry<String, RelayConnection> e : peers.entrySet()) {
+            RelayConnection connection = e.getValue();
+            result.add(new PeerStatus(e.getKey(), connection.getAddress(), connection.isOutbound(),
+                    connection.getFramesSent(), connection.getFramesReceived(), connection.getWrites()));
+        }
+        result.sort((a, b) -> a.getName().compareTo(b.getName()));
+        return result;
+    }
+
+    /**
+     * 設定された接続先の数 (自分の待ち受けアドレスを除く)
+     */
+    public int getConfiguredPeers() {
+        return peerAddresses.size();
+    }
+
+    public long getPublished() {
+        return published.get();
+    }
+
+    public long getReceived() {
+        return received.get();
+    }
+
+    /**
+     * リーダーとしてDiscordに送信した件数
+     */
+    public long getForwarded() {
+        return forwarded.get();
+    }
+
+    /**
+     * 接続中のサーバーの状況
+     */
+    public static class PeerStatus {
+        private final String name;
+        private final String address;
+        private final boolean outbound;
+        private final long framesSent;
+        private final long framesReceived;
+        private final long writes;
+
+        PeerStatus(String name, String address, boolean outbound, long framesSent, long framesReceived,
+                long writes) {
+            this.name = name;
+            this.address = address;
+            this.outbound = outbound;
+            this.framesSent = framesSent;
+            this.framesReceived = framesReceived;
+            this.writes = writes;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getAddress() {
+            return address;
+        }
+
+        public boolean isOutbound() {
+            return outbound;
+        }
+
+        public long getFramesSent() {
+            return framesSent;
+        }
+
+        public long getFramesReceived() {
+            return framesReceived;
+        }
+
+        /**
+         * 書き込みの回数 (送信フレーム数との差がまとめて送信した分)
+         */
+        public long getWrites() {
+            return writes;
+        }
+    }
+
+    /**
+     * 待ち受けのソケット (TCPとUnixドメインソケットの違いを吸収する)
+     */
+    private static class ServerSocketChannelHolder {
+        private final ServerSocketChannel channel;
+        private final Path socketFile;
+
+        private ServerSocketChannelHolder(ServerSocketChannel channel, Path socketFile) {
+            this.channel = channel;
+            this.socketFile = socketFile;
+        }
+
+        static ServerSocketChannelHolder bind(String address) throws IOException {
+            SocketAddress local = parseAddress(address);
+            if (local instanceof UnixDomainSocketAddress unix) {
+                // 前回の停止時に残ったソケットファイルを削除
+                Files.deleteIfExists(unix.getPath());
+                ServerSocketChannel channel = ServerSocketChannel
+                        .open(StandardProtocolFamily.UNIX);
+                channel.bind(unix);
+                return new ServerSocketChannelHolder(channel, unix.getPath());
+            }
+            ServerSocketChannel channel = ServerSocketChannel.open();
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(local);
+            return new ServerSocketChannelHolder(channel, null);
+        }
+
+        SocketChannel accept() throws IOException {
+            return channel.accept();
+        }
+
+        String describeRemote(SocketChannel accepted) {
+            try {
+                SocketAddress remote = accepted.getRemoteAddress();
+                if (remote instanceof InetSocketAddress inet) {
+                    return inet.getHostString() + ":" + inet.getPort();
+                }
+            } catch (IOException ignored) {
+                // 切断済み
+            }
+            return socketFile != null ? "unix" : "?";
+        }
+
+        void close() {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+                // 終了処理のため無視
+            }
+            if (socketFile != null) {
+                try {
+                    Files.deleteIfExists(socketFile);
+                } catch (IOException ignored) {
+                    // 終了処理のため無視
+                }
+            }
+        }
+    }
+}
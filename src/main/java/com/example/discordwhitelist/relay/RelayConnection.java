@@ -0,0 +1,285 @@
+package com.example.discordwhitelist.relay;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 他のサーバーとの1本の接続
+ * フレームは [長さ (4バイト)][種類 (1バイト)][内容] の形式で、送信は専用スレッドがキューに溜まったものを
+ * まとめて1回の書き込みで送る。受信も専用スレッドで行い、ChatRelayに渡す
+ * TCPとUnixドメインソケットのどちらもSocketChannelで扱う
+ */
+class RelayConnection {
+
+    static final int VERSION = 1;
+    static final byte TYPE_HELLO = 1;
+    static final byte TYPE_MESSAGE = 2;
+    static final byte TYPE_PING = 3;
+
+    // フレームの最大長 (不正なデータで大きなバッファを確保しない)
+    private static final int MAX_FRAME_BYTES = 64 * 1024;
+
+    // 1回の書き込みにまとめる最大フレーム数
+    private static final int MAX_BATCH = 64;
+
+    private final ChatRelay relay;
+    private final SocketChannel channel;
+    private final String address;
+    private final boolean outbound;
+    private final BlockingQueue<byte[]> sendQueue = new LinkedBlockingQueue<>();
+    private volatile boolean open = true;
+
+    // 接続先の情報 (HELLOの受信後に設定)
+    private volatile String remoteName;
+    private volatile boolean remoteCanForward;
+    private volatile long lastReceived = System.currentTimeMillis();
+
+    // 統計情報
+    private final AtomicLong framesSent = new AtomicLong();
+    private final AtomicLong framesReceived = new AtomicLong();
+    private final AtomicLong writes = new AtomicLong();
+
+    /**
+     * @param address  接続先のアドレス (受け付けた接続の場合は表示用)
+     * @param outbound こちらから接続したかどうか
+     */
+    RelayConnection(ChatRelay relay, SocketChannel channel, String address, boolean outbound) {
+        this.relay = relay;
+        this.channel = channel;
+        this.address = address;
+        this.outbound = outbound;
+    }
+
+    /**
+     * 送受信のスレッドを開始し、HELLOを送信
+     */
+    void start(String serverName, boolean canForward, String secret) {
+        send(TYPE_HELLO, out -> {
+            out.writeByte(VERSION);
+            out.writeUTF(serverName);
+            out.writeBoolean(canForward);
+            out.writeUTF(secret);
+        });
+        Thread reader = new Thread(this::readLoop, "DiscordWhitelist-Relay-Read");
+        reader.setDaemon(true);
+        reader.start();
+        Thread writer = new Thread(this::writeLoop, "DiscordWhitelist-Relay-Write");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    void sendMessage(RelayMessage message) {
+        send(TYPE_MESSAGE, message::write);
+    }
+
+    void sendPing() {
+        send(TYPE_PING, out -> {
+        });
+    }
+
+    private void send(byte type, FrameWriter body) {
+        if (!open) {
+            return;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0);
+            out.writeByte(type);
+            body.write(out);
+            byte[] frame = bytes.toByteArray();
+            int length = frame.length - 4;
+            if (length > MAX_FRAME_BYTES) {
+                return;
+            }
+            ByteBuffer.wrap(frame).putInt(0, length);
+            sendQueue.add(frame);
+        } catch (IOException e) {
+            // ByteArrayOutputStreamへの書き込みでは発生しない
+        }
+    }
+
+    private void writeLoop() {
+        List<byte[]> batch = new ArrayList<>(MAX_BATCH);
+        while (open) {
+            try {
+                batch.add(sendQueue.take());
+            } catch (InterruptedException e) {
+                break;
+            }
+            sendQueue.drainTo(batch, MAX_BATCH - 1);
+
+            int size = 0;
+            for (byte[] frame : batch) {
+                size += frame.length;
+            }
+            ByteBuffer buffer = ByteBuffer.allocate(size);
+            for (byte[] frame : batch) {
+                buffer.put(frame);
+            }
+            buffer.flip();
+            try {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            } catch (IOException e) {
+                close();
+                break;
+            }
+            framesSent.addAndGet(batch.size());
+            writes.incrementAndGet();
+            batch.clear();
+        }
+    }
+
+    private void readLoop() {
+        ByteBuffer header = ByteBuffer.allocate(4);
+        try {
+            while (open) {
+                header.clear();
+                readFully(header);
+                int length = header.getInt(0);
+                if (length <= 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("不正なフレーム長: " + length);
+                }
+                ByteBuffer payload = ByteBuffer.allocate(length);
+                readFully(payload);
+                lastReceived = System.currentTimeMillis();
+                framesReceived.incrementAndGet();
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload.array()));
+                byte type = in.readByte();
+                if (remoteName == null && type != TYPE_HELLO) {
+                    throw new IOException("HELLOの前にデータを受信しました");
+                }
+                switch (type) {
+                    case TYPE_HELLO -> {
+                        // 認証後に名前や転送の可否を変えさせない
+                        if (remoteName != null) {
+                            throw new IOException("HELLOを再度受信しました: " + remoteName);
+                        }
+                        int version = in.readUnsignedByte();
+                        String name = in.readUTF();
+                        boolean canForward = in.readBoolean();
+                        String secret = in.readUTF();
+                        if (version != VERSION) {
+                            throw new IOException("プロトコルのバージョンが一致しません: " + version);
+                        }
+                        remoteName = name;
+                        remoteCanForward = canForward;
+                        if (!relay.onHello(this, secret)) {
+                            close();
+                            return;
+                        }
+                    }
+                    case TYPE_MESSAGE -> relay.onMessage(this, RelayMessage.read(in));
+                    case TYPE_PING -> {
+                        // 受信時刻の更新のみ
+                    }
+                    default -> {
+                        // 新しいバージョンの種類は無視
+                    }
+                }
+            }
+        } catch (IOException e) {
+            if (open) {
+                relay.getLogger().fine("中継の接続が切断されました (" + describe() + "): " + e.getMessage());
+            }
+        } finally {
+            close();
+        }
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("接続が閉じられました");
+            }
+        }
+    }
+
+    /**
+     * 切断 (ChatRelayに通知する)
+     */
+    void close() {
+        synchronized (this) {
+            if (!open) {
+                return;
+            }
+            open = false;
+        }
+        sendQueue.clear();
+        // 送信スレッドを起こして終了させる
+        sendQueue.add(new byte[0]);
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+            // 切断済み
+        }
+        relay.onClosed(this);
+    }
+
+    boolean isOpen() {
+        return open;
+    }
+
+    String getAddress() {
+        return address;
+    }
+
+    boolean isOutbound() {
+        return outbound;
+    }
+
+    /**
+     * 接続先のサーバー名 (HELLOの受信前はnull)
+     */
+    String getRemoteName() {
+        return remoteName;
+    }
+
+    /**
+     * 接続先がDiscordに送信できるかどうか
+     */
+    boolean canRemoteForward() {
+        return remoteCanForward;
+    }
+
+    long getLastReceived() {
+        return lastReceived;
+    }
+
+    long getFramesSent() {
+        return framesSent.get();
+    }
+
+    long getFramesReceived() {
+        return framesReceived.get();
+    }
+
+    /**
+     * 書き込みの回数 (1回に複数のフレームをまとめる)
+     */
+    long getWrites() {
+        return writes.get();
+    }
+
+    String describe() {
+        return (remoteName != null ? remoteName : "?") + " " + address;
+    }
+
+    private interface FrameWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+}
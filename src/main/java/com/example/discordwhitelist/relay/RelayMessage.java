@@ -0,0 +1,73 @@
+package com.example.discordwhitelist.relay;
+
+import com.example.discordwhitelist.discord.OutboundSender;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * サーバー間で中継するメッセージ (チャット、参加/退出、デス、実績)
+ */
+public class RelayMessage {
+
+    private final String origin;
+    private final OutboundSender.Category category;
+    private final String playerName;
+    private final String discordText;
+    private final String chatText;
+
+    /**
+     * @param origin      送信元のサーバー名
+     * @param category    メッセージの種類
+     * @param playerName  プレイヤー名 (チャット以外は空)
+     * @param discordText Discordに送信する内容 (マークダウンのエスケープ済み)
+     * @param chatText    他のサーバーのゲーム内に表示する内容 (表示しない場合は空)
+     */
+    public RelayMessage(String origin, OutboundSender.Category category, String playerName, String discordText,
+            String chatText) {
+        this.origin = origin;
+        this.category = category;
+        this.playerName = playerName != null ? playerName : "";
+        this.discordText = discordText;
+        this.chatText = chatText != null ? chatText : "";
+    }
+
+    public String getOrigin() {
+        return origin;
+    }
+
+    public OutboundSender.Category getCategory() {
+        return category;
+    }
+
+    public String getPlayerName() {
+        return playerName;
+    }
+
+    public String getDiscordText() {
+        return discordText;
+    }
+
+    public String getChatText() {
+        return chatText;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeUTF(origin);
+        out.writeByte(category.ordinal());
+        out.writeUTF(playerName);
+        out.writeUTF(discordText);
+        out.writeUTF(chatText);
+    }
+
+    static RelayMessage read(DataInputStream in) throws IOException {
+        String origin = in.readUTF();
+        int ordinal = in.readUnsignedByte();
+        OutboundSender.Category[] categories = OutboundSender.Category.values();
+        if (ordinal >= categories.length) {
+            throw new IOException("不正なメッセージの種類: " + ordinal);
+        }
+        return new RelayMessage(origin, categories[ordinal], in.readUTF(), in.readUTF(), in.readUTF());
+    }
+}
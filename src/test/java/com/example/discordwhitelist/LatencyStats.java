@@ -0,0 +1,49 @@
+package com.example.discordwhitelist;
+
+import java.util.Arrays;
+
+/**
+ * 負荷テストの遅延の記録 (ナノ秒) と分位点の集計
+ */
+public class LatencyStats {
+
+    private long[] samples = new long[1024];
+    private int count;
+
+    public synchronized void record(long nanos) {
+        if (count == samples.length) {
+            samples = Arrays.copyOf(samples, count * 2);
+        }
+        samples[count++] = nanos;
+    }
+
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * 分位点 (ミリ秒)
+     *
+     * @param quantile 0〜1
+     */
+    public synchronized double percentileMillis(double quantile) {
+        if (count == 0) {
+            return 0;
+        }
+        long[] sorted = Arrays.copyOf(samples, count);
+        Arrays.sort(sorted);
+        int index = (int) Math.min(count - 1, Math.ceil(quantile * count) - 1);
+        return sorted[Math.max(0, index)] / 1_000_000.0;
+    }
+
+    /**
+     * 「件数、スループット、p50/p99」の1行の報告
+     *
+     * @param elapsedNanos 全体の所要時間
+     */
+    public String report(String name, long elapsedNanos) {
+        double seconds = elapsedNanos / 1_000_000_000.0;
+        return String.format("[%s] %d件 / %.3f秒 (%.0f件/秒) p50=%.2fms p99=%.2fms", name, count(), seconds,
+                count() / seconds, percentileMillis(0.50), percentileMillis(0.99));
+    }
+}
@@ -0,0 +1,439 @@
+package com.example.discordwhitelist;
+
+import com.example.discordwhitelist.discord.ButtonListener;
+import com.example.discordwhitelist.discord.DiscordBot;
+import com.example.discordwhitelist.discord.DiscordChatListener;
+import com.example.discordwhitelist.discord.InteractionThrottle;
+import com.example.discordwhitelist.discord.MembershipCache;
+import com.example.discordwhitelist.discord.ModalListener;
+import com.example.discordwhitelist.filter.ChatFilter;
+import com.example.discordwhitelist.listener.PlayerLoginListener;
+import com.example.discordwhitelist.manager.ApprovalQueue;
+import com.example.discordwhitelist.manager.ProfileResolver;
+import com.example.discordwhitelist.manager.RegistrationPipeline;
+import com.example.discordwhitelist.manager.WhitelistManager;
+import com.example.discordwhitelist.manager.WhitelistPartitions;
+import net.dv8tion.jda.api.entities.Message;
+import net.dv8tion.jda.api.entities.User;
+import net.dv8tion.jda.api.entities.channel.unions.MessageChannelUnion;
+import net.dv8tion.jda.api.events.interaction.ModalInteractionEvent;
+import net.dv8tion.jda.api.events.interaction.component.ButtonInteractionEvent;
+import net.dv8tion.jda.api.events.message.MessageReceivedEvent;
+import net.dv8tion.jda.api.interactions.InteractionHook;
+import net.dv8tion.jda.api.interactions.modals.ModalMapping;
+import net.dv8tion.jda.api.requests.restaction.WebhookMessageEditAction;
+import net.dv8tion.jda.api.requests.restaction.interactions.ModalCallbackAction;
+import net.dv8tion.jda.api.requests.restaction.interactions.ReplyCallbackAction;
+import net.kyori.adventure.text.Component;
+import org.bukkit.event.player.AsyncPlayerPreLoginEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * リスナーの負荷テスト (Discord/Bukkitに接続せず、偽のイベントを実際のリスナーに投入する)
+ * 発生率と同時実行数は LoadDriver のシステムプロパティで変更できる
+ * 各シナリオの後にスループットと遅延を出力し、ホワイトリストの整合性を検査する
+ * 時間に依存するため通常のテストでは実行しない (mvn test -Pload)
+ */
+@Tag("load")
+class ListenerLoadTest {
+
+    private static final String CHANNEL_ID = "100";
+    private static final long DISCORD_BASE = 300000000000000000L;
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private WhitelistManager manager;
+    private RegistrationPipeline pipeline;
+    private WhitelistPartitions partitions;
+
+    private ModalListener modalListener;
+    private ButtonListener buttonListener;
+    private DiscordChatListener chatListener;
+    private PlayerLoginListener loginListener;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+        plugin.config().set("throttle.burst", 1000);
+        plugin.config().set("throttle.per-minute", 1000000);
+        plugin.config().set("chat-sync.enabled", true);
+        plugin.config().set("chat-sync.channel-id", CHANNEL_ID);
+        plugin.config().set("chat-filter.enabled", true);
+        plugin.config().set("chat-filter.rules", List.of(
+                Map.of("pattern", "badword", "action", "mask"),
+                Map.of("pattern", "dropme", "action", "drop")));
+
+        DiscordWhitelistPlugin p = plugin.get();
+        manager = plugin.createWhitelistManager();
+        pipeline = new RegistrationPipeline(p, manager);
+        partitions = new WhitelistPartitions(p, manager, pipeline);
+
+        // 実際のクラスはwhen()の外で作成する (コンストラクターが設定を読むため)
+        DiscordBot bot = mock(DiscordBot.class);
+        InteractionThrottle throttle = new InteractionThrottle(p);
+        MembershipCache membership = new MembershipCache(p, bot);
+        ApprovalQueue approvals = new ApprovalQueue(p);
+        ChatFilter filter = new ChatFilter(p);
+        when(bot.getThrottle()).thenReturn(throttle);
+        when(bot.getMembershipCache()).thenReturn(membership);
+        when(p.getDiscordBot()).thenReturn(bot);
+        when(p.getPartitions()).thenReturn(partitions);
+        when(p.getApprovalQueue()).thenReturn(approvals);
+        when(p.getChatFilter()).thenReturn(filter);
+        when(p.getProfileResolver()).thenReturn(new FakeResolver(Integer.getInteger("load.resolve-millis", 2)));
+
+        modalListener = new ModalListener(p);
+        buttonListener = new ButtonListener(p);
+        chatListener = new DiscordChatListener(p);
+        loginListener = new PlayerLoginListener(p);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+        plugin.close();
+    }
+
+    @Test
+    void modalRegistrations() throws Exception {
+        LoadDriver driver = LoadDriver.fromSystemProperties(2000);
+        // ユーザー数より名前を少なくし、同じ名前の取り合いと名前の変更を発生させる
+        int users = Math.max(1, driver.events() / 2);
+        int names = Math.max(1, users * 3 / 4);
+        Prepared[] events = new Prepared[driver.events()];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = modal(discordId(i % users), "Load" + (i * 7 % names), i % 5 == 0);
+        }
+
+        driver.run("Modal", i -> events[i].fire());
+
+        assertAllReplied(events);
+        assertTrue(manager.getSize() > 0);
+        assertInvariants();
+    }
+
+    @Test
+    void buttonClicks() throws Exception {
+        LoadDriver driver = LoadDriver.fromSystemProperties(2000);
+        int users = Math.max(1, driver.events() / 4);
+        for (int i = 0; i < users; i += 2) {
+            pipeline.submit("Button" + i, discordId(i), false, null).get(10, TimeUnit.SECONDS);
+        }
+        Prepared[] events = new Prepared[driver.events()];
+        for (int i = 0; i < events.length; i++) {
+            events[i] = button(discordId(i % users), i % 3 == 0);
+        }
+
+        driver.run("Button", i -> events[i].fire());
+
+        assertAllReplied(events);
+        assertInvariants();
+    }
+
+    @Test
+    void discordChat() throws Exception {
+        LoadDriver driver = LoadDriver.fromSystemProperties(5000);
+        AtomicInteger delivered = new AtomicInteger();
+        doAnswer(invocation -> {
+            delivered.incrementAndGet();
+            return null;
+        }).when(plugin.server()).sendMessage(any(Component.class));
+
+        Prepared[] events = new Prepared[driver.events()];
+        int dropped = 0;
+        for (int i = 0; i < events.length; i++) {
+            String text = "hello " + i + (i % 10 == 0 ? " badword" : "") + (i % 20 == 0 ? " dropme" : "");
+            events[i] = chat(discordId(i % 50), i % 7 == 0 ? "999" : CHANNEL_ID, text);
+            if (i % 7 == 0 || i % 20 == 0) {
+                dropped++;
+            }
+        }
+
+        driver.run("Discordチャット", i -> events[i].fire());
+
+        assertAllReplied(events);
+        assertEquals(events.length - dropped, delivered.get());
+        assertInvariants();
+    }
+
+    @Test
+    void playerLogins() throws Exception {
+        LoadDriver driver = LoadDriver.fromSystemProperties(5000);
+        int players = 200;
+        registerWithUuids(players);
+
+        Prepared[] events = new Prepared[driver.events()];
+        boolean[] expectAllowed = new boolean[events.length];
+        for (int i = 0; i < events.length; i++) {
+            int player = i % players;
+            switch (i % 3) {
+                case 0 -> events[i] = login("Stranger" + i, UUID.randomUUID());
+                // 名前を変更したプレイヤー (UUIDで判定し、エントリーの名前を変更する)
+                case 1 -> events[i] = login("Login" + player + "R", uuidOf("Login" + player));
+                default -> events[i] = login("Login" + player, uuidOf("Login" + player));
+            }
+            expectAllowed[i] = i % 3 != 0;
+        }
+
+        driver.run("ログイン", i -> events[i].fire());
+
+        for (int i = 0; i < events.length; i++) {
+            assertEquals(expectAllowed[i], !events[i].disallowed, "ログインの判定: " + i);
+        }
+        assertEquals(players, manager.getSize());
+        assertInvariants();
+    }
+
+    @Test
+    void mixedTraffic() throws Exception {
+        LoadDriver driver = LoadDriver.fromSystemProperties(4000);
+        int players = 100;
+        registerWithUuids(players);
+        int users = Math.max(1, driver.events() / 8);
+
+        Prepared[] events = new Prepared[driver.events()];
+        for (int i = 0; i < events.length; i++) {
+            String discordId = discordId(players + i % users);
+            events[i] = switch (i % 4) {
+                case 0 -> modal(discordId, "Mixed" + (i * 13 % (users / 2 + 1)), false);
+                case 1 -> button(discordId, false);
+                case 2 -> chat(discordId, CHANNEL_ID, "mixed " + i);
+                default -> login("Login" + (i % players) + (i % 8 == 3 ? "R" : ""), uuidOf("Login" + (i % players)));
+            };
+        }
+
+        driver.run("混合", i -> events[i].fire());
+
+        assertAllReplied(events);
+        assertInvariants();
+    }
+
+    /**
+     * 不変条件: インデックスが一致し、1つの名前が複数のDiscord IDに紐付いておらず、
+     * Discord IDから引いた名前がエントリーと一致する
+     */
+    private void assertInvariants() {
+        assertEquals(List.of(), manager.checkConsistency());
+        assertEquals(List.of(), partitions.checkConsistency());
+
+        Map<String, String> owners = new HashMap<>();
+        Map<String, String> javaByDiscord = new HashMap<>();
+        for (WhitelistManager.WhitelistEntry entry : manager.getWhitelist()) {
+            assertNull(owners.put(entry.getPlayerName().toLowerCase(), entry.getDiscordId()),
+                    "名前が重複しています: " + entry.getPlayerName());
+            String discordId = entry.getDiscordId();
+            if (discordId.isEmpty()) {
+                continue;
+            }
+            String linked = entry.isBedrock() ? manager.getBedrockPlayerByDiscordId(discordId)
+                    : manager.getJavaPlayerByDiscordId(discordId);
+            assertEquals(entry.getPlayerName(), linked, "Discord IDの紐付け: " + discordId);
+            if (!entry.isBedrock()) {
+                assertNull(javaByDiscord.put(discordId, entry.getPlayerName()),
+                        "1つのDiscord IDにJava版の名前が複数: " + discordId);
+            }
+        }
+    }
+
+    private static void assertAllReplied(Prepared[] events) {
+        for (int i = 0; i < events.length; i++) {
+            assertTrue(events[i].done.isDone(), "応答がありません: " + i);
+            assertNotNull(events[i].done.join(), "応答が空です: " + i);
+        }
+    }
+
+    private void registerWithUuids(int players) throws Exception {
+        for (int i = 0; i < players; i++) {
+            String name = "Login" + i;
+            assertEquals(WhitelistManager.AddResult.SUCCESS,
+                    pipeline.submit(name, discordId(i), false, uuidOf(name)).get(10, TimeUnit.SECONDS));
+        }
+    }
+
+    private static String discordId(int user) {
+        return String.valueOf(DISCORD_BASE + user);
+    }
+
+    private static UUID uuidOf(String name) {
+        return UUID.nameUUIDFromBytes(("OfflinePlayer:" + name.toLowerCase()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    // --- 偽のイベント ---
+
+    /**
+     * Modalの送信 (応答はreply()またはフックのeditOriginal()で完了)
+     */
+    private Prepared modal(String discordId, String mcid, boolean bedrock) {
+        Prepared prepared = new Prepared();
+        ModalInteractionEvent event = mock(ModalInteractionEvent.class);
+        ModalMapping value = mock(ModalMapping.class);
+        when(value.getAsString()).thenReturn(mcid);
+        when(event.getModalId()).thenReturn(bedrock ? ModalListener.WHITELIST_MODAL_BEDROCK
+                : ModalListener.WHITELIST_MODAL_JAVA);
+        when(event.getValue("mcid")).thenReturn(value);
+        User user = user(discordId);
+        when(event.getUser()).thenReturn(user);
+        ReplyCallbackAction reply = replyAction(prepared.done);
+        when(event.reply(anyString())).thenAnswer(invocation -> {
+            prepared.text = invocation.getArgument(0);
+            return reply;
+        });
+        when(event.deferReply(anyBoolean())).thenReturn(mock(ReplyCallbackAction.class));
+        InteractionHook hook = mock(InteractionHook.class);
+        @SuppressWarnings("unchecked")
+        WebhookMessageEditAction<Message> edit = mock(WebhookMessageEditAction.class);
+        when(hook.editOriginal(anyString())).thenAnswer(invocation -> {
+            prepared.text = invocation.getArgument(0);
+            return edit;
+        });
+        doAnswer(invocation -> prepared.done.complete(prepared.text)).when(edit).queue();
+        when(event.getHook()).thenReturn(hook);
+        prepared.action = () -> modalListener.onModalInteraction(event);
+        return prepared;
+    }
+
+    /**
+     * ボタンのクリック (応答はModalの表示または拒否のreply()で完了)
+     */
+    @SuppressWarnings("unchecked")
+    private Prepared button(String discordId, boolean bedrock) {
+        Prepared prepared = new Prepared();
+        ButtonInteractionEvent event = mock(ButtonInteractionEvent.class);
+        when(event.getComponentId()).thenReturn(bedrock ? ButtonListener.WHITELIST_BUTTON_BEDROCK
+                : ButtonListener.WHITELIST_BUTTON_JAVA);
+        User user = user(discordId);
+        when(event.getUser()).thenReturn(user);
+        ReplyCallbackAction reply = replyAction(prepared.done);
+        when(event.reply(anyString())).thenAnswer(invocation -> {
+            prepared.text = invocation.getArgument(0);
+            return reply;
+        });
+        ModalCallbackAction modal = mock(ModalCallbackAction.class);
+        doAnswer(invocation -> {
+            invocation.<Consumer<Void>>getArgument(0).accept(null);
+            return prepared.done.complete("modal");
+        }).when(modal).queue(any(), any());
+        when(event.replyModal(any())).thenReturn(modal);
+        prepared.action = () -> buttonListener.onButtonInteraction(event);
+        return prepared;
+    }
+
+    /**
+     * Discordのメッセージ (Minecraftへの送信はrunTask()内で同期的に行われるため、呼び出しの終了で完了)
+     */
+    private Prepared chat(String discordId, String channelId, String text) {
+        Prepared prepared = new Prepared();
+        MessageReceivedEvent event = mock(MessageReceivedEvent.class);
+        User user = user(discordId);
+        when(user.getName()).thenReturn("user" + discordId);
+        when(event.getAuthor()).thenReturn(user);
+        MessageChannelUnion channel = mock(MessageChannelUnion.class);
+        when(channel.getId()).thenReturn(channelId);
+        when(event.getChannel()).thenReturn(channel);
+        Message message = mock(Message.class);
+        when(message.getContentDisplay()).thenReturn(text);
+        when(event.getMessage()).thenReturn(message);
+        prepared.action = () -> {
+            chatListener.onMessageReceived(event);
+            prepared.done.complete(text);
+        };
+        return prepared;
+    }
+
+    /**
+     * ログイン前のイベント (disallow()の呼び出しを記録し、呼び出しの終了で完了)
+     */
+    private Prepared login(String name, UUID uuid) {
+        Prepared prepared = new Prepared();
+        AsyncPlayerPreLoginEvent event = mock(AsyncPlayerPreLoginEvent.class);
+        when(event.getName()).thenReturn(name);
+        when(event.getUniqueId()).thenReturn(uuid);
+        doAnswer(invocation -> {
+            prepared.disallowed = true;
+            return null;
+        }).when(event).disallow(any(), any(Component.class));
+        prepared.action = () -> {
+            loginListener.onPlayerPreLogin(event);
+            prepared.done.complete(name);
+        };
+        return prepared;
+    }
+
+    private static User user(String discordId) {
+        User user = mock(User.class);
+        when(user.getId()).thenReturn(discordId);
+        return user;
+    }
+
+    private static ReplyCallbackAction replyAction(CompletableFuture<String> done) {
+        ReplyCallbackAction action = mock(ReplyCallbackAction.class);
+        when(action.setEphemeral(anyBoolean())).thenReturn(action);
+        doAnswer(invocation -> done.complete("reply")).when(action).queue();
+        return action;
+    }
+
+    /**
+     * 事前に作成したイベント (モックの作成を計測に含めない)
+     */
+    private static class Prepared {
+        final CompletableFuture<String> done = new CompletableFuture<>();
+        Runnable action;
+        volatile String text;
+        volatile boolean disallowed;
+
+        CompletableFuture<String> fire() {
+            action.run();
+            return done;
+        }
+    }
+
+    /**
+     * UUIDの解決 (Mojang APIの代わりに一定の遅延の後、名前から決まるUUIDを返す)
+     */
+    private static class FakeResolver implements ProfileResolver {
+        private final int latencyMillis;
+
+        FakeResolver(int latencyMillis) {
+            this.latencyMillis = latencyMillis;
+        }
+
+        @Override
+        public CompletableFuture<Optional<Profile>> resolve(String playerName) {
+            return CompletableFuture.supplyAsync(() -> Optional.of(new Profile(playerName, uuidOf(playerName))),
+                    CompletableFuture.delayedExecutor(latencyMillis, TimeUnit.MILLISECONDS));
+        }
+
+        @Override
+        public void shutdown() {
+        }
+    }
+}
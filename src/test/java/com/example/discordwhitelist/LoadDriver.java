@@ -0,0 +1,113 @@
+package com.example.discordwhitelist;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntFunction;
+
+/**
+ * 負荷テストのイベント投入 (発生率と同時実行数を制御)
+ * 発生率を指定した場合、遅延は予定時刻から計測する (投入の遅れも遅延に含める)
+ *
+ * システムプロパティ:
+ * load.rate (1秒あたりのイベント数、0は無制限)、load.concurrency (同時に処理中のイベント数の上限)、
+ * load.events (1シナリオのイベント数)
+ * これを使うテストには @Tag("load") を付け、通常のテストから外す (mvn test -Pload で実行)
+ */
+public class LoadDriver {
+
+    private final double rate;
+    private final int concurrency;
+    private final int events;
+
+    public LoadDriver(double rate, int concurrency, int events) {
+        this.rate = rate;
+        this.concurrency = Math.max(1, concurrency);
+        this.events = Math.max(1, events);
+    }
+
+    /**
+     * システムプロパティの設定で作成
+     *
+     * @param defaultEvents load.events が未指定の場合のイベント数
+     */
+    public static LoadDriver fromSystemProperties(int defaultEvents) {
+        return new LoadDriver(Double.parseDouble(System.getProperty("load.rate", "0")),
+                Integer.getInteger("load.concurrency", 8), Integer.getInteger("load.events", defaultEvents));
+    }
+
+    public int events() {
+        return events;
+    }
+
+    /**
+     * イベントを投入し、全ての応答を待って結果を報告
+     *
+     * @param name    報告に使う名前
+     * @param handler イベント番号 -> 応答の完了
+     * @return 遅延の記録
+     * @throws AssertionError 応答が返らない、または例外で完了したイベントがある場合
+     */
+    public LatencyStats run(String name, IntFunction<CompletableFuture<?>> handler) throws InterruptedException {
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        Semaphore inflight = new Semaphore(concurrency);
+        CountDownLatch done = new CountDownLatch(events);
+        LatencyStats latency = new LatencyStats();
+        List<Throwable> errors = new ArrayList<>();
+
+        long begin = System.nanoTime();
+        try {
+            for (int i = 0; i < events; i++) {
+                long scheduled = rate > 0 ? begin + (long) (i * 1_000_000_000L / rate) : 0;
+                if (rate > 0) {
+                    long wait = scheduled - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                inflight.acquire();
+                long start = rate > 0 ? scheduled : System.nanoTime();
+                int index = i;
+                workers.execute(() -> {
+                    CompletableFuture<?> future;
+                    try {
+                        future = handler.apply(index);
+                    } catch (Throwable e) {
+                        future = CompletableFuture.failedFuture(e);
+                    }
+                    future.whenComplete((result, error) -> {
+                        latency.record(System.nanoTime() - start);
+                        if (error != null) {
+                            synchronized (errors) {
+                                errors.add(error);
+                            }
+                        }
+                        inflight.release();
+                        done.countDown();
+                    });
+                });
+            }
+            if (!done.await(60, TimeUnit.SECONDS)) {
+                throw new AssertionError(name + ": 応答のないイベント " + done.getCount() + "件");
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        long elapsed = System.nanoTime() - begin;
+
+        System.out.println(latency.report(name + " rate=" + (rate > 0 ? String.valueOf(rate) : "無制限")
+                + " concurrency=" + concurrency, elapsed));
+        if (!errors.isEmpty()) {
+            AssertionError failure = new AssertionError(name + ": 例外で完了したイベント " + errors.size() + "件");
+            failure.initCause(errors.get(0));
+            throw failure;
+        }
+        return latency;
+    }
+}
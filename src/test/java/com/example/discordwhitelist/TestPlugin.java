@@ -0,0 +1,126 @@
+package com.example.discordwhitelist;
+
+import com.example.discordwhitelist.manager.WhitelistManager;
+import org.bukkit.Bukkit;
+import org.bukkit.Server;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.scheduler.BukkitScheduler;
+import org.bukkit.scheduler.BukkitTask;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.clearInvocations;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * テスト用のプラグイン (サーバーなしで動作させる)
+ * 設定はメモリ上のYamlConfiguration、データフォルダは一時ディレクトリを使用する
+ * runTaskは呼び出したスレッドで即座に実行し、非同期タスクはスレッドプールで実行する
+ * 定期実行 (runTaskTimer) は登録のみで実行しない (テストから直接呼び出す)
+ * Bukkitの静的なサーバーも設定する (DiscordChatListenerなどが参照するため)
+ */
+public class TestPlugin implements AutoCloseable {
+
+    // Bukkit.setServer() は1回しか呼べないため、サーバーとスケジューラーは全テストで共有する
+    private static final Server SERVER = mock(Server.class);
+    private static final BukkitScheduler SCHEDULER = mock(BukkitScheduler.class);
+    private static final ExecutorService ASYNC = Executors.newCachedThreadPool(daemon("Async"));
+    private static final ScheduledExecutorService DELAYED = Executors.newSingleThreadScheduledExecutor(
+            daemon("Delayed"));
+
+    static {
+        when(SERVER.getScheduler()).thenReturn(SCHEDULER);
+        when(SCHEDULER.runTask(any(), any(Runnable.class))).thenAnswer(invocation -> {
+            invocation.<Runnable>getArgument(1).run();
+            return mock(BukkitTask.class);
+        });
+        when(SCHEDULER.runTaskAsynchronously(any(), any(Runnable.class))).thenAnswer(invocation -> {
+            ASYNC.execute(invocation.getArgument(1));
+            return mock(BukkitTask.class);
+        });
+        when(SCHEDULER.runTaskLater(any(), any(Runnable.class), anyLong())).thenAnswer(invocation -> {
+            DELAYED.schedule(invocation.<Runnable>getArgument(1), invocation.<Long>getArgument(2) * 50,
+                    TimeUnit.MILLISECONDS);
+            return mock(BukkitTask.class);
+        });
+        when(SCHEDULER.runTaskLaterAsynchronously(any(), any(Runnable.class), anyLong())).thenAnswer(invocation -> {
+            Runnable task = invocation.getArgument(1);
+            DELAYED.schedule(() -> ASYNC.execute(task), invocation.<Long>getArgument(2) * 50,
+                    TimeUnit.MILLISECONDS);
+            return mock(BukkitTask.class);
+        });
+        when(SCHEDULER.runTaskTimer(any(), any(Runnable.class), anyLong(), anyLong()))
+                .thenAnswer(invocation -> mock(BukkitTask.class));
+        when(SCHEDULER.runTaskTimerAsynchronously(any(), any(Runnable.class), anyLong(), anyLong()))
+                .thenAnswer(invocation -> mock(BukkitTask.class));
+        if (Bukkit.getServer() == null) {
+            Bukkit.setServer(SERVER);
+        }
+    }
+
+    private final DiscordWhitelistPlugin plugin = mock(DiscordWhitelistPlugin.class);
+    private final YamlConfiguration config = new YamlConfiguration();
+
+    public TestPlugin(File dataFolder) {
+        Logger logger = Logger.getLogger("DiscordWhitelistTest");
+        logger.setLevel(Level.WARNING);
+
+        when(plugin.getConfig()).thenReturn(config);
+        when(plugin.getLogger()).thenReturn(logger);
+        when(plugin.getDataFolder()).thenReturn(dataFolder);
+        when(plugin.getServer()).thenReturn(SERVER);
+        when(plugin.isEnabled()).thenReturn(true);
+        // 前のテストで記録した呼び出しを破棄
+        clearInvocations(SERVER);
+    }
+
+    /**
+     * モックのプラグイン (各getterは必要に応じてテストでwhen()する)
+     */
+    public DiscordWhitelistPlugin get() {
+        return plugin;
+    }
+
+    public YamlConfiguration config() {
+        return config;
+    }
+
+    /**
+     * 共有のサーバー (Bukkit.getServer() と同じ)
+     */
+    public Server server() {
+        return SERVER;
+    }
+
+    /**
+     * ホワイトリストを作成し、getWhitelistManager()で返すようにする
+     */
+    public WhitelistManager createWhitelistManager() {
+        WhitelistManager manager = new WhitelistManager(plugin);
+        when(plugin.getWhitelistManager()).thenReturn(manager);
+        return manager;
+    }
+
+    @Override
+    public void close() {
+        // 共有のスレッドはデーモンのため停止しない
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, "TestPlugin-" + name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
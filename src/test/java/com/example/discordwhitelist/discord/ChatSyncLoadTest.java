@@ -0,0 +1,198 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.DiscordWhitelistPlugin;
+import com.example.discordwhitelist.LoadDriver;
+import com.example.discordwhitelist.TestPlugin;
+import com.example.discordwhitelist.filter.ChatFilter;
+import com.example.discordwhitelist.listener.ChatSyncListener;
+import com.example.discordwhitelist.relay.ChatRelay;
+import io.papermc.paper.event.player.AsyncChatEvent;
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Minecraft → Discord のチャット送信の負荷テスト
+ * 実際の ChatSyncListener → OutboundSender → WebhookPool をローカルのWebhookのスタブに向けて送信し、
+ * 発生率を制御した場合のスループットと遅延 (チャットから受信まで) を出力する
+ * 時間に依存するため通常のテストでは実行しない (mvn test -Pload)
+ */
+@Tag("load")
+class ChatSyncLoadTest {
+
+    private static final int PLAYERS = 20;
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private WebhookStub stub;
+    private OutboundSender outbound;
+    private ChatSyncListener listener;
+
+    // メッセージの番号 -> Webhookで受信した時に完了
+    private final Map<Integer, CompletableFuture<Void>> delivered = new HashMap<>();
+
+    @BeforeEach
+    void setUp() throws Exception {
+        plugin = new TestPlugin(dataFolder);
+        plugin.config().set("chat-sync.enabled", true);
+        stub = new WebhookStub().latency(Integer.getInteger("load.webhook-latency-millis", 2))
+                .onReceived(received -> {
+                    CompletableFuture<Void> future;
+                    synchronized (delivered) {
+                        future = delivered.get(idOf(received.getContent()));
+                    }
+                    if (future != null) {
+                        future.complete(null);
+                    }
+                });
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (outbound != null) {
+            outbound.drain(1000);
+        }
+        stub.close();
+        plugin.close();
+    }
+
+    @Test
+    void chatAtControlledRate() throws Exception {
+        stub.rateLimit(100, 1000);
+        start(2);
+        LoadDriver driver = new LoadDriver(Double.parseDouble(System.getProperty("load.rate", "100")),
+                Integer.getInteger("load.concurrency", 16), Integer.getInteger("load.events", 300));
+
+        run("チャット (発生率を制御)", driver);
+
+        assertDeliveredOnceInOrder(driver.events());
+        System.out.println("  HTTPリクエスト " + stub.getRequestCount() + "回、429 " + stub.getRateLimitedCount() + "回");
+    }
+
+    @Test
+    void remainingHeaderAvoidsRateLimit() throws Exception {
+        // 1つのWebhookで0.5秒に20回まで: X-RateLimit-Remaining を見てリセットまで待ち、429をほぼ受けない
+        stub.rateLimit(20, 500);
+        start(1);
+        LoadDriver driver = new LoadDriver(0, 16, 100);
+
+        run("チャット (レートリミット)", driver);
+
+        assertDeliveredOnceInOrder(driver.events());
+        assertTrue(stub.getRateLimitedCount() <= 2, "429: " + stub.getRateLimitedCount() + "回");
+    }
+
+    @Test
+    void retryAfterIsHonoured() throws Exception {
+        // 7回に1回、Retry-After: 0.05 の429を返す (同じメッセージの再送は1回で成功する)
+        stub.tooManyRequestsEvery(7, 0.05);
+        start(2);
+        LoadDriver driver = new LoadDriver(0, 16, 200);
+
+        long begin = System.nanoTime();
+        run("チャット (429)", driver);
+        long elapsedMillis = (System.nanoTime() - begin) / 1_000_000;
+
+        assertDeliveredOnceInOrder(driver.events());
+        int limited = stub.getRateLimitedCount();
+        assertTrue(limited > 0);
+        assertEquals(driver.events() + limited, stub.getRequestCount());
+        // 送信スレッドは1つのため、429のたびにRetry-Afterだけ待っている
+        assertTrue(elapsedMillis >= limited * 40L, "Retry-Afterを待たずに再送しています: " + elapsedMillis + "ms");
+    }
+
+    /**
+     * Webhookの数を指定して送信を開始
+     */
+    private void start(int webhooks) {
+        DiscordWhitelistPlugin p = plugin.get();
+        DiscordBot bot = mock(DiscordBot.class);
+        List<String> urls = new ArrayList<>();
+        for (int i = 1; i <= webhooks; i++) {
+            urls.add(stub.url(i));
+        }
+        WebhookPool pool = new WebhookPool(p, urls);
+        outbound = new OutboundSender(p, bot);
+        when(bot.getWebhookPool()).thenReturn(pool);
+        doAnswer(invocation -> {
+            String playerName = invocation.getArgument(0);
+            outbound.submit(OutboundSender.Category.CHAT, playerName, DiscordBot.getAvatarUrl(playerName),
+                    invocation.getArgument(1));
+            return null;
+        }).when(bot).sendWebhookMessage(anyString(), anyString());
+
+        ChatFilter filter = new ChatFilter(p);
+        ChatRelay relay = new ChatRelay(p);
+        when(p.getDiscordBot()).thenReturn(bot);
+        when(p.getChatFilter()).thenReturn(filter);
+        when(p.getChatRelay()).thenReturn(relay);
+        listener = new ChatSyncListener(p);
+    }
+
+    private void run(String name, LoadDriver driver) throws InterruptedException {
+        AsyncChatEvent[] events = new AsyncChatEvent[driver.events()];
+        Player[] players = new Player[PLAYERS];
+        for (int i = 0; i < PLAYERS; i++) {
+            players[i] = mock(Player.class);
+            when(players[i].getName()).thenReturn("Player" + i);
+        }
+        for (int i = 0; i < events.length; i++) {
+            events[i] = mock(AsyncChatEvent.class);
+            when(events[i].getPlayer()).thenReturn(players[i % PLAYERS]);
+            when(events[i].message()).thenReturn(Component.text("msg " + i));
+            synchronized (delivered) {
+                delivered.put(i, new CompletableFuture<>());
+            }
+        }
+
+        driver.run(name, i -> {
+            CompletableFuture<Void> future;
+            synchronized (delivered) {
+                future = delivered.get(i);
+            }
+            listener.onPlayerChat(events[i]);
+            return future;
+        });
+    }
+
+    /**
+     * 全てのメッセージが1回ずつ、プレイヤーごとに送信した順に届いたこと
+     */
+    private void assertDeliveredOnceInOrder(int events) {
+        Set<Integer> seen = new HashSet<>();
+        Map<Integer, Integer> lastByPlayer = new HashMap<>();
+        for (WebhookStub.Received received : stub.getReceived()) {
+            int id = idOf(received.getContent());
+            assertTrue(seen.add(id), "重複して届きました: " + id);
+            Integer last = lastByPlayer.put(id % PLAYERS, id);
+            assertTrue(last == null || last < id, "順番が入れ替わりました: " + last + " -> " + id);
+        }
+        assertEquals(events, seen.size());
+    }
+
+    private static int idOf(String content) {
+        return Integer.parseInt(content.substring(content.lastIndexOf(' ') + 1));
+    }
+}
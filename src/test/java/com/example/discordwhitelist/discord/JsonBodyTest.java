@@ -0,0 +1,171 @@
+package com.example.discordwhitelist.discord;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JsonBodyと以前の実装 (replace()によるエスケープ + String.format + getBytes) の比較
+ */
+class JsonBodyTest {
+
+    private static final List<String> EDGE_CASES = List.of(
+            "",
+            "plain text",
+            "日本語のチャット",
+            "é and ß",
+            "🎉 party 🎉",
+            "a\\\"b",
+            "ends with \\",
+            "\\\\\"\"\\",
+            "line\r\nbreak\ttab\n",
+            "\"quoted\"",
+            "\uD83D",
+            "x\uDE00y",
+            "\uDE00\uD83D",
+            "\uD83D😀",
+            "\uFFFF\u2028\u0080\u07FF\u0800");
+
+    @Test
+    void edgeCasesMatchLegacyBody() {
+        JsonBody body = new JsonBody(16);
+        for (String text : EDGE_CASES) {
+            assertArrayEquals(legacy("Steve", "https://example.com/a.png", text), build(body, "Steve",
+                    "https://example.com/a.png", text), text);
+            assertArrayEquals(legacy(text, null, text), build(body, text, null, text), text);
+
+            // JSONとして読めること (不正なサロゲートはgetBytes()と同じく '?')
+            JsonObject json = JsonParser.parseString(new String(build(body, "Steve", null, text),
+                    StandardCharsets.UTF_8)).getAsJsonObject();
+            assertEquals(new String(text.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8),
+                    json.get("content").getAsString());
+        }
+    }
+
+    @Test
+    void nullFieldsMatchLegacyBody() {
+        JsonBody body = new JsonBody(16);
+        assertArrayEquals(legacy(null, null, null), build(body, null, null, null));
+    }
+
+    @Test
+    void controlCharactersAreEscaped() {
+        // 以前は \n \r \t 以外の制御文字をそのまま出力していた (不正なJSON)
+        String text = "a\u0000b\u001Fc\bd\fe\u007F";
+        byte[] built = build(new JsonBody(16), "Steve", null, text);
+
+        assertEquals("{\"username\":\"Steve\",\"content\":\"a\\u0000b\\u001fc\\u0008d\\u000ce\u007F\"}",
+                new String(built, StandardCharsets.UTF_8));
+        for (byte b : built) {
+            assertTrue(b >= 0x20 || b < 0, "制御文字がエスケープされていません: " + b);
+        }
+        assertEquals(text, JsonParser.parseString(new String(built, StandardCharsets.UTF_8)).getAsJsonObject()
+                .get("content").getAsString());
+    }
+
+    @Test
+    void randomTextMatchesLegacyBody() {
+        // 制御文字 (\n \r \t 以外) は以前の出力と異なるため含めない
+        char[] alphabet = { 'a', 'Z', '0', ' ', '*', '\\', '"', '\n', '\r', '\t', '/', 'é', 'あ', '\u2028', '\uFFFD',
+                '\uD83C', '\uDF89' };
+        Random random = new Random(50);
+        JsonBody body = new JsonBody(16);
+        for (int i = 0; i < 20_000; i++) {
+            char[] text = new char[random.nextInt(40)];
+            for (int j = 0; j < text.length; j++) {
+                text[j] = alphabet[random.nextInt(alphabet.length)];
+            }
+            String content = new String(text);
+            assertArrayEquals(legacy("Steve", null, content), build(body, "Steve", null, content), content);
+        }
+    }
+
+    @Test
+    void bufferIsReused() {
+        JsonBody body = new JsonBody(1024);
+        build(body, "Steve", null, "x".repeat(2000));
+        byte[] array = body.array();
+
+        String content = "こんにちは \"world\" \\ 🎉 **bold**\n2行目";
+        for (int i = 0; i < 100; i++) {
+            body.reset().raw("{\"username\":").string("Steve").raw(",\"content\":").string(content).raw("}");
+        }
+        assertSame(array, body.array());
+        assertEquals(legacy("Steve", null, content).length, body.length());
+    }
+
+    @Test
+    @Tag("benchmark")
+    void allocationComparedWithLegacy() {
+        JsonBody body = new JsonBody(1024);
+        String content = "こんにちは \"world\" \\ 🎉 **bold**\n2行目";
+        int iterations = 100_000;
+        for (int i = 0; i < iterations; i++) {
+            body.reset().raw("{\"username\":").string("Steve").raw(",\"content\":").string(content).raw("}");
+            legacy("Steve", null, content);
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < iterations; i++) {
+            body.reset().raw("{\"username\":").string("Steve").raw(",\"content\":").string(content).raw("}");
+        }
+        double current = (double) (threads.getCurrentThreadAllocatedBytes() - allocated) / iterations;
+
+        allocated = threads.getCurrentThreadAllocatedBytes();
+        int length = 0;
+        for (int i = 0; i < iterations; i++) {
+            length += legacy("Steve", null, content).length;
+        }
+        double previous = (double) (threads.getCurrentThreadAllocatedBytes() - allocated) / iterations;
+
+        System.out.printf("[JsonBody] 1件あたりの割り当て: %.1fバイト (以前の実装: %.1fバイト)%n", current, previous);
+        assertEquals(length / iterations, body.length());
+        assertTrue(current < 1, "JsonBodyで割り当てが発生: " + current);
+        assertTrue(current < previous);
+    }
+
+    private static byte[] build(JsonBody body, String username, String avatarUrl, String content) {
+        body.reset().raw("{\"username\":").string(username);
+        if (avatarUrl != null) {
+            body.raw(",\"avatar_url\":").string(avatarUrl);
+        }
+        body.raw(",\"content\":").string(content).raw("}");
+        return Arrays.copyOf(body.array(), body.length());
+    }
+
+    /**
+     * 以前のWebhookPoolのボディ
+     */
+    private static byte[] legacy(String username, String avatarUrl, String content) {
+        String avatar = avatarUrl != null ? ",\"avatar_url\":\"" + escapeJson(avatarUrl) + "\"" : "";
+        return String.format(
+                "{\"username\":\"%s\"%s,\"content\":\"%s\"}",
+                escapeJson(username),
+                avatar,
+                escapeJson(content)).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static String escapeJson(String text) {
+        if (text == null)
+            return "";
+        return text
+                .replace("\\", "\\\\")
+                .replace("\"", "\\\"")
+                .replace("\n", "\\n")
+                .replace("\r", "\\r")
+                .replace("\t", "\\t");
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.TestPlugin;
+import net.dv8tion.jda.api.entities.channel.concrete.TextChannel;
+import net.dv8tion.jda.api.requests.restaction.MessageCreateAction;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.after;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class OutboundSenderTest {
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private OutboundSender sender;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+    }
+
+    @AfterEach
+    void tearDown() {
+        sender.drain(100);
+        plugin.close();
+    }
+
+    @Test
+    void timeoutAfterSubmitIsNotResent() {
+        // Discordが応答しない (リクエストはJDAに渡っており、後から届く可能性がある)
+        TextChannel channel = mock(TextChannel.class);
+        MessageCreateAction action = mock(MessageCreateAction.class);
+        when(action.submit()).thenReturn(new CompletableFuture<>());
+        when(channel.sendMessage(any(CharSequence.class))).thenReturn(action);
+        DiscordBot bot = mock(DiscordBot.class);
+        when(bot.getChatChannel()).thenReturn(channel);
+        sender = new OutboundSender(plugin.get(), bot);
+
+        sender.submit(OutboundSender.Category.STATUS, null, null, "サーバーが起動しました");
+
+        // 送信のタイムアウト (5秒) の後も、Outboxからの再送 (1秒後) は行われない
+        verify(channel, timeout(1000)).sendMessage(any(CharSequence.class));
+        verify(channel, after(7000).times(1)).sendMessage(any(CharSequence.class));
+        assertEquals(0, sender.getOutbox().getSize());
+        for (OutboundSender.Stats stats : sender.getStats()) {
+            if (stats.getCategory() == OutboundSender.Category.STATUS) {
+                assertEquals(1, stats.getSent());
+            }
+        }
+    }
+}
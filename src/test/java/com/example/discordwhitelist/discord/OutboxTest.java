@@ -0,0 +1,85 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.TestPlugin;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OutboxTest {
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+    }
+
+    @Test
+    void corruptedRecordKeepsEarlierMessages() throws IOException {
+        File segment = writeSegment(5);
+        long validLength = segment.length();
+        // 種類が不正なメッセージ (種類, 時刻, 行数, 表示名なし, アバターなし, 空の本文) と、その後ろのゴミ
+        append(segment, new byte[] { 99, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 1, 0, 0, 0, 0, 0x7F, 0x7F });
+
+        Outbox reopened = new Outbox(plugin.get());
+
+        assertEquals(5, reopened.getSize());
+        assertEquals(validLength, segment.length());
+        for (int i = 0; i < 5; i++) {
+            OutboundSender.Outbound item = reopened.peek();
+            assertNotNull(item);
+            assertEquals("message " + i, item.content);
+            reopened.remove();
+        }
+        assertNull(reopened.peek());
+    }
+
+    @Test
+    void truncatedTailIsCut() throws IOException {
+        File segment = writeSegment(3);
+        long validLength = segment.length();
+        // 最後のメッセージの途中まで
+        append(segment, new byte[] { 1, 0, 0, 0 });
+
+        Outbox reopened = new Outbox(plugin.get());
+
+        assertEquals(3, reopened.getSize());
+        assertEquals(validLength, segment.length());
+    }
+
+    /**
+     * メッセージをファイルに書き出し、セグメントファイルを返す
+     */
+    private File writeSegment(int messages) {
+        Outbox outbox = new Outbox(plugin.get());
+        for (int i = 0; i < messages; i++) {
+            outbox.add(new OutboundSender.Outbound(OutboundSender.Category.CHAT, i, "Steve", null, "message " + i, 1,
+                    System.nanoTime()));
+        }
+        outbox.spill();
+        outbox.close();
+        File[] files = new File(dataFolder, "outbox").listFiles((dir, name) -> name.endsWith(".seg"));
+        assertNotNull(files);
+        assertEquals(1, files.length);
+        assertTrue(files[0].length() > 0);
+        return files[0];
+    }
+
+    private static void append(File file, byte[] bytes) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package com.example.discordwhitelist.discord;
+
+import com.example.discordwhitelist.TestPlugin;
+import com.example.discordwhitelist.manager.WhitelistPartitions;
+import net.dv8tion.jda.api.Permission;
+import net.dv8tion.jda.api.entities.Member;
+import net.dv8tion.jda.api.events.interaction.command.SlashCommandInteractionEvent;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * スラッシュコマンドの連続実行の制限 (管理者は制限しない)
+ */
+class SlashCommandListenerTest {
+
+    private static final String THROTTLED = "throttled";
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private SlashCommandListener listener;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+        plugin.config().set("throttle.burst", 5);
+        plugin.config().set("messages.throttled", THROTTLED);
+        plugin.createWhitelistManager();
+
+        WhitelistPartitions partitions = mock(WhitelistPartitions.class);
+        WhitelistPartitions.Partition partition = mock(WhitelistPartitions.Partition.class);
+        when(partition.getAdminRoleId()).thenReturn("");
+        when(partitions.forGuild("1")).thenReturn(partition);
+        when(plugin.get().getPartitions()).thenReturn(partitions);
+
+        DiscordBot bot = mock(DiscordBot.class);
+        InteractionThrottle throttle = new InteractionThrottle(plugin.get());
+        when(bot.getThrottle()).thenReturn(throttle);
+        when(plugin.get().getDiscordBot()).thenReturn(bot);
+
+        listener = new SlashCommandListener(plugin.get());
+    }
+
+    @AfterEach
+    void tearDown() {
+        plugin.close();
+    }
+
+    @Test
+    void adminIsNotThrottled() {
+        SlashCommandInteractionEvent event = event("100", true);
+        for (int i = 0; i < 20; i++) {
+            listener.onSlashCommandInteraction(event);
+        }
+        verify(event, never()).reply(THROTTLED);
+    }
+
+    @Test
+    void otherMembersAreThrottledAfterBurst() {
+        SlashCommandInteractionEvent event = event("200", false);
+        for (int i = 0; i < 8; i++) {
+            listener.onSlashCommandInteraction(event);
+        }
+        verify(event, times(3)).reply(THROTTLED);
+    }
+
+    private static SlashCommandInteractionEvent event(String userId, boolean administrator) {
+        SlashCommandInteractionEvent event = mock(SlashCommandInteractionEvent.class, RETURNS_DEEP_STUBS);
+        Member member = mock(Member.class);
+        when(member.getId()).thenReturn(userId);
+        when(member.hasPermission(Permission.ADMINISTRATOR)).thenReturn(administrator);
+        when(member.getRoles()).thenReturn(List.of());
+        when(event.getMember()).thenReturn(member);
+        when(event.getUser().getId()).thenReturn(userId);
+        when(event.getGuild().getId()).thenReturn("1");
+        when(event.getName()).thenReturn("whitelist");
+        when(event.getFullCommandName()).thenReturn("whitelist pending");
+        // サブコマンドなし: 管理者の確認だけを行う
+        when(event.getSubcommandName()).thenReturn(null);
+        return event;
+    }
+}
@@ -0,0 +1,243 @@
+package com.example.discordwhitelist.discord;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Discord Webhookの代わりのローカルHTTPサーバー (負荷テスト用)
+ * 応答の遅延、Webhookごとのレートリミット (X-RateLimit-* ヘッダー)、Retry-After付きの429を再現する
+ * URLは /api/webhooks/{番号}/token で、番号ごとに別のWebhookとしてレートリミットを数える
+ */
+public class WebhookStub implements AutoCloseable {
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    private volatile int latencyMillis;
+    private volatile int limit = Integer.MAX_VALUE;
+    private volatile long windowMillis = 1000;
+    private volatile int tooManyEvery;
+    private volatile double retryAfterSeconds = 0.1;
+
+    // Webhookの番号 -> レートリミットの状態
+    private final Map<String, Bucket> buckets = new HashMap<>();
+    private final List<Received> received = new ArrayList<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger rateLimited = new AtomicInteger();
+    private volatile Consumer<Received> listener = received -> {
+    };
+
+    public WebhookStub() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/webhooks/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    /**
+     * 応答までの遅延
+     */
+    public WebhookStub latency(int millis) {
+        this.latencyMillis = millis;
+        return this;
+    }
+
+    /**
+     * Webhookごとのレートリミット (windowMillisごとにlimit回、超えた場合は429)
+     */
+    public WebhookStub rateLimit(int limit, long windowMillis) {
+        this.limit = limit;
+        this.windowMillis = windowMillis;
+        return this;
+    }
+
+    /**
+     * レートリミットとは別に、n回に1回429を返す (共有のレートリミットの再現、0は無効)
+     */
+    public WebhookStub tooManyRequestsEvery(int n, double retryAfterSeconds) {
+        this.tooManyEvery = n;
+        this.retryAfterSeconds = retryAfterSeconds;
+        return this;
+    }
+
+    /**
+     * 受信したメッセージの通知 (HTTPサーバーのスレッドから呼ばれる)
+     */
+    public WebhookStub onReceived(Consumer<Received> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    public String url(int webhook) {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/api/webhooks/" + webhook + "/token";
+    }
+
+    /**
+     * 受け付けたメッセージ (429は含まない、受信順)
+     */
+    public synchronized List<Received> getReceived() {
+        return new ArrayList<>(received);
+    }
+
+    /**
+     * 受信したリクエストの総数 (429を含む)
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * 429を返した回数
+     */
+    public int getRateLimitedCount() {
+        return rateLimited.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            String webhook = exchange.getRequestURI().getPath().split("/")[3];
+            int count = requests.incrementAndGet();
+            if (latencyMillis > 0) {
+                try {
+                    Thread.sleep(latencyMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+
+            long now = System.currentTimeMillis();
+            int remaining;
+            long resetAfter;
+            boolean limited;
+            synchronized (this) {
+                Bucket bucket = buckets.computeIfAbsent(webhook, key -> new Bucket());
+                if (now >= bucket.resetAt) {
+                    bucket.resetAt = now + windowMillis;
+                    bucket.used = 0;
+                }
+                limited = bucket.used >= limit;
+                if (!limited) {
+                    bucket.used++;
+                }
+                remaining = limit == Integer.MAX_VALUE ? 1000 : limit - bucket.used;
+                resetAfter = bucket.resetAt - now;
+            }
+
+            exchange.getResponseHeaders().set("X-RateLimit-Limit",
+                    String.valueOf(limit == Integer.MAX_VALUE ? 1000 : limit));
+            exchange.getResponseHeaders().set("X-RateLimit-Remaining", String.valueOf(remaining));
+            exchange.getResponseHeaders().set("X-RateLimit-Reset-After", seconds(resetAfter / 1000.0));
+            exchange.getResponseHeaders().set("X-RateLimit-Bucket", "webhook-" + webhook);
+
+            if (limited || (tooManyEvery > 0 && count % tooManyEvery == 0)) {
+                rateLimited.incrementAndGet();
+                double retryAfter = limited ? resetAfter / 1000.0 : retryAfterSeconds;
+                exchange.getResponseHeaders().set("Retry-After", seconds(retryAfter));
+                exchange.getResponseHeaders().set("X-RateLimit-Scope", limited ? "user" : "shared");
+                byte[] response = ("{\"message\":\"You are being rate limited.\",\"retry_after\":"
+                        + seconds(retryAfter) + ",\"global\":false}").getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(429, response.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(response);
+                }
+                return;
+            }
+
+            Received message = new Received(webhook, contentOf(new String(body, StandardCharsets.UTF_8)),
+                    System.nanoTime());
+            synchronized (this) {
+                received.add(message);
+            }
+            exchange.sendResponseHeaders(204, -1);
+            listener.accept(message);
+        }
+    }
+
+    private static String seconds(double value) {
+        return String.format(Locale.ROOT, "%.3f", Math.max(0, value));
+    }
+
+    /**
+     * JSONのcontentの値 (エスケープは \" と \\ のみ戻す)
+     */
+    private static String contentOf(String json) {
+        int start = json.indexOf("\"content\":\"");
+        if (start < 0) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (int i = start + 11; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c == '\\' && i + 1 < json.length()) {
+                sb.append(json.charAt(++i));
+            } else if (c == '"') {
+                break;
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 受け付けたメッセージ
+     */
+    public static class Received {
+        private final String webhook;
+        private final String content;
+        private final long receivedAt;
+
+        Received(String webhook, String content, long receivedAt) {
+            this.webhook = webhook;
+            this.content = content;
+            this.receivedAt = receivedAt;
+        }
+
+        public String getWebhook() {
+            return webhook;
+        }
+
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * 受信した時刻 (System.nanoTime())
+         */
+        public long getReceivedAt() {
+            return receivedAt;
+        }
+    }
+
+    private static class Bucket {
+        long resetAt;
+        int used;
+    }
+}
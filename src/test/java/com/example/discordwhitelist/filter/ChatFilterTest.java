@@ -0,0 +1,112 @@
+package com.example.discordwhitelist.filter;
+
+import com.example.discordwhitelist.TestPlugin;
+import com.example.discordwhitelist.discord.DiscordBot;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ChatFilterTest {
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private DiscordBot bot;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+        plugin.config().set("chat-filter.enabled", true);
+        bot = mock(DiscordBot.class);
+        when(plugin.get().getDiscordBot()).thenReturn(bot);
+    }
+
+    @Test
+    void duplicatePatternsApplyEveryAction() {
+        // 大文字/小文字だけが異なる同じパターン: 後のルールの破棄も適用される
+        ChatFilter filter = filter(rule("spam", "mask"), rule("SPAM", "drop"));
+
+        ChatFilter.Result result = filter.apply("buy spam now", "Steve", ChatFilter.Direction.TO_DISCORD);
+
+        assertTrue(result.isDropped());
+        assertEquals("buy **** now", result.getText());
+    }
+
+    @Test
+    void duplicateFlagIsReportedWithMask() {
+        ChatFilter filter = filter(rule("secret", "mask"), rule("secret", "flag"));
+
+        ChatFilter.Result result = filter.apply("the secret", "Steve", ChatFilter.Direction.TO_MINECRAFT);
+
+        assertFalse(result.isDropped());
+        assertEquals("the ******", result.getText());
+        assertEquals(List.of("secret"), new ArrayList<>(result.getFlagged()));
+        verify(bot).sendModerationMessage(anyString());
+    }
+
+    @Test
+    void overlappingPatternsAreAllMatched() {
+        AhoCorasick automaton = new AhoCorasick(List.of("he", "she", "his", "hers", "she"));
+        List<String> matches = new ArrayList<>();
+
+        automaton.search("ushers", (pattern, start, end) -> matches.add(pattern + ":" + start + "-" + end));
+
+        assertEquals(List.of("1:1-4", "4:1-4", "0:2-4", "3:2-6"), matches);
+    }
+
+    @Test
+    void unmatchedMessageIsNotReported() {
+        ChatFilter filter = filter(rule("secret", "flag"));
+
+        ChatFilter.Result result = filter.apply("hello", "Steve", ChatFilter.Direction.TO_DISCORD);
+
+        assertEquals("hello", result.getText());
+        verify(bot, never()).sendModerationMessage(anyString());
+    }
+
+    @Test
+    void longMessageIsTruncatedInReport() {
+        ChatFilter filter = filter(rule("secret", "flag"));
+        ArgumentCaptor<String> report = ArgumentCaptor.forClass(String.class);
+
+        // Discordの上限に近いメッセージ (改行で引用の記号が増える)
+        filter.apply("secret " + "line\n".repeat(390), "Steve", ChatFilter.Direction.TO_MINECRAFT);
+
+        verify(bot).sendModerationMessage(report.capture());
+        assertTrue(report.getValue().length() <= 2000, "長さ: " + report.getValue().length());
+        assertTrue(report.getValue().endsWith("…"));
+    }
+
+    @Test
+    void truncateKeepsSurrogatePairs() {
+        assertEquals("abc", ChatFilter.truncate("abc", 3));
+        assertEquals("ab…", ChatFilter.truncate("abcd", 3));
+        assertEquals("a…", ChatFilter.truncate("a🎉cd", 3));
+    }
+
+    @SafeVarargs
+    private ChatFilter filter(Map<String, String>... rules) {
+        plugin.config().set("chat-filter.rules", List.of(rules));
+        return new ChatFilter(plugin.get());
+    }
+
+    private static Map<String, String> rule(String pattern, String action) {
+        return Map.of("pattern", pattern, "action", action);
+    }
+}
@@ -0,0 +1,162 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.TestPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 監査ログのファイルの切り替え、索引の再構築、書き込み途中で停止した末尾の復旧
+ */
+class AuditJournalTest {
+
+    private static final String DISCORD_ID = "100000000000000001";
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private AuditJournal journal;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (journal != null) {
+            journal.stop();
+        }
+        plugin.close();
+    }
+
+    @Test
+    void rotationDeletesOldestFiles() {
+        plugin.config().set("audit.max-file-kb", 16);
+        plugin.config().set("audit.max-files", 2);
+        journal = start();
+
+        int count = 1000;
+        for (int i = 0; i < count; i++) {
+            journal.record(AuditJournal.Action.ADD, "whitelist", "Player" + (i % 10), "", DISCORD_ID,
+                    AuditJournal.SOURCE_SYSTEM, "#" + i);
+        }
+        journal.flush();
+
+        List<String> logs = List.of(auditDir().list((dir, name) -> name.endsWith(".log")));
+        assertEquals(2, logs.size(), logs.toString());
+        assertEquals(2, auditDir().list((dir, name) -> name.endsWith(".idx")).length);
+
+        // 削除したファイルの記録は索引からも消える
+        AuditJournal.History history = journal.historyOfPlayer("Player9", 1000);
+        assertTrue(history.getTotal() > 0 && history.getTotal() < count / 10, "件数: " + history.getTotal());
+        assertEquals(history.getTotal(), history.getRecords().size());
+        assertEquals("#" + (count - 1), history.getRecords().get(0).getDetail());
+        int total = 0;
+        for (int i = 0; i < 10; i++) {
+            total += journal.historyOfPlayer("Player" + i, 1).getTotal();
+        }
+        assertTrue(total < count);
+        assertEquals(total, journal.historyOfDiscordUser(DISCORD_ID, 1).getTotal());
+    }
+
+    @Test
+    void missingIndexIsRebuilt() throws Exception {
+        journal = start();
+        recordAdds(5);
+        journal.stop();
+
+        // 索引の書き込み前に停止した: 索引は3件目まで
+        File index = new File(auditDir(), "audit-1.idx");
+        List<String> lines = Files.readAllLines(index.toPath());
+        Files.write(index.toPath(), lines.subList(0, 3 * 2));
+
+        journal = start();
+        assertHistory(5);
+
+        // 索引がない
+        journal.stop();
+        assertTrue(index.delete());
+        journal = start();
+        assertHistory(5);
+        assertTrue(index.length() > 0);
+    }
+
+    @Test
+    void tornTailIsTruncated() throws Exception {
+        journal = start();
+        recordAdds(3);
+        journal.stop();
+
+        // 行の途中で停止した
+        File log = new File(auditDir(), "audit-1.log");
+        long length = log.length();
+        Files.write(log.toPath(), "1700000000000\tADD\twhitelist\tPlay".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+        Files.write(new File(auditDir(), "audit-1.idx").toPath(), "p:player".getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.APPEND);
+
+        journal = start();
+        assertEquals(length, log.length());
+        assertHistory(3);
+
+        // 続きの記録が壊れた行とつながらない
+        journal.record(AuditJournal.Action.REMOVE, "whitelist", "Player", "", DISCORD_ID, AuditJournal.SOURCE_SYSTEM,
+                "");
+        AuditJournal.History history = journal.historyOfPlayer("player", 10);
+        assertEquals(4, history.getTotal());
+        assertEquals(AuditJournal.Action.REMOVE, history.getRecords().get(0).getAction());
+    }
+
+    @Test
+    void unwritableFolderDisablesJournal() throws Exception {
+        // audit という名前のファイルがあるためフォルダを作成できない
+        Files.writeString(auditDir().toPath(), "");
+        journal = start();
+
+        assertFalse(journal.isEnabled());
+        journal.record(AuditJournal.Action.ADD, "whitelist", "Player", "", DISCORD_ID, AuditJournal.SOURCE_SYSTEM,
+                "");
+        journal.flush();
+        assertEquals(0, journal.historyOfPlayer("Player", 10).getTotal());
+    }
+
+    private AuditJournal start() {
+        AuditJournal journal = new AuditJournal(plugin.get());
+        journal.start();
+        return journal;
+    }
+
+    private void recordAdds(int count) {
+        for (int i = 0; i < count; i++) {
+            journal.record(AuditJournal.Action.ADD, "whitelist", "Player", "", DISCORD_ID, AuditJournal.SOURCE_SYSTEM,
+                    "#" + i);
+        }
+        journal.flush();
+    }
+
+    private void assertHistory(int count) {
+        AuditJournal.History history = journal.historyOfPlayer("Player", 10);
+        assertEquals(count, history.getTotal());
+        for (int i = 0; i < count; i++) {
+            assertEquals("#" + (count - 1 - i), history.getRecords().get(i).getDetail());
+        }
+        assertEquals(count, journal.historyOfDiscordUser(DISCORD_ID, 10).getTotal());
+    }
+
+    private File auditDir() {
+        return new File(dataFolder, "audit");
+    }
+}
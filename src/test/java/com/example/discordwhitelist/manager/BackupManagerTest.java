@@ -0,0 +1,180 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.TestPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * ベースと差分からの時点指定の再構築、差分の適用順、復元とその取り消し
+ */
+class BackupManagerTest {
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private WhitelistManager manager;
+    private BackupManager backup;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+        manager = plugin.createWhitelistManager();
+        backup = new BackupManager(plugin.get(), manager);
+        backup.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        backup.stop();
+        plugin.close();
+    }
+
+    @Test
+    void planRebuildsStateAtEachPoint() throws Exception {
+        manager.addPlayer("Alpha", "100000000000000001");
+        long beforeBase = tick();
+        backup.takeBase();
+        long afterBase = tick();
+
+        manager.addPlayer("Bravo", "100000000000000002");
+        backup.flush();
+        long afterBravo = tick();
+
+        manager.removePlayer("Alpha");
+        manager.addPlayer("Charlie", "100000000000000003");
+        backup.flush();
+        long afterCharlie = tick();
+
+        // 未書き出しの変更もplan()の時点で書き出す
+        manager.removePlayer("Bravo");
+        long latest = tick();
+
+        assertNull(backup.plan(beforeBase));
+        assertEquals(Set.of("Alpha"), names(backup.plan(afterBase)));
+        assertEquals(Set.of("Alpha", "Bravo"), names(backup.plan(afterBravo)));
+        assertEquals(Set.of("Bravo", "Charlie"), names(backup.plan(afterCharlie)));
+        assertEquals(Set.of("Charlie"), names(backup.plan(latest)));
+
+        BackupManager.RestorePlan plan = backup.plan(afterBravo);
+        assertEquals(List.of("Alpha", "Bravo"), playerNames(plan.getAdded()));
+        assertEquals(List.of("Charlie"), playerNames(plan.getRemoved()));
+        assertTrue(plan.getChanged().isEmpty());
+    }
+
+    @Test
+    void deltasApplyInNumericOrder() throws Exception {
+        backup.takeBase();
+        long time = tick();
+        File chain = new File(dataFolder, "backups").listFiles(File::isDirectory)[0];
+
+        // 同じ時刻の差分は連番の数値順 (-2 → -10) に適用する (文字列順では -10 が先)
+        writeDelta(new File(chain, "delta-" + time + "-10.gz"), time, "100000000000000010");
+        writeDelta(new File(chain, "delta-" + time + "-2.gz"), time, "100000000000000002");
+        writeDelta(new File(chain, "delta-" + time + ".gz"), time, "100000000000000000");
+
+        BackupManager.RestorePlan plan = backup.plan(time);
+        assertEquals("100000000000000010", plan.getAdded().get(0).getDiscordId());
+    }
+
+    @Test
+    void restoreCanBeUndone() throws Exception {
+        manager.addPlayer("Alpha", "100000000000000001");
+        backup.takeBase();
+        long onlyAlpha = tick();
+
+        manager.addPlayer("Bravo", "100000000000000002");
+        manager.recordSeen("Alpha", 1_700_000_000_000L);
+        manager.flushLastSeen();
+        long beforeRestore = tick();
+
+        backup.restore(backup.plan(onlyAlpha), "test");
+        assertEquals(Set.of("Alpha"), names(manager.getWhitelist()));
+        // 最終ログインは差分に残らないが、現在の方が新しいため引き継ぐ
+        assertEquals(1_700_000_000_000L, manager.getEntry("Alpha", null).getLastSeen());
+
+        // 復元前の状態は直前の系列に残っている
+        tick();
+        BackupManager.RestorePlan undo = backup.plan(beforeRestore);
+        assertEquals(Set.of("Alpha", "Bravo"), names(undo));
+        assertEquals(List.of("Bravo"), playerNames(undo.getAdded()));
+        backup.restore(undo, "test");
+        assertEquals(Set.of("Alpha", "Bravo"), names(manager.getWhitelist()));
+    }
+
+    @Test
+    void lastSeenIsNotWrittenAsDelta() throws Exception {
+        manager.addPlayer("Alpha", "100000000000000001");
+        backup.takeBase();
+        File chain = new File(dataFolder, "backups").listFiles(File::isDirectory)[0];
+
+        for (int i = 1; i <= 5; i++) {
+            manager.recordSeen("Alpha", System.currentTimeMillis() + i);
+            manager.flushLastSeen();
+            backup.flush();
+        }
+        assertEquals(0, chain.listFiles((dir, name) -> name.startsWith("delta-")).length);
+
+        // 次のベースには含まれる
+        long lastSeen = manager.getEntry("Alpha", null).getLastSeen();
+        assertTrue(lastSeen > 0);
+        tick();
+        backup.takeBase();
+        BackupManager.RestorePlan plan = backup.plan(tick());
+        assertTrue(plan.isEmpty());
+    }
+
+    /**
+     * 時刻が進んだことを保証して現在時刻を返す (同じミリ秒の変更と区別する)
+     */
+    private static long tick() throws InterruptedException {
+        Thread.sleep(5);
+        long now = System.currentTimeMillis();
+        Thread.sleep(5);
+        return now;
+    }
+
+    private static void writeDelta(File file, long time, String discordId) throws IOException {
+        try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                new GZIPOutputStream(Files.newOutputStream(file.toPath())), StandardCharsets.UTF_8))) {
+            writer.write(BackupManager.Mutation.put(time, new WhitelistManager.WhitelistEntry("Delta", discordId,
+                    "2024-01-01T00:00:00", false)).toLine());
+            writer.write('\n');
+        }
+    }
+
+    private static Set<String> names(BackupManager.RestorePlan plan) {
+        return names(plan.getEntries());
+    }
+
+    private static Set<String> names(Collection<WhitelistManager.WhitelistEntry> entries) {
+        Set<String> names = new TreeSet<>();
+        entries.forEach(entry -> names.add(entry.getPlayerName()));
+        return names;
+    }
+
+    private static List<String> playerNames(List<WhitelistManager.WhitelistEntry> entries) {
+        List<String> names = new ArrayList<>();
+        entries.forEach(entry -> names.add(entry.getPlayerName()));
+        return names;
+    }
+}
@@ -0,0 +1,300 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.TestPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.ref.Reference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 索引ファイルのロックなしの読み取り、作り直し時のファイルの世代、ヒープ上の索引とのメモリ使用量の比較
+ */
+class MappedWhitelistTableTest {
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+    }
+
+    @AfterEach
+    void tearDown() {
+        plugin.close();
+    }
+
+    @Test
+    void readersSeeWholeRecordsDuringUpdatesAndGrowth() throws Exception {
+        MappedWhitelistTable table = new MappedWhitelistTable(new File(dataFolder, "whitelist.dat"), 1);
+        int count = 20_000;
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        int[] published = new int[1];
+
+        List<Thread> readers = new ArrayList<>();
+        for (int r = 0; r < 4; r++) {
+            Thread reader = new Thread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                try {
+                    while (running.get()) {
+                        int limit;
+                        synchronized (published) {
+                            limit = published[0];
+                        }
+                        if (limit == 0) {
+                            continue;
+                        }
+                        int player = random.nextInt(limit);
+                        // 1つの表の中で検索と参照を行う (作り直しや更新の途中でも別のレコードと混ざらない)
+                        MappedWhitelistTable.Tables snapshot = table.snapshot();
+                        int slot = snapshot.findName("PLAYER" + player);
+                        assertTrue(slot >= 0, "登録済みのplayer" + player + "が見つかりません");
+                        assertEquals("player" + player, snapshot.getLowerName(slot));
+                        long discordId = snapshot.getDiscordId(slot);
+                        assertEquals(discordId(player, snapshot.getExpiresAt(slot)), discordId);
+
+                        int linked = snapshot.findDiscord(Long.toString(discordId), false);
+                        if (linked >= 0) {
+                            assertEquals(discordId, snapshot.getDiscordId(linked));
+                            assertEquals("player" + player, snapshot.getLowerName(linked));
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < count; i++) {
+            table.put(entry(i, 0));
+            synchronized (published) {
+                published[0] = i + 1;
+            }
+            // 登録済みのエントリーを別の内容で更新
+            table.put(entry(random.nextInt(i + 1), i + 1));
+        }
+        running.set(false);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+        assertEquals(count, table.size());
+        assertTrue(table.capacity() >= count * 2);
+    }
+
+    @Test
+    void unchangedEntryKeepsItsRecord() throws Exception {
+        MappedWhitelistTable table = new MappedWhitelistTable(new File(dataFolder, "whitelist.dat"), 1);
+        table.put(entry(1, 0));
+        int slot = table.snapshot().findName("player1");
+
+        table.put(entry(1, 0));
+        assertEquals(slot, table.snapshot().findName("player1"));
+
+        table.put(entry(1, 5));
+        MappedWhitelistTable.Tables snapshot = table.snapshot();
+        int updated = snapshot.findName("player1");
+        assertTrue(updated >= 0 && updated != slot);
+        assertEquals(5, snapshot.getExpiresAt(updated));
+        assertEquals(updated, snapshot.findDiscord(Long.toString(discordId(1, 5)), false));
+        assertEquals(-1, snapshot.findDiscord(Long.toString(discordId(1, 0)), false));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    void rebuildWritesNewGenerationAndDeletesOld() throws Exception {
+        File file = new File(dataFolder, "whitelist.dat");
+        // 以前の形式のファイルと、前回の実行のファイル (どちらも使わずに削除する)
+        assertTrue(file.createNewFile());
+        assertTrue(new File(dataFolder, "whitelist-7.dat").createNewFile());
+        // 別のホワイトリストのファイルは対象外
+        assertTrue(new File(dataFolder, "whitelist-guild-1.dat").createNewFile());
+
+        MappedWhitelistTable table = new MappedWhitelistTable(file, 1);
+        assertArrayEquals(new String[] { "whitelist-1.dat" }, datFiles());
+        MappedWhitelistTable.Tables first = table.snapshot();
+
+        for (int i = 0; i < 600; i++) {
+            table.put(entry(i, 0));
+        }
+        assertArrayEquals(new String[] { "whitelist-2.dat" }, datFiles());
+        // 作り直し前の表を参照中の読み取りは続けられる
+        assertEquals("player0", first.getLowerName(first.findName("Player0")));
+
+        table.clear();
+        assertArrayEquals(new String[] { "whitelist-3.dat" }, datFiles());
+        assertEquals(0, table.size());
+
+        MappedWhitelistTable.deleteFiles(file);
+        assertArrayEquals(new String[0], datFiles());
+        assertFalse(file.exists());
+    }
+
+    @Test
+    void mappedLookupDoesNotAllocate() {
+        plugin.config().set("storage.mapped-index", true);
+        WhitelistManager manager = new WhitelistManager(plugin.get(), new File(dataFolder, "whitelist.yml"));
+        List<WhitelistManager.WhitelistEntry> entries = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) {
+            entries.add(entry(i, 0));
+        }
+        manager.restore(entries);
+        String[] names = entries.stream().map(WhitelistManager.WhitelistEntry::getPlayerName).toArray(String[]::new);
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        for (String name : names) {
+            manager.isWhitelisted(name);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < 100_000; i++) {
+            manager.isWhitelisted(names[i % names.length]);
+        }
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        assertTrue(allocated < 100_000, "索引ファイルの判定で割り当てが発生: " + allocated + "バイト");
+    }
+
+    /**
+     * 同じエントリーをヒープ上の索引/索引ファイルで保持した場合の、保持しているヒープと判定ごとの割り当て量
+     * GCの状況に依存するため通常のテストでは実行しない (mvn test -Pload)
+     * エントリー数はシステムプロパティ load.entries で変更できる
+     */
+    @Test
+    @Tag("benchmark")
+    void heapComparedWithMaps() {
+        int count = Integer.getInteger("load.entries", 100_000);
+        List<WhitelistManager.WhitelistEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            entries.add(new WhitelistManager.WhitelistEntry("Player" + i, String.valueOf(100000000000000000L + i),
+                    "2024-01-01T00:00:00Z", false, false, new UUID(i, i), 0));
+        }
+
+        Footprint heap = measure(entries, false);
+        Footprint mapped = measure(entries, true);
+        System.out.println(heap.report("ヒープ上の索引", count));
+        System.out.println(mapped.report("索引ファイル", count));
+
+        assertTrue(mapped.retainedBytes < heap.retainedBytes,
+                "索引ファイルの方が保持するヒープが多い: " + mapped.retainedBytes + " / " + heap.retainedBytes);
+        assertTrue(mapped.allocatedPerLookup < 1, "索引ファイルの判定で割り当てが発生: " + mapped.allocatedPerLookup);
+        assertTrue(mapped.allocatedPerLookup < heap.allocatedPerLookup);
+        Reference.reachabilityFence(entries);
+    }
+
+    private Footprint measure(List<WhitelistManager.WhitelistEntry> entries, boolean mappedIndex) {
+        plugin.config().set("storage.mapped-index", mappedIndex);
+        File folder = new File(dataFolder, mappedIndex ? "mapped" : "heap");
+
+        long before = usedHeap();
+        WhitelistManager manager = new WhitelistManager(plugin.get(), new File(folder, "whitelist.yml"));
+        manager.restore(entries);
+        long retained = usedHeap() - before;
+        assertEquals(mappedIndex, manager.getMappedIndexStatus() != null);
+
+        int lookups = 1_000_000;
+        for (int i = 0; i < lookups / 10; i++) {
+            manager.isWhitelisted(entries.get(i % entries.size()).getPlayerName());
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long gcCount = gcCount();
+        long gcMillis = gcMillis();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        int hits = 0;
+        for (int i = 0; i < lookups; i++) {
+            if (manager.isWhitelisted(entries.get(i % entries.size()).getPlayerName())) {
+                hits++;
+            }
+        }
+        allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+        assertEquals(lookups, hits);
+
+        Footprint footprint = new Footprint(retained, (double) allocated / lookups, gcCount() - gcCount,
+                gcMillis() - gcMillis);
+        Reference.reachabilityFence(manager);
+        return footprint;
+    }
+
+    private String[] datFiles() {
+        String[] names = dataFolder.list((dir, name) -> name.startsWith("whitelist") && name.endsWith(".dat")
+                && !name.startsWith("whitelist-guild"));
+        Arrays.sort(names);
+        return names;
+    }
+
+    private static WhitelistManager.WhitelistEntry entry(int player, long generation) {
+        return new WhitelistManager.WhitelistEntry("Player" + player, Long.toString(discordId(player, generation)),
+                "2024-01-01T00:00:00Z", false, generation % 2 == 1, new UUID(player, generation), generation);
+    }
+
+    private static long discordId(int player, long generation) {
+        return player * 1_000_000L + generation + 1;
+    }
+
+    private static long usedHeap() {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, gc.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, gc.getCollectionTime());
+        }
+        return millis;
+    }
+
+    private static class Footprint {
+        final long retainedBytes;
+        final double allocatedPerLookup;
+        final long collections;
+        final long collectionMillis;
+
+        Footprint(long retainedBytes, double allocatedPerLookup, long collections, long collectionMillis) {
+            this.retainedBytes = retainedBytes;
+            this.allocatedPerLookup = allocatedPerLookup;
+            this.collections = collections;
+            this.collectionMillis = collectionMillis;
+        }
+
+        String report(String name, int count) {
+            return String.format("[%s] %d人 保持ヒープ=%.1fMB (%d バイト/人) 判定ごとの割り当て=%.1fバイト GC=%d回 %dms",
+                    name, count, retainedBytes / 1048576.0, retainedBytes / count, allocatedPerLookup, collections,
+                    collectionMillis);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.TestPlugin;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import net.dv8tion.jda.api.utils.data.DataArray;
+import net.dv8tion.jda.api.utils.data.DataObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * 一括APIの代わりのローカルHTTPサーバーに対するレート制限と停止時の動作
+ */
+class MojangProfileResolverTest {
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private HttpServer server;
+    private MojangProfileResolver resolver;
+
+    private final AtomicInteger requests = new AtomicInteger();
+    // 最初の何回を429にするか
+    private volatile int rateLimitedRequests;
+    private volatile String retryAfter = "1";
+
+    @BeforeEach
+    void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/lookup", this::handle);
+        server.start();
+
+        plugin = new TestPlugin(dataFolder);
+        plugin.config().set("profile-resolver.url",
+                "http://127.0.0.1:" + server.getAddress().getPort() + "/lookup");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (resolver != null) {
+            resolver.shutdown();
+        }
+        server.stop(0);
+        plugin.close();
+    }
+
+    @Test
+    void burstDuringRateLimitWaitsForRetryAfter() throws Exception {
+        rateLimitedRequests = 1;
+        resolver = new MojangProfileResolver(plugin.get());
+
+        // 10件で即時に送信され、429になる
+        List<CompletableFuture<Optional<ProfileResolver.Profile>>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            futures.add(resolver.resolve("Player" + i));
+        }
+        await(() -> requests.get() == 1);
+
+        // 制限中に10件を超えて問い合わせても送信しない
+        for (int i = 10; i < 35; i++) {
+            futures.add(resolver.resolve("Player" + i));
+        }
+        Thread.sleep(500);
+        assertEquals(1, requests.get());
+
+        for (int i = 0; i < futures.size(); i++) {
+            Optional<ProfileResolver.Profile> profile = futures.get(i).get(10, TimeUnit.SECONDS);
+            assertEquals("Player" + i, profile.orElseThrow().getName());
+        }
+        // 429の1回と、35件を10件ずつ送信した4回
+        assertEquals(5, requests.get());
+    }
+
+    @Test
+    void shutdownFailsPendingLookups() throws Exception {
+        rateLimitedRequests = Integer.MAX_VALUE;
+        retryAfter = "60";
+        resolver = new MojangProfileResolver(plugin.get());
+
+        CompletableFuture<Optional<ProfileResolver.Profile>> first = resolver.resolve("Steve");
+        await(() -> requests.get() == 1);
+        CompletableFuture<Optional<ProfileResolver.Profile>> queued = resolver.resolve("Alex");
+
+        resolver.shutdown();
+        resolver = null;
+
+        for (CompletableFuture<Optional<ProfileResolver.Profile>> future : List.of(first, queued)) {
+            ExecutionException error = assertThrows(ExecutionException.class, () -> future.get(1, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, error.getCause());
+        }
+        assertEquals(1, requests.get());
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            byte[] body;
+            try (InputStream in = exchange.getRequestBody()) {
+                body = in.readAllBytes();
+            }
+            if (requests.incrementAndGet() <= rateLimitedRequests) {
+                exchange.getResponseHeaders().set("Retry-After", retryAfter);
+                exchange.sendResponseHeaders(429, -1);
+                return;
+            }
+            DataArray names = DataArray.fromJson(new String(body, StandardCharsets.UTF_8));
+            DataArray profiles = DataArray.empty();
+            for (int i = 0; i < names.length(); i++) {
+                String name = names.getString(i);
+                profiles.add(DataObject.empty().put("name", name)
+                        .put("id", String.format("%032x", name.hashCode() & 0xFFFFFFFFL)));
+            }
+            byte[] response = profiles.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, response.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(response);
+            }
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("タイムアウト");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
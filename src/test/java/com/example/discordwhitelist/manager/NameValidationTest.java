@@ -0,0 +1,163 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.TestPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * 名前の検証とDiscord IDの取り出しを、以前の正規表現による実装と比較する
+ */
+class NameValidationTest {
+
+    private static final List<String> NAMES = List.of(
+            "",
+            "ab",
+            "abc",
+            "Steve_01",
+            "abcdefghijklmnop",
+            "abcdefghijklmnopq",
+            "a_b_c_d_e_f_g_h_",
+            "a_b_c_d_e_f_g_h_i",
+            "Ste ve",
+            " Steve",
+            "Steve ",
+            "a b c d e f g h ",
+            "a b c d e f g h i",
+            "Stéve",
+            "Ｓｔｅｖｅ",
+            "١٢٣٤",
+            "abc\n",
+            "abc-",
+            "ab\u0000c",
+            "ab\tc",
+            "Steve🎉",
+            "😀abc");
+
+    private static final List<String> DISCORD_IDS = List.of(
+            "",
+            "1234567890123456",
+            "12345678901234567",
+            "12345678901234567890",
+            "123456789012345678901",
+            "<@12345678901234567>",
+            "<@!123456789012345678>",
+            "<@&123456789012345678>",
+            "<@1234567890123456>",
+            "<@123456789012345678",
+            "123456789012345678>",
+            "<@>",
+            "１２３４５６７８９０１２３４５６７",
+            "١٢٣٤٥٦٧٨٩٠١٢٣٤٥٦٧",
+            "12345678901234567\n",
+            "+12345678901234567",
+            "-12345678901234567",
+            "1234567890 1234567");
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private WhitelistManager manager;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+        manager = plugin.createWhitelistManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        plugin.close();
+    }
+
+    @Test
+    void edgeCasesMatchRegex() {
+        for (String name : NAMES) {
+            assertEquals(legacyJava(name), manager.isValidName(name, false), "Java: " + name);
+            assertEquals(legacyBedrock(name), manager.isValidName(name, true), "Bedrock: " + name);
+        }
+        assertFalse(manager.isValidName(null, false));
+        assertFalse(manager.isValidName(null, true));
+
+        for (String id : DISCORD_IDS) {
+            assertEquals(legacyDiscordId(id), WhitelistManager.parseDiscordId(id), id);
+        }
+    }
+
+    @Test
+    void lengthLimits() {
+        // 16文字まで (17文字は不可)
+        assertEquals(List.of(false, true, true, false), validJava("ab", "abc", "a".repeat(16), "a".repeat(17)));
+        assertEquals(List.of(false, true, true, false), validBedrock("a ", "a b", "a b".repeat(5) + "c",
+                "a b".repeat(5) + "cd"));
+    }
+
+    @Test
+    void randomInputMatchesRegex() {
+        char[] alphabet = { 'a', 'Z', '0', '9', '_', ' ', '-', '.', 'é', '１', '<', '@', '!', '>', '\n' };
+        Random random = new Random(50);
+        for (int i = 0; i < 50_000; i++) {
+            char[] text = new char[random.nextInt(22)];
+            for (int j = 0; j < text.length; j++) {
+                // Discord IDを生成しやすいように数字を多めにする
+                text[j] = random.nextInt(3) == 0 ? alphabet[random.nextInt(alphabet.length)]
+                        : (char) ('0' + random.nextInt(10));
+            }
+            String input = new String(text);
+            assertEquals(legacyJava(input), manager.isValidName(input, false), input);
+            assertEquals(legacyBedrock(input), manager.isValidName(input, true), input);
+            assertEquals(legacyDiscordId(input), WhitelistManager.parseDiscordId(input), input);
+        }
+    }
+
+    private List<Boolean> validJava(String... names) {
+        List<Boolean> results = new ArrayList<>();
+        for (String name : names) {
+            results.add(manager.isValidName(name, false));
+        }
+        return results;
+    }
+
+    private List<Boolean> validBedrock(String... names) {
+        List<Boolean> results = new ArrayList<>();
+        for (String name : names) {
+            results.add(manager.isValidName(name, true));
+        }
+        return results;
+    }
+
+    /**
+     * 以前の実装 (String.matches)
+     */
+    private static boolean legacyJava(String name) {
+        if (name == null || name.length() < 3 || name.length() > 16) {
+            return false;
+        }
+        return name.matches("^[a-zA-Z0-9_]+$");
+    }
+
+    private static boolean legacyBedrock(String name) {
+        if (name == null || name.length() < 3 || name.length() > 16) {
+            return false;
+        }
+        return name.matches("^[a-zA-Z0-9_ ]+$");
+    }
+
+    private static String legacyDiscordId(String text) {
+        String id = text;
+        if (id.startsWith("<@") && id.endsWith(">")) {
+            id = id.substring(id.startsWith("<@!") ? 3 : 2, id.length() - 1);
+        }
+        return id.matches("^\\d{17,20}$") ? id : null;
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.LatencyStats;
+import com.example.discordwhitelist.TestPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+
+class RegistrationPipelineTest {
+
+    private static final int BURST = 1000;
+    private static final int THREADS = 8;
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private WhitelistManager manager;
+    private RegistrationPipeline pipeline;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+        manager = plugin.createWhitelistManager();
+        pipeline = new RegistrationPipeline(plugin.get(), manager);
+    }
+
+    @AfterEach
+    void tearDown() {
+        pipeline.shutdown();
+        plugin.close();
+    }
+
+    @Test
+    @Tag("load")
+    void burstIsGroupCommitted() throws Exception {
+        List<CompletableFuture<WhitelistManager.AddResult>> futures = new ArrayList<>(BURST);
+        LatencyStats latency = new LatencyStats();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService submitters = Executors.newFixedThreadPool(THREADS);
+
+        long begin = System.nanoTime();
+        List<CompletableFuture<Void>> submitted = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            submitted.add(CompletableFuture.runAsync(() -> {
+                awaitQuietly(start);
+                for (int i = thread; i < BURST; i += THREADS) {
+                    long at = System.nanoTime();
+                    CompletableFuture<WhitelistManager.AddResult> future = pipeline.submit(
+                            String.format("Burst%04d", i), String.valueOf(100000000000000000L + i), false, null);
+                    future.whenComplete((result, error) -> latency.record(System.nanoTime() - at));
+                    synchronized (futures) {
+                        futures.add(future);
+                    }
+                }
+            }, submitters));
+        }
+        start.countDown();
+        CompletableFuture.allOf(submitted.toArray(new CompletableFuture[0])).get(30, TimeUnit.SECONDS);
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(60, TimeUnit.SECONDS);
+        long elapsed = System.nanoTime() - begin;
+        submitters.shutdown();
+
+        for (CompletableFuture<WhitelistManager.AddResult> future : futures) {
+            assertEquals(WhitelistManager.AddResult.SUCCESS, future.get());
+        }
+        assertEquals(BURST, manager.getSize());
+        assertEquals(BURST, pipeline.getProcessedCount());
+        // 1件ごとに保存していないこと
+        assertTrue(pipeline.getBatchCount() < BURST, "保存回数: " + pipeline.getBatchCount());
+        assertEquals(List.of(), manager.checkConsistency());
+
+        System.out.println(latency.report("registration burst", elapsed) + " 保存 " + pipeline.getBatchCount() + "回");
+    }
+
+    @Test
+    void shutdownCompletesEverySubmission() throws Exception {
+        AtomicBoolean stop = new AtomicBoolean();
+        List<CompletableFuture<WhitelistManager.AddResult>> futures = new ArrayList<>();
+        ExecutorService submitters = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            submitters.execute(() -> {
+                for (int i = 0; !stop.get() && i < 2000; i++) {
+                    int n = i * THREADS + thread;
+                    CompletableFuture<WhitelistManager.AddResult> future = pipeline.submit(
+                            String.format("Race%05d", n % 100000), String.valueOf(200000000000000000L + n), false,
+                            null);
+                    synchronized (futures) {
+                        futures.add(future);
+                    }
+                }
+            });
+        }
+
+        Thread.sleep(50);
+        pipeline.shutdown();
+        stop.set(true);
+        submitters.shutdown();
+        assertTrue(submitters.awaitTermination(10, TimeUnit.SECONDS));
+
+        // 停止の前後に受け付けた登録も含め、応答が保留されたままのものがないこと
+        synchronized (futures) {
+            for (CompletableFuture<WhitelistManager.AddResult> future : futures) {
+                try {
+                    future.get(1, TimeUnit.SECONDS);
+                } catch (ExecutionException e) {
+                    assertInstanceOf(IllegalStateException.class, e.getCause());
+                } catch (TimeoutException e) {
+                    fail("完了しない登録があります");
+                }
+            }
+        }
+        assertEquals(List.of(), manager.checkConsistency());
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package com.example.discordwhitelist.manager;
+
+import com.example.discordwhitelist.TestPlugin;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WhitelistManagerTest {
+
+    private static final String DISCORD_ID = "123456789012345678";
+
+    @TempDir
+    File dataFolder;
+
+    private TestPlugin plugin;
+    private WhitelistManager manager;
+
+    @BeforeEach
+    void setUp() {
+        plugin = new TestPlugin(dataFolder);
+        manager = plugin.createWhitelistManager();
+    }
+
+    @AfterEach
+    void tearDown() {
+        plugin.close();
+    }
+
+    @Test
+    void renameKeepsDisabledExpiryAndLastSeen() {
+        long expiresAt = System.currentTimeMillis() + 86_400_000L;
+        manager.restore(List.of(new WhitelistManager.WhitelistEntry("OldName", DISCORD_ID, "2024-01-01T00:00:00",
+                false, true, UUID.randomUUID(), expiresAt, 1_700_000_000_000L)));
+
+        UUID uuid = UUID.randomUUID();
+        assertEquals(WhitelistManager.AddResult.UPDATED, manager.updatePlayer("NewName", DISCORD_ID, false, uuid));
+
+        assertNull(manager.getEntry("OldName", null));
+        WhitelistManager.WhitelistEntry entry = manager.getEntry("NewName", null);
+        assertEquals(uuid, entry.getUuid());
+        assertTrue(entry.isDisabled());
+        assertEquals(expiresAt, entry.getExpiresAt());
+        assertEquals(1_700_000_000_000L, entry.getLastSeen());
+        // 無効化されたエントリーは名前を変えても参加できない
+        assertFalse(manager.isWhitelisted("NewName"));
+    }
+}
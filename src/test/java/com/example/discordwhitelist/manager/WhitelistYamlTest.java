@@ -0,0 +1,181 @@
+package com.example.discordwhitelist.manager;
+
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * whitelist.yml の読み書き (以前の YamlConfiguration で保存したファイル、書き出しと読み込みの往復、構文エラー)
+ */
+class WhitelistYamlTest {
+
+    @TempDir
+    File dataFolder;
+
+    private File file;
+    private Logger logger;
+    private final List<LogRecord> logs = new ArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        file = new File(dataFolder, "whitelist.yml");
+        logger = Logger.getAnonymousLogger();
+        logger.setUseParentHandlers(false);
+        logger.addHandler(new Handler() {
+            @Override
+            public void publish(LogRecord record) {
+                logs.add(record);
+            }
+
+            @Override
+            public void flush() {
+            }
+
+            @Override
+            public void close() {
+            }
+        });
+    }
+
+    @Test
+    void readsFileSavedByYamlConfiguration() throws Exception {
+        // 以前の WhitelistManager.save() と同じ書き方
+        YamlConfiguration config = new YamlConfiguration();
+        config.set("players.Steve.discord-id", "100000000000000001");
+        config.set("players.Steve.registered-at", "2024-01-01T00:00:00");
+        config.set("players.Steve.bedrock", false);
+        config.set("players.123abc.discord-id", "100000000000000002");
+        config.set("players.123abc.registered-at", "2024-01-02T00:00:00");
+        config.set("players.123abc.bedrock", true);
+        config.save(file);
+
+        List<WhitelistManager.WhitelistEntry> entries = new ArrayList<>();
+        assertEquals(0, WhitelistYaml.read(file, logger, entries::add));
+
+        assertEquals(2, entries.size());
+        assertEntry(new WhitelistManager.WhitelistEntry("Steve", "100000000000000001", "2024-01-01T00:00:00", false),
+                entries.get(0));
+        assertEntry(new WhitelistManager.WhitelistEntry("123abc", "100000000000000002", "2024-01-02T00:00:00", true),
+                entries.get(1));
+        assertTrue(logs.isEmpty(), () -> logs.get(0).getMessage());
+    }
+
+    @Test
+    void writeThenReadKeepsEveryField() throws Exception {
+        List<WhitelistManager.WhitelistEntry> written = List.of(
+                new WhitelistManager.WhitelistEntry("Steve", "100000000000000001", "2024-01-01T00:00:00", false),
+                new WhitelistManager.WhitelistEntry("Alex_2", "100000000000000002", "2024-01-02T00:00:00", false,
+                        true, UUID.randomUUID(), 1_800_000_000_000L, 1_700_000_000_000L),
+                // 引用符が必要な名前
+                new WhitelistManager.WhitelistEntry("123abc", "100000000000000003", "2024-01-03T00:00:00", false),
+                new WhitelistManager.WhitelistEntry(".Bedrock Player", "100000000000000004", "2024-01-04T00:00:00",
+                        true, false, null, 0, 1_700_000_000_001L),
+                new WhitelistManager.WhitelistEntry("yes", "100000000000000005", "2024-01-05T00:00:00", false),
+                new WhitelistManager.WhitelistEntry("no", "100000000000000006", "2024-01-06T00:00:00", false),
+                new WhitelistManager.WhitelistEntry("Null", "100000000000000007", "2024-01-07T00:00:00", false),
+                new WhitelistManager.WhitelistEntry("O'Neil", "", "", false));
+
+        WhitelistYaml.write(file, 1_600_000_000_000L, written);
+        List<WhitelistManager.WhitelistEntry> read = new ArrayList<>();
+        assertEquals(1_600_000_000_000L, WhitelistYaml.read(file, logger, read::add));
+
+        assertEquals(written.size(), read.size());
+        for (int i = 0; i < written.size(); i++) {
+            assertEntry(written.get(i), read.get(i));
+        }
+        assertTrue(logs.isEmpty(), () -> logs.get(0).getMessage());
+        assertFalse(new File(dataFolder, "whitelist.yml.tmp").exists());
+    }
+
+    @Test
+    void emptyWhitelistRoundTrips() throws Exception {
+        WhitelistYaml.write(file, 0, List.of());
+        List<WhitelistManager.WhitelistEntry> read = new ArrayList<>();
+        assertEquals(0, WhitelistYaml.read(file, logger, read::add));
+        assertTrue(read.isEmpty());
+        assertTrue(logs.isEmpty());
+    }
+
+    @Test
+    void syntaxErrorKeepsEntriesBeforeItAndSavesBrokenFile() throws Exception {
+        String text = """
+                activity-tracking-since: 5
+                players:
+                  Steve:
+                    discord-id: '100000000000000001'
+                    registered-at: '2024-01-01T00:00:00'
+                    bedrock: false
+                  Alex:
+                    discord-id: '100000000000000002'
+                    registered-at: '2024-01-02T00:00:00'
+                    bedrock: false
+                  Broken:
+                    discord-id: [100000000000000003
+                    bedrock: false
+                  Later:
+                    discord-id: '100000000000000004'
+                """;
+        Files.writeString(file.toPath(), text, StandardCharsets.UTF_8);
+
+        List<WhitelistManager.WhitelistEntry> read = new ArrayList<>();
+        assertEquals(5, WhitelistYaml.read(file, logger, read::add));
+
+        assertEquals(List.of("Steve", "Alex"), read.stream().map(WhitelistManager.WhitelistEntry::getPlayerName)
+                .toList());
+        File broken = new File(dataFolder, "whitelist.yml.broken");
+        assertArrayEquals(text.getBytes(StandardCharsets.UTF_8), Files.readAllBytes(broken.toPath()));
+        assertEquals(Level.SEVERE, logs.get(logs.size() - 1).getLevel());
+        assertTrue(logs.get(logs.size() - 1).getMessage().startsWith("whitelist.yml:"),
+                logs.get(logs.size() - 1).getMessage());
+    }
+
+    @Test
+    void invalidValuesAreSkippedWithLineNumbers() throws Exception {
+        Files.writeString(file.toPath(), """
+                players:
+                  Steve:
+                    discord-id: '100000000000000001'
+                    uuid: not-a-uuid
+                    expires-at: soon
+                """, StandardCharsets.UTF_8);
+
+        List<WhitelistManager.WhitelistEntry> read = new ArrayList<>();
+        WhitelistYaml.read(file, logger, read::add);
+
+        assertEquals(1, read.size());
+        assertNull(read.get(0).getUuid());
+        assertEquals(0, read.get(0).getExpiresAt());
+        assertEquals(List.of("whitelist.yml:4: ", "whitelist.yml:5: "),
+                logs.stream().map(record -> record.getMessage().substring(0, 17)).toList());
+    }
+
+    private static void assertEntry(WhitelistManager.WhitelistEntry expected, WhitelistManager.WhitelistEntry actual) {
+        String name = expected.getPlayerName();
+        assertEquals(name, actual.getPlayerName());
+        assertEquals(expected.getDiscordId(), actual.getDiscordId(), name);
+        assertEquals(expected.getRegisteredAt(), actual.getRegisteredAt(), name);
+        assertEquals(expected.isBedrock(), actual.isBedrock(), name);
+        assertEquals(expected.isDisabled(), actual.isDisabled(), name);
+        assertEquals(expected.getUuid(), actual.getUuid(), name);
+        assertEquals(expected.getExpiresAt(), actual.getExpiresAt(), name);
+        assertEquals(expected.getLastSeen(), actual.getLastSeen(), name);
+    }
+}
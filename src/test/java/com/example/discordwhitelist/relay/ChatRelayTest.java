@@ -0,0 +1,208 @@
+package com.example.discordwhitelist.relay;
+
+import com.example.discordwhitelist.TestPlugin;
+import com.example.discordwhitelist.discord.DiscordBot;
+import com.example.discordwhitelist.discord.OutboundSender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assertions.fail;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * 同じマシン上の複数のチャット中継 (localhostのTCP) によるリーダー選出、フェイルオーバー、フレームの検査
+ */
+class ChatRelayTest {
+
+    private static final String SECRET = "test-secret";
+
+    @TempDir
+    File dataFolder;
+
+    private final List<Node> nodes = new ArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        for (Node node : nodes) {
+            node.relay.stop();
+            node.plugin.close();
+        }
+    }
+
+    @Test
+    void electsSmallestNameAndFailsOver() throws Exception {
+        List<Node> mesh = startMesh("alpha", "bravo", "charlie");
+        Node alpha = mesh.get(0);
+        Node bravo = mesh.get(1);
+        Node charlie = mesh.get(2);
+
+        for (Node node : mesh) {
+            await(() -> node.relay.getPeers().size() == 2 && "alpha".equals(node.relay.getLeader()),
+                    node.name + " の接続とリーダー選出");
+        }
+
+        // リーダーだけがDiscordに送信する
+        charlie.relay.publish(OutboundSender.Category.CHAT, "Steve", "hello", "hello");
+        await(() -> alpha.forwarded.size() == 1, "リーダーからの送信");
+        Thread.sleep(200);
+        assertEquals(List.of("Steve [charlie]: hello"), alpha.forwarded);
+        assertTrue(bravo.forwarded.isEmpty());
+        assertTrue(charlie.forwarded.isEmpty());
+
+        // リーダーが停止したら、次にサーバー名が小さいものが引き継ぐ
+        alpha.relay.stop();
+        await(() -> "bravo".equals(bravo.relay.getLeader()) && "bravo".equals(charlie.relay.getLeader()),
+                "フェイルオーバー");
+        charlie.relay.publish(OutboundSender.Category.CHAT, "Steve", "again", "again");
+        await(() -> bravo.forwarded.size() == 1, "新しいリーダーからの送信");
+        assertEquals(List.of("Steve [charlie]: again"), bravo.forwarded);
+        assertTrue(charlie.forwarded.isEmpty());
+    }
+
+    @Test
+    void framesArriveIntactAndInOrder() throws Exception {
+        List<Node> mesh = startMesh("alpha", "bravo");
+        Node alpha = mesh.get(0);
+        Node bravo = mesh.get(1);
+        await(() -> "alpha".equals(bravo.relay.getLeader()) && bravo.relay.getPeers().size() == 1, "接続");
+
+        // 大きさの異なるメッセージ (マルチバイト文字と、1フレームの上限に近いもの) を連続で送る
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String text = i + ":" + "あ🎉x".repeat(i % 50 == 0 ? 3000 : i % 7);
+            expected.add("Player" + (i % 5) + " [bravo]: " + text);
+            bravo.relay.publish(OutboundSender.Category.CHAT, "Player" + (i % 5), text, text);
+        }
+
+        await(() -> alpha.forwarded.size() >= expected.size(), "全てのメッセージの受信");
+        assertEquals(expected, alpha.forwarded);
+        // 送信スレッドは複数のフレームを1回の書き込みにまとめる
+        ChatRelay.PeerStatus peer = bravo.relay.getPeers().get(0);
+        assertTrue(peer.getWrites() <= peer.getFramesSent());
+    }
+
+    @Test
+    void repeatedHelloIsRejected() throws Exception {
+        Node alpha = startMesh("alpha").get(0);
+
+        try (Socket socket = new Socket()) {
+            socket.connect(new InetSocketAddress("127.0.0.1", alpha.port), 1000);
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(hello("mallory", true));
+            await(() -> alpha.relay.getPeers().size() == 1, "1回目のHELLO");
+            assertEquals("mallory", alpha.relay.getPeers().get(0).getName());
+
+            // 認証後に名前を変えようとするHELLOは接続ごと拒否する
+            socket.getOutputStream().write(hello("alpha-impostor", true));
+            await(() -> alpha.relay.getPeers().isEmpty(), "2回目のHELLOによる切断");
+            assertEquals("alpha", alpha.relay.getLeader());
+            // 相手のHELLOとPINGを読み飛ばし、切断されていること
+            byte[] buffer = new byte[4096];
+            while (true) {
+                int read = socket.getInputStream().read(buffer);
+                if (read < 0) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * サーバーを起動し、全て互いに接続する (全てDiscordに送信できる)
+     */
+    private List<Node> startMesh(String... names) throws IOException {
+        List<Integer> ports = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            try (ServerSocket socket = new ServerSocket(0)) {
+                ports.add(socket.getLocalPort());
+            }
+        }
+        List<String> addresses = new ArrayList<>();
+        for (int port : ports) {
+            addresses.add("127.0.0.1:" + port);
+        }
+
+        List<Node> mesh = new ArrayList<>();
+        for (int i = 0; i < names.length; i++) {
+            Node node = new Node(names[i], ports.get(i), new File(dataFolder, names[i]), addresses);
+            nodes.add(node);
+            mesh.add(node);
+            node.relay.start();
+            assertTrue(node.relay.isEnabled(), names[i] + " の起動");
+        }
+        return mesh;
+    }
+
+    private static byte[] hello(String name, boolean canForward) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(0);
+        out.writeByte(RelayConnection.TYPE_HELLO);
+        out.writeByte(RelayConnection.VERSION);
+        out.writeUTF(name);
+        out.writeBoolean(canForward);
+        out.writeUTF(SECRET);
+        byte[] frame = bytes.toByteArray();
+        ByteBuffer.wrap(frame).putInt(0, frame.length - 4);
+        return frame;
+    }
+
+    private static void await(BooleanSupplier condition, String description) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("タイムアウト: " + description);
+            }
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * 1台のサーバー (Discordへの送信は記録のみ)
+     */
+    private static class Node {
+        final String name;
+        final int port;
+        final TestPlugin plugin;
+        final ChatRelay relay;
+        final List<String> forwarded = Collections.synchronizedList(new ArrayList<>());
+
+        Node(String name, int port, File dataFolder, List<String> peers) {
+            this.name = name;
+            this.port = port;
+            dataFolder.mkdirs();
+            plugin = new TestPlugin(dataFolder);
+            plugin.config().set("relay.enabled", true);
+            plugin.config().set("relay.server-name", name);
+            plugin.config().set("relay.listen", "127.0.0.1:" + port);
+            plugin.config().set("relay.peers", peers);
+            plugin.config().set("relay.secret", SECRET);
+            plugin.config().set("relay.discord-username", "%player% [%server%]");
+
+            DiscordBot bot = mock(DiscordBot.class);
+            doAnswer(invocation -> forwarded.add(invocation.getArgument(0) + ": " + invocation.getArgument(2)))
+                    .when(bot).sendWebhookSystemMessage(anyString(), anyString(), anyString());
+            when(plugin.get().getDiscordBot()).thenReturn(bot);
+            relay = new ChatRelay(plugin.get());
+        }
+    }
+}